@@ -20,6 +20,14 @@ import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,7 +39,9 @@ import javax.naming.spi.ObjectFactoryBuilder;
 
 import org.osgi.framework.BundleActivator;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
 import org.osgi.framework.ServiceRegistration;
+import org.osgi.framework.SynchronousBundleListener;
 import org.osgi.service.jndi.JNDIConstants;
 import org.osgi.service.jndi.JNDIContextManager;
 import org.osgi.service.jndi.JNDIProviderAdmin;
@@ -50,14 +60,29 @@ public class Activator implements BundleActivator {
 	private static final String					OSGI_URL_SCHEME					= "osgi";
 	private static final String					RMI_URL_SCHEME					= "rmi";
 	private static final String					RMI_URL_CONTEXT_FACTORY			= "com.sun.jndi.url.rmi.rmiURLContextFactory";
+	private static final long					ASYNC_THREAD_KEEP_ALIVE_SECONDS	= 60;
+	private static final int					DEFAULT_ASYNC_QUEUE_CAPACITY	= 1024;
+	private static final int					MAINTENANCE_THREAD_COUNT		= 2;
+	private static final int					DEFAULT_PROVIDER_CALL_THREADS	= 32;
+	private static final int					DEFAULT_BREAKER_MINIMUM_CALLS	= 20;
+	private static final long					DEFAULT_BREAKER_OPEN_DURATION	= 30000;
+	private static final long					DEFAULT_CONTEXT_CLOSE_TIMEOUT	= 10000;
+	private static final long					DEFAULT_CONTEXT_POOL_IDLE_TIMEOUT	= 60000;
 	
 	private static Logger logger = Logger.getLogger(Activator.class.getName());
 
 	private BundleContext						m_bundleContext					= null;
 	private final List<ServiceRegistration>        m_listOfServiceRegistrations = new LinkedList<ServiceRegistration>();
 
-	private CloseableProviderAdmin	m_providerAdminService;
+	private ProviderAdminServiceFactory	m_providerAdminServiceFactory;
 	private ContextManagerServiceFactoryImpl m_contextManagerServiceFactory;
+	private ThreadPoolExecutor m_asyncExecutor;
+	private ScheduledThreadPoolExecutor m_maintenanceExecutor;
+	private ThreadPoolExecutor m_providerCallExecutor;
+	private ProviderGuard m_providerGuard;
+	private final TraditionalInitialContextFactoryBuilder m_initialContextFactoryBuilder = new TraditionalInitialContextFactoryBuilder();
+	private final TraditionalObjectFactoryBuilder m_objectFactoryBuilder = new TraditionalObjectFactoryBuilder();
+	private final SynchronousBundleListener m_bundleContextCacheListener = new BundleContextCacheListener();
 	
 	/*
 	 * Create the Factory Manager's builder implementation, and register it with
@@ -72,11 +97,22 @@ public class Activator implements BundleActivator {
 		logger.info("Initializing Gemini Naming Factory Manager Bundle");
 		
 		m_bundleContext = context;
+		
+		// decide once whether the privileged action machinery is required
+		SecurityUtils.detectSecurityManager();
 
 		// register static singletons with the JNDI framework
 		logger.info("Installing Static Singletons");
-		registerInitialContextFactoryBuilderSingleton();
-		registerObjectFactoryBuilderSingleton();
+		registerInitialContextFactoryBuilderSingleton(m_initialContextFactoryBuilder);
+		registerObjectFactoryBuilderSingleton(m_objectFactoryBuilder);
+		
+		// keep the caches used by the singletons up to date
+		m_bundleContext.addBundleListener(m_bundleContextCacheListener);
+
+		// create the executor shared by the asynchronous JNDI services, and 
+		// a separate executor for internal work, which clients cannot starve
+		m_asyncExecutor = createAsyncExecutor();
+		m_maintenanceExecutor = createMaintenanceExecutor();
 
 		logger.info("Registering URL Context Factory for 'osgi' URL scheme");
 		registerOSGiURLContextFactory();
@@ -84,6 +120,9 @@ public class Activator implements BundleActivator {
 		logger.info("Registering Default Runtime Builder for JRE-provided factories");
 		registerDefaultRuntimeBuilder();
 		
+		// create the guard for calls on JNDI provider services
+		m_providerGuard = createProviderGuard();
+		
 		logger.info("Registering ContextManager service");
 		// register the JNDIContextManager service once all Factory
 		// Manager initialization is complete
@@ -93,6 +132,9 @@ public class Activator implements BundleActivator {
 		// register the JNDIProviderAdmin interface, used by OSGi-aware
 		// context implementations to resolve JNDI references
 		registerProviderAdmin();
+		
+		logger.info("Registering ServiceLocator service");
+		registerServiceLocator();
 	}
 	
 
@@ -111,7 +153,14 @@ public class Activator implements BundleActivator {
 		m_contextManagerServiceFactory.closeAll();
 		
 		// close the JNDIProviderAdmin service
-		m_providerAdminService.close();
+		m_providerAdminServiceFactory.close();
+		
+		// stop accepting asynchronous operations
+		m_asyncExecutor.shutdown();
+		m_maintenanceExecutor.shutdown();
+		if (m_providerCallExecutor != null) {
+			m_providerCallExecutor.shutdown();
+		}
 
 		// unregister all the JNDI services registered by this Activator
 		Iterator<ServiceRegistration> iterator = m_listOfServiceRegistrations.iterator();
@@ -121,17 +170,24 @@ public class Activator implements BundleActivator {
 		}
 		
 		unregisterSingletons();
+		
+		m_bundleContext.removeBundleListener(m_bundleContextCacheListener);
+		BuilderUtils.clearCachedBundleContexts();
+		m_initialContextFactoryBuilder.releaseCachedServices();
+		m_objectFactoryBuilder.releaseCachedServices();
+		ReflectionUtils.clearCachedInterfaces();
 	}
 
 
 	/**
 	 * Registers the InitialContextFactoryBuilder static singleton
+	 * @param builder the builder to install
 	 * @throws NamingException on any error that occurs during the setting
 	 *         of the builder.  
 	 */
-	private static void registerInitialContextFactoryBuilderSingleton() throws NamingException {
+	private static void registerInitialContextFactoryBuilderSingleton(InitialContextFactoryBuilder builder) throws NamingException {
 		try {
-			NamingManager.setInitialContextFactoryBuilder(new TraditionalInitialContextFactoryBuilder());
+			NamingManager.setInitialContextFactoryBuilder(builder);
 		}
 		catch (IllegalStateException illegalStateException) {
 			logger.log(Level.SEVERE, 
@@ -156,12 +212,13 @@ public class Activator implements BundleActivator {
 	
 	/**
 	 * Registers the ObjectFactoryBuilder static singleton
+	 * @param builder the builder to install
 	 * @throws NamingException on any error that occurs during the setting
 	 *         of the builder.  
 	 */
-	private static void registerObjectFactoryBuilderSingleton() throws NamingException {
+	private static void registerObjectFactoryBuilderSingleton(ObjectFactoryBuilder builder) throws NamingException {
 		try {
-			NamingManager.setObjectFactoryBuilder(new TraditionalObjectFactoryBuilder());
+			NamingManager.setObjectFactoryBuilder(builder);
 		}
 		catch (IllegalStateException illegalStateException) {
 			logger.log(Level.SEVERE, 
@@ -221,9 +278,16 @@ public class Activator implements BundleActivator {
 		Hashtable<Object, Object> serviceProperties = new Hashtable<Object, Object>();
 		serviceProperties.put(JNDIConstants.JNDI_URLSCHEME, OSGI_URL_SCHEME);
 
+		final boolean cacheMisses = 
+			getBooleanProperty(GeminiNamingConstants.OSGI_URL_MISS_CACHE, false);
+		final boolean useStacklessExceptions = 
+			getBooleanProperty(GeminiNamingConstants.OSGI_URL_STACKLESS_EXCEPTIONS, false);
+		// service proxies rebind eagerly on the maintenance executor
+		final Executor rebindExecutor = 
+			getBooleanProperty(GeminiNamingConstants.OSGI_URL_EAGER_REBIND, false) ? m_maintenanceExecutor : null;
 		ServiceRegistration serviceRegistration = 
 			m_bundleContext.registerService(ObjectFactory.class.getName(), 
-										    new OSGiURLContextFactoryServiceFactory(), 
+										    new OSGiURLContextFactoryServiceFactory(cacheMisses, useStacklessExceptions, rebindExecutor), 
 										    serviceProperties);
 		m_listOfServiceRegistrations.add(serviceRegistration);
 	}
@@ -263,11 +327,153 @@ public class Activator implements BundleActivator {
 	}
 	
 	
+	/**
+	 * Creates the Executor used by the asynchronous JNDI services.  
+	 * 
+	 * The number of threads can be set with the 
+	 * {@link GeminiNamingConstants#ASYNC_THREAD_COUNT} framework property, 
+	 * and the number of waiting operations with the 
+	 * {@link GeminiNamingConstants#ASYNC_QUEUE_CAPACITY} framework property.  
+	 * Operations submitted once the queue is full are rejected.  
+	 * 
+	 * @return a ThreadPoolExecutor that uses daemon threads, which are 
+	 *         released when idle.  
+	 */
+	private ThreadPoolExecutor createAsyncExecutor() {
+		int threadCount = 
+			(int)getLongProperty(GeminiNamingConstants.ASYNC_THREAD_COUNT, 
+					             Runtime.getRuntime().availableProcessors());
+		int queueCapacity = 
+			(int)getLongProperty(GeminiNamingConstants.ASYNC_QUEUE_CAPACITY, 
+					             DEFAULT_ASYNC_QUEUE_CAPACITY);
+		
+		ThreadPoolExecutor executor = 
+			new ThreadPoolExecutor(Math.max(threadCount, 1), Math.max(threadCount, 1), 
+					               ASYNC_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, 
+					               new LinkedBlockingQueue<Runnable>(Math.max(queueCapacity, 1)), 
+					               new NamingThreadFactory("Gemini Naming Async"));
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	
+	/**
+	 * Creates the Executor used for internal maintenance work: rebinding 
+	 * Contexts and service proxies, closing Contexts, evicting idle pooled 
+	 * Contexts, warming up client bundles and resolving bindings ahead of 
+	 * an enumeration.  
+	 * 
+	 * The amount of this work is bounded by the number of Contexts, 
+	 * proxies and bundles, so the queue is not bounded, and maintenance 
+	 * work is never rejected while Gemini Naming is running.  
+	 * 
+	 * @return a ScheduledThreadPoolExecutor that uses daemon threads, 
+	 *         which are released when idle.  
+	 */
+	private ScheduledThreadPoolExecutor createMaintenanceExecutor() {
+		ScheduledThreadPoolExecutor executor = 
+			new ScheduledThreadPoolExecutor(MAINTENANCE_THREAD_COUNT, 
+					                        new NamingThreadFactory("Gemini Naming Maintenance"));
+		// the keep alive time must be set before core threads may time out
+		executor.setKeepAliveTime(ASYNC_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+	
+	
+	/**
+	 * Creates the guard used by the resolution chains for calls on JNDI 
+	 * provider services.  The timeout and circuit breaker are configured
+	 * with the framework properties defined in GeminiNamingConstants, and 
+	 * are both disabled by default.  
+	 * 
+	 * @return the ProviderGuard shared by all builders
+	 */
+	private ProviderGuard createProviderGuard() {
+		long callTimeout = 
+			getLongProperty(GeminiNamingConstants.PROVIDER_CALL_TIMEOUT, 0);
+		if (callTimeout > 0) {
+			// provider calls never wait for a thread, and the number of 
+			// threads held by providers that hang is bounded, so once all 
+			// threads are in use new calls are rejected
+			int threadCount = 
+				(int)getLongProperty(GeminiNamingConstants.PROVIDER_CALL_THREADS, 
+						             DEFAULT_PROVIDER_CALL_THREADS);
+			m_providerCallExecutor = 
+				new ThreadPoolExecutor(0, Math.max(threadCount, 1), 
+						               ASYNC_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, 
+						               new SynchronousQueue<Runnable>(), 
+						               new NamingThreadFactory("Gemini Naming Provider Call"));
+		}
+		
+		return new ProviderGuard(callTimeout, 
+				                 (int)getLongProperty(GeminiNamingConstants.PROVIDER_BREAKER_FAILURE_RATE, 0), 
+				                 (int)getLongProperty(GeminiNamingConstants.PROVIDER_BREAKER_MINIMUM_CALLS, DEFAULT_BREAKER_MINIMUM_CALLS), 
+				                 getLongProperty(GeminiNamingConstants.PROVIDER_BREAKER_OPEN_DURATION, DEFAULT_BREAKER_OPEN_DURATION), 
+				                 m_providerCallExecutor);
+	}
+	
+	
+	/**
+	 * Reads a numeric framework property.  
+	 * 
+	 * @param propertyName the name of the framework property
+	 * @param defaultValue the value to use if the property is not set or invalid
+	 * @return the value of the property
+	 */
+	private long getLongProperty(String propertyName, long defaultValue) {
+		String propertyValue = m_bundleContext.getProperty(propertyName);
+		if(propertyValue != null) {
+			try {
+				return Long.parseLong(propertyValue.trim());
+			}
+			catch (NumberFormatException numberFormatException) {
+				logger.log(Level.WARNING, 
+						   "Invalid value for " + propertyName + ", using the default value of " + defaultValue, 
+						   numberFormatException);
+			}
+		}
+		
+		return defaultValue;
+	}
+	
+	
+	/**
+	 * Reads a boolean framework property.  
+	 * 
+	 * @param propertyName the name of the framework property
+	 * @param defaultValue the value to use if the property is not set
+	 * @return the value of the property, or the default value
+	 */
+	private boolean getBooleanProperty(String propertyName, boolean defaultValue) {
+		String propertyValue = m_bundleContext.getProperty(propertyName);
+		if(propertyValue != null) {
+			return Boolean.valueOf(propertyValue.trim()).booleanValue();
+		}
+		
+		return defaultValue;
+	}
+	
+	
+	private void registerServiceLocator() {
+		ServiceRegistration serviceRegistration = 
+			m_bundleContext.registerService(ServiceLocator.class.getName(), 
+					                        new ServiceLocatorServiceFactory(), 
+					                        null);
+		m_listOfServiceRegistrations.add(serviceRegistration);
+	}
+	
+	
 	private void registerContextManager() {
 		m_contextManagerServiceFactory = 
-			new ContextManagerServiceFactoryImpl(m_bundleContext);
+			new ContextManagerServiceFactoryImpl(m_bundleContext, m_asyncExecutor, m_maintenanceExecutor, m_providerGuard, 
+					                             getLongProperty(GeminiNamingConstants.CONTEXT_CLOSE_TIMEOUT, DEFAULT_CONTEXT_CLOSE_TIMEOUT), 
+					                             (int)getLongProperty(GeminiNamingConstants.CONTEXT_POOL_SIZE, 0), 
+					                             getLongProperty(GeminiNamingConstants.CONTEXT_POOL_IDLE_TIMEOUT, DEFAULT_CONTEXT_POOL_IDLE_TIMEOUT));
+		m_contextManagerServiceFactory.open();
+		// the JNDIContextManager service also supports the Gemini asynchronous extension
 		ServiceRegistration serviceRegistration = 
-			m_bundleContext.registerService(JNDIContextManager.class.getName(),
+			m_bundleContext.registerService(new String[] {JNDIContextManager.class.getName(), AsyncContextManager.class.getName()},
 											m_contextManagerServiceFactory,
 					                        null);
 		m_listOfServiceRegistrations.add(serviceRegistration);
@@ -275,15 +481,60 @@ public class Activator implements BundleActivator {
 	
 
 	private void registerProviderAdmin() {
-		m_providerAdminService = 
-			new SecurityAwareProviderAdminImpl(new ProviderAdminImpl(m_bundleContext));
-		
+		// each client bundle gets its own JNDIProviderAdmin, backed by a shared builder
+		m_providerAdminServiceFactory = 
+			new ProviderAdminServiceFactory(m_bundleContext, m_providerGuard, m_asyncExecutor, m_maintenanceExecutor);
 		
+		// the JNDIProviderAdmin service also supports the Gemini batch and asynchronous extensions
 		ServiceRegistration serviceRegistration =  
-			m_bundleContext.registerService(JNDIProviderAdmin.class.getName(),
-					                        m_providerAdminService,
+			m_bundleContext.registerService(new String[] {JNDIProviderAdmin.class.getName(), BatchProviderAdmin.class.getName(), AsyncProviderAdmin.class.getName()},
+					                        m_providerAdminServiceFactory,
 					                        null);
 		m_listOfServiceRegistrations.add(serviceRegistration);
 	}
+	
+	
+	/**
+	 * Removes the cached BundleContext and the cached JNDI services of a 
+	 * bundle once that bundle stops.  
+	 */
+	private class BundleContextCacheListener implements SynchronousBundleListener {
+		@Override
+		public void bundleChanged(BundleEvent event) {
+			if ((event.getType() == BundleEvent.STOPPING) 
+					|| (event.getType() == BundleEvent.STOPPED)) {
+				BuilderUtils.clearCachedBundleContexts(event.getBundle());
+				m_initialContextFactoryBuilder.clearCachedServices(event.getBundle());
+				m_objectFactoryBuilder.clearCachedServices(event.getBundle());
+			}
+			
+			if ((event.getType() == BundleEvent.STOPPED) 
+					|| (event.getType() == BundleEvent.UNRESOLVED)) {
+				ReflectionUtils.clearCachedInterfaces();
+			}
+		}
+	}
+	
+	
+	/**
+	 * ThreadFactory for the thread pools owned by Gemini Naming.  The threads 
+	 * are daemon threads, so that they never hold up the shutdown of the VM.  
+	 */
+	private static class NamingThreadFactory implements ThreadFactory {
+		private final String m_threadNamePrefix;
+		private final AtomicInteger m_threadCount = new AtomicInteger();
+		
+		NamingThreadFactory(String threadNamePrefix) {
+			m_threadNamePrefix = threadNamePrefix;
+		}
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = 
+				new Thread(runnable, m_threadNamePrefix + " " + m_threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 
 }
\ No newline at end of file
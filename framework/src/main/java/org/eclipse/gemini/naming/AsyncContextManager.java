@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.naming.Binding;
+
+import org.osgi.service.jndi.JNDIContextManager;
+
+/**
+ * Gemini Naming extension of the JNDIContextManager service interface.  
+ * 
+ * This interface provides non-blocking versions of the most common 
+ * JNDI operations.  Each operation creates an initial context for the 
+ * given environment, performs the operation and closes the context again 
+ * on a thread owned by the Gemini Naming implementation, so that a slow 
+ * provider does not hold up the calling thread.  
+ * 
+ * Operations are performed with the permissions of the calling bundle, 
+ * in the same way as the equivalent operations on a Context obtained 
+ * from the JNDIContextManager service.  
+ * 
+ * The JNDIContextManager service published by Gemini Naming is also 
+ * registered under this interface.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+public interface AsyncContextManager extends JNDIContextManager {
+
+	/**
+	 * Looks up an object asynchronously.  
+	 * 
+	 * @param name the JNDI name of the object to look up
+	 * @param environment the JNDI environment used to create the initial 
+	 *        context, or null to use the default environment
+	 * @param callback a callback to notify once the lookup completes, or null
+	 * @return a Future that holds the object bound to the given name.  The 
+	 *         Future reports the NamingException thrown by the lookup, if any.
+	 */
+	public Future<Object> lookup(String name, Map environment, NamingCallback<Object> callback);
+	
+	/**
+	 * Lists the bindings of a context asynchronously.  
+	 * 
+	 * The bindings are read in full before the Future completes, since 
+	 * the context used to list them is closed once the operation is done.  
+	 * 
+	 * @param name the JNDI name of the context to list
+	 * @param environment the JNDI environment used to create the initial 
+	 *        context, or null to use the default environment
+	 * @param callback a callback to notify once the listing completes, or null
+	 * @return a Future that holds the list of Binding objects for the 
+	 *         given context.  The Future reports the NamingException thrown
+	 *         by the listing, if any.
+	 */
+	public Future<List<Binding>> listBindings(String name, Map environment, NamingCallback<List<Binding>> callback);
+}
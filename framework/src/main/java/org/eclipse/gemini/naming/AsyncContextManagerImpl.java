@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
+
+/**
+ * Decorator for the CloseableContextManager that adds the asynchronous 
+ * operations defined by the AsyncContextManager interface.  
+ * 
+ * The blocking operations are passed on to the underlying context manager 
+ * unchanged.  The asynchronous operations use the underlying context manager
+ * to create their initial contexts, so that the context creation keeps the 
+ * privileged semantics of the SecurityAwareContextManagerImpl.  
+ * 
+ * @version $Revision$
+ */
+class AsyncContextManagerImpl implements CloseableContextManager, AsyncContextManager {
+
+	private static final Logger logger = 
+		Logger.getLogger(AsyncContextManagerImpl.class.getName());
+	
+	private final CloseableContextManager m_contextManager;
+	
+	private final Executor m_executor;
+	
+	AsyncContextManagerImpl(CloseableContextManager contextManager, Executor executor) {
+		m_contextManager = contextManager;
+		m_executor = executor;
+	}
+	
+	
+	@Override
+	public Context newInitialContext() throws NamingException {
+		return m_contextManager.newInitialContext();
+	}
+
+	@Override
+	public Context newInitialContext(Map environment) throws NamingException {
+		return m_contextManager.newInitialContext(environment);
+	}
+
+	@Override
+	public DirContext newInitialDirContext() throws NamingException {
+		return m_contextManager.newInitialDirContext();
+	}
+
+	@Override
+	public DirContext newInitialDirContext(Map environment) throws NamingException {
+		return m_contextManager.newInitialDirContext(environment);
+	}
+	
+	@Override
+	public Future<Object> lookup(String name, Map environment, NamingCallback<Object> callback) {
+		return AsyncNamingTask.submit(m_executor, new LookupAction(name, environment), callback);
+	}
+
+	@Override
+	public Future<List<Binding>> listBindings(String name, Map environment, NamingCallback<List<Binding>> callback) {
+		return AsyncNamingTask.submit(m_executor, new ListBindingsAction(name, environment), callback);
+	}
+	
+	@Override
+	public void close() {
+		m_contextManager.close();
+	}
+	
+	
+	private Context createInitialContext(Map environment) throws NamingException {
+		if(environment == null) {
+			return m_contextManager.newInitialContext();
+		}
+		
+		return m_contextManager.newInitialContext(environment);
+	}
+	
+	
+	private static void closeContext(Context context) {
+		try {
+			context.close();
+		}
+		catch (NamingException namingException) {
+			logger.log(Level.FINE, 
+					   "NamingException occurred while closing the Context used by an asynchronous operation", 
+					   namingException);
+		}
+	}
+	
+	
+	// actions for each of the operations supported by the AsyncContextManager service
+	private class LookupAction implements PrivilegedExceptionAction {
+		private final String m_name;
+		private final Map m_environment;
+		
+		LookupAction(String name, Map environment) {
+			m_name = name;
+			m_environment = environment;
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			Context context = createInitialContext(m_environment);
+			try {
+				return context.lookup(m_name);
+			}
+			finally {
+				closeContext(context);
+			}
+		}
+	}
+	
+	private class ListBindingsAction implements PrivilegedExceptionAction {
+		private final String m_name;
+		private final Map m_environment;
+		
+		ListBindingsAction(String name, Map environment) {
+			m_name = name;
+			m_environment = environment;
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			Context context = createInitialContext(m_environment);
+			try {
+				List<Binding> listOfBindings = new ArrayList<Binding>();
+				NamingEnumeration<Binding> namingEnumeration = 
+					context.listBindings(m_name);
+				try {
+					while(namingEnumeration.hasMore()) {
+						listOfBindings.add(namingEnumeration.next());
+					}
+				}
+				finally {
+					namingEnumeration.close();
+				}
+				
+				return listOfBindings;
+			}
+			finally {
+				closeContext(context);
+			}
+		}
+	}
+}
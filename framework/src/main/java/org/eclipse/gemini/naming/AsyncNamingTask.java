@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.NamingException;
+
+/**
+ * FutureTask used by the asynchronous Gemini Naming services.  
+ * 
+ * The task captures the AccessControlContext of the thread that creates it, 
+ * and runs its action with that context on the executor thread.  This keeps 
+ * the permission checks for an asynchronous operation the same as for the 
+ * equivalent blocking operation.  
+ * 
+ * @version $Revision$
+ */
+class AsyncNamingTask<T> extends FutureTask<T> {
+
+	private static final Logger logger = 
+		Logger.getLogger(AsyncNamingTask.class.getName());
+	
+	private final NamingCallback<T> m_callback;
+	
+	private AsyncNamingTask(Callable<T> callable, NamingCallback<T> callback) {
+		super(callable);
+		m_callback = callback;
+	}
+	
+	
+	/**
+	 * Creates a task for the given action, and hands it to the executor.  
+	 * 
+	 * @param executor the Executor that should run the action
+	 * @param action the action to run
+	 * @param callback the callback to notify on completion, or null
+	 * @return the task, which will report a NamingException if the executor 
+	 *         did not accept it.  
+	 */
+	static <T> AsyncNamingTask<T> submit(Executor executor, PrivilegedExceptionAction action, NamingCallback<T> callback) {
+		final AccessControlContext callerContext = AccessController.getContext();
+		AsyncNamingTask<T> task = 
+			new AsyncNamingTask<T>(new CallerContextCallable<T>(action, callerContext), callback);
+		try {
+			executor.execute(task);
+		}
+		catch (RejectedExecutionException rejectedExecutionException) {
+			NamingException namingException = 
+				new NamingException("Asynchronous naming operation could not be scheduled");
+			namingException.setRootCause(rejectedExecutionException);
+			task.setException(namingException);
+		}
+		
+		return task;
+	}
+	
+	
+	@Override
+	protected void done() {
+		if(m_callback == null) {
+			return;
+		}
+		
+		T result;
+		try {
+			result = get();
+		}
+		catch (ExecutionException executionException) {
+			notifyFailed(executionException.getCause());
+			return;
+		}
+		catch (CancellationException cancellationException) {
+			notifyFailed(cancellationException);
+			return;
+		}
+		catch (InterruptedException interruptedException) {
+			// done() is only called once the task is complete, so get()
+			// should not block.  Restore the interrupt status regardless.
+			Thread.currentThread().interrupt();
+			notifyFailed(interruptedException);
+			return;
+		}
+		
+		try {
+			m_callback.completed(result);
+		}
+		catch (RuntimeException runtimeException) {
+			logger.log(Level.FINE, 
+					   "Exception occurred while notifying a NamingCallback", 
+					   runtimeException);
+		}
+	}
+	
+	
+	private void notifyFailed(Throwable cause) {
+		try {
+			m_callback.failed(cause);
+		}
+		catch (RuntimeException runtimeException) {
+			logger.log(Level.FINE, 
+					   "Exception occurred while notifying a NamingCallback", 
+					   runtimeException);
+		}
+	}
+	
+	
+	private static class CallerContextCallable<T> implements Callable<T> {
+		private final PrivilegedExceptionAction m_action;
+		private final AccessControlContext m_callerContext;
+		
+		CallerContextCallable(PrivilegedExceptionAction action, AccessControlContext callerContext) {
+			m_action = action;
+			m_callerContext = callerContext;
+		}
+		
+		@Override
+		public T call() throws Exception {
+			return (T)SecurityUtils.invokePrivilegedAction(m_action, m_callerContext);
+		}
+	}
+}
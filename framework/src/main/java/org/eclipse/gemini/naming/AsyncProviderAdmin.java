@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attributes;
+
+import org.osgi.service.jndi.JNDIProviderAdmin;
+
+/**
+ * Gemini Naming extension of the JNDIProviderAdmin service interface.  
+ * 
+ * This interface allows a context provider to resolve references without 
+ * blocking the calling thread.  The reference is resolved on a thread 
+ * owned by the Gemini Naming implementation, using the permissions 
+ * of the calling bundle.  
+ * 
+ * The JNDIProviderAdmin service published by Gemini Naming is also 
+ * registered under this interface.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+public interface AsyncProviderAdmin extends JNDIProviderAdmin {
+
+	/**
+	 * Resolve the object from the given reference asynchronously.  
+	 * 
+	 * @param refInfo Reference info
+	 * @param name the JNDI name associated with this reference
+	 * @param context the JNDI context associated with this reference
+	 * @param environment the JNDI environment associated with this JNDI context
+	 * @param callback a callback to notify once the reference is resolved, or null
+	 * @return a Future that holds the resolved object, or the original 
+	 *         reference if it could not be resolved.  
+	 */
+	public Future<Object> getObjectInstance(Object refInfo, Name name, Context context, 
+			                                Map environment, NamingCallback<Object> callback);
+	
+	/**
+	 * Resolve the object from the given reference asynchronously.  
+	 * 
+	 * @param refInfo Reference info
+	 * @param name the JNDI name associated with this reference
+	 * @param context the JNDI context associated with this reference
+	 * @param environment the JNDI environment associated with this JNDI context
+	 * @param attributes the naming attributes to use when resolving this object
+	 * @param callback a callback to notify once the reference is resolved, or null
+	 * @return a Future that holds the resolved object, or the original 
+	 *         reference if it could not be resolved.  
+	 */
+	public Future<Object> getObjectInstance(Object refInfo, Name name, Context context, 
+			                                Map environment, Attributes attributes, 
+			                                NamingCallback<Object> callback);
+	
+	/**
+	 * Returns an enumeration over the given bindings, in which the object of 
+	 * each Binding is resolved as by getObjectInstance().  
+	 * 
+	 * The bindings are read from the given enumeration on the calling thread.  
+	 * The objects of up to readAhead bindings are resolved in parallel, 
+	 * ahead of the caller.  The bindings are returned in their original 
+	 * order.  Closing the returned enumeration closes the given enumeration.  
+	 * 
+	 * @param bindings the bindings to resolve, usually obtained from 
+	 *        Context.listBindings()
+	 * @param context the JNDI context that the bindings belong to
+	 * @param environment the JNDI environment associated with this JNDI context
+	 * @param readAhead the maximum number of bindings to resolve ahead of 
+	 *        the caller, must be at least 1
+	 * @return a NamingEnumeration of the resolved Bindings
+	 */
+	public NamingEnumeration<Binding> resolveBindings(NamingEnumeration<Binding> bindings, Context context, 
+			                                          Map environment, int readAhead);
+}
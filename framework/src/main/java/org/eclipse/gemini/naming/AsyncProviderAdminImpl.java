@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.security.PrivilegedExceptionAction;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.directory.Attributes;
+
+/**
+ * Decorator for the CloseableProviderAdmin that adds the asynchronous 
+ * operations defined by the AsyncProviderAdmin interface.  
+ * 
+ * The asynchronous operations resolve references through the underlying 
+ * provider admin, so they keep the privileged semantics of the 
+ * SecurityAwareProviderAdminImpl.  
+ * 
+ * @version $Revision$
+ */
+class AsyncProviderAdminImpl implements CloseableProviderAdmin, AsyncProviderAdmin {
+
+	private final CloseableProviderAdmin m_closeableProviderAdmin;
+	
+	private final Executor m_executor;
+	
+	/* resolves bindings ahead of an enumeration, on the resolve-ahead Executor */
+	private final AsyncProviderAdmin m_resolveAheadProviderAdmin;
+	
+	AsyncProviderAdminImpl(CloseableProviderAdmin closeableProviderAdmin, Executor executor) {
+		this(closeableProviderAdmin, executor, executor);
+	}
+	
+	/**
+	 * @param closeableProviderAdmin the provider admin that resolves references
+	 * @param executor the Executor used for asynchronous operations
+	 * @param resolveAheadExecutor the Executor used to resolve bindings 
+	 *                             ahead of an enumeration
+	 */
+	AsyncProviderAdminImpl(CloseableProviderAdmin closeableProviderAdmin, Executor executor, Executor resolveAheadExecutor) {
+		m_closeableProviderAdmin = closeableProviderAdmin;
+		m_executor = executor;
+		m_resolveAheadProviderAdmin = (resolveAheadExecutor == executor) ? this 
+				                      : new AsyncProviderAdminImpl(closeableProviderAdmin, resolveAheadExecutor);
+	}
+	
+	
+	@Override
+	public Object getObjectInstance(Object refInfo, Name name, Context context, Map environment) throws Exception {
+		return m_closeableProviderAdmin.getObjectInstance(refInfo, name, context, environment);
+	}
+
+	@Override
+	public Object getObjectInstance(Object refInfo, Name name, Context context, Map environment, Attributes attributes) throws Exception {
+		return m_closeableProviderAdmin.getObjectInstance(refInfo, name, context, environment, attributes);
+	}
+
+	@Override
+	public Object[] getObjectInstances(Object[] refInfos, Name[] names, Context context, Map environment) throws Exception {
+		return m_closeableProviderAdmin.getObjectInstances(refInfos, names, context, environment);
+	}
+
+	@Override
+	public Object[] getObjectInstances(Object[] refInfos, Name[] names, Context context, Map environment, Attributes[] attributes) throws Exception {
+		return m_closeableProviderAdmin.getObjectInstances(refInfos, names, context, environment, attributes);
+	}
+	
+	@Override
+	public Future<Object> getObjectInstance(Object refInfo, Name name, Context context, Map environment, NamingCallback<Object> callback) {
+		PrivilegedExceptionAction action = 
+			new GetObjectInstanceAction(refInfo, name, context, environment);
+		return AsyncNamingTask.submit(m_executor, action, callback);
+	}
+
+	@Override
+	public Future<Object> getObjectInstance(Object refInfo, Name name, Context context, Map environment, Attributes attributes, NamingCallback<Object> callback) {
+		PrivilegedExceptionAction action = 
+			new GetObjectInstanceActionWithAttributes(refInfo, name, context, environment, attributes);
+		return AsyncNamingTask.submit(m_executor, action, callback);
+	}
+	
+	@Override
+	public NamingEnumeration<Binding> resolveBindings(NamingEnumeration<Binding> bindings, Context context, Map environment, int readAhead) {
+		return new ResolveAheadNamingEnumeration(bindings, m_resolveAheadProviderAdmin, context, environment, readAhead);
+	}
+	
+	@Override
+	public void close() {
+		m_closeableProviderAdmin.close();
+	}
+	
+	
+	private class GetObjectInstanceAction implements PrivilegedExceptionAction {
+		protected final Object m_refInfo;
+		protected final Name m_name;
+		protected final Context m_context;
+		protected final Map m_environment;
+		
+		GetObjectInstanceAction(Object refInfo, Name name, Context context, Map environment) {
+			m_refInfo = refInfo;
+			m_name = name;
+			m_context = context;
+			m_environment = environment;
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			return m_closeableProviderAdmin.getObjectInstance(m_refInfo, 
+					                                          m_name, 
+					                                          m_context, 
+					                                          m_environment);
+		}
+	}
+	
+	private class GetObjectInstanceActionWithAttributes extends GetObjectInstanceAction {
+		private final Attributes m_attributes;
+		
+		GetObjectInstanceActionWithAttributes(Object refInfo, Name name, Context context, Map environment, Attributes attributes) {
+			super(refInfo, name, context, environment);
+			m_attributes = attributes;
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			return m_closeableProviderAdmin.getObjectInstance(m_refInfo, 
+					                                          m_name, 
+					                                          m_context, 
+					                                          m_environment, 
+					                                          m_attributes);
+		}
+	}
+}
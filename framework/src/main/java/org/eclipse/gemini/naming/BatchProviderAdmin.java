@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.Map;
+
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.directory.Attributes;
+
+import org.osgi.service.jndi.JNDIProviderAdmin;
+
+/**
+ * Gemini Naming extension of the JNDIProviderAdmin service interface.  
+ * 
+ * This interface allows a context provider to resolve a whole page of 
+ * references in one call.  All references in a batch are resolved with 
+ * the same copy of the JNDI environment and against the same view of the 
+ * JNDI provider services, so the per-call overhead of the JNDIProviderAdmin 
+ * service is only paid once per batch.  
+ * 
+ * The JNDIProviderAdmin service published by Gemini Naming is also 
+ * registered under this interface.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+public interface BatchProviderAdmin extends JNDIProviderAdmin {
+
+	/**
+	 * Resolve the objects from the given references.
+	 * 
+	 * Each element is resolved in the same way as 
+	 * {@link JNDIProviderAdmin#getObjectInstance(Object, Name, Context, Map)}.
+	 * 
+	 * @param refInfos the Reference info for each object to resolve
+	 * @param names the JNDI name associated with each reference, in the same 
+	 *        order as refInfos. This array, or any element in it, may be null.  
+	 * @param context the JNDI context associated with these references
+	 * @param environment the JNDI environment associated with this JNDI context
+	 * @return an array holding the resolved Object for each reference, in the 
+	 *         order of refInfos.  An element holds the original reference
+	 *         object if that reference could not be resolved.  
+	 * @throws Exception in the event that an error occurs while attempting to
+	 *         resolve any of the JNDI references.
+	 */
+	public Object[] getObjectInstances(Object[] refInfos, Name[] names, Context context, 
+			                           Map environment) throws Exception;
+
+	/**
+	 * Resolve the objects from the given references.
+	 * 
+	 * Each element is resolved in the same way as 
+	 * {@link JNDIProviderAdmin#getObjectInstance(Object, Name, Context, Map, Attributes)}.
+	 * 
+	 * @param refInfos the Reference info for each object to resolve
+	 * @param names the JNDI name associated with each reference, in the same 
+	 *        order as refInfos. This array, or any element in it, may be null.  
+	 * @param context the JNDI context associated with these references
+	 * @param environment the JNDI environment associated with this JNDI context
+	 * @param attributes the naming attributes to use for each reference, in the 
+	 *        same order as refInfos.  This array, or any element in it, may be null.  
+	 * @return an array holding the resolved Object for each reference, in the 
+	 *         order of refInfos.  An element holds the original reference
+	 *         object if that reference could not be resolved.  
+	 * @throws Exception in the event that an error occurs while attempting to
+	 *         resolve any of the JNDI references.
+	 */
+	public Object[] getObjectInstances(Object[] refInfos, Name[] names, Context context, 
+			                           Map environment, Attributes[] attributes) throws Exception;
+}
@@ -16,10 +16,15 @@
 package org.eclipse.gemini.naming;
 
 import java.security.PrivilegedExceptionAction;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.BundleReference;
 import org.osgi.service.jndi.JNDIConstants;
@@ -46,6 +51,14 @@ class BuilderUtils {
 		  new ThreadContextStrategyImpl(), 
 		  new CallStackStrategyImpl() };
 	
+	/**
+	 * Cache of client ClassLoaders to the BundleContext of the bundle that 
+	 * owns the ClassLoader.  Entries are removed when the bundle stops, see 
+	 * {@link #clearCachedBundleContexts(Bundle)}.  
+	 */
+	private static final Map<ClassLoader, BundleContext> bundleContextCache = 
+		Collections.synchronizedMap(new WeakHashMap<ClassLoader, BundleContext>());
+	
 	
 	/**
 	 * This utility method implements the process for obtaining the 
@@ -87,6 +100,35 @@ class BuilderUtils {
 	
 	
 	
+	/**
+	 * Removes the cached BundleContext of the given bundle.  This method
+	 * must be called when a bundle stops, since its BundleContext is no 
+	 * longer valid once the bundle has stopped.  
+	 * 
+	 * @param bundle the Bundle that is stopping
+	 */
+	static void clearCachedBundleContexts(Bundle bundle) {
+		synchronized (bundleContextCache) {
+			Iterator<ClassLoader> iterator = bundleContextCache.keySet().iterator();
+			while (iterator.hasNext()) {
+				ClassLoader classLoader = iterator.next();
+				if ((classLoader instanceof BundleReference) 
+						&& (((BundleReference)classLoader).getBundle() == bundle)) {
+					iterator.remove();
+				}
+			}
+		}
+	}
+	
+	
+	/**
+	 * Removes all cached BundleContexts.  
+	 */
+	static void clearCachedBundleContexts() {
+		bundleContextCache.clear();
+	}
+	
+	
 	/**
 	 * Internal interface used to abstract the process of obtaining
 	 * the caller's BundleContext.  
@@ -136,14 +178,18 @@ class BuilderUtils {
 		public BundleContext getBundleContext(Hashtable environment, String namingClassType) {
 			ClassLoader threadContextClassloader = null;
 			try {
-				// this code must run in a doPrivileged() block
-				threadContextClassloader = (ClassLoader)SecurityUtils.invokePrivilegedAction(new PrivilegedExceptionAction() {
-						@Override
-						public Object run() throws Exception {
-							return Thread.currentThread().getContextClassLoader();
-						}
-						
-					});
+				if (!SecurityUtils.isSecurityEnabled()) {
+					threadContextClassloader = Thread.currentThread().getContextClassLoader();
+				} else {
+					// this code must run in a doPrivileged() block
+					threadContextClassloader = (ClassLoader)SecurityUtils.invokePrivilegedAction(new PrivilegedExceptionAction() {
+							@Override
+							public Object run() throws Exception {
+								return Thread.currentThread().getContextClassLoader();
+							}
+							
+						});
+				}
 			} catch (Exception e) {
 				logger.log(Level.FINE, "Exception occurred while trying to obtain the ThreadContextClassloader.", e);
 			}
@@ -166,17 +212,21 @@ class BuilderUtils {
 	 * 
 	 */
 	private static class CallStackStrategyImpl implements GetBundleContextStrategy {
+		
+		/* created once, since creating a SecurityManager requires a permission check */
+		private static CallStackSecurityManager callStackSecurityManager;
+		
 		@Override
-		public BundleContext getBundleContext(Hashtable environment, String namingClassType) {
-			Class[] callStack = null;
+		public BundleContext getBundleContext(Hashtable environment, final String namingClassType) {
 			try {
-				// creation of SecurityManager must take place in a doPrivileged() block,
-				// since JNDI clients should not have to include this permission in 
-				// order to use JNDI services.  
-				callStack = (Class[])SecurityUtils.invokePrivilegedAction(new PrivilegedExceptionAction() {
+				// the call stack and the client classloaders must be obtained in a 
+				// doPrivileged() block, since JNDI clients should not have to include 
+				// these permissions in order to use JNDI services.  
+				return (BundleContext)SecurityUtils.invokePrivilegedAction(new PrivilegedExceptionAction() {
 						@Override
 						public Object run() throws Exception {
-							return new CallStackSecurityManager().getClientCallStack();
+							return findBundleContext(getCallStackSecurityManager().getClientCallStack(), 
+									                 namingClassType);
 						}
 						
 					});
@@ -184,34 +234,39 @@ class BuilderUtils {
 				logger.log(Level.FINE, "Exception occurred while attempting to traverse client call stack to find caller's BundleContext.", 
 				           e);
 			}
-				
-				
-				
+
+			return null;
+		}
+		
+		
+		private static synchronized CallStackSecurityManager getCallStackSecurityManager() {
+			if (callStackSecurityManager == null) {
+				callStackSecurityManager = new CallStackSecurityManager();
+			}
+			return callStackSecurityManager;
+		}
+		
+		
+		private static BundleContext findBundleContext(Class[] callStack, String namingClassType) {
+			if (callStack == null) {
+				return null;
+			}
+			
+			// search for the outermost frame of the naming class, starting
+			// from the bottom of the stack so that the search can stop at
+			// the first match
 			int indexOfConstructor = -1;
-			for(int i = 0; callStack != null && i < callStack.length; i++) {
+			for(int i = callStack.length - 1; i >= 0; i--) {
 				if(callStack[i].getName().equals(namingClassType)) {
 					indexOfConstructor = i;
+					break;
 				}
 			}
 
 			// the next stack frame should include the caller of the InitialContext constructor
 			if (indexOfConstructor >= 0) {
 				for (int i = indexOfConstructor + 1; i < callStack.length; i++) {
-					final Class clientClass = callStack[i];
-					ClassLoader clientClassLoader = null;
-					try {
-						clientClassLoader =
-							(ClassLoader)SecurityUtils.invokePrivilegedAction(new PrivilegedExceptionAction() {
-								@Override
-								public Object run() throws Exception {
-									return clientClass.getClassLoader();
-								}
-							});
-					} catch (Exception e) {
-						logger.log(Level.FINE, "Exception occurred while trying to obtain the client classloader.",
-							e);
-					}
-
+					ClassLoader clientClassLoader = callStack[i].getClassLoader();
 					if(clientClassLoader instanceof BundleReference) {
 						return getBundleContextFromClassLoader(clientClassLoader);
 					}
@@ -241,9 +296,19 @@ class BuilderUtils {
 	 *         null if no BundleContext was associated with this ClassLoaer
 	 */
 	private static BundleContext getBundleContextFromClassLoader(ClassLoader classLoader) {
+		BundleContext bundleContext = bundleContextCache.get(classLoader);
+		if (bundleContext != null) {
+			return bundleContext;
+		}
+		
 		BundleReference bundleRef = (BundleReference) classLoader;
-		if (bundleRef.getBundle() != null) {
-		    return bundleRef.getBundle().getBundleContext();
+		Bundle bundle = bundleRef.getBundle();
+		if (bundle != null) {
+			bundleContext = bundle.getBundleContext();
+			if (bundleContext != null) {
+				bundleContextCache.put(classLoader, bundleContext);
+			}
+		    return bundleContext;
 		}
 		
 		return null;
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Per-bundle cache of a service obtained on behalf of "traditional" JNDI clients.  
+ * 
+ * Each client bundle obtains the service once, using its own BundleContext, 
+ * and keeps the handle until the bundle stops or the service is unregistered.  
+ * This avoids a service registry lookup on every call from legacy JNDI code.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+class ClientServiceCache {
+
+	private static final Logger logger = 
+		Logger.getLogger(ClientServiceCache.class.getName());
+	
+	private final String m_serviceInterface;
+	
+	/* map of client bundles to the service handle each bundle holds */
+	private final ConcurrentMap<Bundle, ServiceHandle> m_handles = 
+		new ConcurrentHashMap<Bundle, ServiceHandle>();
+	
+	
+	ClientServiceCache(String serviceInterface) {
+		m_serviceInterface = serviceInterface;
+	}
+	
+	
+	/**
+	 * Returns the service held for the client bundle, obtaining it from 
+	 * the service registry if the bundle does not hold a valid handle yet.  
+	 * 
+	 * @param clientBundleContext the client's BundleContext
+	 * @return the service, or null if the service is not available
+	 */
+	Object getService(BundleContext clientBundleContext) {
+		final Bundle clientBundle = clientBundleContext.getBundle();
+		ServiceHandle handle = m_handles.get(clientBundle);
+		if ((handle != null) && handle.isValid()) {
+			return handle.m_service;
+		}
+		
+		synchronized (this) {
+			handle = m_handles.get(clientBundle);
+			if ((handle != null) && handle.isValid()) {
+				return handle.m_service;
+			}
+			
+			if (handle != null) {
+				// the service was unregistered since the handle was obtained
+				m_handles.remove(clientBundle);
+				handle.release();
+			}
+			
+			ServiceReference serviceReference = 
+				clientBundleContext.getServiceReference(m_serviceInterface);
+			if (serviceReference == null) {
+				return null;
+			}
+			
+			Object service = clientBundleContext.getService(serviceReference);
+			if (service == null) {
+				return null;
+			}
+			
+			m_handles.put(clientBundle, 
+					      new ServiceHandle(clientBundleContext, serviceReference, service));
+			return service;
+		}
+	}
+	
+	
+	/**
+	 * Drops the handle held for the given bundle.  This method is called 
+	 * when the bundle stops, at which point the framework has already 
+	 * released the services used by the bundle.  
+	 * 
+	 * @param bundle the Bundle that is stopping
+	 */
+	void clear(Bundle bundle) {
+		m_handles.remove(bundle);
+	}
+	
+	
+	/**
+	 * Releases all the handles held by this cache.  
+	 */
+	void releaseAll() {
+		Iterator<ServiceHandle> iterator = m_handles.values().iterator();
+		while (iterator.hasNext()) {
+			ServiceHandle handle = iterator.next();
+			iterator.remove();
+			handle.release();
+		}
+	}
+	
+	
+	/**
+	 * A service obtained by a single client bundle.  
+	 */
+	private static class ServiceHandle {
+		private final BundleContext m_clientBundleContext;
+		private final ServiceReference m_serviceReference;
+		private final Object m_service;
+		
+		ServiceHandle(BundleContext clientBundleContext, ServiceReference serviceReference, Object service) {
+			m_clientBundleContext = clientBundleContext;
+			m_serviceReference = serviceReference;
+			m_service = service;
+		}
+		
+		boolean isValid() {
+			// a ServiceReference no longer has a Bundle once the service is unregistered
+			return m_serviceReference.getBundle() != null;
+		}
+		
+		void release() {
+			try {
+				m_clientBundleContext.ungetService(m_serviceReference);
+			} catch (IllegalStateException illegalStateException) {
+				// the client bundle has already stopped, its services are released
+				logger.log(Level.FINEST, 
+						   "Client BundleContext no longer valid while releasing a cached service", 
+						   illegalStateException);
+			}
+		}
+	}
+}
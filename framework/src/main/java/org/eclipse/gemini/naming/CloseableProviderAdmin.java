@@ -15,8 +15,6 @@
 
 package org.eclipse.gemini.naming;
 
-import org.osgi.service.jndi.JNDIProviderAdmin;
-
 /**
  * Closeable extension of the JNDIProviderAdmin interface, to be 
  * used internally by the Gemini Naming implementation.    
@@ -24,6 +22,6 @@ import org.osgi.service.jndi.JNDIProviderAdmin;
  * 
  * @version $Revision$
  */
-interface CloseableProviderAdmin extends JNDIProviderAdmin {
+interface CloseableProviderAdmin extends BatchProviderAdmin {
 	public void close();
 }
@@ -15,13 +15,11 @@
 
 package org.eclipse.gemini.naming;
 
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.concurrent.Executor;
 
 import javax.naming.Context;
 import javax.naming.NamingException;
@@ -34,27 +32,56 @@ import org.osgi.framework.BundleContext;
 
 class ContextManagerImpl implements CloseableContextManager {
 
-	private static final Logger logger = Logger.getLogger(ContextManagerImpl.class.getName());
-	
 	private final OSGiInitialContextFactoryBuilder	m_builder;
 	
 	/* list of Context implementations */
-	private final Map<Context, Object> m_listOfContexts =
-		Collections.synchronizedMap(new WeakHashMap<Context, Object>());
+	private final ContextTracker m_listOfContexts = new ContextTracker();
+	
+	/* closes the Contexts in parallel, null if they are closed by the calling thread */
+	private final Executor m_executor;
+	
+	/* time allowed for closing the Contexts, in milliseconds, or 0 for no limit */
+	private final long m_closeTimeout;
+	
+	/* idle Contexts reused by newInitialContext(), null if Contexts are not pooled */
+	private final ContextPool m_contextPool;
 
-	ContextManagerImpl(Bundle callingBundle, BundleContext implBundleContext) {
+	ContextManagerImpl(Bundle callingBundle, BundleContext implBundleContext, ProviderGuard providerGuard) {
+		this(callingBundle, implBundleContext, providerGuard, null, 0, null);
+	}
+	
+	/**
+	 * @param callingBundle the client bundle
+	 * @param implBundleContext the BundleContext of the Gemini Naming bundle
+	 * @param providerGuard the guard for calls on JNDI provider services
+	 * @param executor the Executor used to rebind Contexts whose factory 
+	 *                 service has gone away, and to close Contexts in 
+	 *                 parallel, or null to do both in the calling thread
+	 * @param closeTimeout the time allowed for closing the Contexts, 
+	 *                     in milliseconds, or 0 for no limit
+	 * @param contextPool the pool of idle Contexts returned by newInitialContext(), 
+	 *                    or null if Contexts are not pooled
+	 */
+	ContextManagerImpl(Bundle callingBundle, BundleContext implBundleContext, ProviderGuard providerGuard, Executor executor, long closeTimeout, ContextPool contextPool) {
 		// create a new builder for each client bundle
 		// since the JNDI services (factories) should be accessed
 		// by the JNDIContextManager service on behalf of the calling bundle
-		m_builder = new OSGiInitialContextFactoryBuilder(callingBundle.getBundleContext(), implBundleContext);
+		m_builder = new OSGiInitialContextFactoryBuilder(callingBundle.getBundleContext(), implBundleContext, providerGuard, executor);
+		m_executor = executor;
+		m_closeTimeout = closeTimeout;
+		m_contextPool = contextPool;
 	}
 
 
 	@Override
 	public Context newInitialContext() throws NamingException {
+		if (m_contextPool != null) {
+			return newPooledContext(new Hashtable());
+		}
+		
 		synchronized (m_builder) {
 			final Context initialContext = createNewInitialContext(new Hashtable());
-			m_listOfContexts.put(initialContext, null);
+			m_listOfContexts.add(initialContext);
 			return initialContext;
 		}
 	}
@@ -62,9 +89,13 @@ class ContextManagerImpl implements CloseableContextManager {
 	@Override
 	public Context newInitialContext(Map environment)
 			throws NamingException {
+		if (m_contextPool != null) {
+			return newPooledContext(environment);
+		}
+		
 		synchronized (m_builder) {
 			final Context initialContext = createNewInitialContext(environment);
-			m_listOfContexts.put(initialContext, null);
+			m_listOfContexts.add(initialContext);
 			return initialContext;
 		}
 	}
@@ -74,7 +105,7 @@ class ContextManagerImpl implements CloseableContextManager {
 		synchronized (m_builder) {
 			Context contextToReturn = createNewInitialContext(new Hashtable());
 			if (contextToReturn instanceof DirContext) {
-				m_listOfContexts.put(contextToReturn, null);
+				m_listOfContexts.add(contextToReturn);
 				return (DirContext) contextToReturn;
 			}
 		}
@@ -87,7 +118,7 @@ class ContextManagerImpl implements CloseableContextManager {
 		synchronized (m_builder) {
 			Context context = createNewInitialContext(environment);
 			if (context instanceof DirContext) {
-				m_listOfContexts.put(context, null);
+				m_listOfContexts.add(context);
 				return (DirContext) context;
 			}
 		}
@@ -101,25 +132,15 @@ class ContextManagerImpl implements CloseableContextManager {
 	 */
 	@Override
 	public void close() {
-		// close known Context implementations
-		synchronized (m_listOfContexts) {
-			Set<Context> iterator = m_listOfContexts.keySet();
-			if (iterator != null) {
-				// call close() on all known contexts
-				for (Context context : iterator) {
-					try {
-						context.close();
-					} catch (NamingException e) {
-						logger.log(
-								Level.INFO,
-								"NamingException occurred while trying to close an existing JNDI Context",
-								e);
-					}
-				}
-			}
-		}
+		// Contexts released by clients from now on are closed, not pooled
+		List<Context> idleContexts = 
+			(m_contextPool != null) ? m_contextPool.close() : new ArrayList<Context>(0);
 		
-		m_listOfContexts.clear();
+		// close known Context implementations, without holding up 
+		// the caller for longer than the close timeout
+		List<Context> contexts = m_listOfContexts.removeAll();
+		contexts.addAll(idleContexts);
+		ParallelCloser.closeContexts(contexts, m_executor, m_closeTimeout);
 		
 		synchronized (m_builder) {
 			// close the Builder implementation
@@ -127,6 +148,38 @@ class ContextManagerImpl implements CloseableContextManager {
 		}
 	}
 
+	/**
+	 * Returns a Context that is taken from the pool, or created if no idle 
+	 * Context matches the environment.  Closing the returned Context 
+	 * returns it to the pool.  
+	 * 
+	 * A DirContext, such as an LdapContext, is returned as created and is 
+	 * not pooled, since the pooled Context handed to the client only 
+	 * implements Context.  
+	 */
+	private Context newPooledContext(Map environment) throws NamingException {
+		// the copy is the pool key, so later changes made by the client do not alter it
+		final Hashtable poolKey = new Hashtable(environment);
+		List<Context> contextsToClose = new ArrayList<Context>(0);
+		Context context = m_contextPool.acquire(poolKey, contextsToClose);
+		ParallelCloser.closeContexts(contextsToClose, null, 0);
+		
+		if (context == null) {
+			synchronized (m_builder) {
+				context = createNewInitialContext(poolKey);
+			}
+			
+			if (context instanceof DirContext) {
+				m_listOfContexts.add(context);
+				return context;
+			}
+		}
+		
+		final Context pooledContext = new PooledContext(m_contextPool, poolKey, context);
+		m_listOfContexts.add(pooledContext);
+		return pooledContext;
+	}
+
 	private Context createNewInitialContext(final Map environment)
 			throws NamingException {
 		final Hashtable jndiEnvironment = new Hashtable(environment);
@@ -15,10 +15,23 @@
 
 package org.eclipse.gemini.naming;
 
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.Context;
 
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
@@ -28,25 +41,194 @@ import org.osgi.framework.ServiceRegistration;
 import org.osgi.framework.SynchronousBundleListener;
 
 class ContextManagerServiceFactoryImpl implements ServiceFactory {
+	
+	private static final Logger logger = Logger.getLogger(ContextManagerServiceFactoryImpl.class.getName());
+	
+	/* shortest period, in milliseconds, of the eviction of idle pooled Contexts */
+	private static final long MINIMUM_EVICTION_PERIOD = 1000;
 
 	// map of bundles to context managers (CloseableContextManager)
-	private Map m_mapOfManagers = 
-		Collections.synchronizedMap(new HashMap());
+	private final ConcurrentMap<Bundle, CloseableContextManager> m_mapOfManagers = 
+		new ConcurrentHashMap<Bundle, CloseableContextManager>();
+	
+	/* closes the context manager of a client bundle when the bundle stops */
+	private final SynchronousBundleListener m_bundleListener = 
+		new ContextManagerBundleListener();
+	
+	/* true once closeAll() has been called, context managers are no longer warmed up */
+	private volatile boolean m_isClosed = false;
 	
 	/* BundleContext for the Gemini Naming Implementation Bundle */
 	private final BundleContext m_implBundleContext;
 	
-	ContextManagerServiceFactoryImpl(BundleContext implBundleContext) {
+	/* Executor used for the asynchronous context manager operations */
+	private final Executor m_asyncExecutor;
+	
+	/* Executor used for rebinds, warm-ups, pool eviction and closing Contexts in parallel */
+	private final ScheduledExecutorService m_maintenanceExecutor;
+	
+	/* guard shared by all builders for calls on JNDI provider services */
+	private final ProviderGuard m_providerGuard;
+	
+	/* time allowed for closing the Contexts, in milliseconds, or 0 for no limit */
+	private final long m_closeTimeout;
+	
+	/* maximum number of idle pooled Contexts for each client bundle, 0 if Contexts are not pooled */
+	private final int m_contextPoolSize;
+	
+	/* time after which an idle pooled Context is closed, in milliseconds */
+	private final long m_contextPoolIdleTimeout;
+	
+	/* pools of the context managers, a closed pool is dropped by the next eviction */
+	private final Set<ContextPool> m_contextPools = 
+		Collections.newSetFromMap(new ConcurrentHashMap<ContextPool, Boolean>());
+	
+	/* periodic eviction of idle pooled Contexts, null if Contexts are not pooled */
+	private volatile ScheduledFuture<?> m_evictionTask;
+	
+	/**
+	 * @param implBundleContext the BundleContext of the Gemini Naming bundle
+	 * @param asyncExecutor the Executor used for asynchronous operations
+	 * @param maintenanceExecutor the Executor used for rebinding Contexts, 
+	 *                            warming up client bundles, evicting idle 
+	 *                            pooled Contexts and closing Contexts in 
+	 *                            parallel
+	 * @param providerGuard the guard for calls on JNDI provider services
+	 * @param closeTimeout the time allowed for closing the Contexts of all the 
+	 *                     context managers, in milliseconds, or 0 for no limit
+	 * @param contextPoolSize the maximum number of idle pooled Contexts for 
+	 *                        each client bundle, or 0 to disable pooling
+	 * @param contextPoolIdleTimeout the time, in milliseconds, after which 
+	 *                               an idle pooled Context is closed
+	 */
+	ContextManagerServiceFactoryImpl(BundleContext implBundleContext, Executor asyncExecutor, ScheduledExecutorService maintenanceExecutor, ProviderGuard providerGuard, long closeTimeout, int contextPoolSize, long contextPoolIdleTimeout) {
 		m_implBundleContext = implBundleContext;
+		m_asyncExecutor = asyncExecutor;
+		m_maintenanceExecutor = maintenanceExecutor;
+		m_providerGuard = providerGuard;
+		m_closeTimeout = closeTimeout;
+		m_contextPoolSize = contextPoolSize;
+		m_contextPoolIdleTimeout = contextPoolIdleTimeout;
+	}
+	
+	/**
+	 * Starts tracking client bundles.  A single listener, registered with the 
+	 * Gemini Naming bundle, closes the context manager of each client bundle 
+	 * that stops, and warms up the context manager of each client bundle 
+	 * that starts.  Bundles that are already active are warmed up as well.  
+	 * If Contexts are pooled, the eviction of idle Contexts is scheduled.  
+	 */
+	void open() {
+		if (m_contextPoolSize > 0) {
+			final long evictionPeriod = 
+				Math.max(m_contextPoolIdleTimeout / 2, MINIMUM_EVICTION_PERIOD);
+			m_evictionTask = 
+				m_maintenanceExecutor.scheduleWithFixedDelay(new EvictIdleContextsTask(), 
+						                                     evictionPeriod, evictionPeriod, 
+						                                     TimeUnit.MILLISECONDS);
+		}
+		
+		m_implBundleContext.addBundleListener(m_bundleListener);
+		
+		Bundle[] bundles = m_implBundleContext.getBundles();
+		if (bundles != null) {
+			for (Bundle bundle : bundles) {
+				if ((bundle.getState() & (Bundle.STARTING | Bundle.ACTIVE)) != 0) {
+					scheduleWarmUp(bundle);
+				}
+			}
+		}
 	}
 	
 	@Override
 	public Object getService(Bundle bundle, ServiceRegistration registration) {
-		CloseableContextManager contextManager = 
-			createContextManager(bundle, m_implBundleContext);
-		m_mapOfManagers.put(bundle, contextManager);
-		bundle.getBundleContext().addBundleListener(new ContextManagerBundleListener());
-		return contextManager;
+		// a context manager created by the warm-up of the bundle is reused
+		return getContextManager(bundle);
+	}
+	
+	private CloseableContextManager getContextManager(Bundle bundle) {
+		CloseableContextManager contextManager = m_mapOfManagers.get(bundle);
+		if (contextManager != null) {
+			return contextManager;
+		}
+		
+		ContextPool contextPool = null;
+		if (m_contextPoolSize > 0) {
+			contextPool = new ContextPool(m_contextPoolSize, m_contextPoolIdleTimeout);
+			m_contextPools.add(contextPool);
+		}
+		
+		CloseableContextManager newContextManager = 
+			createContextManager(bundle, m_implBundleContext, m_asyncExecutor, m_maintenanceExecutor, m_providerGuard, m_closeTimeout, contextPool);
+		contextManager = m_mapOfManagers.putIfAbsent(bundle, newContextManager);
+		if (contextManager != null) {
+			newContextManager.close();
+			return contextManager;
+		}
+		
+		return newContextManager;
+	}
+	
+	/**
+	 * Warms up the context manager of a client bundle on the executor, if 
+	 * the bundle lists JNDI paths in the warm-up manifest header.  
+	 * 
+	 * @param bundle a bundle that is starting or active
+	 */
+	private void scheduleWarmUp(final Bundle bundle) {
+		final Object headerValue = getWarmUpHeader(bundle);
+		if (headerValue == null) {
+			return;
+		}
+		
+		final List<String> entries = WarmUpTask.parseHeader(headerValue.toString());
+		if (entries.isEmpty()) {
+			return;
+		}
+		
+		try {
+			m_maintenanceExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (m_isClosed) {
+						return;
+					}
+					
+					CloseableContextManager contextManager = getContextManager(bundle);
+					if (m_isClosed || ((bundle.getState() & (Bundle.STARTING | Bundle.ACTIVE)) == 0)) {
+						// the bundle stopped before its context manager was tracked
+						closeContextManager(bundle);
+						return;
+					}
+					
+					new WarmUpTask(contextManager, entries).run();
+				}
+			});
+		} catch (RejectedExecutionException rejectedExecutionException) {
+			// Gemini Naming is shutting down
+			logger.log(Level.FINE, 
+					   "Warm-up of a client bundle was rejected", 
+					   rejectedExecutionException);
+		}
+	}
+	
+	
+	private static Object getWarmUpHeader(final Bundle bundle) {
+		try {
+			// the raw headers are read in a doPrivileged() block, since the 
+			// event may be delivered on a thread without AdminPermission
+			return SecurityUtils.invokePrivilegedAction(new PrivilegedExceptionAction() {
+				@Override
+				public Object run() throws Exception {
+					return bundle.getHeaders("").get(GeminiNamingConstants.WARM_UP_HEADER);
+				}
+			});
+		} catch (Exception exception) {
+			logger.log(Level.FINE, 
+					   "Exception occurred while reading the warm-up header of a client bundle", 
+					   exception);
+			return null;
+		}
 	}
 
 	
@@ -56,26 +238,55 @@ class ContextManagerServiceFactoryImpl implements ServiceFactory {
 		closeContextManager(bundle);
 	}
 	
+	/**
+	 * Closes all the context managers in parallel.  This method returns once 
+	 * the managers are closed, or once the close timeout has passed.  
+	 */
 	protected void closeAll() {
-		synchronized(m_mapOfManagers) {
-			Iterator iterator = m_mapOfManagers.entrySet().iterator();
-			while(iterator.hasNext()) {
-				Map.Entry currentMapEntry = (Map.Entry) iterator.next();
-				Object currentMapEntryValue = currentMapEntry.getValue();
-				if (currentMapEntryValue != null){
-					((CloseableContextManager)currentMapEntryValue).close();
-					iterator.remove();
-				}
+		m_isClosed = true;
+		m_implBundleContext.removeBundleListener(m_bundleListener);
+		
+		final ScheduledFuture<?> evictionTask = m_evictionTask;
+		if (evictionTask != null) {
+			evictionTask.cancel(false);
+		}
+		
+		List<CloseableContextManager> contextManagers = new ArrayList<CloseableContextManager>();
+		for (Bundle bundle : m_mapOfManagers.keySet()) {
+			CloseableContextManager contextManager = m_mapOfManagers.remove(bundle);
+			if (contextManager != null) {
+				contextManagers.add(contextManager);
 			}
 		}
+		
+		ParallelCloser.closeContextManagers(contextManagers, m_maintenanceExecutor, m_closeTimeout);
 	}
 
 	private void closeContextManager(Bundle bundle) {
-		CloseableContextManager contextManager = 
-			(CloseableContextManager)m_mapOfManagers.get(bundle);
+		// only the caller that removes the manager closes it
+		CloseableContextManager contextManager = m_mapOfManagers.remove(bundle);
 		if(contextManager != null) {
 			contextManager.close();
-			m_mapOfManagers.remove(bundle);
+		}
+	}
+	
+	
+	/**
+	 * Closes the idle pooled Contexts that have timed out, outside of the 
+	 * pool locks, and drops the pools of closed context managers.  
+	 */
+	private class EvictIdleContextsTask implements Runnable {
+		@Override
+		public void run() {
+			Iterator<ContextPool> iterator = m_contextPools.iterator();
+			while (iterator.hasNext()) {
+				List<Context> contextsToClose = iterator.next().evictIdleContexts();
+				if (contextsToClose == null) {
+					iterator.remove();
+				} else {
+					ParallelCloser.closeContexts(contextsToClose, null, 0);
+				}
+			}
 		}
 	}
 	
@@ -83,10 +294,11 @@ class ContextManagerServiceFactoryImpl implements ServiceFactory {
 	private class ContextManagerBundleListener implements SynchronousBundleListener {
 		@Override
 		public void bundleChanged(BundleEvent event) {
+			// events of bundles that are not clients only cost a map lookup
 			if(event.getType() == BundleEvent.STOPPED) {
-				if(m_mapOfManagers.containsKey(event.getBundle())) {
-					closeContextManager(event.getBundle());
-				}
+				closeContextManager(event.getBundle());
+			} else if(event.getType() == BundleEvent.STARTING) {
+				scheduleWarmUp(event.getBundle());
 			}
 		}
 		
@@ -97,10 +309,26 @@ class ContextManagerServiceFactoryImpl implements ServiceFactory {
 	 * Convenience factory method for creating a CloseableContextManager
 	 * instance.  
 	 * @param bundle the Bundle associated with this context manager
+	 * @param implBundleContext the BundleContext of the Gemini Naming bundle
+	 * @param asyncExecutor the Executor used for asynchronous operations
+	 * @param maintenanceExecutor the Executor used for rebinding Contexts 
+	 *                            whose factory service has gone away, and 
+	 *                            for closing Contexts in parallel
+	 * @param providerGuard the guard for calls on JNDI provider services
+	 * @param closeTimeout the time allowed for closing the Contexts of the 
+	 *                     context manager, in milliseconds, or 0 for no limit
+	 * @param contextPool the pool of idle Contexts of the context manager, 
+	 *                    or null if Contexts are not pooled
 	 * @return a CloseableContextManager that will handle requests for 
 	 *         the given Bundle.  
 	 */
-	private static CloseableContextManager createContextManager(Bundle bundle, BundleContext implBundleContext) {
-		return new SecurityAwareContextManagerImpl(new ContextManagerImpl(bundle, implBundleContext));
+	private static CloseableContextManager createContextManager(Bundle bundle, BundleContext implBundleContext, Executor asyncExecutor, Executor maintenanceExecutor, ProviderGuard providerGuard, long closeTimeout, ContextPool contextPool) {
+		CloseableContextManager contextManager = 
+			new ContextManagerImpl(bundle, implBundleContext, providerGuard, maintenanceExecutor, closeTimeout, contextPool);
+		if (SecurityUtils.isSecurityEnabled()) {
+			// without a SecurityManager the doPrivileged() blocks have no effect
+			contextManager = new SecurityAwareContextManagerImpl(contextManager);
+		}
+		return new AsyncContextManagerImpl(contextManager, asyncExecutor);
 	}
 }
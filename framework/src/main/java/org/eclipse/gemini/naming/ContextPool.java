@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import javax.naming.Context;
+
+/**
+ * A pool of idle Contexts for one client bundle, keyed by the environment 
+ * the Contexts were created with.  
+ * 
+ * Only service-aware Contexts are pooled, so that a Context is dropped 
+ * from the pool once the provider service that created it goes away.  
+ * The pool holds at most a fixed number of idle Contexts, and drops the 
+ * Contexts that have been idle for longer than the idle timeout, both 
+ * when the pool is used and when {@link #evictIdleContexts()} is called 
+ * by the periodic eviction task.  
+ * 
+ * Contexts dropped from the pool are returned to the caller, which closes 
+ * them outside of the pool lock.  
+ * 
+ * @version $Revision$
+ */
+class ContextPool {
+	
+	/* map of environments to idle Contexts, most recently released last */
+	private final Map<Hashtable<?, ?>, LinkedList<IdleContext>> m_idleContexts = 
+		new HashMap<Hashtable<?, ?>, LinkedList<IdleContext>>();
+	
+	private final int m_maxIdleContexts;
+	private final long m_idleTimeoutNanos;
+	
+	/* guarded by this */
+	private int m_numberOfIdleContexts = 0;
+	private boolean m_isClosed = false;
+	
+	
+	/**
+	 * @param maxIdleContexts the maximum number of idle Contexts
+	 * @param idleTimeout the time, in milliseconds, after which an idle 
+	 *                    Context is dropped
+	 */
+	ContextPool(int maxIdleContexts, long idleTimeout) {
+		m_maxIdleContexts = maxIdleContexts;
+		m_idleTimeoutNanos = idleTimeout * 1000000L;
+	}
+	
+	
+	/**
+	 * Takes an idle Context for the given environment from the pool.  
+	 * 
+	 * @param environment the environment of the requested Context
+	 * @param contextsToClose receives the Contexts dropped from the pool
+	 * @return an idle Context, or null if none is available
+	 */
+	synchronized Context acquire(Hashtable<?, ?> environment, List<Context> contextsToClose) {
+		evictIdleContexts(contextsToClose);
+		
+		final LinkedList<IdleContext> idleContexts = m_idleContexts.get(environment);
+		while ((idleContexts != null) && !idleContexts.isEmpty()) {
+			final ServiceAwareContext context = idleContexts.removeLast().m_context;
+			m_numberOfIdleContexts--;
+			if (context.isOriginalFactoryServiceActive()) {
+				return context;
+			}
+			// the provider service went away while the Context was idle
+			contextsToClose.add(context);
+		}
+		
+		return null;
+	}
+	
+	
+	/**
+	 * Returns a Context to the pool.  
+	 * 
+	 * @param environment the environment the Context was created with
+	 * @param context the Context to return
+	 * @param contextsToClose receives the Contexts dropped from the pool, 
+	 *                        including the given Context if it is not pooled
+	 */
+	synchronized void release(Hashtable<?, ?> environment, Context context, List<Context> contextsToClose) {
+		evictIdleContexts(contextsToClose);
+		
+		if (m_isClosed || (m_maxIdleContexts <= 0) || !isPoolable(context)) {
+			contextsToClose.add(context);
+			return;
+		}
+		
+		if (m_numberOfIdleContexts >= m_maxIdleContexts) {
+			// make room by dropping the Context that has been idle longest
+			IdleContext oldestContext = null;
+			for (LinkedList<IdleContext> idleContexts : m_idleContexts.values()) {
+				if (!idleContexts.isEmpty() && ((oldestContext == null) || 
+						(idleContexts.getFirst().m_releaseTime - oldestContext.m_releaseTime < 0))) {
+					oldestContext = idleContexts.getFirst();
+				}
+			}
+			m_idleContexts.get(oldestContext.m_environment).removeFirst();
+			m_numberOfIdleContexts--;
+			contextsToClose.add(oldestContext.m_context);
+		}
+		
+		LinkedList<IdleContext> idleContexts = m_idleContexts.get(environment);
+		if (idleContexts == null) {
+			idleContexts = new LinkedList<IdleContext>();
+			m_idleContexts.put(environment, idleContexts);
+		}
+		idleContexts.addLast(new IdleContext(environment, (ServiceAwareContext)context));
+		m_numberOfIdleContexts++;
+	}
+	
+	
+	/**
+	 * Closes this pool.  Contexts released after this call are not pooled.  
+	 * 
+	 * @return the idle Contexts, which the caller must close
+	 */
+	synchronized List<Context> close() {
+		m_isClosed = true;
+		List<Context> contextsToClose = new ArrayList<Context>(m_numberOfIdleContexts);
+		for (LinkedList<IdleContext> idleContexts : m_idleContexts.values()) {
+			for (IdleContext idleContext : idleContexts) {
+				contextsToClose.add(idleContext.m_context);
+			}
+		}
+		m_idleContexts.clear();
+		m_numberOfIdleContexts = 0;
+		return contextsToClose;
+	}
+	
+	
+	/**
+	 * Drops the Contexts that have been idle for longer than the idle 
+	 * timeout, so that they are closed even if the client bundle no longer
+	 * uses this pool.  
+	 * 
+	 * @return the dropped Contexts, which the caller must close, or null 
+	 *         if this pool has been closed
+	 */
+	synchronized List<Context> evictIdleContexts() {
+		if (m_isClosed) {
+			return null;
+		}
+		
+		List<Context> contextsToClose = new ArrayList<Context>(0);
+		evictIdleContexts(contextsToClose);
+		return contextsToClose;
+	}
+	
+	
+	private static boolean isPoolable(Context context) {
+		return (context instanceof ServiceAwareContext) && 
+			   ((ServiceAwareContext)context).isOriginalFactoryServiceActive();
+	}
+	
+	
+	private void evictIdleContexts(List<Context> contextsToClose) {
+		final long now = System.nanoTime();
+		Iterator<LinkedList<IdleContext>> iterator = m_idleContexts.values().iterator();
+		while (iterator.hasNext()) {
+			LinkedList<IdleContext> idleContexts = iterator.next();
+			// the oldest Contexts are at the front of each list
+			while (!idleContexts.isEmpty() && 
+					(now - idleContexts.getFirst().m_releaseTime >= m_idleTimeoutNanos)) {
+				contextsToClose.add(idleContexts.removeFirst().m_context);
+				m_numberOfIdleContexts--;
+			}
+			if (idleContexts.isEmpty()) {
+				iterator.remove();
+			}
+		}
+	}
+	
+	
+	private static class IdleContext {
+		private final Hashtable<?, ?> m_environment;
+		private final ServiceAwareContext m_context;
+		private final long m_releaseTime = System.nanoTime();
+		
+		IdleContext(Hashtable<?, ?> environment, ServiceAwareContext context) {
+			m_environment = environment;
+			m_context = context;
+		}
+	}
+}
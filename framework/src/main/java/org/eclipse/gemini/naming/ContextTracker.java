@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.naming.Context;
+
+/**
+ * A set of Contexts that are held weakly, and that can be added and 
+ * removed without locking.  
+ * 
+ * The references of collected Contexts are enqueued on a ReferenceQueue 
+ * and removed when new Contexts are added, so that no caller has to scan 
+ * the whole set.  
+ * 
+ * @version $Revision$
+ */
+class ContextTracker {
+	
+	private final Set<Reference<Context>> m_contexts = 
+		Collections.newSetFromMap(new ConcurrentHashMap<Reference<Context>, Boolean>());
+	
+	/* receives the references of Contexts that have been collected */
+	private final ReferenceQueue<Context> m_collectedContexts = 
+		new ReferenceQueue<Context>();
+	
+	
+	/**
+	 * Adds a Context to this tracker.  
+	 * 
+	 * @param context the Context to track
+	 */
+	void add(Context context) {
+		removeCollectedContexts();
+		m_contexts.add(new WeakReference<Context>(context, m_collectedContexts));
+	}
+	
+	
+	/**
+	 * Removes all the Contexts from this tracker.  A Context that is added 
+	 * concurrently is either returned, or remains in this tracker.  
+	 * 
+	 * @return the Contexts that have not been collected, which may be empty
+	 */
+	List<Context> removeAll() {
+		List<Context> liveContexts = new ArrayList<Context>(m_contexts.size());
+		for (Reference<Context> reference : m_contexts) {
+			if (m_contexts.remove(reference)) {
+				Context context = reference.get();
+				if (context != null) {
+					liveContexts.add(context);
+				}
+			}
+		}
+		
+		return liveContexts;
+	}
+	
+	
+	private void removeCollectedContexts() {
+		Reference<? extends Context> reference;
+		while ((reference = m_collectedContexts.poll()) != null) {
+			m_contexts.remove(reference);
+		}
+	}
+}
@@ -19,7 +19,11 @@ import javax.naming.*;
 import javax.naming.spi.ObjectFactory;
 
 import java.security.PrivilegedExceptionAction;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,9 +36,20 @@ class ContextWrapperImpl implements Context {
 
 	private static Logger logger = Logger.getLogger(ContextWrapperImpl.class.getName());
 	
+	/* upper bound on the number of URL schemes remembered by getScheme() */
+	private static final int MAX_KNOWN_SCHEMES = 32;
+	
+	/* URL schemes seen so far, copied on write and read without locking */
+	private static final AtomicReference<String[]> knownSchemes = 
+		new AtomicReference<String[]>(new String[0]);
+	
 	private final Context			m_context;
 	private final FactoryManager	m_factoryManager;
 	
+	/* DirectService handles looked up with this Context, released when it is closed */
+	private final Set<DirectServiceImpl> m_directServices = 
+		Collections.newSetFromMap(new ConcurrentHashMap<DirectServiceImpl, Boolean>());
+	
 	public ContextWrapperImpl(Context context, FactoryManager factoryManager) {
 		m_context = context;
 		m_factoryManager = factoryManager;
@@ -43,17 +58,17 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public Object lookup(Name name) throws NamingException {
-		return getURLContextOrDefaultContext(name.toString()).lookup(name);
+		return trackDirectService(getURLContextOrDefaultContext(name).lookup(name));
 	}
 
 	@Override
 	public Object lookup(String name) throws NamingException {
-		return getURLContextOrDefaultContext(name).lookup(name);
+		return trackDirectService(getURLContextOrDefaultContext(name).lookup(name));
 	}
 
 	@Override
 	public void bind(Name name, Object obj) throws NamingException {
-		getURLContextOrDefaultContext(name.toString()).bind(name, obj);
+		getURLContextOrDefaultContext(name).bind(name, obj);
 	}
 
 	@Override
@@ -63,7 +78,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public void rebind(Name name, Object obj) throws NamingException {
-		getURLContextOrDefaultContext(name.toString()).rebind(name, obj);
+		getURLContextOrDefaultContext(name).rebind(name, obj);
 	}
 
 	@Override
@@ -73,7 +88,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public void unbind(Name name) throws NamingException {
-		getURLContextOrDefaultContext(name.toString()).unbind(name);
+		getURLContextOrDefaultContext(name).unbind(name);
 	}
 
 	@Override
@@ -83,7 +98,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public void rename(Name oldName, Name newName) throws NamingException {
-		getURLContextOrDefaultContext(oldName.toString()).rename(oldName, newName);
+		getURLContextOrDefaultContext(oldName).rename(oldName, newName);
 	}
 
 	@Override
@@ -93,7 +108,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public NamingEnumeration list(Name name) throws NamingException {
-		return getURLContextOrDefaultContext(name.toString()).list(name);
+		return getURLContextOrDefaultContext(name).list(name);
 	}
 
 	@Override
@@ -103,7 +118,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public NamingEnumeration listBindings(Name name) throws NamingException {
-		return getURLContextOrDefaultContext(name.toString()).listBindings(name);
+		return getURLContextOrDefaultContext(name).listBindings(name);
 	}
 
 	@Override
@@ -113,7 +128,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public void destroySubcontext(Name name) throws NamingException {
-		getURLContextOrDefaultContext(name.toString()).destroySubcontext(name);
+		getURLContextOrDefaultContext(name).destroySubcontext(name);
 	}
 
 	@Override
@@ -123,7 +138,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public Context createSubcontext(Name name) throws NamingException {
-		return getURLContextOrDefaultContext(name.toString()).createSubcontext(name);
+		return getURLContextOrDefaultContext(name).createSubcontext(name);
 	}
 
 	@Override
@@ -133,7 +148,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public Object lookupLink(Name name) throws NamingException {
-		return getURLContextOrDefaultContext(name.toString()).lookupLink(name);
+		return getURLContextOrDefaultContext(name).lookupLink(name);
 	}
 
 	@Override
@@ -143,7 +158,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public NameParser getNameParser(Name name) throws NamingException {
-		return getURLContextOrDefaultContext(name.toString()).getNameParser(name);
+		return getURLContextOrDefaultContext(name).getNameParser(name);
 	}
 
 	@Override
@@ -153,7 +168,7 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public Name composeName(Name name, Name prefix) throws NamingException {
-		return getURLContextOrDefaultContext(name.toString()).composeName(name, prefix);
+		return getURLContextOrDefaultContext(name).composeName(name, prefix);
 	}
 
 	@Override
@@ -180,7 +195,12 @@ class ContextWrapperImpl implements Context {
 
 	@Override
 	public void close() throws NamingException {
-		m_context.close();
+		try {
+			m_context.close();
+		}
+		finally {
+			DirectServiceImpl.releaseAll(m_directServices);
+		}
 	}
 
 	@Override
@@ -188,91 +208,166 @@ class ContextWrapperImpl implements Context {
 		return m_context.getNameInNamespace();
 	}
 
-	private static boolean isURLRequest(String name) {
-		int indexOfColon = name.indexOf(":");
-		return (indexOfColon != -1);
+	private Object trackDirectService(Object result) {
+		if (result instanceof DirectServiceImpl) {
+			((DirectServiceImpl)result).addOwner(m_directServices);
+		}
+		
+		return result;
+	}
+
+	/**
+	 * Returns the URL scheme of a Name, which is the scheme of its first 
+	 * component.  The Name is not converted to a String, so a Name without 
+	 * a scheme is passed to the default context without any allocation.  
+	 * 
+	 * @param name the Name of the operation
+	 * @return the URL scheme, or null if the Name is not a URL
+	 */
+	private static String getScheme(Name name) {
+		if (name.isEmpty()) {
+			return null;
+		}
+		
+		return getScheme(name.get(0));
 	}
 
 	private static String getScheme(String name) {
-		int indexOfColon = name.indexOf(":");
+		int indexOfColon = name.indexOf(':');
 		if (indexOfColon != -1) {
-			return name.substring(0, indexOfColon);
+			return internScheme(name, indexOfColon);
 		}
 
 		return null;
 	}
+	
+	/**
+	 * Returns the remembered instance of the scheme that prefixes the given 
+	 * name, so that lookups with a known scheme do not create a substring.  
+	 * 
+	 * @param name the name that starts with a URL scheme
+	 * @param length the length of the scheme
+	 * @return the scheme
+	 */
+	private static String internScheme(String name, int length) {
+		String[] schemes = knownSchemes.get();
+		for (String scheme : schemes) {
+			if ((scheme.length() == length) && name.startsWith(scheme)) {
+				return scheme;
+			}
+		}
+		
+		final String scheme = name.substring(0, length);
+		if (schemes.length < MAX_KNOWN_SCHEMES) {
+			String[] newSchemes = new String[schemes.length + 1];
+			System.arraycopy(schemes, 0, newSchemes, 0, schemes.length);
+			newSchemes[schemes.length] = scheme;
+			// a lost update only means that the scheme is remembered later
+			knownSchemes.compareAndSet(schemes, newSchemes);
+		}
+		
+		return scheme;
+	}
+
+	private Context getURLContextOrDefaultContext(Name name)
+			throws NameNotFoundException, NamingException {
+		final String scheme = getScheme(name);
+		if (scheme == null) {
+			// treat this lookup as a normal lookup
+			return m_context;
+		}
+		
+		return getURLContext(scheme, name);
+	}
 
 	private Context getURLContextOrDefaultContext(String name)
 			throws NameNotFoundException, NamingException {
-		if (isURLRequest(name)) {
-			// attempt to find a URL Context Factory to satisfy this request
-			ObjectFactory objectFactory = null;
-			try {
-				// obtain URL Context Factory in a doPrivilieged() block
-				objectFactory = (ObjectFactory)SecurityUtils.invokePrivilegedAction(new GetObjectFactoryAction(m_factoryManager, name));
-			} catch (Exception e) {
-				logger.log(Level.FINE, 
-						   "Exception occurred while trying to obtain a reference to a URL Context Factory.",
-						   e);
-			}
-			
-			if (objectFactory == null) {
-				throw new NameNotFoundException(
-						"Name: "
-								+ name
-								+ " was not found.  A URL Context Factory was not registered to handle "
-								+ "this URL scheme");
+		final String scheme = getScheme(name);
+		if (scheme == null) {
+			// treat this lookup as a normal lookup
+			return m_context;
+		}
+		
+		return getURLContext(scheme, name);
+	}
+	
+	/**
+	 * Obtains a URL Context for the given scheme.  
+	 * 
+	 * @param scheme the URL scheme of the name
+	 * @param name the name of the operation, only used for error messages
+	 * @return the URL Context
+	 * @throws NamingException if no URL Context Factory can handle the scheme
+	 */
+	private Context getURLContext(String scheme, Object name)
+			throws NameNotFoundException, NamingException {
+		// attempt to find a URL Context Factory to satisfy this request
+		ObjectFactory objectFactory = null;
+		try {
+			// obtain URL Context Factory in a doPrivilieged() block
+			if (SecurityUtils.isSecurityEnabled()) {
+				objectFactory = (ObjectFactory)SecurityUtils.invokePrivilegedAction(new GetObjectFactoryAction(m_factoryManager, scheme));
+			} else {
+				objectFactory = GetObjectFactoryAction.obtainObjectFactory(m_factoryManager, scheme);
 			}
+		} catch (Exception e) {
+			logger.log(Level.FINE, 
+					   "Exception occurred while trying to obtain a reference to a URL Context Factory.",
+					   e);
+		}
+		
+		if (objectFactory == null) {
+			throw new NameNotFoundException(
+					"Name: "
+							+ name
+							+ " was not found.  A URL Context Factory was not registered to handle "
+							+ "this URL scheme");
+		}
 
-			try {
-				Context context = 
-					(Context) objectFactory.getObjectInstance(null, null, 
-															  null, m_context.getEnvironment());
-				if (context != null) {
-					return context;
-				}
-				else {
-					throw new NamingException("Name = " + name
-							+ "was not found using the URL Context factory = " + objectFactory);
-				}
+		try {
+			Context context = 
+				(Context) objectFactory.getObjectInstance(null, null, 
+														  null, m_context.getEnvironment());
+			if (context != null) {
+				return context;
 			}
-			catch (Exception e) {
-				if (e instanceof NamingException) {
-					// re-throw naming exceptions
-					throw (NamingException) e;
-				}
-
-				NamingException namingException = 
-					new NameNotFoundException("Exception occurred during URL Context Factory Resolution for name = "
-								              + name);
-				namingException.initCause(e);
-				throw namingException;
+			else {
+				throw new NamingException("Name = " + name
+						+ "was not found using the URL Context factory = " + objectFactory);
 			}
 		}
-		else {
-			// treat this lookup as a normal lookup
-			return m_context;
+		catch (Exception e) {
+			if (e instanceof NamingException) {
+				// re-throw naming exceptions
+				throw (NamingException) e;
+			}
+
+			NamingException namingException = 
+				new NameNotFoundException("Exception occurred during URL Context Factory Resolution for name = "
+							              + name);
+			namingException.initCause(e);
+			throw namingException;
 		}
 	}
 	
 	private static class GetObjectFactoryAction implements PrivilegedExceptionAction {
 		private final FactoryManager m_factoryManager;
-		private final String m_name;
+		private final String m_scheme;
 		
-		GetObjectFactoryAction(FactoryManager factoryManager, String name) {
+		GetObjectFactoryAction(FactoryManager factoryManager, String scheme) {
 			m_factoryManager = factoryManager;
-			m_name = name;
+			m_scheme = scheme;
 		}
 
 		@Override
 		public Object run() throws Exception {
-			return obtainObjectFactory(m_name);
+			return obtainObjectFactory(m_factoryManager, m_scheme);
 		}
 		
-		private ObjectFactory obtainObjectFactory(String name) {
+		static ObjectFactory obtainObjectFactory(FactoryManager factoryManager, String scheme) {
 			ObjectFactory objectFactory;
-			synchronized (m_factoryManager) {
-				objectFactory = m_factoryManager.getURLContextFactory(getScheme(name));
+			synchronized (factoryManager) {
+				objectFactory = factoryManager.getURLContextFactory(scheme);
 			}
 			return objectFactory;
 		}
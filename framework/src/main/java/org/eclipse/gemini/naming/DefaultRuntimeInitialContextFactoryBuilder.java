@@ -15,7 +15,10 @@
 
 package org.eclipse.gemini.naming;
 
+import java.lang.reflect.Constructor;
 import java.util.Hashtable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -32,6 +35,11 @@ import javax.naming.spi.InitialContextFactoryBuilder;
  * This Builder interface must be registered as a service by the JNDI
  * implementation.
  * 
+ * The outcome of loading each factory class is cached, so that the class 
+ * loader is only asked once for each factory name.  Factories provided by 
+ * the JRE are stateless, and a single instance of each is shared.  Other 
+ * factories are created for each request with their cached constructor.  
+ * 
  * @version $Revision$
  */
 class DefaultRuntimeInitialContextFactoryBuilder implements
@@ -39,6 +47,16 @@ class DefaultRuntimeInitialContextFactoryBuilder implements
 
 	private static final Logger	logger	= 
 		Logger.getLogger(DefaultRuntimeInitialContextFactoryBuilder.class.getName());
+	
+	/* upper bound on the number of factory names remembered by this builder */
+	private static final int MAX_CACHED_FACTORIES = 256;
+	
+	/* marks a factory name that could not be loaded as an InitialContextFactory */
+	private static final FactoryEntry NOT_LOADABLE = new FactoryEntry(null, null);
+	
+	/* map of factory class names to the outcome of loading them */
+	private final ConcurrentMap<String, FactoryEntry> m_factoryEntries = 
+		new ConcurrentHashMap<String, FactoryEntry>();
 
 	@Override
 	public InitialContextFactory createInitialContextFactory(Hashtable environment) throws NamingException {
@@ -46,21 +64,125 @@ class DefaultRuntimeInitialContextFactoryBuilder implements
 				(environment.get(Context.INITIAL_CONTEXT_FACTORY) != null)) {
 			final String initialContextFactoryName = 
 				(String) environment.get(Context.INITIAL_CONTEXT_FACTORY);
-
-			// attempt to load this provider from the system classpath
+			
+			final FactoryEntry factoryEntry = m_factoryEntries.get(initialContextFactoryName);
+			if (factoryEntry == null) {
+				return loadFactory(initialContextFactoryName);
+			}
+			
+			if (factoryEntry == NOT_LOADABLE) {
+				return null;
+			}
+			
+			if (factoryEntry.m_sharedFactory != null) {
+				return factoryEntry.m_sharedFactory;
+			}
+			
 			try {
-				Class clazz = 
-					getClass().getClassLoader().loadClass(initialContextFactoryName);
-				return (InitialContextFactory) clazz.newInstance();
+				return factoryEntry.m_constructor.newInstance();
 			}
 			catch (Exception e) {
 				logger.log(Level.FINEST,
-							 "Error while trying to load system-level JNDI provider",
+							 "Error while trying to create system-level JNDI provider",
 							 e);
 			}
 		}
 
 		return null;
 	}
+	
+	
+	/**
+	 * Loads a factory class for the first time, and caches the outcome.  
+	 * 
+	 * @param initialContextFactoryName the name of the factory class
+	 * @return a new factory, or null if the factory could not be loaded
+	 */
+	private InitialContextFactory loadFactory(String initialContextFactoryName) {
+		final Constructor<? extends InitialContextFactory> constructor;
+		// attempt to load this provider from the system classpath
+		try {
+			Class<?> clazz = 
+				getClass().getClassLoader().loadClass(initialContextFactoryName);
+			constructor = clazz.asSubclass(InitialContextFactory.class).getDeclaredConstructor();
+		}
+		catch (Exception e) {
+			// the name does not denote a loadable factory, do not try again
+			cacheFactoryEntry(initialContextFactoryName, NOT_LOADABLE);
+			logger.log(Level.FINEST,
+						 "Error while trying to load system-level JNDI provider",
+						 e);
+			return null;
+		}
+		
+		try {
+			InitialContextFactory factory = constructor.newInstance();
+			boolean isRuntimeFactory = 
+				isRuntimeClassLoader(constructor.getDeclaringClass().getClassLoader());
+			cacheFactoryEntry(initialContextFactoryName, 
+					          new FactoryEntry(constructor, isRuntimeFactory ? factory : null));
+			return factory;
+		}
+		catch (Exception e) {
+			// the constructor may succeed later, so this outcome is not cached
+			logger.log(Level.FINEST,
+						 "Error while trying to load system-level JNDI provider",
+						 e);
+			return null;
+		}
+	}
+	
+	
+	/**
+	 * @return true if classes of the given class loader are provided by the 
+	 *         JRE, which is the case for the bootstrap class loader and the 
+	 *         ancestors of the system class loader
+	 */
+	private static boolean isRuntimeClassLoader(ClassLoader classLoader) {
+		if (classLoader == null) {
+			return true;
+		}
+		
+		try {
+			ClassLoader runtimeClassLoader = ClassLoader.getSystemClassLoader().getParent();
+			while (runtimeClassLoader != null) {
+				if (runtimeClassLoader == classLoader) {
+					return true;
+				}
+				runtimeClassLoader = runtimeClassLoader.getParent();
+			}
+		}
+		catch (SecurityException securityException) {
+			// the factory is then created for each request
+			logger.log(Level.FINEST,
+					   "Unable to inspect the JRE class loaders",
+					   securityException);
+		}
+		
+		return false;
+	}
+	
+	
+	private void cacheFactoryEntry(String initialContextFactoryName, FactoryEntry factoryEntry) {
+		// the names come from client environments, so the cache is bounded
+		if (m_factoryEntries.size() < MAX_CACHED_FACTORIES) {
+			m_factoryEntries.putIfAbsent(initialContextFactoryName, factoryEntry);
+		}
+	}
+	
+	
+	/**
+	 * The cached outcome of loading a factory class.  
+	 */
+	private static class FactoryEntry {
+		private final Constructor<? extends InitialContextFactory> m_constructor;
+		/* the instance returned for every request, or null to create one per request */
+		private final InitialContextFactory m_sharedFactory;
+		
+		FactoryEntry(Constructor<? extends InitialContextFactory> constructor, InitialContextFactory sharedFactory) {
+			m_constructor = constructor;
+			m_sharedFactory = sharedFactory;
+		}
+	}
 
 }
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+/**
+ * Handle to an OSGi service that was looked up in "direct" mode.  
+ * 
+ * When the {@link GeminiNamingConstants#OSGI_URL_DIRECT_SERVICES} environment 
+ * property is set, an "osgi:service" lookup returns a DirectService instead 
+ * of a dynamic proxy.  The handle gives access to the service object itself, 
+ * so calls on the service do not go through reflection.  In exchange, the 
+ * client manages the lifecycle of the service:  the handle never rebinds, 
+ * and the client should release it once the service is no longer needed.  
+ * 
+ * Handles that are still held are released when the Context used for the 
+ * lookup is closed, and when the client bundle stops.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+public interface DirectService {
+
+	/**
+	 * Returns the service object.  Callers must not use the service object 
+	 * once the service has been unregistered or the handle has been released.  
+	 * 
+	 * @return the service object, or null if the service has been 
+	 *         unregistered or this handle has been released
+	 */
+	public Object getService();
+	
+	/**
+	 * @return true if the service is still registered and this handle 
+	 *         has not been released
+	 */
+	public boolean isAvailable();
+	
+	/**
+	 * Sets the listener that is notified when the service is unregistered.  
+	 * If the service has already been unregistered, the listener is 
+	 * notified immediately.  The listener is not notified once this handle 
+	 * has been released.  
+	 * 
+	 * @param listener the listener to notify, or null to remove the listener
+	 */
+	public void setListener(DirectServiceListener listener);
+	
+	/**
+	 * Releases the service.  This method may be called more than once.  
+	 */
+	public void release();
+}
@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+/**
+ * DirectService implementation, backed by a ServiceTracker for the single 
+ * service obtained.  
+ * 
+ * A handle is registered with the collections that release it when their 
+ * owner goes away, see {@link #addOwner(Collection)}.  The handle removes 
+ * itself from these collections once it has been released.  A handle whose 
+ * service has been unregistered stays registered, so that its 
+ * ServiceTracker is closed along with its owner.  
+ * 
+ * @version $Revision$
+ */
+class DirectServiceImpl implements DirectService {
+
+	private static final Logger logger = Logger.getLogger(DirectServiceImpl.class.getName());
+	
+	private final BundleContext m_bundleContext;
+	
+	private final ServiceTracker m_serviceTracker;
+	
+	/* collections of handles that must release this handle */
+	private final List<Collection<DirectServiceImpl>> m_owners = 
+		new CopyOnWriteArrayList<Collection<DirectServiceImpl>>();
+	
+	private volatile Object m_service;
+	
+	private volatile DirectServiceListener m_listener;
+	
+	private volatile boolean m_isUnregistered = false;
+	
+	private volatile boolean m_isReleased = false;
+	
+	
+	DirectServiceImpl(BundleContext bundleContext, ServiceReference serviceReference) {
+		m_bundleContext = bundleContext;
+		m_serviceTracker = 
+			new ServiceTracker(bundleContext, serviceReference, new DirectServiceCustomizer());
+	}
+	
+	
+	/**
+	 * Obtains the service.  
+	 * 
+	 * @return true if the service was obtained, false if the 
+	 *         service is no longer registered
+	 */
+	boolean open() {
+		m_serviceTracker.open();
+		m_service = m_serviceTracker.getService();
+		if (m_service == null) {
+			m_serviceTracker.close();
+			return false;
+		}
+		
+		return true;
+	}
+	
+	
+	/**
+	 * Adds this handle to a collection that releases it when its owner goes 
+	 * away.  Nothing is added if the handle has already been released.  
+	 * 
+	 * @param owner the collection of handles held for an owner
+	 */
+	void addOwner(Collection<DirectServiceImpl> owner) {
+		m_owners.add(owner);
+		owner.add(this);
+		if (m_isReleased) {
+			// the handle was released while the owner was added
+			owner.remove(this);
+		}
+	}
+	
+	
+	@Override
+	public Object getService() {
+		return m_service;
+	}
+	
+	@Override
+	public boolean isAvailable() {
+		return !m_isReleased && !m_isUnregistered;
+	}
+
+	@Override
+	public void setListener(DirectServiceListener listener) {
+		m_listener = listener;
+		if (m_isUnregistered && !m_isReleased) {
+			notifyListener();
+		}
+	}
+
+	@Override
+	public void release() {
+		synchronized (this) {
+			if (m_isReleased) {
+				return;
+			}
+			m_isReleased = true;
+		}
+		
+		m_service = null;
+		removeFromOwners();
+		// closing the tracker ungets the service, if it is still held
+		m_serviceTracker.close();
+	}
+	
+	
+	private void serviceUnregistering() {
+		synchronized (this) {
+			if (m_isReleased || m_isUnregistered) {
+				return;
+			}
+			m_isUnregistered = true;
+		}
+		
+		m_service = null;
+		notifyListener();
+	}
+	
+	
+	private void removeFromOwners() {
+		for (Collection<DirectServiceImpl> owner : m_owners) {
+			owner.remove(this);
+		}
+	}
+	
+	
+	private void notifyListener() {
+		final DirectServiceListener listener = m_listener;
+		if (listener != null) {
+			try {
+				listener.serviceUnregistering(this);
+			}
+			catch (RuntimeException runtimeException) {
+				logger.log(Level.WARNING, 
+						   "An exception occurred while notifying a DirectServiceListener",
+						   runtimeException);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Releases all the handles in the given collection.  
+	 * 
+	 * @param handles the handles held for an owner that is going away
+	 */
+	static void releaseAll(Collection<DirectServiceImpl> handles) {
+		for (DirectServiceImpl handle : handles.toArray(new DirectServiceImpl[0])) {
+			handle.release();
+		}
+	}
+	
+	
+	/**
+	 * Obtains the service in the same way as the default ServiceTracker, and 
+	 * notifies this handle when the service is removed.  
+	 */
+	private class DirectServiceCustomizer implements ServiceTrackerCustomizer {
+		@Override
+		public Object addingService(ServiceReference serviceReference) {
+			return m_bundleContext.getService(serviceReference);
+		}
+
+		@Override
+		public void modifiedService(ServiceReference serviceReference, Object service) {
+			// no action required
+		}
+
+		@Override
+		public void removedService(ServiceReference serviceReference, Object service) {
+			m_bundleContext.ungetService(serviceReference);
+			serviceUnregistering();
+		}
+	}
+}
@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+/**
+ * Listener for the unregistration of a service obtained through a 
+ * {@link DirectService} handle.  
+ * 
+ * The listener is called synchronously while the service unregisters, 
+ * so implementations should stop using the service and return quickly.  
+ * 
+ * @version $Revision$
+ */
+public interface DirectServiceListener {
+
+	/**
+	 * Called when the service of the given handle is being unregistered.  
+	 * The handle has already given up the service when this method is called.  
+	 * 
+	 * @param directService the handle whose service is being unregistered
+	 */
+	public void serviceUnregistering(DirectService directService);
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.Context;
+
+/**
+ * Records which Contexts were created by each JNDI provider service.  
+ * 
+ * Contexts are held weakly by a {@link ContextTracker} for each factory.  
+ * Queries do not lock, since the registry is checked on every method 
+ * call of a service-aware Context.  
+ * 
+ * @version $Revision$
+ */
+class FactoryContextRegistry {
+	
+	/* map of factory services to the Contexts they created */
+	private final ConcurrentMap<Object, ContextTracker> m_contextsByFactory = 
+		new ConcurrentHashMap<Object, ContextTracker>();
+	
+	
+	/**
+	 * Records that a Context was created by the given factory service.  
+	 * 
+	 * @param factory the factory service
+	 * @param context the Context created by the factory
+	 */
+	void associate(Object factory, Context context) {
+		ContextTracker contexts = m_contextsByFactory.get(factory);
+		if (contexts == null) {
+			ContextTracker newContexts = new ContextTracker();
+			contexts = m_contextsByFactory.putIfAbsent(factory, newContexts);
+			if (contexts == null) {
+				contexts = newContexts;
+			}
+		}
+		
+		contexts.add(context);
+	}
+	
+	
+	/**
+	 * @param factory the factory service
+	 * @return true if the factory has created Contexts and has not been removed
+	 */
+	boolean isActive(Object factory) {
+		return m_contextsByFactory.containsKey(factory);
+	}
+	
+	
+	/**
+	 * Removes a factory service that has gone away.  
+	 * 
+	 * @param factory the factory service
+	 * @return the Contexts created by the factory that have not been 
+	 *         collected, which may be empty
+	 */
+	List<Context> removeFactory(Object factory) {
+		final ContextTracker contexts = m_contextsByFactory.remove(factory);
+		if (contexts == null) {
+			return Collections.emptyList();
+		}
+		
+		return contexts.removeAll();
+	}
+}
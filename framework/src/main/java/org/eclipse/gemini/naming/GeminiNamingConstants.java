@@ -0,0 +1,197 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+/**
+ * Constants for the configuration properties supported by the 
+ * Gemini Naming implementation.  
+ * 
+ * Unless noted otherwise, these properties are read from the 
+ * framework properties when the Gemini Naming bundle is started.  
+ * 
+ * @version $Revision$
+ */
+public final class GeminiNamingConstants {
+
+	private GeminiNamingConstants() {
+		// construction of this object is not allowed
+	}
+	
+	
+	/**
+	 * Framework property that sets the number of threads used to run 
+	 * asynchronous naming operations.  
+	 * 
+	 * Defaults to the number of available processors.  Idle threads 
+	 * are released after one minute.  
+	 */
+	public static final String ASYNC_THREAD_COUNT = 
+		"org.eclipse.gemini.naming.async.threads";
+	
+	/**
+	 * Framework property that sets the number of asynchronous naming 
+	 * operations that may wait for a thread.  Once the queue is full, a new 
+	 * operation fails with a NamingException, which is reported through its
+	 * Future and its callback.  Internal maintenance work, such as closing 
+	 * and rebinding Contexts, does not use this queue.  
+	 * 
+	 * Defaults to 1024.  
+	 */
+	public static final String ASYNC_QUEUE_CAPACITY = 
+		"org.eclipse.gemini.naming.async.queueCapacity";
+	
+	/**
+	 * Framework property that sets the timeout, in milliseconds, for each 
+	 * call made on a JNDI provider service (InitialContextFactoryBuilder, 
+	 * ObjectFactoryBuilder, ObjectFactory or DirObjectFactory) while 
+	 * resolving a context or a reference.  
+	 * 
+	 * A call that times out fails with a TimeLimitExceededException.  
+	 * Defaults to 0, which disables the timeout.  
+	 */
+	public static final String PROVIDER_CALL_TIMEOUT = 
+		"org.eclipse.gemini.naming.provider.timeout";
+	
+	/**
+	 * Framework property that sets the maximum number of threads used for 
+	 * provider calls that have a timeout.  A call that times out keeps its 
+	 * thread until the provider returns, so a provider that hangs holds on 
+	 * to threads.  Once all the threads are in use, a new provider call 
+	 * fails at once with a TimeLimitExceededException.  
+	 * 
+	 * Defaults to 32.  Only used if a provider call timeout is set.  
+	 */
+	public static final String PROVIDER_CALL_THREADS = 
+		"org.eclipse.gemini.naming.provider.threads";
+	
+	/**
+	 * Framework property that sets the failure rate, in percent, at which the 
+	 * circuit breaker for a JNDI provider service opens.  While the breaker 
+	 * is open, the provider is skipped when resolving contexts and references.  
+	 * 
+	 * Defaults to 0, which disables the circuit breaker.  
+	 */
+	public static final String PROVIDER_BREAKER_FAILURE_RATE = 
+		"org.eclipse.gemini.naming.provider.breaker.failureRate";
+	
+	/**
+	 * Framework property that sets the number of calls over which the failure 
+	 * rate of a JNDI provider service is measured.  Defaults to 20.  
+	 */
+	public static final String PROVIDER_BREAKER_MINIMUM_CALLS = 
+		"org.eclipse.gemini.naming.provider.breaker.minimumCalls";
+	
+	/**
+	 * Framework property that sets the time, in milliseconds, that an open 
+	 * circuit breaker waits before allowing a single trial call through to 
+	 * the provider.  Defaults to 30000.  
+	 */
+	public static final String PROVIDER_BREAKER_OPEN_DURATION = 
+		"org.eclipse.gemini.naming.provider.breaker.openDuration";
+	
+	/**
+	 * Framework property that sets the time, in milliseconds, that closing 
+	 * the JNDI Contexts of a client bundle may take.  The Contexts are closed 
+	 * in parallel on the internal maintenance executor, both when a client bundle 
+	 * releases the JNDIContextManager service and when Gemini Naming stops.  
+	 * Contexts still closing after this time are closed in the background.  
+	 * 
+	 * Defaults to 10000.  A value of 0 waits until all Contexts are closed.  
+	 */
+	public static final String CONTEXT_CLOSE_TIMEOUT = 
+		"org.eclipse.gemini.naming.close.timeout";
+	
+	/**
+	 * Framework property that enables the pooling of the Contexts returned by 
+	 * JNDIContextManager.newInitialContext(), and sets the maximum number of 
+	 * idle Contexts pooled for each client bundle.  Closing a pooled Context 
+	 * returns it to the pool, and a later request with an equal environment 
+	 * reuses it.  A pooled Context is dropped once the JNDI provider service 
+	 * that created it goes away, or once the client changes its environment.  
+	 * DirContexts are not pooled.  
+	 * 
+	 * Defaults to 0, which disables pooling.  
+	 */
+	public static final String CONTEXT_POOL_SIZE = 
+		"org.eclipse.gemini.naming.contextPool.size";
+	
+	/**
+	 * Framework property that sets the time, in milliseconds, after which an 
+	 * idle pooled Context is closed.  Defaults to 60000.  
+	 */
+	public static final String CONTEXT_POOL_IDLE_TIMEOUT = 
+		"org.eclipse.gemini.naming.contextPool.idleTimeout";
+	
+	/**
+	 * Manifest header of a client bundle that lists the JNDI paths to prime 
+	 * once the bundle starts.  The value is a comma-separated list of URLs, 
+	 * such as "osgi:service/com.acme.Service", and of InitialContextFactory 
+	 * class names.  Gemini Naming creates the JNDIContextManager of the 
+	 * bundle, and then looks up each URL and creates a Context with each 
+	 * factory on the internal maintenance executor, so that the trackers, caches and 
+	 * proxy classes are ready before the bundle's first request.  
+	 * 
+	 * Unlike the other names defined here, this is not a framework property.  
+	 */
+	public static final String WARM_UP_HEADER = 
+		"Gemini-Naming-WarmUp";
+	
+	/**
+	 * Framework property that enables the cache of "osgi" URLs that did not 
+	 * resolve to a service.  A cached miss is dropped when a service is 
+	 * registered under the interface or JNDI service name of the URL.  
+	 * Each client bundle that caches a miss registers a ServiceListener that 
+	 * sees every service event in the framework.  
+	 * 
+	 * Defaults to "false".  
+	 */
+	public static final String OSGI_URL_MISS_CACHE = 
+		"org.eclipse.gemini.naming.osgi.missCache";
+	
+	/**
+	 * Framework property that makes "osgi" URL lookups report a missing service 
+	 * with a NameNotFoundException that has no stack trace.  A new exception 
+	 * is still created for every lookup that misses.  
+	 * 
+	 * Defaults to "false".  
+	 */
+	public static final String OSGI_URL_STACKLESS_EXCEPTIONS = 
+		"org.eclipse.gemini.naming.osgi.stacklessExceptions";
+	
+	/**
+	 * Framework property that makes "osgi:service" proxies rebind as soon as 
+	 * their backing service unregisters.  The rebind runs on the internal 
+	 * maintenance executor, and callers keep using the current backing service until the 
+	 * replacement is published.  When disabled, a proxy rebinds on the first 
+	 * call made after its backing service has gone away.  
+	 * 
+	 * Defaults to "false".  
+	 */
+	public static final String OSGI_URL_EAGER_REBIND = 
+		"org.eclipse.gemini.naming.osgi.eagerRebind";
+	
+	/**
+	 * JNDI environment property that makes "osgi:service" lookups return a 
+	 * {@link DirectService} handle instead of a dynamic proxy.  Unlike the 
+	 * other properties defined here, this property is read from the 
+	 * environment of the Context used for the lookup.  "osgi:servicelist" 
+	 * lookups are not affected.  
+	 * 
+	 * Set to "true" or Boolean.TRUE to enable, defaults to disabled.  
+	 */
+	public static final String OSGI_URL_DIRECT_SERVICES = 
+		"org.eclipse.gemini.naming.osgi.directServices";
+}
@@ -41,24 +41,23 @@ class InitialContextFactoryWrapper implements InitialContextFactory {
 		final Context contextToReturn = 
 			m_initialContextFactory.getInitialContext(environment);
 
+		// the service-aware Context is associated with the factory service, 
+		// so that it can be rebound once the factory service goes away
 		if (contextToReturn instanceof LdapContext) {
 			final LdapContextWrapperImpl ldapContextWrapper = new LdapContextWrapperImpl((LdapContext)contextToReturn, m_factoryManager);
-			setupFactoryAssociation(ldapContextWrapper);
-			return ServiceAwareContextFactory.createServiceAwareLdapContextWrapper(m_initialContextFactory, ldapContextWrapper, m_factoryManager);
+			return setupFactoryAssociation(ServiceAwareContextFactory.createServiceAwareLdapContextWrapper(m_initialContextFactory, ldapContextWrapper, m_factoryManager));
 		} else if(contextToReturn instanceof DirContext) {
 			final DirContextWrapperImpl dirContextWrapper = new DirContextWrapperImpl((DirContext)contextToReturn, m_factoryManager);
-			setupFactoryAssociation(dirContextWrapper);
-			return ServiceAwareContextFactory.createServiceAwareDirContextWrapper(m_initialContextFactory, dirContextWrapper, m_factoryManager);
+			return setupFactoryAssociation(ServiceAwareContextFactory.createServiceAwareDirContextWrapper(m_initialContextFactory, dirContextWrapper, m_factoryManager));
 		} else {
 			final ContextWrapperImpl contextWrapper = new ContextWrapperImpl(contextToReturn, m_factoryManager);
-			setupFactoryAssociation(contextWrapper);
-			return ServiceAwareContextFactory.createServiceAwareContextWrapper(m_initialContextFactory, contextWrapper, m_factoryManager);
+			return setupFactoryAssociation(ServiceAwareContextFactory.createServiceAwareContextWrapper(m_initialContextFactory, contextWrapper, m_factoryManager));
 		}
 		
 		
 	}
 
-	private void setupFactoryAssociation(final Context contextWrapper) {
+	private <T extends Context> T setupFactoryAssociation(final T contextWrapper) {
 		if(m_initialContextFactory instanceof BuilderSupportedInitialContextFactory) {
 			BuilderSupportedInitialContextFactory builderFactory = 
 				(BuilderSupportedInitialContextFactory)m_initialContextFactory;
@@ -68,5 +67,7 @@ class InitialContextFactoryWrapper implements InitialContextFactory {
 			// this Context is backed by an InitialContextFactory service
 			m_factoryManager.associateFactoryService(m_initialContextFactory, contextWrapper);
 		}
+		
+		return contextWrapper;
 	}
 }
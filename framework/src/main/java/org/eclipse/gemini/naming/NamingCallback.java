@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+/**
+ * Callback interface used by the asynchronous Gemini Naming services 
+ * to report the outcome of an operation.  
+ * 
+ * A callback is invoked on the thread that completed the operation, 
+ * which is usually a thread owned by the Gemini Naming executor.  
+ * Implementations should therefore return quickly, and should not 
+ * block waiting for other asynchronous naming operations.  
+ * 
+ * @version $Revision$
+ */
+public interface NamingCallback<T> {
+
+	/**
+	 * Called when the operation completed normally.  
+	 * 
+	 * @param result the result of the operation, which may be null
+	 */
+	public void completed(T result);
+	
+	/**
+	 * Called when the operation failed or was cancelled.  
+	 * 
+	 * @param cause the exception thrown by the operation, or a 
+	 *        CancellationException if the operation was cancelled
+	 */
+	public void failed(Throwable cause);
+}
@@ -0,0 +1,172 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+/**
+ * Utility methods for consuming NamingEnumerations.  
+ * 
+ * @version $Revision$
+ */
+public final class NamingEnumerations {
+
+	private static final Logger logger = 
+		Logger.getLogger(NamingEnumerations.class.getName());
+	
+	private NamingEnumerations() {
+		// construction of this object is not allowed
+	}
+	
+	
+	/**
+	 * Adapts a NamingEnumeration to an Iterable, so that the enumeration can 
+	 * be consumed with a for-each loop.  
+	 * 
+	 * The Iterable can only be iterated once.  The enumeration is closed once 
+	 * the iteration reaches its end, fails, or the Iterable is closed; callers 
+	 * that stop iterating early should close the Iterable.  A NamingException 
+	 * reported by the enumeration is rethrown as an IllegalStateException 
+	 * with the NamingException as its cause.  
+	 * 
+	 * @param enumeration the NamingEnumeration to adapt
+	 * @return an Iterable over the remaining elements of the enumeration
+	 */
+	public static <T> CloseableIterable<T> asIterable(NamingEnumeration<T> enumeration) {
+		return new NamingEnumerationIterable<T>(enumeration);
+	}
+	
+	
+	/**
+	 * Iterable that releases its underlying resources when closed.  
+	 */
+	public interface CloseableIterable<T> extends Iterable<T>, Closeable {
+		
+		/**
+		 * Releases the underlying resources.  Closing an Iterable more than 
+		 * once has no effect.  
+		 */
+		@Override
+		void close();
+	}
+	
+	
+	private static class NamingEnumerationIterable<T> implements CloseableIterable<T> {
+		private final NamingEnumeration<T> m_enumeration;
+		
+		/* guarded by this */
+		private boolean m_isIterated = false;
+		private boolean m_isClosed = false;
+		
+		NamingEnumerationIterable(NamingEnumeration<T> enumeration) {
+			m_enumeration = enumeration;
+		}
+		
+		@Override
+		public synchronized Iterator<T> iterator() {
+			if(m_isIterated) {
+				throw new IllegalStateException("A NamingEnumeration can only be iterated once");
+			}
+			m_isIterated = true;
+			return new NamingEnumerationIterator<T>(this);
+		}
+		
+		@Override
+		public synchronized void close() {
+			if(m_isClosed) {
+				return;
+			}
+			
+			m_isClosed = true;
+			try {
+				m_enumeration.close();
+			} catch (NamingException namingException) {
+				logger.log(Level.FINE, 
+						   "Exception occurred while closing a NamingEnumeration", 
+						   namingException);
+			}
+		}
+		
+		synchronized boolean isClosed() {
+			return m_isClosed;
+		}
+	}
+	
+	
+	private static class NamingEnumerationIterator<T> implements Iterator<T> {
+		private final NamingEnumerationIterable<T> m_iterable;
+		
+		/* true once hasMore() has reported an element that was not returned yet */
+		private boolean m_hasPendingElement = false;
+		
+		NamingEnumerationIterator(NamingEnumerationIterable<T> iterable) {
+			m_iterable = iterable;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			if(m_iterable.isClosed()) {
+				return false;
+			}
+			
+			if(m_hasPendingElement) {
+				return true;
+			}
+			
+			try {
+				m_hasPendingElement = m_iterable.m_enumeration.hasMore();
+			} catch (NamingException namingException) {
+				throw failure(namingException);
+			}
+			
+			if(!m_hasPendingElement) {
+				m_iterable.close();
+			}
+			return m_hasPendingElement;
+		}
+
+		@Override
+		public T next() {
+			if(!hasNext()) {
+				throw new NoSuchElementException("No additional elements exist in this NamingEnumeration");
+			}
+			m_hasPendingElement = false;
+			try {
+				return m_iterable.m_enumeration.next();
+			} catch (NamingException namingException) {
+				throw failure(namingException);
+			}
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException("NamingEnumeration does not support removal of elements");
+		}
+		
+		private RuntimeException failure(NamingException namingException) {
+			m_iterable.close();
+			return new IllegalStateException("Error occurred while iterating over a NamingEnumeration", 
+					                         namingException);
+		}
+	}
+}
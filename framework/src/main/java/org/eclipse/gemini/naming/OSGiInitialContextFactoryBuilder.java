@@ -23,14 +23,12 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.security.PrivilegedExceptionAction;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
-import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -75,11 +73,26 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 
 	private final static String NO_CONTEXT_FACTORIES_MSG = "No JNDI implementations available";
 	
+	/* marker returned by a resolution stage that could not handle an object */
+	private static final Object UNRESOLVED = new Object();
+	
+	/* the stages used by resolution plans */
+	private static final int STAGE_URL_REF_ADDR = 0;
+	private static final int STAGE_BUILDERS = 1;
+	private static final int STAGE_NAMED_FACTORY = 2;
+	private static final int STAGE_RANKED_FACTORIES = 3;
+	
 	/* calling JNDI Client's BundleContext */
 	private final BundleContext	m_callerBundleContext;
 	
 	/* JNDI implementation bundle's BundleContext */
 	private final BundleContext m_implBundleContext;
+	
+	/* guards the calls made on JNDI provider services */
+	private final ProviderGuard m_providerGuard;
+	
+	/* rebinds the Contexts of a departed factory service, null if Contexts rebind on their next call */
+	private final Executor m_rebindExecutor;
 
 	private ServiceTracker		m_contextFactoryServiceTracker			= null;
 	private ServiceTracker		m_contextFactoryBuilderServiceTracker	= null;
@@ -89,17 +102,36 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	private ServiceTracker      m_dirObjectFactoryServiceTracker        = null;
 
 	
-	/* 
-	 * Map of OSGi services to a List of Contexts created by that service.  
-	 * Each service services as a key to a list of Context implementations.  
-	 */
-	private final Map<Object, WeakHashMap<Context, Object>> m_mapOfServicesToContexts =
-			Collections.synchronizedMap(new HashMap<Object, WeakHashMap<Context, Object>>());
+	/* the Contexts created by each OSGi factory service */
+	private final FactoryContextRegistry m_factoryContexts = 
+		new FactoryContextRegistry();
+	
+	/* resolution plans, one for each shape of object to resolve */
+	private final ResolutionPlan m_noFactoryNameSpecifiedPlan = 
+		new ResolutionPlan(true, STAGE_URL_REF_ADDR, STAGE_BUILDERS, STAGE_RANKED_FACTORIES);
+	private final ResolutionPlan m_factoryNameSpecifiedPlan = 
+		new ResolutionPlan(true, STAGE_NAMED_FACTORY, STAGE_BUILDERS);
+	private final ResolutionPlan m_noReferencePlan = 
+		new ResolutionPlan(false, STAGE_BUILDERS, STAGE_RANKED_FACTORIES);
 	
 
-	public OSGiInitialContextFactoryBuilder(BundleContext callerBundleContext, BundleContext implBundleContext) {
+	public OSGiInitialContextFactoryBuilder(BundleContext callerBundleContext, BundleContext implBundleContext, ProviderGuard providerGuard) {
+		this(callerBundleContext, implBundleContext, providerGuard, null);
+	}
+	
+	/**
+	 * @param callerBundleContext the BundleContext of the JNDI client
+	 * @param implBundleContext the BundleContext of the Gemini Naming bundle
+	 * @param providerGuard the guard for calls on JNDI provider services
+	 * @param rebindExecutor the Executor used to rebind the Contexts created by 
+	 *                       a factory service as soon as the service goes away, 
+	 *                       or null if Contexts should rebind on their next call
+	 */
+	OSGiInitialContextFactoryBuilder(BundleContext callerBundleContext, BundleContext implBundleContext, ProviderGuard providerGuard, Executor rebindExecutor) {
 		m_callerBundleContext = callerBundleContext;
 		m_implBundleContext = implBundleContext;
+		m_providerGuard = providerGuard;
+		m_rebindExecutor = rebindExecutor;
 		
 		try {
 			// create the service trackers inside a doPrivileged() block
@@ -138,7 +170,8 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 			final String initialContextFactoryName = 
 				(String) environment.get(Context.INITIAL_CONTEXT_FACTORY);
 			Object factory = 
-				obtainFactoryService(initialContextFactoryName, m_contextFactoryServiceTracker);
+				obtainFactoryService(initialContextFactoryName, 
+						             ServiceUtils.sortServiceReferences(m_contextFactoryServiceTracker));
 			if (factory != null) {
 				return new InitialContextFactoryWrapper(
 						(InitialContextFactory) factory, this);
@@ -190,22 +223,43 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	 * This Builder implementation uses the OSGi Service registry to find
 	 * matching JNDI service providers for resolving references.
 	 * 
+	 * The ObjectFactory returned is the resolution plan for the shape of the 
+	 * given object.  Plans are created once per builder and are reused, so 
+	 * no factory objects are created for each resolution.  
 	 */
 	@Override
-	public ObjectFactory createObjectFactory(Object obj, Hashtable environment) throws NamingException {
+	public ResolutionPlan createObjectFactory(Object obj, Hashtable environment) throws NamingException {
 		if (m_objectFactoryServiceTracker == null) {
 			throw new NoInitialContextException("No Object factories available");
 		}
 
-		return new ReturnReferenceInfoObjectFactory(createInnerObjectFactory(obj));
+		return getResolutionPlan(obj);
 	}
 	
-	public DirObjectFactory getDirObjectFactory(Object obj, Hashtable environment) throws NamingException {
+	/**
+	 * Returns a DirObjectFactory that can resolve the given object.  
+	 * 
+	 * The DirObjectFactory returned is the resolution plan for the shape of 
+	 * the given object, see {@link #createObjectFactory(Object, Hashtable)}.  
+	 */
+	public ResolutionPlan getDirObjectFactory(Object obj, Hashtable environment) throws NamingException {
 		if (m_dirObjectFactoryServiceTracker == null) {
 			throw new NamingException("No DirObjectFactories available");
 		}
 		
-		return new ReturnReferenceInfoDirObjectFactory(createInnerDirObjectFactory(obj)) ;
+		return getResolutionPlan(obj);
+	}
+	
+	/**
+	 * Creates a new view of the JNDI provider services known to this builder.  
+	 * 
+	 * The snapshot can be passed to several resolution calls, so that all of 
+	 * them consult the same ranked list of provider services.  
+	 * 
+	 * @return a new ProviderSnapshot for this builder
+	 */
+	ProviderSnapshot createProviderSnapshot() {
+		return new ProviderSnapshot();
 	}
 
 	
@@ -221,13 +275,15 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	 */
 	@Override
 	public ObjectFactory getURLContextFactory(String urlScheme) {
-		if (m_urlContextFactoryServiceTracker.getServiceReferences() != null) {
-			ServiceReference[] serviceReferences = ServiceUtils.sortServiceReferences(m_urlContextFactoryServiceTracker);
-			for (int i = 0; i < serviceReferences.length; i++) {
-				ServiceReference serviceReference = serviceReferences[i];
-				if (serviceReference.getProperty(JNDIConstants.JNDI_URLSCHEME).equals(urlScheme)) {
-					return (ObjectFactory) m_callerBundleContext.getService(serviceReference);
-				}
+		return getURLContextFactory(urlScheme, 
+				                    ServiceUtils.sortServiceReferences(m_urlContextFactoryServiceTracker));
+	}
+	
+	private ObjectFactory getURLContextFactory(String urlScheme, ServiceReference[] serviceReferences) {
+		for (int i = 0; i < serviceReferences.length; i++) {
+			ServiceReference serviceReference = serviceReferences[i];
+			if (serviceReference.getProperty(JNDIConstants.JNDI_URLSCHEME).equals(urlScheme)) {
+				return (ObjectFactory) m_callerBundleContext.getService(serviceReference);
 			}
 		}
 		return null;
@@ -235,21 +291,12 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	
 	@Override
 	public void associateFactoryService(Object factory, Context createdContext) {
-		if(m_mapOfServicesToContexts.containsKey(factory)) {
-			WeakHashMap<Context, Object> listOfContexts = m_mapOfServicesToContexts.get(factory);
-			listOfContexts.put(createdContext, null);
-			m_mapOfServicesToContexts.put(factory, listOfContexts);
-		} else {
-			WeakHashMap<Context, Object> listOfContexts = new WeakHashMap<Context, Object>();
-			listOfContexts.put(createdContext, null);
-			m_mapOfServicesToContexts.put(factory, listOfContexts);
-		}
-		
+		m_factoryContexts.associate(factory, createdContext);
 	}
 
 	@Override
 	public boolean isFactoryServiceActive(Object factory) {
-		return m_mapOfServicesToContexts.containsKey(factory);
+		return m_factoryContexts.isActive(factory);
 	}
 	
 	
@@ -300,8 +347,7 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	}
 
 	private Object obtainFactoryService(String factoryServiceInterface,
-			ServiceTracker serviceTracker) {
-		ServiceReference[] serviceReferences = ServiceUtils.sortServiceReferences(serviceTracker);
+			ServiceReference[] serviceReferences) {
 		for (int i = 0; i < serviceReferences.length; i++) {
 			ServiceReference serviceReference = serviceReferences[i];
 			String[] serviceInterfaces = (String[]) serviceReference
@@ -326,18 +372,29 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	 * @return an InitialContextFactory instance that can support this request 
 	 *         or null if no match can be found. 
 	 */
-	private InitialContextFactory getContextFactoryFromBuilder(Hashtable environment) {
+	private InitialContextFactory getContextFactoryFromBuilder(final Hashtable environment) {
 		if (m_contextFactoryBuilderServiceTracker.getServiceReferences() != null) {
 			final ServiceReference[] serviceReferences = ServiceUtils.sortServiceReferences(m_contextFactoryBuilderServiceTracker);
 			for (int i = 0; i < serviceReferences.length; i++) {
 				ServiceReference serviceReference = serviceReferences[i];
-				InitialContextFactoryBuilder builder = 
-					(InitialContextFactoryBuilder) m_callerBundleContext.getService(serviceReference);
+				ProviderGuard.CallPermit callPermit = m_providerGuard.acquireCall(serviceReference);
+				if (callPermit == null) {
+					// the circuit breaker for this builder is open
+					continue;
+				}
+				
 				try {
+					final InitialContextFactoryBuilder builder = 
+						(InitialContextFactoryBuilder) m_callerBundleContext.getService(serviceReference);
 					// if builder is null, then service is not available
 					if (builder != null) {
-						InitialContextFactory contextFactory = builder
-								.createInitialContextFactory(environment);
+						InitialContextFactory contextFactory = (InitialContextFactory) 
+							invokeProvider(callPermit, new Callable<Object>() {
+								@Override
+								public Object call() throws Exception {
+									return builder.createInitialContextFactory(environment);
+								}
+							});
 						// the first builder to return a non-null result is
 						// given precedence as per Section 5.2.1.1 of RFC
 						// 142
@@ -353,6 +410,9 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 							     "NamingException occurred while invoking on an InitialContextFactoryBuilder",
 							     namingException);
 				}
+				finally {
+					callPermit.release();
+				}
 			}
 
 		}
@@ -402,31 +462,44 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	 * 
 	 * @param environment the JNDI environment
 	 * @param refInfo the Object to resolve
+	 * @param snapshot the view of the JNDI provider services to use
 	 * @return an ObjectFactory instance that matches this Reference, 
 	 *         or null if no match can be found. 
 	 */
-	private ObjectFactory getObjectFactoryFromBuilder(Hashtable environment, Object refInfo) {
-		if (m_objectFactoryBuilderServiceTracker.getServiceReferences() != null) {
-			final ServiceReference[] serviceReferences = ServiceUtils.sortServiceReferences(m_objectFactoryBuilderServiceTracker);
-			for (int i = 0; i < serviceReferences.length; i++) {
-				ServiceReference serviceReference = serviceReferences[i];
-				ObjectFactoryBuilder builder = (ObjectFactoryBuilder) m_callerBundleContext
+	private ObjectFactory getObjectFactoryFromBuilder(final Hashtable environment, final Object refInfo, ProviderSnapshot snapshot) {
+		final ServiceReference[] serviceReferences = getObjectFactoryBuilders(snapshot);
+		for (int i = 0; i < serviceReferences.length; i++) {
+			ServiceReference serviceReference = serviceReferences[i];
+			ProviderGuard.CallPermit callPermit = m_providerGuard.acquireCall(serviceReference);
+			if (callPermit == null) {
+				// the circuit breaker for this builder is open
+				continue;
+			}
+			
+			try {
+				final ObjectFactoryBuilder builder = (ObjectFactoryBuilder) m_callerBundleContext
 						.getService(serviceReference);
-				try {
-					ObjectFactory factory = 
-						builder.createObjectFactory(refInfo, environment);
-		
-					if (factory != null) {
-						return factory;
-					}
-				}
-				catch (NamingException namingException) {
-					// catch exception, allow iteration to continue
-					logger.log(Level.FINE, 
-						     "NamingException occurred while invoking on an ObjectFactoryBuilder",
-						     namingException);
+				ObjectFactory factory = (ObjectFactory) 
+					invokeProvider(callPermit, new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							return builder.createObjectFactory(refInfo, environment);
+						}
+					});
+	
+				if (factory != null) {
+					return factory;
 				}
 			}
+			catch (NamingException namingException) {
+				// catch exception, allow iteration to continue
+				logger.log(Level.FINE, 
+					     "NamingException occurred while invoking on an ObjectFactoryBuilder",
+					     namingException);
+			}
+			finally {
+				callPermit.release();
+			}
 		}
 		
 		return null;
@@ -440,10 +513,11 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	 * resolve the reference.  
 	 * 
 	 * @param reference to be resolved
+	 * @param snapshot the view of the JNDI provider services to use
 	 * @return an object resolved from a URL Context Factory, or null if no URL
 	 * 	       Context Factory could resolve the reference.   
 	 */
-	private Object getObjectFromURLContextFactoryFromReference(final Reference reference, Hashtable environment) {
+	private Object getObjectFromURLContextFactoryFromReference(final Reference reference, Hashtable environment, ProviderSnapshot snapshot) {
 		Enumeration refAddresses = reference.getAll();
 		while(refAddresses.hasMoreElements()) {
 			RefAddr address = (RefAddr)refAddresses.nextElement();
@@ -452,7 +526,7 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 				try {
 					URI uri = new URI(urlContent);
 					ObjectFactory objectFactory = 
-						getURLContextFactory(uri.getScheme());
+						getURLContextFactory(uri.getScheme(), getURLContextFactories(snapshot));
 					if(objectFactory != null) {
 						Object objToReturn = objectFactory.getObjectInstance(urlContent, null, null, environment);
 						if(objToReturn != null) {
@@ -493,36 +567,27 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	}
 	
 	
-	private ObjectFactory createInnerObjectFactory(Object obj) throws NamingException {
-		final Object objToResolve = getObjectToResolve(obj);
-		if (objToResolve instanceof Reference) {
-			final Reference reference = (Reference) objToResolve;
-			if (reference.getFactoryClassName() != null) {
-				return new FactoryNameSpecifiedObjectFactory();
-			}
-			else {
-				return new NoFactoryNameSpecifiedObjectFactory();
-			}
-		}
-		else {
-			return new NoReferenceObjectFactory();
-		}
-	}
-	
-	
-	private DirObjectFactory createInnerDirObjectFactory(Object obj) throws NamingException {
+	/**
+	 * Selects the resolution plan that matches the shape of the given object.  
+	 * 
+	 * @param obj the object to resolve
+	 * @return the ResolutionPlan for References that name a factory, for 
+	 *         References that do not name a factory, or for all other objects
+	 * @throws NamingException if a Referenceable could not provide its Reference
+	 */
+	private ResolutionPlan getResolutionPlan(Object obj) throws NamingException {
 		final Object objToResolve = getObjectToResolve(obj);
 		if (objToResolve instanceof Reference) {
 			final Reference reference = (Reference) objToResolve;
 			if (reference.getFactoryClassName() != null) {
-				return new FactoryNameSpecifiedDirObjectFactory();
+				return m_factoryNameSpecifiedPlan;
 			}
 			else {
-				return new NoFactoryNameSpecifiedDirObjectFactory();
+				return m_noFactoryNameSpecifiedPlan;
 			}
 		}
 		else {
-			return new NoReferenceDirObjectFactory();
+			return m_noReferencePlan;
 		}
 	}
 	
@@ -565,10 +630,10 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	
 
 	private Object resolveObjectUsingBuilders(Object objectToResolve, Name name, Context context, 
-			                                  Hashtable environment)
+			                                  Hashtable environment, ProviderSnapshot snapshot)
 			throws Exception {
 		ObjectFactory objectFactory = 
-			getObjectFactoryFromBuilder(environment, objectToResolve);
+			getObjectFactoryFromBuilder(environment, objectToResolve, snapshot);
 		if(objectFactory != null) {
 			Object resolvedObject = objectFactory.getObjectInstance(objectToResolve, name, context, environment);
 			if(resolvedObject != null) {
@@ -579,30 +644,42 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 		return null;
 	}
 	
-	private Object resolveObjectUsingObjectFactories(Object objectToResolve, Name name, Context context, Hashtable environment) throws NamingException {
-		if (m_objectFactoryServiceTracker.getServiceReferences() != null) {
-			final ServiceReference[] serviceReferences = ServiceUtils.sortServiceReferences(m_objectFactoryServiceTracker);
-			for (int i = 0; i < serviceReferences.length; i++) {
-				ServiceReference serviceReference = serviceReferences[i];
-				ObjectFactory factory = 
+	private Object resolveObjectUsingObjectFactories(final Object objectToResolve, final Name name, final Context context, final Hashtable environment, ProviderSnapshot snapshot) throws NamingException {
+		final ServiceReference[] serviceReferences = getObjectFactories(snapshot);
+		for (int i = 0; i < serviceReferences.length; i++) {
+			ServiceReference serviceReference = serviceReferences[i];
+			ProviderGuard.CallPermit callPermit = m_providerGuard.acquireCall(serviceReference);
+			if (callPermit == null) {
+				// the circuit breaker for this factory is open
+				continue;
+			}
+			
+			try {
+				final ObjectFactory factory = 
 					(ObjectFactory) m_callerBundleContext.getService(serviceReference);
-				try {
-					Object result = 
-						factory.getObjectInstance(objectToResolve, name, context, environment);
+				Object result = 
+					m_providerGuard.invoke(callPermit, new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							return factory.getObjectInstance(objectToResolve, name, context, environment);
+						}
+					});
 
-					// release the service for this factory
-					m_callerBundleContext.ungetService(serviceReference);
+				// release the service for this factory
+				m_callerBundleContext.ungetService(serviceReference);
 
-					if (result != null) {
-						// return resolved object
-						return result;
-					} 
-				}
-				catch (Exception exception) {
-					NamingException namingException = new NamingException("Exception occurred while trying to resolve object using ObjectFactory search");
-					namingException.setRootCause(exception);
-					throw namingException;
-				}
+				if (result != null) {
+					// return resolved object
+					return result;
+				} 
+			}
+			catch (Exception exception) {
+				NamingException namingException = new NamingException("Exception occurred while trying to resolve object using ObjectFactory search");
+				namingException.setRootCause(exception);
+				throw namingException;
+			}
+			finally {
+				callPermit.release();
 			}
 		}
 		
@@ -610,30 +687,42 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	}
 	
 	
-	private Object resolveObjectUsingDirObjectFactories(Object objectToResolve, Name name, Context context, Hashtable environment, Attributes attributes) throws NamingException {
-		if (m_dirObjectFactoryServiceTracker.getServiceReferences() != null) {
-			final ServiceReference[] serviceReferences = ServiceUtils.sortServiceReferences(m_dirObjectFactoryServiceTracker);
-			for (int i = 0; i < serviceReferences.length; i++) {
-				ServiceReference serviceReference = serviceReferences[i];
-				DirObjectFactory factory = 
+	private Object resolveObjectUsingDirObjectFactories(final Object objectToResolve, final Name name, final Context context, final Hashtable environment, final Attributes attributes, ProviderSnapshot snapshot) throws NamingException {
+		final ServiceReference[] serviceReferences = getDirObjectFactories(snapshot);
+		for (int i = 0; i < serviceReferences.length; i++) {
+			ServiceReference serviceReference = serviceReferences[i];
+			ProviderGuard.CallPermit callPermit = m_providerGuard.acquireCall(serviceReference);
+			if (callPermit == null) {
+				// the circuit breaker for this factory is open
+				continue;
+			}
+			
+			try {
+				final DirObjectFactory factory = 
 					(DirObjectFactory) m_callerBundleContext.getService(serviceReference);
-				try {
-					Object result = 
-						factory.getObjectInstance(objectToResolve, name, context, environment, attributes);
-		
-					// release the service reference
-					m_callerBundleContext.ungetService(serviceReference);
-					
-					if (result != null) {
-						// return the resolved object 
-						return result;
-					} 
-				}
-				catch (Exception exception) {
-					NamingException namingException = new NamingException("Exception occurred while trying to resolve object using ObjectFactory search");
-					namingException.setRootCause(exception);
-					throw namingException;
-				}
+				Object result = 
+					m_providerGuard.invoke(callPermit, new Callable<Object>() {
+						@Override
+						public Object call() throws Exception {
+							return factory.getObjectInstance(objectToResolve, name, context, environment, attributes);
+						}
+					});
+	
+				// release the service reference
+				m_callerBundleContext.ungetService(serviceReference);
+				
+				if (result != null) {
+					// return the resolved object 
+					return result;
+				} 
+			}
+			catch (Exception exception) {
+				NamingException namingException = new NamingException("Exception occurred while trying to resolve object using ObjectFactory search");
+				namingException.setRootCause(exception);
+				throw namingException;
+			}
+			finally {
+				callPermit.release();
 			}
 		}
 		
@@ -641,10 +730,10 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 	}
 	
 	
-	private Object resolveDirObjectUsingBuilders(Object objectToResolve, Name name, Context context, Hashtable environment, Attributes attributes) 
+	private Object resolveDirObjectUsingBuilders(Object objectToResolve, Name name, Context context, Hashtable environment, Attributes attributes, ProviderSnapshot snapshot) 
 			throws Exception {
 		ObjectFactory objectFactory = 
-			getObjectFactoryFromBuilder(environment, objectToResolve);
+			getObjectFactoryFromBuilder(environment, objectToResolve, snapshot);
 		if((objectFactory != null) && (objectFactory instanceof DirObjectFactory)) {
 			DirObjectFactory dirObjectFactory = (DirObjectFactory)objectFactory;
 			Object resolvedObject = dirObjectFactory.getObjectInstance(objectToResolve, name, context, environment, attributes);
@@ -656,6 +745,59 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 		return null;
 	}
 
+	/*
+	 * Accessors for the ranked provider services.  A null snapshot means 
+	 * that the trackers are queried directly, which is what a single 
+	 * resolution needs, since each plan consults each list at most once.  
+	 */
+	private ServiceReference[] getObjectFactories(ProviderSnapshot snapshot) {
+		return (snapshot != null) ? snapshot.getObjectFactories() 
+				                  : ServiceUtils.sortServiceReferences(m_objectFactoryServiceTracker);
+	}
+	
+	private ServiceReference[] getDirObjectFactories(ProviderSnapshot snapshot) {
+		return (snapshot != null) ? snapshot.getDirObjectFactories() 
+				                  : ServiceUtils.sortServiceReferences(m_dirObjectFactoryServiceTracker);
+	}
+	
+	private ServiceReference[] getObjectFactoryBuilders(ProviderSnapshot snapshot) {
+		return (snapshot != null) ? snapshot.getObjectFactoryBuilders() 
+				                  : ServiceUtils.sortServiceReferences(m_objectFactoryBuilderServiceTracker);
+	}
+	
+	private ServiceReference[] getURLContextFactories(ProviderSnapshot snapshot) {
+		return (snapshot != null) ? snapshot.getURLContextFactories() 
+				                  : ServiceUtils.sortServiceReferences(m_urlContextFactoryServiceTracker);
+	}
+	
+	
+	/**
+	 * Invokes a call on a JNDI provider service through the ProviderGuard.  
+	 * 
+	 * @param callPermit the permit obtained for the provider
+	 * @param providerCall the call to make on the provider
+	 * @return the result of the call
+	 * @throws NamingException if the provider threw a NamingException, or 
+	 *         if the call timed out
+	 */
+	private Object invokeProvider(ProviderGuard.CallPermit callPermit, Callable<Object> providerCall) throws NamingException {
+		try {
+			return m_providerGuard.invoke(callPermit, providerCall);
+		}
+		catch (NamingException namingException) {
+			throw namingException;
+		}
+		catch (RuntimeException runtimeException) {
+			throw runtimeException;
+		}
+		catch (Exception exception) {
+			NamingException namingException = new NamingException("Exception occurred while invoking a JNDI provider service");
+			namingException.setRootCause(exception);
+			throw namingException;
+		}
+	}
+	
+
 	/**
 	 * Checks the calling Bundle in order to search for a 
 	 * jndi.properties file.  
@@ -776,7 +918,13 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 
 		private void handleRemovedService(ServiceReference reference, Object service) {
 			super.removedService(reference, service);
-			m_mapOfServicesToContexts.remove(service);
+			List<Context> contexts = m_factoryContexts.removeFactory(service);
+			if (m_rebindExecutor != null) {
+				// rebind the Contexts now, rather than on their next method call
+				for (Context context : contexts) {
+					ServiceAwareContextFactory.rebindInBackground(context, m_rebindExecutor);
+				}
+			}
 		}
 		
 		private Object handleAddingService(ServiceReference reference) {
@@ -787,307 +935,184 @@ class OSGiInitialContextFactoryBuilder implements ObjectFactoryBuilder, FactoryM
 
 
 	/**
-	 *  Query the inner ObjectFactory instance to see if that factory
-	 *  can resolve the object.  
-	 *  
-	 *  If no matching ObjectFactory services exist that can resolve the object,
-	 *  return a specialized ObjectFactory implementation that
-	 *  merely returns the reference passed in. This allows the Factory 
-	 *  Manager to more closely comply with the behavior specified in the 
-	 *  javadoc for NamingManger.getObjectInstance()
+	 * A resolution plan is the ordered list of stages used to resolve one 
+	 * shape of object: 
+	 * 
+	 * 1. A Reference that does not name a factory is resolved with the URL 
+	 *    RefAddr stage, then the builder stage, then the ranked factory stage.  
+	 * 2. A Reference that names a factory is resolved with the named factory 
+	 *    stage.  If no service supports the named factory, the builder stage
+	 *    is used.  
+	 * 3. Any other object is resolved with the builder stage, then the ranked
+	 *    factory stage.  
+	 * 
+	 * A stage either produces a result, which ends the resolution, or 
+	 * reports that it could not handle the object, in which case the next 
+	 * stage is tried.  If no stage produces a non-null result, the object 
+	 * passed in is returned, as specified by the javadoc for 
+	 * NamingManager.getObjectInstance() and DirectoryManager.getObjectInstance().  
+	 * 
+	 * A plan holds no per-call state, so the builder creates one plan for 
+	 * each shape and reuses it for every resolution.  The same plan handles
+	 * both ObjectFactory and DirObjectFactory resolutions.  
 	 *
 	 * 
-	 * @version $Revision: 9053 $
+	 * @version $Revision$
 	 */
-	private static class ReturnReferenceInfoObjectFactory implements ObjectFactory {
-		private final ObjectFactory m_objectFactory;
+	final class ResolutionPlan implements DirObjectFactory {
+		private final boolean m_requiresReference;
+		private final int[] m_stages;
 		
+		private ResolutionPlan(boolean requiresReference, int... stages) {
+			m_requiresReference = requiresReference;
+			m_stages = stages;
+		}
 		
-		public ReturnReferenceInfoObjectFactory(ObjectFactory objectFactory) {
-			m_objectFactory = objectFactory;
+		@Override
+		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment) throws Exception {
+			return resolve(refInfo, name, context, environment, null, false, null);
 		}
 		
 		@Override
-		public Object getObjectInstance(Object refInfo, Name name,
-				Context context, Hashtable environment) throws Exception {
-
-			if (m_objectFactory != null) {
-				Object resolvedObject = 
-					m_objectFactory.getObjectInstance(refInfo, name, 
-							                          context, environment);
-				if (resolvedObject != null) {
-					return resolvedObject;
-				}
-			}
-
-			// in all other cases return refInfo
-			return refInfo;
+		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment, Attributes attributes) throws Exception {
+			return resolve(refInfo, name, context, environment, attributes, true, null);
 		}
-	}
-	
-	
-	
-	/**
-	 *  Query the inner DirObjectFactory instance to see if that factory
-	 *  can resolve the object.  
-	 *  
-	 *  If no matching DirObjectFactory services exist that can resolve the object,
-	 *  return a specialized ObjectFactory implementation that
-	 *  merely returns the reference passed in. This allows the Factory 
-	 *  Manager to more closely comply with the behavior specified in the 
-	 *  javadoc for DirectoryManger.getObjectInstance()
-	 *
-	 * 
-	 * @version $Revision: 9053 $
-	 */
-	private static final class ReturnReferenceInfoDirObjectFactory extends ReturnReferenceInfoObjectFactory implements DirObjectFactory {
-		private final DirObjectFactory m_dirObjectFactory;
 		
+		/**
+		 * Resolves the given object against the provider services captured 
+		 * in the given snapshot.  
+		 */
+		Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment, ProviderSnapshot snapshot) throws Exception {
+			return resolve(refInfo, name, context, environment, null, false, snapshot);
+		}
 		
-		public ReturnReferenceInfoDirObjectFactory(DirObjectFactory dirObjectFactory) {
-			super(dirObjectFactory);
-			m_dirObjectFactory = dirObjectFactory;
+		/**
+		 * Resolves the given object with DirObjectFactory semantics, against 
+		 * the provider services captured in the given snapshot.  
+		 */
+		Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment, Attributes attributes, ProviderSnapshot snapshot) throws Exception {
+			return resolve(refInfo, name, context, environment, attributes, true, snapshot);
 		}
 		
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, 
-				                        Context context, Hashtable environment, Attributes attributes) throws Exception {
-			if (m_dirObjectFactory != null) {
-				Object resolvedObject = 
-					m_dirObjectFactory.getObjectInstance(refInfo, name, 
-							                          context, environment, attributes);
-				if (resolvedObject != null) {
-					return resolvedObject;
+		private Object resolve(Object refInfo, Name name, Context context, Hashtable environment, 
+				               Attributes attributes, boolean isDirResolution, ProviderSnapshot snapshot) throws Exception {
+			Object objectToResolve = refInfo;
+			if (m_requiresReference) {
+				if (refInfo == null) {
+					return null;
+				}
+				
+				objectToResolve = getObjectToResolve(refInfo);
+				if (!(objectToResolve instanceof Reference)) {
+					return refInfo;
 				}
 			}
-
+			
+			for (int i = 0; i < m_stages.length; i++) {
+				Object result = 
+					runStage(m_stages[i], objectToResolve, name, context, environment, 
+							 attributes, isDirResolution, snapshot);
+				if (result != UNRESOLVED) {
+					return (result != null) ? result : refInfo;
+				}
+			}
+			
 			// in all other cases return refInfo
 			return refInfo;
 		}
 	}
 	
 	
-	
-	
-
 	/**
-	 * Inner ObjectFactory implementation used to handle cases where a Reference
-	 * is specified, but the Reference does not indicate which ObjectFactory should be used
-	 * to resolve the object.  
-	 * 
-	 * This factory will dynamically attempt to use a URL context factory to 
-	 * resolve the object (if a Reference Address of type "URL" is detected), 
-	 * and will also consult the known ObjectFactoryBuilder services if no other 
-	 * way to resolve the reference exists.  
-	 *
+	 * Runs a single stage of a resolution plan.  
 	 * 
-	 * @version $Revision: 9053 $
+	 * @return the resolved object, or UNRESOLVED if this stage could not 
+	 *         handle the object and the next stage should be tried.  
 	 */
-	private final class NoFactoryNameSpecifiedObjectFactory implements ObjectFactory {
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment) throws Exception {
-			if(refInfo == null) {
-				return null;
-			}
-			
-			Object objectToResolve = getObjectToResolve(refInfo);
-			if(objectToResolve instanceof Reference) {
-				Reference reference = (Reference)objectToResolve;
-				Object resultFromURLContextFactories = 
-					getObjectFromURLContextFactoryFromReference(reference, environment);
-				if (resultFromURLContextFactories != null) {
-					return resultFromURLContextFactories;
-				}
-				
-				Object resultFromBuilders = resolveObjectUsingBuilders(objectToResolve, name, context, environment);
-				if(resultFromBuilders != null) {
-					return resultFromBuilders;
-				}
-				
-				Object resultFromObjectFactories = 
-					resolveObjectUsingObjectFactories(objectToResolve, name, context, environment);
-				
-				if(resultFromObjectFactories != null) {
-					return resultFromObjectFactories;
-				}
-				
-			}
-
-			return null;
-		}
-		
-	}
-	
-	private final class NoFactoryNameSpecifiedDirObjectFactory implements DirObjectFactory {
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment, Attributes attributes) throws Exception {
-			if(refInfo == null) {
-				return null;
-			}
-			
-			Object objectToResolve = getObjectToResolve(refInfo);
-			if(objectToResolve instanceof Reference) {
+	private Object runStage(int stage, Object objectToResolve, Name name, Context context, Hashtable environment, 
+			                Attributes attributes, boolean isDirResolution, ProviderSnapshot snapshot) throws Exception {
+		Object result;
+		switch (stage) {
+			case STAGE_URL_REF_ADDR:
+				result = getObjectFromURLContextFactoryFromReference((Reference)objectToResolve, environment, snapshot);
+				break;
+			case STAGE_BUILDERS:
+				result = isDirResolution ? resolveDirObjectUsingBuilders(objectToResolve, name, context, environment, attributes, snapshot)
+						                 : resolveObjectUsingBuilders(objectToResolve, name, context, environment, snapshot);
+				break;
+			case STAGE_NAMED_FACTORY:
+				// if a factory class name is specified, look through the list
+				// of known ObjectFactories, and try to find a service published
+				// that also supports the custom interface.
 				Reference reference = (Reference)objectToResolve;
-				Object resultFromURLContextFactories = 
-					getObjectFromURLContextFactoryFromReference(reference, environment);
-				if (resultFromURLContextFactories != null) {
-					return resultFromURLContextFactories;
-				}
-				
-				Object resultFromBuilders = resolveDirObjectUsingBuilders(objectToResolve, name, context, environment, attributes);
-				if(resultFromBuilders != null) {
-					return resultFromBuilders;
-				}
-				
-				Object resultFromDirObjectFactories = 
-					resolveObjectUsingDirObjectFactories(objectToResolve, name, context, environment, attributes);
-				if(resultFromDirObjectFactories != null) {
-					return resultFromDirObjectFactories;
+				Object factory = 
+					obtainFactoryService(reference.getFactoryClassName(), 
+							             isDirResolution ? getDirObjectFactories(snapshot) : getObjectFactories(snapshot));
+				if (factory == null) {
+					return UNRESOLVED;
 				}
-			}
-
-			return null;
-		}
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment) throws Exception {
-			// no-op for this DirObjectFactory
-			return null;
+				// the named factory is the only factory consulted for this Reference
+				return isDirResolution ? ((DirObjectFactory)factory).getObjectInstance(objectToResolve, name, context, environment, attributes)
+						               : ((ObjectFactory)factory).getObjectInstance(objectToResolve, name, context, environment);
+			case STAGE_RANKED_FACTORIES:
+				result = isDirResolution ? resolveObjectUsingDirObjectFactories(objectToResolve, name, context, environment, attributes, snapshot)
+						                 : resolveObjectUsingObjectFactories(objectToResolve, name, context, environment, snapshot);
+				break;
+			default:
+				throw new IllegalStateException("Unknown resolution stage " + stage);
 		}
 		
+		return (result != null) ? result : UNRESOLVED;
 	}
 	
 	
-	
 	/**
-	 * Inner ObjectFactory implementation used to handle cases where a Reference
-	 * is specified, and the Reference indicates which ObjectFactory should be used
-	 * to resolve the object.  
+	 * A view of the ranked JNDI provider services known to this builder.  
 	 * 
-	 * This factory will dynamically attempt to use locate the specified 
-	 * factory in the OSGi service registry, and will also consult the known 
-	 * ObjectFactoryBuilder services if no other way to resolve the reference 
-	 * exists.  
+	 * The services for each provider type are only queried and sorted the first 
+	 * time that type is needed, so a single resolution does no more work than 
+	 * querying the trackers directly.  A snapshot that is shared by several 
+	 * resolutions lets all of them use the same ranked list of services.  
 	 *
 	 * 
-	 * @version $Revision: 9053 $
+	 * @version $Revision$
 	 */
-	private final class FactoryNameSpecifiedObjectFactory implements ObjectFactory {
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment) throws Exception {
-			Object objectToResolve = getObjectToResolve(refInfo);
-			if(objectToResolve instanceof Reference) {
-				// if a factory class name is specified, look through the list
-				// of known ObjectFactories, and try to find a service published
-				// that also supports the custom interface.
-				Reference reference = (Reference)objectToResolve;
-				Object factory = 
-					obtainFactoryService(reference.getFactoryClassName(), m_objectFactoryServiceTracker);
-				if (factory != null) {
-					ObjectFactory objectFactory = (ObjectFactory)factory;
-					Object resolvedObject = 
-						objectFactory.getObjectInstance(objectToResolve, name, context, environment);
-					if(resolvedObject != null) {
-						return resolvedObject;
-					}
-				} else {
-					return resolveObjectUsingBuilders(objectToResolve, name, context, environment);					
-				}
-			}
-			
-			return null;
+	final class ProviderSnapshot {
+		private ServiceReference[] m_objectFactories;
+		private ServiceReference[] m_dirObjectFactories;
+		private ServiceReference[] m_objectFactoryBuilders;
+		private ServiceReference[] m_urlContextFactories;
+		
+		private ProviderSnapshot() {
 		}
 		
-	}
-	
-	private final class FactoryNameSpecifiedDirObjectFactory implements DirObjectFactory {
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment, Attributes attributes) throws Exception {
-			Object objectToResolve = getObjectToResolve(refInfo);
-			if(objectToResolve instanceof Reference) {
-				// if a factory class name is specified, look through the list
-				// of known ObjectFactories, and try to find a service published
-				// that also supports the custom interface.
-				Reference reference = (Reference)objectToResolve;
-				Object factory = 
-					obtainFactoryService(reference.getFactoryClassName(), m_dirObjectFactoryServiceTracker);
-				if (factory != null) {
-					DirObjectFactory dirObjectFactory = (DirObjectFactory)factory;
-					Object resolvedObject = 
-						dirObjectFactory.getObjectInstance(objectToResolve, name, context, environment, attributes);
-					if(resolvedObject != null) {
-						return resolvedObject;
-					}
-				} else {
-					return resolveDirObjectUsingBuilders(objectToResolve, name, context, environment, attributes);					
-				}
+		ServiceReference[] getObjectFactories() {
+			if (m_objectFactories == null) {
+				m_objectFactories = ServiceUtils.sortServiceReferences(m_objectFactoryServiceTracker);
 			}
-			
-			return null;
-		}
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment) throws Exception {
-			// always return null, since this DirObjectFactory is a wrapper type
-			return null;
+			return m_objectFactories;
 		}
 		
-	}
-	
-	
-	private class NoReferenceObjectFactory implements ObjectFactory {
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment) throws Exception {
-			// first query all known ObjectFactoryBuilder services to resolve this reference
-			Object resultFromBuilders = 
-				resolveObjectUsingBuilders(refInfo, name, context, environment);
-			
-			if(resultFromBuilders != null) {
-				return resultFromBuilders;
-			}
-			
-			// as a last resort, query all known ObjectFactory services to attempt to resolve this reference
-			Object resultFromObjectFactories = 
-				resolveObjectUsingObjectFactories(refInfo, name, context, environment);
-			
-			if(resultFromObjectFactories != null) {
-				return resultFromObjectFactories;
+		ServiceReference[] getDirObjectFactories() {
+			if (m_dirObjectFactories == null) {
+				m_dirObjectFactories = ServiceUtils.sortServiceReferences(m_dirObjectFactoryServiceTracker);
 			}
-			
-			return null;
+			return m_dirObjectFactories;
 		}
 		
-	}
-	
-	private class NoReferenceDirObjectFactory implements DirObjectFactory {
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment, Attributes attributes) throws Exception {
-			final Object resultFromBuilders = resolveDirObjectUsingBuilders(refInfo, name, context, environment, attributes);
-			if(resultFromBuilders != null) {
-				return resultFromBuilders;
-			}
-			
-			Object resultFromDirObjectFactories = 
-				resolveObjectUsingDirObjectFactories(refInfo, name, context, environment, attributes);
-			if(resultFromDirObjectFactories != null) {
-				return resultFromDirObjectFactories;
+		ServiceReference[] getObjectFactoryBuilders() {
+			if (m_objectFactoryBuilders == null) {
+				m_objectFactoryBuilders = ServiceUtils.sortServiceReferences(m_objectFactoryBuilderServiceTracker);
 			}
-			
-			return null;
-		}
-
-		@Override
-		public Object getObjectInstance(Object refInfo, Name name, Context context, Hashtable environment) throws Exception {
-			// no-op for this DirObjectFactory
-			return null;
+			return m_objectFactoryBuilders;
 		}
 		
+		ServiceReference[] getURLContextFactories() {
+			if (m_urlContextFactories == null) {
+				m_urlContextFactories = ServiceUtils.sortServiceReferences(m_urlContextFactoryServiceTracker);
+			}
+			return m_urlContextFactories;
+		}
 	}
 	
 	private static class DefaultBuilderSupportedInitialContextFactory implements BuilderSupportedInitialContextFactory {
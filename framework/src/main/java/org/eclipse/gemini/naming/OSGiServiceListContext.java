@@ -16,51 +16,85 @@
 package org.eclipse.gemini.naming;
 
 import java.lang.reflect.InvocationHandler;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.naming.Binding;
+import javax.naming.Name;
 import javax.naming.NameClassPair;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.NamingException;
 import javax.naming.OperationNotSupportedException;
+import javax.naming.event.EventContext;
+import javax.naming.event.NamespaceChangeListener;
+import javax.naming.event.NamingEvent;
+import javax.naming.event.NamingListener;
+import javax.naming.event.ObjectChangeListener;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 
-class OSGiServiceListContext extends NotSupportedContext {
+/**
+ * Context returned for "osgi:servicelist" lookups.  Each service is bound 
+ * under its service id.  
+ * 
+ * This context is also an EventContext.  Once a NamingListener is registered, 
+ * the context follows the service registry, so that list(), listBindings() 
+ * and lookup() reflect the services currently registered, and the 
+ * listeners are notified as services are added, modified and removed.  
+ * Membership is followed until the last listener is removed or the 
+ * context is closed.  
+ * 
+ * The Bindings included in NamingEvents do not include the service object, 
+ * the service can be obtained by a lookup() of the Binding's name.  Events 
+ * are delivered on the thread that delivers the OSGi service event, after 
+ * the lock of this context has been released.  
+ * 
+ * @version $Revision$
+ */
+class OSGiServiceListContext extends NotSupportedContext implements EventContext {
 
 	private static Logger logger = 
 		Logger.getLogger(OSGiServiceListContext.class.getName());
 	
 	private final BundleContext m_bundleContext;
 	
-	private final ServiceReference[] m_serviceReferences;
-	
 	private final OSGiURLParser m_urlParser;
 	
-	/* map of service ids (Long) to ServiceReferences */
-	private final Map m_mapOfServices = new HashMap(); 
+	/* the current services, and the index of service ids to ServiceReferences */
+	private volatile ServiceIdIndex m_indexOfServices; 
+	
+	/* the listeners, and the decision to follow the registry, are guarded by this context */
+	private final List<NamingListener> m_listOfNamingListeners = 
+		new ArrayList<NamingListener>();
+	
+	private final ServiceListener m_serviceListener = new MembershipListener();
+	
+	/* true while this context follows the service registry */
+	private boolean m_isTracking = false;
 	
 	OSGiServiceListContext(BundleContext bundleContext, ServiceReference[] serviceReferences, OSGiURLParser urlParser) {
 		super("This operation is not supported in an osgi:servicelist context");
 		m_bundleContext = bundleContext;
-		m_serviceReferences = serviceReferences;
 		m_urlParser = urlParser;
-		buildMapOfServices(m_mapOfServices, m_serviceReferences);
+		m_indexOfServices = new ServiceIdIndex(serviceReferences);
 	}
 	
 
 	@Override
-	public void close() throws NamingException {
-		// this operation is a no-op
+	public synchronized void close() throws NamingException {
+		m_listOfNamingListeners.clear();
+		stopTracking();
 	}
 
 
@@ -68,7 +102,7 @@ class OSGiServiceListContext extends NotSupportedContext {
 	public NamingEnumeration list(String name) throws NamingException {
 		if(name.equals("")) {
 			return new ListNamingEnumeration(m_bundleContext, 
-					                                     m_serviceReferences, m_urlParser.getServiceInterface());
+					                                     m_indexOfServices.getServiceReferences(), m_urlParser.getServiceInterface());
 		}
 		
 		throw new OperationNotSupportedException("This NamingEnumeration cannot support list() operations for anything other than the empty string");
@@ -79,7 +113,7 @@ class OSGiServiceListContext extends NotSupportedContext {
 	public NamingEnumeration listBindings(String name) throws NamingException {
 		if(name.equals("")) {
 			return new ListBindingsNamingEnumeration(m_bundleContext, 
-					                                 m_serviceReferences, 
+					                                 m_indexOfServices.getServiceReferences(), 
 					                                 m_urlParser);
 		}
 		
@@ -89,9 +123,14 @@ class OSGiServiceListContext extends NotSupportedContext {
 
 	@Override
 	public Object lookup(String name) throws NamingException {
-		Long serviceId = new Long(name);
-		if(m_mapOfServices.containsKey(serviceId)) {
-			ServiceReference serviceReference = (ServiceReference)m_mapOfServices.get(serviceId);
+		ServiceReference serviceReference = null;
+		try {
+			serviceReference = m_indexOfServices.get(Long.parseLong(name));
+		} catch (NumberFormatException numberFormatException) {
+			// names in this context are always service ids
+		}
+		
+		if(serviceReference != null) {
 			// create a proxy for this service, and return the proxy to handle
 			// service dynamics
 			ServiceProxyInfo proxyInfo =
@@ -109,6 +148,234 @@ class OSGiServiceListContext extends NotSupportedContext {
 	}
 	
 	
+	@Override
+	public void addNamingListener(Name target, int scope, NamingListener listener) throws NamingException {
+		addNamingListener(target.toString(), scope, listener);
+	}
+
+
+	@Override
+	public void addNamingListener(String target, int scope, NamingListener listener) throws NamingException {
+		if(!target.equals("")) {
+			throw new OperationNotSupportedException("This context only supports NamingListeners for the empty string");
+		}
+		
+		final PendingEvents pendingEvents;
+		synchronized (this) {
+			m_listOfNamingListeners.add(listener);
+			try {
+				pendingEvents = startTracking();
+			} catch (NamingException namingException) {
+				m_listOfNamingListeners.remove(listener);
+				if(m_listOfNamingListeners.isEmpty()) {
+					stopTracking();
+				}
+				throw namingException;
+			}
+		}
+		pendingEvents.fire();
+	}
+
+
+	@Override
+	public synchronized void removeNamingListener(NamingListener listener) throws NamingException {
+		m_listOfNamingListeners.remove(listener);
+		if(m_listOfNamingListeners.isEmpty()) {
+			stopTracking();
+		}
+	}
+
+
+	@Override
+	public boolean targetMustExist() throws NamingException {
+		return true;
+	}
+	
+	
+	/**
+	 * Starts following the service registry, if this context does not 
+	 * already.  Must be called while holding the lock of this context.  
+	 * 
+	 * @return the events for the services that changed since this context 
+	 *         was created, to fire once the lock is released
+	 */
+	private PendingEvents startTracking() throws NamingException {
+		final PendingEvents pendingEvents = new PendingEvents();
+		if(m_isTracking) {
+			return pendingEvents;
+		}
+		
+		final String serviceInterface = m_urlParser.getServiceInterface();
+		try {
+			String filter = "(" + Constants.OBJECTCLASS + "=" + serviceInterface + ")";
+			if(m_urlParser.hasFilter()) {
+				filter = "(&" + filter + m_urlParser.getFilter() + ")";
+			}
+			m_bundleContext.addServiceListener(m_serviceListener, filter);
+			m_isTracking = true;
+			
+			// services may have changed since this context was created
+			ServiceReference[] serviceReferences = 
+				m_bundleContext.getServiceReferences(serviceInterface, m_urlParser.getFilter());
+			synchronizeMembership(serviceReferences == null ? new ServiceReference[0] : serviceReferences, 
+					              pendingEvents);
+			return pendingEvents;
+		} catch (InvalidSyntaxException invalidSyntaxException) {
+			NamingException namingException = 
+				new NamingException("Error occurred while listening for services of this osgi:servicelist context");
+			namingException.initCause(invalidSyntaxException);
+			throw namingException;
+		}
+	}
+	
+	
+	/**
+	 * Stops following the service registry.  Must be called while holding 
+	 * the lock of this context.  
+	 */
+	private void stopTracking() {
+		if(m_isTracking) {
+			m_isTracking = false;
+			try {
+				m_bundleContext.removeServiceListener(m_serviceListener);
+			} catch (IllegalStateException illegalStateException) {
+				// the client bundle has already stopped, its listeners are removed
+				logger.log(Level.FINEST, 
+						   "BundleContext no longer valid while removing the servicelist listener", 
+						   illegalStateException);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Replaces the current services with the given services, and records an 
+	 * event for every service that was added or removed.  
+	 */
+	private void synchronizeMembership(ServiceReference[] serviceReferences, PendingEvents pendingEvents) {
+		final ServiceIdIndex oldIndex = m_indexOfServices;
+		final ServiceIdIndex newIndex = 
+			new ServiceIdIndex(ServiceUtils.sortServiceReferences(serviceReferences));
+		m_indexOfServices = newIndex;
+		
+		ServiceReference[] oldServiceReferences = oldIndex.getServiceReferences();
+		for(int i = 0; i < oldServiceReferences.length; i++) {
+			if(newIndex.get(ServiceIdIndex.getServiceId(oldServiceReferences[i])) == null) {
+				pendingEvents.add(NamingEvent.OBJECT_REMOVED, oldServiceReferences[i]);
+			}
+		}
+		for(int i = 0; i < serviceReferences.length; i++) {
+			if(oldIndex.get(ServiceIdIndex.getServiceId(serviceReferences[i])) == null) {
+				pendingEvents.add(NamingEvent.OBJECT_ADDED, serviceReferences[i]);
+			}
+		}
+	}
+	
+	
+	private void serviceChanged(ServiceEvent event) {
+		final PendingEvents pendingEvents = new PendingEvents();
+		synchronized (this) {
+			if(m_isTracking) {
+				updateMembership(event, pendingEvents);
+			}
+		}
+		pendingEvents.fire();
+	}
+	
+	
+	private void updateMembership(ServiceEvent event, PendingEvents pendingEvents) {
+		final ServiceReference serviceReference = event.getServiceReference();
+		final boolean isMember = 
+			(m_indexOfServices.get(ServiceIdIndex.getServiceId(serviceReference)) != null);
+		switch (event.getType()) {
+			case ServiceEvent.REGISTERED :
+			case ServiceEvent.MODIFIED :
+				if(isMember) {
+					pendingEvents.add(NamingEvent.OBJECT_CHANGED, serviceReference);
+				} else {
+					updateMembership(serviceReference, true);
+					pendingEvents.add(NamingEvent.OBJECT_ADDED, serviceReference);
+				}
+				break;
+			case ServiceEvent.MODIFIED_ENDMATCH :
+			case ServiceEvent.UNREGISTERING :
+				if(isMember) {
+					updateMembership(serviceReference, false);
+					pendingEvents.add(NamingEvent.OBJECT_REMOVED, serviceReference);
+				}
+				break;
+			default :
+				break;
+		}
+	}
+	
+	
+	private void updateMembership(ServiceReference serviceReference, boolean isAdded) {
+		final ServiceReference[] oldServiceReferences = m_indexOfServices.getServiceReferences();
+		final List<ServiceReference> listOfServiceReferences = 
+			new LinkedList<ServiceReference>();
+		for(int i = 0; i < oldServiceReferences.length; i++) {
+			if(!oldServiceReferences[i].equals(serviceReference)) {
+				listOfServiceReferences.add(oldServiceReferences[i]);
+			}
+		}
+		if(isAdded) {
+			listOfServiceReferences.add(serviceReference);
+		}
+		
+		final ServiceReference[] newServiceReferences = 
+			listOfServiceReferences.toArray(new ServiceReference[listOfServiceReferences.size()]);
+		m_indexOfServices = 
+			new ServiceIdIndex(ServiceUtils.sortServiceReferences(newServiceReferences));
+	}
+	
+	
+	/**
+	 * The NamingEvents created while holding the lock of this context, with 
+	 * the listeners registered at that time.  The events are fired once the 
+	 * lock is released, so that listeners never run while holding it.  
+	 */
+	private final class PendingEvents {
+		private final List<NamingEvent> m_listOfEvents = new LinkedList<NamingEvent>();
+		private NamingListener[] m_listeners;
+		
+		/* must be called while holding the lock of this context */
+		void add(int eventType, ServiceReference serviceReference) {
+			final Binding binding = 
+				new Binding(String.valueOf(ServiceIdIndex.getServiceId(serviceReference)), 
+						    m_urlParser.getServiceInterface(), 
+						    null);
+			final Binding newBinding = (eventType == NamingEvent.OBJECT_REMOVED) ? null : binding;
+			final Binding oldBinding = (eventType == NamingEvent.OBJECT_ADDED) ? null : binding;
+			m_listOfEvents.add(new NamingEvent(OSGiServiceListContext.this, eventType, newBinding, oldBinding, null));
+			if(m_listeners == null) {
+				m_listeners = 
+					m_listOfNamingListeners.toArray(new NamingListener[m_listOfNamingListeners.size()]);
+			}
+		}
+		
+		/* must be called without holding the lock of this context */
+		void fire() {
+			for(NamingEvent namingEvent : m_listOfEvents) {
+				for(int i = 0; i < m_listeners.length; i++) {
+					// only dispatch to listeners that support this type of event
+					boolean isSupported = (namingEvent.getType() == NamingEvent.OBJECT_CHANGED) ? 
+							(m_listeners[i] instanceof ObjectChangeListener) : (m_listeners[i] instanceof NamespaceChangeListener);
+					if(isSupported) {
+						try {
+							namingEvent.dispatch(m_listeners[i]);
+						} catch (RuntimeException runtimeException) {
+							logger.log(Level.WARNING, 
+									   "NamingListener failed while handling an osgi:servicelist event", 
+									   runtimeException);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	
 	private static ServiceProxyInfo createNoRetryProxiedService(BundleContext bundleContext, OSGiURLParser urlParser, final ServiceReference serviceReference) {
 		return ReflectionUtils.getProxyForSingleService(bundleContext, 
 				                                        urlParser, 
@@ -118,14 +385,48 @@ class OSGiServiceListContext extends NotSupportedContext {
 
 
 	/**
-	 * Convenience method for building a lookup map of service id's to services.  
-	 * @param mapOfServices
-	 * @param serviceReferences
+	 * Lookup index of service ids to services.  The service ids are kept in a 
+	 * sorted primitive array, so that lookups do not box the service id.  
+	 * 
+	 * @version $Revision$
 	 */
-	private static void buildMapOfServices(Map mapOfServices, ServiceReference[] serviceReferences) {
-		for(int i = 0; i < serviceReferences.length; i++) {
-			Long serviceId = (Long)serviceReferences[i].getProperty("service.id");
-			mapOfServices.put(serviceId, serviceReferences[i]);
+	private static class ServiceIdIndex {
+		private final long[] m_serviceIds;
+		private final ServiceReference[] m_serviceReferences;
+		/* the indexed ServiceReferences, in their original order */
+		private final ServiceReference[] m_orderedServiceReferences;
+		
+		ServiceIdIndex(ServiceReference[] serviceReferences) {
+			m_orderedServiceReferences = serviceReferences;
+			m_serviceIds = new long[serviceReferences.length];
+			for(int i = 0; i < serviceReferences.length; i++) {
+				m_serviceIds[i] = getServiceId(serviceReferences[i]);
+			}
+			Arrays.sort(m_serviceIds);
+			
+			// service ids are unique, so each reference has a single slot
+			m_serviceReferences = new ServiceReference[serviceReferences.length];
+			for(int i = 0; i < serviceReferences.length; i++) {
+				int index = Arrays.binarySearch(m_serviceIds, getServiceId(serviceReferences[i]));
+				m_serviceReferences[index] = serviceReferences[i];
+			}
+		}
+		
+		ServiceReference get(long serviceId) {
+			int index = Arrays.binarySearch(m_serviceIds, serviceId);
+			if(index < 0) {
+				return null;
+			}
+			
+			return m_serviceReferences[index];
+		}
+		
+		ServiceReference[] getServiceReferences() {
+			return m_orderedServiceReferences;
+		}
+		
+		static long getServiceId(ServiceReference serviceReference) {
+			return ((Long)serviceReference.getProperty(Constants.SERVICE_ID)).longValue();
 		}
 	}
 	
@@ -160,7 +461,8 @@ class OSGiServiceListContext extends NotSupportedContext {
 	 * This enumeration will contain a collection of javax.naming.Binding
 	 * objects.  
 	 * 
-	 * The Binding for each service reference will contain:
+	 * The Binding for each service reference is created the first time
+	 * the caller reads it, and will contain:
 	 * 
 	 *    1. The service ID name
 	 *    2. The service interface type (if specified)
@@ -168,7 +470,7 @@ class OSGiServiceListContext extends NotSupportedContext {
 	 *    
 	 * The responsibility for cleaning up the services obtained by 
 	 * this NamingEnumeration lies with the enumeration itself.  The close() 
-	 * implementation must unget each service reference.  
+	 * implementation must unget each service that was read.  
 	 * 
 	 * The caller of the NamingEnumeration is responsible for calling close()
 	 * when the caller is finished with the services in the enumeration.  
@@ -180,30 +482,43 @@ class OSGiServiceListContext extends NotSupportedContext {
 		
 		private final List m_listOfHandlers = new LinkedList();
 		
+		private final OSGiURLParser m_urlParser;
+		
 		ListBindingsNamingEnumeration(BundleContext bundleContext, ServiceReference[] serviceReferences, OSGiURLParser urlParser) {
 			super(bundleContext, serviceReferences, urlParser.getServiceInterface());
+			m_urlParser = urlParser;
 			
-			// setup a Binding object for each ServiceReference
+			// the Binding objects are created as the caller reads them
 			m_nameClassPairs = new Binding[m_serviceReferences.length];
-			for(int i = 0; i < m_serviceReferences.length; i++) {
-				Long serviceId = (Long)m_serviceReferences[i].getProperty(Constants.SERVICE_ID);
-				final ServiceReference serviceReference = m_serviceReferences[i];
+		}
+		
+		@Override
+		protected NameClassPair getNameClassPair(int index) {
+			if(m_nameClassPairs[index] == null) {
+				Long serviceId = (Long)m_serviceReferences[index].getProperty(Constants.SERVICE_ID);
 				ServiceProxyInfo proxyInfo = 
-					createNoRetryProxiedService(bundleContext, urlParser, serviceReference);
-				m_listOfHandlers.add(proxyInfo.getHandler());
-				m_nameClassPairs[i] = 
+					createNoRetryProxiedService(m_bundleContext, m_urlParser, m_serviceReferences[index]);
+				if(proxyInfo.getHandler() != null) {
+					m_listOfHandlers.add(proxyInfo.getHandler());
+				}
+				m_nameClassPairs[index] = 
 					new Binding(serviceId.toString(), 
 							    m_interfaceName, 
 							    proxyInfo.getService());
 			}
+			
+			return m_nameClassPairs[index];
 		}
 
 		@Override
 		public void close() throws NamingException {
 			super.close();
 			
+			// only the services that were read have been obtained
 			for(int i = 0; i < m_serviceReferences.length; i++) {
-				m_bundleContext.ungetService(m_serviceReferences[i]);
+				if(m_nameClassPairs[i] != null) {
+					m_bundleContext.ungetService(m_serviceReferences[i]);
+				}
 			}
 			
 			Iterator iterator = m_listOfHandlers.iterator();
@@ -224,7 +539,7 @@ class OSGiServiceListContext extends NotSupportedContext {
 
 		@Override
 		protected boolean obtainService() {
-			m_serviceTracker.close();
+			closeServiceTracker();
 			// always return false, since servicelist proxies must not rebind to a service
 			return false;
 		}
@@ -237,5 +552,15 @@ class OSGiServiceListContext extends NotSupportedContext {
 		}
 		
 	}
+	
+	/**
+	 * ServiceListener that keeps the membership of this context current.  
+	 */
+	private class MembershipListener implements ServiceListener {
+		@Override
+		public void serviceChanged(ServiceEvent event) {
+			OSGiServiceListContext.this.serviceChanged(event);
+		}
+	}
 
 }
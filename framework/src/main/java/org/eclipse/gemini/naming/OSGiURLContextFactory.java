@@ -17,7 +17,12 @@ package org.eclipse.gemini.naming;
 
 import java.security.AccessControlException;
 import java.security.AccessController;
+import java.util.Collections;
 import java.util.Hashtable;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,14 +49,75 @@ class OSGiURLContextFactory implements ObjectFactory {
 	private static final Logger logger = Logger.getLogger(OSGiURLContextFactory.class.getName());
 	
 	private final BundleContext	m_bundleContext;
+	
+	/* identical concurrent service lookups from this bundle share one computation */
+	private final SingleFlight<String, Object> m_serviceLookups = 
+		new SingleFlight<String, Object>();
+
+	/* permission check for "osgi:framework/bundleContext" lookups from this bundle */
+	private final BundleContextAccess m_bundleContextAccess;
+	
+	/* URLs that did not resolve to a service, null if misses are not cached */
+	private final ServiceLookupMissCache m_missCache;
+	
+	private final boolean m_useStacklessExceptions;
+	
+	/* creates the InvocationHandlers for "osgi:service" proxies */
+	private final InvocationHandlerFactory m_handlerFactory;
+	
+	/* DirectService handles held by this bundle, released when the bundle releases this factory */
+	private final Set<DirectServiceImpl> m_directServices = 
+		Collections.newSetFromMap(new ConcurrentHashMap<DirectServiceImpl, Boolean>());
 
 	public OSGiURLContextFactory(BundleContext bundleContext) {
+		this(bundleContext, false, false, null);
+	}
+	
+	/**
+	 * @param bundleContext the BundleContext of the client bundle
+	 * @param cacheMisses true if URLs that do not resolve to a service 
+	 *                    should be cached until a matching service is registered
+	 * @param useStacklessExceptions true if a missing service should be reported 
+	 *                               with a NameNotFoundException that has no
+	 *                               stack trace.  
+	 * @param rebindExecutor the Executor used to rebind service proxies as soon
+	 *                       as their backing service unregisters, or null if 
+	 *                       proxies should only rebind on the next call
+	 */
+	OSGiURLContextFactory(BundleContext bundleContext, boolean cacheMisses, boolean useStacklessExceptions, Executor rebindExecutor) {
 		m_bundleContext = bundleContext;
+		m_bundleContextAccess = new BundleContextAccess(bundleContext);
+		m_missCache = cacheMisses ? new ServiceLookupMissCache(bundleContext) : null;
+		m_useStacklessExceptions = useStacklessExceptions;
+		m_handlerFactory = ReflectionUtils.createRetryInvocationHandlerFactory(rebindExecutor);
 	}
 
 	@Override
 	public Object getObjectInstance(Object obj, Name name, Context nameCtx, Hashtable environment) throws Exception {
-		return new OSGiURLContext(m_bundleContext);
+		final Set<DirectServiceImpl> directServices = 
+			isDirectServiceLookup(environment) ? m_directServices : null;
+		return new OSGiURLContext(m_bundleContext, m_serviceLookups, m_bundleContextAccess, m_missCache, m_useStacklessExceptions, m_handlerFactory, directServices);
+	}
+	
+	private static boolean isDirectServiceLookup(Hashtable environment) {
+		if (environment == null) {
+			return false;
+		}
+		
+		final Object directServices = 
+			environment.get(GeminiNamingConstants.OSGI_URL_DIRECT_SERVICES);
+		return Boolean.TRUE.equals(directServices) || "true".equals(directServices);
+	}
+	
+	/**
+	 * Releases the resources held for the client bundle.  
+	 */
+	void close() {
+		if (m_missCache != null) {
+			m_missCache.close();
+		}
+		
+		DirectServiceImpl.releaseAll(m_directServices);
 	}
 
 	/**
@@ -64,10 +130,29 @@ class OSGiURLContextFactory implements ObjectFactory {
 	private static class OSGiURLContext extends NotSupportedContext {
 
 		private final BundleContext	m_bundleContext;
+		
+		private final SingleFlight<String, Object> m_serviceLookups;
+		
+		private final BundleContextAccess m_bundleContextAccess;
+		
+		private final ServiceLookupMissCache m_missCache;
+		
+		private final boolean m_useStacklessExceptions;
+		
+		private final InvocationHandlerFactory m_handlerFactory;
+		
+		/* handles of the client bundle, null if services are returned as proxies */
+		private final Set<DirectServiceImpl> m_directServices;
 
-		public OSGiURLContext(BundleContext bundleContext) {
+		public OSGiURLContext(BundleContext bundleContext, SingleFlight<String, Object> serviceLookups, BundleContextAccess bundleContextAccess, ServiceLookupMissCache missCache, boolean useStacklessExceptions, InvocationHandlerFactory handlerFactory, Set<DirectServiceImpl> directServices) {
 			super("This operation is not supported by the OSGi URL Context");
 			m_bundleContext = bundleContext;
+			m_serviceLookups = serviceLookups;
+			m_bundleContextAccess = bundleContextAccess;
+			m_missCache = missCache;
+			m_useStacklessExceptions = useStacklessExceptions;
+			m_handlerFactory = handlerFactory;
+			m_directServices = directServices;
 		}
 		
 
@@ -77,23 +162,25 @@ class OSGiURLContextFactory implements ObjectFactory {
 			try {
 				if(osgiURL.equals(OSGI_BUNDLE_CONTEXT_LOOKUP)) {
 					// return the caller's BundleContext
-					AdminPermission adminPermission = 
-						new AdminPermission(m_bundleContext.getBundle(), AdminPermission.CONTEXT);
-					
-					try {
-						AccessController.checkPermission(adminPermission);
-						return m_bundleContext;
-					} catch (AccessControlException accessControlException) {
-						NamingException namingException = new NameNotFoundException("BundleContext not available, caller does not have the correct permission.");
-						namingException.setRootCause(accessControlException);
-						throw namingException;
-					}
-					
+					return m_bundleContextAccess.getBundleContext();
 				}
 				
-				Object requestedService = obtainService(osgiURL);
-				if (requestedService != null) {
-					return requestedService;
+				if (m_missCache == null) {
+					Object requestedService = obtainRequestedService(osgiURL);
+					if (requestedService != null) {
+						return requestedService;
+					}
+				} else {
+					// a URL that is known to miss is not searched for again
+					if (m_missCache.getMiss(osgiURL) == null) {
+						final long generation = m_missCache.beginLookup();
+						Object requestedService = obtainRequestedService(osgiURL);
+						if (requestedService != null) {
+							return requestedService;
+						}
+						
+						m_missCache.recordMiss(osgiURL, generation);
+					}
 				}
 			}
 			catch (InvalidSyntaxException e) {
@@ -103,10 +190,74 @@ class OSGiURLContextFactory implements ObjectFactory {
 				throw namingException;
 			}
 
-			throw new NameNotFoundException(
-					"The OSGi service referred to by the URL = "
-							+ osgiURL
-							+ " could not be located in the OSGi Service Registry");
+			throw createNotFoundException(osgiURL);
+		}
+		
+		
+		private NameNotFoundException createNotFoundException(String osgiURL) {
+			final String message = "The OSGi service referred to by the URL = "
+				+ osgiURL
+				+ " could not be located in the OSGi Service Registry";
+			if (m_useStacklessExceptions) {
+				return new StacklessNameNotFoundException(message);
+			}
+			
+			return new NameNotFoundException(message);
+		}
+		
+
+		/**
+		 * Obtain the service requested in the "osgi" URL.  A DirectService handle
+		 * or a servicelist Context must be released by its caller, so these 
+		 * lookups are never shared.  
+		 */
+		private Object obtainRequestedService(String osgiURL) 
+				throws InvalidSyntaxException, NamingException {
+			if ((m_directServices != null) || OSGiURLParser.isServiceListURL(osgiURL)) {
+				return obtainService(osgiURL);
+			}
+			
+			return obtainSharedService(osgiURL);
+		}
+		
+		
+		/**
+		 * Obtain the service requested in the "osgi" URL, sharing the result 
+		 * with any identical lookup that is already in progress for this bundle.  
+		 * 
+		 * @param osgiURL the URL for the OSGi service requested
+		 * @return the OSGi Service requested, or null if the service cannot be
+		 *         found
+		 * @throws InvalidSyntaxException if an error occurs while parsing the
+		 *         OSGi filer (if specified)
+		 * @throws NamingException if an error occurs while waiting for an 
+		 *         identical lookup
+		 */
+		private Object obtainSharedService(final String osgiURL) 
+				throws InvalidSyntaxException, NamingException {
+			try {
+				return m_serviceLookups.execute(osgiURL, new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return obtainService(osgiURL);
+					}
+				});
+			}
+			catch (InvalidSyntaxException invalidSyntaxException) {
+				throw invalidSyntaxException;
+			}
+			catch (NamingException namingException) {
+				throw namingException;
+			}
+			catch (RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			catch (Exception exception) {
+				NamingException namingException = 
+					new NamingException("Error occurred while obtaining the OSGi service");
+				namingException.initCause(exception);
+				throw namingException;
+			}
 		}
 		
 
@@ -137,7 +288,7 @@ class OSGiURLContextFactory implements ObjectFactory {
 			return getService(m_bundleContext, urlParser);
 		}
 
-		private static Object getService(BundleContext bundleContext, OSGiURLParser urlParser) throws InvalidSyntaxException {
+		private Object getService(BundleContext bundleContext, OSGiURLParser urlParser) throws InvalidSyntaxException {
 			ServiceReference[] serviceReferences = 
 				bundleContext.getServiceReferences(urlParser.getServiceInterface(), 
 						                           urlParser.getFilter());
@@ -149,8 +300,7 @@ class OSGiURLContextFactory implements ObjectFactory {
 					return new OSGiServiceListContext(bundleContext, sortedServiceReferences, urlParser);
 				}
 				else {
-					ServiceProxyInfo proxyInfo = ReflectionUtils.getProxyForSingleService(bundleContext, urlParser, sortedServiceReferences[0]);
-					return proxyInfo.getService();
+					return getSingleService(bundleContext, urlParser, sortedServiceReferences);
 				}
 			}
 			else {
@@ -162,15 +312,91 @@ class OSGiURLContextFactory implements ObjectFactory {
 				if (serviceReferencesByName != null) {
 					final ServiceReference[] sortedServiceReferences = 
 						ServiceUtils.sortServiceReferences(serviceReferencesByName);
-					ServiceProxyInfo proxyInfo = 
-						ReflectionUtils.getProxyForSingleService(bundleContext, urlParser, sortedServiceReferences[0]);
-					return proxyInfo.getService();
+					return getSingleService(bundleContext, urlParser, sortedServiceReferences);
 				}
 			}
 
 			return null;
 		}
+		
+		private Object getSingleService(BundleContext bundleContext, OSGiURLParser urlParser, ServiceReference[] sortedServiceReferences) {
+			if (m_directServices == null) {
+				ServiceProxyInfo proxyInfo = 
+					ReflectionUtils.getProxyForSingleService(bundleContext, urlParser, sortedServiceReferences[0], m_handlerFactory);
+				return proxyInfo.getService();
+			}
+			
+			// return the service object itself, along with a handle to release it
+			for (int i = 0; i < sortedServiceReferences.length; i++) {
+				DirectServiceImpl directService = 
+					new DirectServiceImpl(bundleContext, sortedServiceReferences[i]);
+				if (directService.open()) {
+					directService.addOwner(m_directServices);
+					return directService;
+				}
+			}
+			
+			return null;
+		}
+	
+	}
 	
+	
+	/**
+	 * Checks the AdminPermission required to look up the caller's BundleContext.  
+	 * 
+	 * One instance is shared by all the contexts created for a bundle, so the 
+	 * permission is only built once.  The permission is checked on every 
+	 * lookup, since each caller may run with a different AccessControlContext.  
+	 */
+	private static class BundleContextAccess {
+		private final BundleContext m_bundleContext;
+		
+		/* built on first use, building it more than once is harmless */
+		private volatile AdminPermission m_adminPermission;
+		
+		BundleContextAccess(BundleContext bundleContext) {
+			m_bundleContext = bundleContext;
+		}
+		
+		BundleContext getBundleContext() throws NamingException {
+			try {
+				AccessController.checkPermission(getAdminPermission());
+				return m_bundleContext;
+			} catch (AccessControlException accessControlException) {
+				NamingException namingException = new NameNotFoundException("BundleContext not available, caller does not have the correct permission.");
+				namingException.setRootCause(accessControlException);
+				throw namingException;
+			}
+		}
+		
+		private AdminPermission getAdminPermission() {
+			AdminPermission adminPermission = m_adminPermission;
+			if (adminPermission == null) {
+				adminPermission = 
+					new AdminPermission(m_bundleContext.getBundle(), AdminPermission.CONTEXT);
+				m_adminPermission = adminPermission;
+			}
+			return adminPermission;
+		}
 	}
 	
+	
+	/**
+	 * A NameNotFoundException that does not capture a stack trace.  Used to report 
+	 * missing services to callers that probe for optional services.  
+	 */
+	private static class StacklessNameNotFoundException extends NameNotFoundException {
+		
+		private static final long serialVersionUID = 1L;
+
+		StacklessNameNotFoundException(String explanation) {
+			super(explanation);
+		}
+		
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
+	}
 }
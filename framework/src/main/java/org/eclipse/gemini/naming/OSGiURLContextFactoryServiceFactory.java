@@ -15,20 +15,40 @@
 
 package org.eclipse.gemini.naming;
 
+import java.util.concurrent.Executor;
+
 import org.osgi.framework.Bundle;
 import org.osgi.framework.ServiceFactory;
 import org.osgi.framework.ServiceRegistration;
 
 class OSGiURLContextFactoryServiceFactory implements ServiceFactory {
 
+	private final boolean m_cacheMisses;
+	
+	private final boolean m_useStacklessExceptions;
+	
+	/* null if service proxies only rebind on the next call */
+	private final Executor m_rebindExecutor;
+	
+	OSGiURLContextFactoryServiceFactory() {
+		this(false, false, null);
+	}
+	
+	OSGiURLContextFactoryServiceFactory(boolean cacheMisses, boolean useStacklessExceptions, Executor rebindExecutor) {
+		m_cacheMisses = cacheMisses;
+		m_useStacklessExceptions = useStacklessExceptions;
+		m_rebindExecutor = rebindExecutor;
+	}
+	
 	@Override
 	public Object getService(Bundle bundle, ServiceRegistration registration) {
-		return new OSGiURLContextFactory(bundle.getBundleContext());
+		return new OSGiURLContextFactory(bundle.getBundleContext(), m_cacheMisses, m_useStacklessExceptions, m_rebindExecutor);
 	}
 
 	@Override
 	public void ungetService(Bundle bundle, ServiceRegistration registration,
 			Object service) {
+		((OSGiURLContextFactory)service).close();
 	}
 
 }
@@ -72,6 +72,13 @@ class OSGiURLParser {
 		checkParserState();
 		return m_isServiceList;
 	}
+	
+	/**
+	 * Checks the URL scheme without parsing the rest of the URL.  
+	 */
+	static boolean isServiceListURL(String osgiURL) {
+		return osgiURL.startsWith(OSGI_SERVICE_LIST_PREFIX);
+	}
 
 	private void checkParserState() {
 		if (!m_parsingCompleted)
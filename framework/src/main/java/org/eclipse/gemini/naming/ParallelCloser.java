@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+/**
+ * Closes Contexts and context managers in parallel, and waits for them 
+ * up to a deadline.  
+ * 
+ * At most {@link #MAX_HELPER_TASKS} tasks are submitted to the Executor, 
+ * and the calling thread closes items as well.  Closing therefore makes 
+ * progress when the Executor is busy or shut down, and a close that 
+ * closes further items on the same Executor cannot starve it.  Items that 
+ * are still pending at the deadline are closed in the background by the 
+ * helper tasks.  If the Executor accepted no helper task, a final task is 
+ * submitted to close them; if there is no Executor, or it rejects that task 
+ * too, the calling thread closes them after the deadline.  An item that the 
+ * calling thread has started to close is not abandoned at the deadline.  
+ * 
+ * @version $Revision$
+ */
+class ParallelCloser {
+	
+	private static final Logger logger = Logger.getLogger(ParallelCloser.class.getName());
+	
+	/* upper bound on the number of Executor threads used by one close */
+	static final int MAX_HELPER_TASKS = 8;
+	
+	/* private constructor to disallow creation of this class */
+	private ParallelCloser() {}
+	
+	
+	/**
+	 * Closes the given Contexts.  
+	 * 
+	 * @param contexts the Contexts to close
+	 * @param executor the Executor used to close Contexts in parallel, or 
+	 *                 null to close them in the calling thread
+	 * @param timeout the time to wait, in milliseconds, or 0 to wait 
+	 *                until all the Contexts are closed
+	 * @return true if all the Contexts were closed before the deadline
+	 */
+	static boolean closeContexts(Collection<Context> contexts, Executor executor, long timeout) {
+		Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		for (final Context context : contexts) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						context.close();
+					} catch (NamingException e) {
+						logger.log(
+								Level.INFO,
+								"NamingException occurred while trying to close an existing JNDI Context",
+								e);
+					}
+				}
+			});
+		}
+		
+		return runAll(tasks, executor, timeout);
+	}
+	
+	
+	/**
+	 * Closes the given context managers, along with the Contexts they track.  
+	 * 
+	 * @param contextManagers the context managers to close
+	 * @param executor the Executor used to close the managers in parallel, 
+	 *                 or null to close them in the calling thread
+	 * @param timeout the time to wait, in milliseconds, or 0 to wait 
+	 *                until all the managers are closed
+	 * @return true if all the managers were closed before the deadline
+	 */
+	static boolean closeContextManagers(List<CloseableContextManager> contextManagers, Executor executor, long timeout) {
+		Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		for (final CloseableContextManager contextManager : contextManagers) {
+			tasks.add(new Runnable() {
+				@Override
+				public void run() {
+					contextManager.close();
+				}
+			});
+		}
+		
+		return runAll(tasks, executor, timeout);
+	}
+	
+	
+	private static boolean runAll(final Queue<Runnable> tasks, Executor executor, long timeout) {
+		final int numberOfTasks = tasks.size();
+		if (numberOfTasks == 0) {
+			return true;
+		}
+		
+		final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+		final CountDownLatch completedTasks = new CountDownLatch(numberOfTasks);
+		final Runnable worker = new Runnable() {
+			@Override
+			public void run() {
+				runTasks(tasks, completedTasks, false, 0);
+			}
+		};
+		
+		// the calling thread runs tasks too, so one less helper is needed
+		final int numberOfHelpers = Math.min(numberOfTasks - 1, MAX_HELPER_TASKS);
+		int numberOfAcceptedHelpers = 0;
+		while ((numberOfAcceptedHelpers < numberOfHelpers) && submit(worker, executor)) {
+			numberOfAcceptedHelpers++;
+		}
+		
+		runTasks(tasks, completedTasks, (timeout > 0), deadline);
+		
+		if ((numberOfAcceptedHelpers == 0) && !tasks.isEmpty() && !submit(worker, executor)) {
+			// no task is left to close the remaining items in the background
+			logger.log(Level.WARNING, 
+					   tasks.size() + " of " + numberOfTasks + " JNDI resources were not closed within " + timeout + " ms, closing them in the calling thread");
+			runTasks(tasks, completedTasks, false, 0);
+			return false;
+		}
+		
+		try {
+			if (timeout <= 0) {
+				completedTasks.await();
+				return true;
+			}
+			
+			if (completedTasks.await(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return true;
+			}
+		} catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+		}
+		
+		logger.log(Level.WARNING, 
+				   completedTasks.getCount() + " of " + numberOfTasks + " JNDI resources were not closed within " + timeout + " ms, they will be closed in the background");
+		return false;
+	}
+	
+	
+	/**
+	 * @return false if there is no Executor, or if it rejected the task
+	 */
+	private static boolean submit(Runnable task, Executor executor) {
+		if (executor == null) {
+			return false;
+		}
+		
+		try {
+			executor.execute(task);
+			return true;
+		} catch (RejectedExecutionException rejectedExecutionException) {
+			logger.log(Level.FINE, 
+					   "Parallel close was rejected, closing in the calling thread", 
+					   rejectedExecutionException);
+			return false;
+		}
+	}
+	
+	
+	/**
+	 * Runs tasks until none are left, or until the deadline has passed.  
+	 * 
+	 * @param hasDeadline false if tasks are run until none are left
+	 * @param deadline the deadline as a System.nanoTime() value
+	 */
+	private static void runTasks(Queue<Runnable> tasks, CountDownLatch completedTasks, boolean hasDeadline, long deadline) {
+		while (!hasDeadline || (deadline - System.nanoTime() > 0)) {
+			Runnable task = tasks.poll();
+			if (task == null) {
+				return;
+			}
+			
+			try {
+				task.run();
+			} catch (RuntimeException runtimeException) {
+				logger.log(Level.INFO, 
+						   "Exception occurred while closing a JNDI resource", 
+						   runtimeException);
+			} finally {
+				completedTasks.countDown();
+			}
+		}
+	}
+}
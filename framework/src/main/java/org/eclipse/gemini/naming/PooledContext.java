@@ -0,0 +1,252 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+/**
+ * The Context handed to a client for one use of a pooled Context.  
+ * 
+ * Closing this Context returns the pooled Context to its {@link ContextPool}, 
+ * rather than closing the provider context.  A pooled Context whose 
+ * environment was changed by the client is closed instead.  
+ * 
+ * @version $Revision$
+ */
+class PooledContext implements Context {
+	
+	private static final Logger logger = Logger.getLogger(PooledContext.class.getName());
+	
+	private final ContextPool m_pool;
+	private final Hashtable<?, ?> m_environment;
+	private final Context m_context;
+	
+	private volatile boolean m_isClosed = false;
+	private volatile boolean m_isEnvironmentChanged = false;
+	
+	/**
+	 * @param pool the pool the Context is returned to
+	 * @param environment the environment the Context was created with
+	 * @param context the pooled Context
+	 */
+	PooledContext(ContextPool pool, Hashtable<?, ?> environment, Context context) {
+		m_pool = pool;
+		m_environment = environment;
+		m_context = context;
+	}
+	
+
+	@Override
+	public Object lookup(Name name) throws NamingException {
+		return getContext().lookup(name);
+	}
+
+	@Override
+	public Object lookup(String name) throws NamingException {
+		return getContext().lookup(name);
+	}
+
+	@Override
+	public void bind(Name name, Object obj) throws NamingException {
+		getContext().bind(name, obj);
+	}
+
+	@Override
+	public void bind(String name, Object obj) throws NamingException {
+		getContext().bind(name, obj);
+	}
+
+	@Override
+	public void rebind(Name name, Object obj) throws NamingException {
+		getContext().rebind(name, obj);
+	}
+
+	@Override
+	public void rebind(String name, Object obj) throws NamingException {
+		getContext().rebind(name, obj);
+	}
+
+	@Override
+	public void unbind(Name name) throws NamingException {
+		getContext().unbind(name);
+	}
+
+	@Override
+	public void unbind(String name) throws NamingException {
+		getContext().unbind(name);
+	}
+
+	@Override
+	public void rename(Name oldName, Name newName) throws NamingException {
+		getContext().rename(oldName, newName);
+	}
+
+	@Override
+	public void rename(String oldName, String newName) throws NamingException {
+		getContext().rename(oldName, newName);
+	}
+
+	@Override
+	public NamingEnumeration<NameClassPair> list(Name name) throws NamingException {
+		return getContext().list(name);
+	}
+
+	@Override
+	public NamingEnumeration<NameClassPair> list(String name) throws NamingException {
+		return getContext().list(name);
+	}
+
+	@Override
+	public NamingEnumeration<Binding> listBindings(Name name) throws NamingException {
+		return getContext().listBindings(name);
+	}
+
+	@Override
+	public NamingEnumeration<Binding> listBindings(String name) throws NamingException {
+		return getContext().listBindings(name);
+	}
+
+	@Override
+	public void destroySubcontext(Name name) throws NamingException {
+		getContext().destroySubcontext(name);
+	}
+
+	@Override
+	public void destroySubcontext(String name) throws NamingException {
+		getContext().destroySubcontext(name);
+	}
+
+	@Override
+	public Context createSubcontext(Name name) throws NamingException {
+		return getContext().createSubcontext(name);
+	}
+
+	@Override
+	public Context createSubcontext(String name) throws NamingException {
+		return getContext().createSubcontext(name);
+	}
+
+	@Override
+	public Object lookupLink(Name name) throws NamingException {
+		return getContext().lookupLink(name);
+	}
+
+	@Override
+	public Object lookupLink(String name) throws NamingException {
+		return getContext().lookupLink(name);
+	}
+
+	@Override
+	public NameParser getNameParser(Name name) throws NamingException {
+		return getContext().getNameParser(name);
+	}
+
+	@Override
+	public NameParser getNameParser(String name) throws NamingException {
+		return getContext().getNameParser(name);
+	}
+
+	@Override
+	public Name composeName(Name name, Name prefix) throws NamingException {
+		return getContext().composeName(name, prefix);
+	}
+
+	@Override
+	public String composeName(String name, String prefix) throws NamingException {
+		return getContext().composeName(name, prefix);
+	}
+
+	@Override
+	public Object addToEnvironment(String propName, Object propVal) throws NamingException {
+		// a Context with a changed environment no longer matches its pool key
+		m_isEnvironmentChanged = true;
+		return getContext().addToEnvironment(propName, propVal);
+	}
+
+	@Override
+	public Object removeFromEnvironment(String propName) throws NamingException {
+		m_isEnvironmentChanged = true;
+		return getContext().removeFromEnvironment(propName);
+	}
+
+	@Override
+	public Hashtable<?, ?> getEnvironment() throws NamingException {
+		return getContext().getEnvironment();
+	}
+
+	@Override
+	public void close() throws NamingException {
+		synchronized (this) {
+			if (m_isClosed) {
+				return;
+			}
+			m_isClosed = true;
+		}
+		
+		List<Context> contextsToClose = new ArrayList<Context>(1);
+		if (m_isEnvironmentChanged) {
+			contextsToClose.add(m_context);
+		} else {
+			m_pool.release(m_environment, m_context, contextsToClose);
+		}
+		
+		NamingException closeException = null;
+		for (Context context : contextsToClose) {
+			try {
+				context.close();
+			} catch (NamingException namingException) {
+				// report the failure to close this client's own Context
+				if (context == m_context) {
+					closeException = namingException;
+				} else {
+					logger.log(Level.FINE, 
+							   "NamingException occurred while closing a Context dropped from the pool", 
+							   namingException);
+				}
+			}
+		}
+		
+		if (closeException != null) {
+			throw closeException;
+		}
+	}
+
+	@Override
+	public String getNameInNamespace() throws NamingException {
+		return getContext().getNameInNamespace();
+	}
+	
+	
+	private Context getContext() throws NamingException {
+		if (m_isClosed) {
+			throw new NamingException("This Context has been closed");
+		}
+		
+		return m_context;
+	}
+}
@@ -30,12 +30,31 @@ import org.osgi.framework.BundleContext;
 class ProviderAdminImpl implements CloseableProviderAdmin {
 
 	private final OSGiInitialContextFactoryBuilder	m_objectFactoryBuilder;
+	
+	/* false if the builder is shared, and closed by its owner */
+	private final boolean m_isBuilderOwner;
 
-	ProviderAdminImpl(BundleContext bundleContext) {
+	ProviderAdminImpl(BundleContext bundleContext, ProviderGuard providerGuard) {
 		m_objectFactoryBuilder = 
-			new OSGiInitialContextFactoryBuilder(bundleContext, bundleContext);
+			new OSGiInitialContextFactoryBuilder(bundleContext, bundleContext, providerGuard);
+		m_isBuilderOwner = true;
+	}
+	
+	/**
+	 * Creates a ProviderAdminImpl that resolves references with a builder 
+	 * shared by several clients.  Closing this ProviderAdminImpl does not 
+	 * close the shared builder.  
+	 */
+	ProviderAdminImpl(OSGiInitialContextFactoryBuilder sharedObjectFactoryBuilder) {
+		m_objectFactoryBuilder = sharedObjectFactoryBuilder;
+		m_isBuilderOwner = false;
 	}
 
+	/**
+	 * Resolves the object.  Resolutions are never shared between callers, 
+	 * since a resolved object, such as a Context, may be owned and closed 
+	 * by its caller.  
+	 */
 	@Override
 	public Object getObjectInstance(Object refInfo, Name name, Context context, Map environment) throws NamingException {
 		synchronized (m_objectFactoryBuilder) {
@@ -79,10 +98,99 @@ class ProviderAdminImpl implements CloseableProviderAdmin {
 		}
 	}
 	
+	@Override
+	public Object[] getObjectInstances(Object[] refInfos, Name[] names, Context context, Map environment) throws NamingException {
+		checkBatchArguments(refInfos, names, null);
+		synchronized (m_objectFactoryBuilder) {
+			// all references in this batch share one environment and one 
+			// view of the provider services
+			Hashtable jndiEnvironment = new Hashtable();
+			if (environment != null) {
+				jndiEnvironment.putAll(environment);
+			}
+			OSGiInitialContextFactoryBuilder.ProviderSnapshot snapshot = 
+				m_objectFactoryBuilder.createProviderSnapshot();
+			Object[] results = new Object[refInfos.length];
+			for (int i = 0; i < refInfos.length; i++) {
+				OSGiInitialContextFactoryBuilder.ResolutionPlan resolutionPlan = 
+					m_objectFactoryBuilder.createObjectFactory(refInfos[i], jndiEnvironment);
+				try {
+					results[i] = resolutionPlan.getObjectInstance(refInfos[i], getElement(names, i), 
+							                                      context, jndiEnvironment, snapshot);
+				}
+				catch (Exception e) {
+					NamingException namingException = new NamingException(
+							"Error while attempting to resolve reference at index " + i);
+					namingException.initCause(e);
+					throw namingException;
+				}
+			}
+			return results;
+		}
+	}
+
+	@Override
+	public Object[] getObjectInstances(Object[] refInfos, Name[] names, Context context, Map environment, Attributes[] attributes) throws NamingException {
+		checkBatchArguments(refInfos, names, attributes);
+		synchronized (m_objectFactoryBuilder) {
+			// all references in this batch share one environment and one 
+			// view of the provider services
+			Hashtable jndiEnvironment = new Hashtable();
+			if (environment != null) {
+				jndiEnvironment.putAll(environment);
+			}
+			OSGiInitialContextFactoryBuilder.ProviderSnapshot snapshot = 
+				m_objectFactoryBuilder.createProviderSnapshot();
+			Object[] results = new Object[refInfos.length];
+			for (int i = 0; i < refInfos.length; i++) {
+				OSGiInitialContextFactoryBuilder.ResolutionPlan resolutionPlan = 
+					m_objectFactoryBuilder.getDirObjectFactory(refInfos[i], jndiEnvironment);
+				try {
+					results[i] = resolutionPlan.getObjectInstance(refInfos[i], getElement(names, i), 
+							                                      context, jndiEnvironment, 
+							                                      getElement(attributes, i), snapshot);
+				}
+				catch (Exception e) {
+					NamingException namingException = new NamingException(
+							"Error while attempting to resolve reference at index " + i);
+					namingException.initCause(e);
+					throw namingException;
+				}
+			}
+			return results;
+		}
+	}
+	
 	@Override
 	public void close() {
+		if (!m_isBuilderOwner) {
+			return;
+		}
+		
 		synchronized (m_objectFactoryBuilder) {
 			m_objectFactoryBuilder.close();
 		}
 	}
+	
+	private static void checkBatchArguments(Object[] refInfos, Name[] names, Attributes[] attributes) {
+		if (refInfos == null) {
+			throw new IllegalArgumentException("The array of references to resolve must not be null");
+		}
+		
+		if ((names != null) && (names.length != refInfos.length)) {
+			throw new IllegalArgumentException("The array of names must be the same length as the array of references");
+		}
+		
+		if ((attributes != null) && (attributes.length != refInfos.length)) {
+			throw new IllegalArgumentException("The array of attributes must be the same length as the array of references");
+		}
+	}
+	
+	private static <T> T getElement(T[] array, int index) {
+		if (array == null) {
+			return null;
+		}
+		
+		return array[index];
+	}
 }
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.concurrent.Executor;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceFactory;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * ServiceFactory that creates a JNDIProviderAdmin for each client bundle.  
+ * 
+ * All the clients share one OSGiInitialContextFactoryBuilder, and each 
+ * client's JNDIProviderAdmin is closed once the client releases it.  
+ * 
+ * @version $Revision$
+ */
+class ProviderAdminServiceFactory implements ServiceFactory {
+	
+	private final OSGiInitialContextFactoryBuilder m_objectFactoryBuilder;
+	
+	private final Executor m_asyncExecutor;
+	
+	private final Executor m_resolveAheadExecutor;
+	
+	/**
+	 * @param bundleContext the BundleContext of the Gemini Naming bundle
+	 * @param providerGuard the guard for calls on JNDI provider services
+	 * @param asyncExecutor the Executor used for asynchronous operations
+	 * @param resolveAheadExecutor the Executor used to resolve bindings 
+	 *                             ahead of an enumeration
+	 */
+	ProviderAdminServiceFactory(BundleContext bundleContext, ProviderGuard providerGuard, Executor asyncExecutor, Executor resolveAheadExecutor) {
+		m_objectFactoryBuilder = 
+			new OSGiInitialContextFactoryBuilder(bundleContext, bundleContext, providerGuard);
+		m_asyncExecutor = asyncExecutor;
+		m_resolveAheadExecutor = resolveAheadExecutor;
+	}
+	
+
+	@Override
+	public Object getService(Bundle bundle, ServiceRegistration registration) {
+		CloseableProviderAdmin providerAdmin = new ProviderAdminImpl(m_objectFactoryBuilder);
+		if (SecurityUtils.isSecurityEnabled()) {
+			// without a SecurityManager the doPrivileged() blocks have no effect
+			providerAdmin = new SecurityAwareProviderAdminImpl(providerAdmin);
+		}
+		return new AsyncProviderAdminImpl(providerAdmin, m_asyncExecutor, m_resolveAheadExecutor);
+	}
+
+	@Override
+	public void ungetService(Bundle bundle, ServiceRegistration registration, Object service) {
+		((CloseableProviderAdmin)service).close();
+	}
+	
+	
+	/**
+	 * Closes the builder shared by all the clients of this factory.  
+	 */
+	void close() {
+		synchronized (m_objectFactoryBuilder) {
+			m_objectFactoryBuilder.close();
+		}
+	}
+}
@@ -0,0 +1,408 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.security.AccessControlContext;
+import java.security.AccessController;
+import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.InterruptedNamingException;
+import javax.naming.TimeLimitExceededException;
+
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * Guards calls made to JNDI provider services (factories and builders) 
+ * during the resolution chains of the OSGiInitialContextFactoryBuilder.  
+ * 
+ * The guard supports two independent features: 
+ * 
+ * 1. A call timeout.  When set, each provider call runs on a separate thread,
+ *    and a call that does not complete in time fails with a 
+ *    TimeLimitExceededException.  A call for which no thread is available 
+ *    fails at once with a TimeLimitExceededException.  
+ * 2. A failure-rate circuit breaker for each provider service.  Once the 
+ *    failure rate of a provider reaches the configured rate, the breaker 
+ *    opens and the provider is skipped by the resolution chains.  After the 
+ *    open duration has passed, a single trial call is allowed through.  The 
+ *    breaker closes again if that call succeeds, and re-opens otherwise.  
+ * 
+ * A caller obtains a CallPermit before calling a provider, passes it to 
+ * invoke(), and releases it in a finally block.  Releasing a permit that 
+ * was not used for a call frees the trial slot it may hold, so that a 
+ * provider that was skipped (for example because its service was 
+ * unregistered) does not keep its breaker open forever.  
+ * 
+ * Every change of a breaker's state is reported in the log.  A single 
+ * guard instance is shared by all builders, so that the state of a provider
+ * is tracked across all client bundles.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+class ProviderGuard {
+
+	private static final Logger logger = 
+		Logger.getLogger(ProviderGuard.class.getName());
+	
+	/* call timeout in milliseconds, zero or less disables the timeout */
+	private final long m_callTimeout;
+	
+	/* failure rate (in percent) that opens a breaker, zero or less disables the breaker */
+	private final int m_failureRate;
+	
+	/* number of calls in each window used to compute the failure rate */
+	private final int m_minimumCalls;
+	
+	/* time in milliseconds that a breaker stays open before a trial call */
+	private final long m_openDuration;
+	
+	/* Executor used for calls that have a timeout */
+	private final Executor m_executor;
+	
+	/* source of the current time for the breakers */
+	private final Clock m_clock;
+	
+	/* map of provider ServiceReferences to breaker state */
+	private final Map<ServiceReference, CircuitState> m_mapOfCircuits = 
+		Collections.synchronizedMap(new WeakHashMap<ServiceReference, CircuitState>());
+	
+	
+	ProviderGuard(long callTimeout, int failureRate, int minimumCalls, long openDuration, Executor executor) {
+		this(callTimeout, failureRate, minimumCalls, openDuration, executor, SYSTEM_CLOCK);
+	}
+	
+	ProviderGuard(long callTimeout, int failureRate, int minimumCalls, long openDuration, Executor executor, Clock clock) {
+		m_callTimeout = callTimeout;
+		m_failureRate = failureRate;
+		m_minimumCalls = Math.max(minimumCalls, 1);
+		m_openDuration = openDuration;
+		m_executor = executor;
+		m_clock = clock;
+	}
+	
+	
+	/**
+	 * Creates a guard that passes all calls straight through to the provider.  
+	 * 
+	 * @return a ProviderGuard with no timeout and no circuit breaker
+	 */
+	static ProviderGuard createDisabledGuard() {
+		return new ProviderGuard(0, 0, 1, 0, null);
+	}
+	
+	
+	/**
+	 * Obtains a permit to call the given provider.  The permit must be 
+	 * released in a finally block, whether or not the provider is called.  
+	 * 
+	 * @param serviceReference the ServiceReference of the provider service
+	 * @return a permit for a single call, or null if the breaker for this 
+	 *         provider is open, and the provider should be skipped.  
+	 */
+	CallPermit acquireCall(ServiceReference serviceReference) {
+		if (m_failureRate <= 0) {
+			return new CallPermit(serviceReference, null, false);
+		}
+		
+		CircuitState circuitState = getCircuitState(serviceReference);
+		switch (circuitState.acquireCall()) {
+			case CLOSED:
+				return new CallPermit(serviceReference, circuitState, false);
+			case TRIAL:
+				return new CallPermit(serviceReference, circuitState, true);
+			default:
+				return null;
+		}
+	}
+	
+	
+	/**
+	 * Calls a provider, applying the configured timeout and recording the 
+	 * outcome of the call for the circuit breaker.  
+	 * 
+	 * @param callPermit the permit obtained for this provider
+	 * @param providerCall the call to make on the provider
+	 * @return the result of the provider call
+	 * @throws Exception the exception thrown by the provider, or a 
+	 *         TimeLimitExceededException if the call timed out or no 
+	 *         thread was available for it
+	 */
+	<T> T invoke(CallPermit callPermit, Callable<T> providerCall) throws Exception {
+		boolean isSuccessful = false;
+		try {
+			T result = (m_callTimeout > 0) ? invokeWithTimeout(callPermit.m_serviceReference, providerCall) 
+					                       : providerCall.call();
+			isSuccessful = true;
+			return result;
+		}
+		finally {
+			callPermit.recordCall(isSuccessful);
+		}
+	}
+	
+	
+	private <T> T invokeWithTimeout(ServiceReference serviceReference, Callable<T> providerCall) throws Exception {
+		FutureTask<T> task = 
+			new FutureTask<T>(new CallerContextCallable<T>(providerCall));
+		try {
+			m_executor.execute(task);
+		}
+		catch (RejectedExecutionException rejectedExecutionException) {
+			// all threads are held by provider calls, or the executor is shutting 
+			// down, and calling the provider directly could hang the caller
+			TimeLimitExceededException namingException = 
+				new TimeLimitExceededException("No thread available to call JNDI provider " + describe(serviceReference));
+			namingException.setRootCause(rejectedExecutionException);
+			throw namingException;
+		}
+		
+		try {
+			return task.get(m_callTimeout, TimeUnit.MILLISECONDS);
+		}
+		catch (ExecutionException executionException) {
+			Throwable cause = executionException.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw executionException;
+		}
+		catch (TimeoutException timeoutException) {
+			task.cancel(true);
+			TimeLimitExceededException namingException = 
+				new TimeLimitExceededException("JNDI provider " + describe(serviceReference) + " did not respond within " + m_callTimeout + " ms");
+			namingException.setRootCause(timeoutException);
+			throw namingException;
+		}
+		catch (InterruptedException interruptedException) {
+			task.cancel(true);
+			Thread.currentThread().interrupt();
+			InterruptedNamingException namingException = 
+				new InterruptedNamingException("Interrupted while waiting for JNDI provider " + describe(serviceReference));
+			namingException.setRootCause(interruptedException);
+			throw namingException;
+		}
+	}
+	
+	
+	private CircuitState getCircuitState(ServiceReference serviceReference) {
+		synchronized (m_mapOfCircuits) {
+			CircuitState circuitState = m_mapOfCircuits.get(serviceReference);
+			if (circuitState == null) {
+				circuitState = new CircuitState(serviceReference);
+				m_mapOfCircuits.put(serviceReference, circuitState);
+			}
+			return circuitState;
+		}
+	}
+	
+	
+	private static String describe(ServiceReference serviceReference) {
+		Object objectClass = serviceReference.getProperty(Constants.OBJECTCLASS);
+		String interfaces = (objectClass instanceof String[]) ? Arrays.asList((String[])objectClass).toString() 
+				                                              : String.valueOf(objectClass);
+		return "[service.id=" + serviceReference.getProperty(Constants.SERVICE_ID) + ", objectClass=" + interfaces + "]";
+	}
+	
+	
+	/**
+	 * Source of the current time, replaced by tests.  
+	 */
+	interface Clock {
+		long currentTimeMillis();
+	}
+	
+	private static final Clock SYSTEM_CLOCK = new Clock() {
+		@Override
+		public long currentTimeMillis() {
+			return System.currentTimeMillis();
+		}
+	};
+	
+	
+	/**
+	 * Permission to make a single call on a provider.  A permit is used 
+	 * by one thread only.  
+	 */
+	static final class CallPermit {
+		private final ServiceReference m_serviceReference;
+		
+		/* null if the circuit breaker is disabled */
+		private final CircuitState m_circuitState;
+		
+		/* true while this permit holds the trial slot of its breaker */
+		private boolean m_isTrial;
+		
+		private boolean m_isUsed = false;
+		
+		private CallPermit(ServiceReference serviceReference, CircuitState circuitState, boolean isTrial) {
+			m_serviceReference = serviceReference;
+			m_circuitState = circuitState;
+			m_isTrial = isTrial;
+		}
+		
+		private void recordCall(boolean isSuccessful) {
+			m_isUsed = true;
+			if (m_circuitState != null) {
+				m_circuitState.recordCall(isSuccessful, m_isTrial);
+			}
+			m_isTrial = false;
+		}
+		
+		/**
+		 * Releases the trial slot held by this permit if no call was made.  
+		 */
+		void release() {
+			if (m_isTrial && !m_isUsed) {
+				m_isTrial = false;
+				m_circuitState.releaseTrial();
+			}
+		}
+	}
+	
+	
+	/* outcomes of CircuitState.acquireCall() */
+	private enum CallType { CLOSED, TRIAL, REJECTED }
+	
+	
+	/**
+	 * Breaker state for a single provider service.  
+	 */
+	private final class CircuitState {
+		private final String m_description;
+		
+		private boolean m_isOpen = false;
+		private boolean m_isTrialInProgress = false;
+		private long m_openedAt;
+		private int m_numberOfCalls;
+		private int m_numberOfFailures;
+		
+		CircuitState(ServiceReference serviceReference) {
+			m_description = describe(serviceReference);
+		}
+		
+		synchronized CallType acquireCall() {
+			if (!m_isOpen) {
+				return CallType.CLOSED;
+			}
+			
+			if (!m_isTrialInProgress 
+					&& ((m_clock.currentTimeMillis() - m_openedAt) >= m_openDuration)) {
+				// half-open, allow a single trial call
+				m_isTrialInProgress = true;
+				return CallType.TRIAL;
+			}
+			
+			return CallType.REJECTED;
+		}
+		
+		synchronized void releaseTrial() {
+			// the open duration has already passed, so the next caller may try
+			m_isTrialInProgress = false;
+		}
+		
+		synchronized void recordCall(boolean isSuccessful, boolean isTrial) {
+			if (isTrial) {
+				m_isTrialInProgress = false;
+				if (isSuccessful) {
+					m_isOpen = false;
+					logger.log(Level.INFO, 
+							   "Circuit breaker closed for JNDI provider " + m_description + " after a successful trial call");
+				} else {
+					m_openedAt = m_clock.currentTimeMillis();
+					logger.log(Level.WARNING, 
+							   "Circuit breaker re-opened for JNDI provider " + m_description + " after a failed trial call");
+				}
+				return;
+			}
+			
+			if (m_isOpen) {
+				// a call that started before the breaker opened
+				return;
+			}
+			
+			m_numberOfCalls++;
+			if (!isSuccessful) {
+				m_numberOfFailures++;
+			}
+			
+			if (m_numberOfCalls >= m_minimumCalls) {
+				if ((m_numberOfFailures * 100) >= (m_failureRate * m_numberOfCalls)) {
+					m_isOpen = true;
+					m_openedAt = m_clock.currentTimeMillis();
+					logger.log(Level.WARNING, 
+							   "Circuit breaker opened for JNDI provider " + m_description + ": " + m_numberOfFailures + " of the last " + m_numberOfCalls + " calls failed.  The provider will be skipped for " + m_openDuration + " ms");
+				}
+				
+				// start a new window
+				m_numberOfCalls = 0;
+				m_numberOfFailures = 0;
+			}
+		}
+	}
+	
+	
+	/**
+	 * Runs a provider call on the executor thread with the AccessControlContext 
+	 * and context ClassLoader of the thread that requested the call.  
+	 */
+	private static class CallerContextCallable<T> implements Callable<T> {
+		private final Callable<T> m_providerCall;
+		private final AccessControlContext m_callerContext;
+		private final ClassLoader m_callerClassLoader;
+		
+		CallerContextCallable(Callable<T> providerCall) {
+			m_providerCall = providerCall;
+			m_callerContext = AccessController.getContext();
+			m_callerClassLoader = Thread.currentThread().getContextClassLoader();
+		}
+		
+		@Override
+		public T call() throws Exception {
+			final Thread currentThread = Thread.currentThread();
+			final ClassLoader originalClassLoader = currentThread.getContextClassLoader();
+			currentThread.setContextClassLoader(m_callerClassLoader);
+			try {
+				return (T)SecurityUtils.invokePrivilegedAction(new PrivilegedExceptionAction() {
+					@Override
+					public Object run() throws Exception {
+						return m_providerCall.call();
+					}
+				}, m_callerContext);
+			}
+			finally {
+				currentThread.setContextClassLoader(originalClassLoader);
+			}
+		}
+	}
+}
@@ -21,8 +21,12 @@ import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Proxy;
 import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -42,6 +46,23 @@ class ReflectionUtils {
 
 	private static Logger logger = Logger.getLogger(ReflectionUtils.class.getName());
 	
+	/* cached result for a service interface name that could not be loaded */
+	private static final Class[] INTERFACE_NOT_FOUND = new Class[0];
+	
+	/**
+	 * Cache of the interfaces resolved when creating service proxies.  Without 
+	 * this cache, each proxied lookup loads the requested interface, and a JNDI 
+	 * service name additionally fails with a ClassNotFoundException and loads 
+	 * every objectClass entry of the service.  
+	 * 
+	 * The resolved classes may come from the service bundle, the client bundle, 
+	 * or any bundle exporting the interface packages, so the whole cache is 
+	 * cleared whenever a bundle is stopped or refreshed, see 
+	 * {@link #clearCachedInterfaces()}.  
+	 */
+	private static final ConcurrentMap<InterfaceKey, Class[]> interfaceCache = 
+		new ConcurrentHashMap<InterfaceKey, Class[]>();
+	
 	/**
 	 * This method uses reflection to invoke the given Method
 	 * on the passed in Context instance.  This method also
@@ -96,7 +117,21 @@ class ReflectionUtils {
 		return getProxyForSingleService(bundleContext, 
 				                        urlParser,
 				                        serviceReference,
-				                        new RetryInvocationHandlerFactory());
+				                        new RetryInvocationHandlerFactory(null));
+	}
+	
+	
+	/**
+	 * Creates the InvocationHandlerFactory used for "osgi:service" proxies, which 
+	 * rebind to another matching service once the backing service goes away.  
+	 * 
+	 * @param rebindExecutor the Executor used to rebind a proxy as soon as its 
+	 *                       backing service unregisters, or null if proxies 
+	 *                       should only rebind on the next call
+	 * @return an InvocationHandlerFactory for rebinding service proxies
+	 */
+	static InvocationHandlerFactory createRetryInvocationHandlerFactory(Executor rebindExecutor) {
+		return new RetryInvocationHandlerFactory(rebindExecutor);
 	}
 	
 	
@@ -130,8 +165,8 @@ class ReflectionUtils {
 					   e);
 		} 
 			
-		try {
-			Class clazz = Class.forName(urlParser.getServiceInterface(), true, tempLoader);
+		final Class clazz = loadServiceInterface(urlParser.getServiceInterface(), tempLoader);
+		if (clazz != null) {
 			if (clazz.isInterface()) {
 				InvocationHandler handler = 
 					handlerFactory.create(bundleContext, serviceReference, urlParser, requestedService);
@@ -145,9 +180,9 @@ class ReflectionUtils {
 				return new ServiceProxyInfo(requestedService, null, false);
 			}
 		}
-		catch (ClassNotFoundException classNotFoundException) {
+		else {
 			tempLoader = requestedService.getClass().getClassLoader();
-			final Class[] interfaces = getInterfaces(serviceReference, bundleContext, tempLoader);
+			final Class[] interfaces = getCachedInterfaces(serviceReference, bundleContext, tempLoader);
 			if (interfaces.length > 0) {
 				InvocationHandler handler = 
 					handlerFactory.create(bundleContext, serviceReference, 
@@ -167,6 +202,69 @@ class ReflectionUtils {
 	}
 	
 	
+	/**
+	 * Checks whether an object is an "osgi:service" proxy created by Gemini 
+	 * Naming.  The OSGi service behind such a proxy is released once the 
+	 * proxy is finalized.  
+	 * 
+	 * @param object an object returned by an "osgi:service" lookup
+	 * @return true if the object is a service proxy
+	 */
+	static boolean isServiceProxy(Object object) {
+		return Proxy.isProxyClass(object.getClass()) && 
+			   (Proxy.getInvocationHandler(object) instanceof ServiceInvocationHandler);
+	}
+	
+	
+	/**
+	 * Removes all the interfaces cached for proxy construction.  This method 
+	 * is called when a bundle is stopped or refreshed, since the cached 
+	 * classes may belong to a ClassLoader that is no longer in use.  
+	 */
+	static void clearCachedInterfaces() {
+		interfaceCache.clear();
+	}
+	
+	
+	/**
+	 * Loads the interface requested by an "osgi:service" URL.  
+	 * 
+	 * @param serviceInterface the interface name, or JNDI service name, 
+	 *                         specified in the URL
+	 * @param classLoader the ClassLoader of the OSGi service
+	 * @return the loaded Class, or null if the name does not denote 
+	 *         a class visible to the service
+	 */
+	private static Class loadServiceInterface(String serviceInterface, ClassLoader classLoader) {
+		final InterfaceKey key = new InterfaceKey(classLoader, null, serviceInterface, null);
+		Class[] cachedResult = interfaceCache.get(key);
+		if (cachedResult == null) {
+			try {
+				cachedResult = new Class[] {Class.forName(serviceInterface, true, classLoader)};
+			}
+			catch (ClassNotFoundException classNotFoundException) {
+				cachedResult = INTERFACE_NOT_FOUND;
+			}
+			interfaceCache.put(key, cachedResult);
+		}
+		
+		return (cachedResult == INTERFACE_NOT_FOUND) ? null : cachedResult[0];
+	}
+	
+	
+	private static Class[] getCachedInterfaces(ServiceReference serviceReference, BundleContext bundleContext, ClassLoader classLoader) {
+		String[] objectClassValues = (String [])serviceReference.getProperty(Constants.OBJECTCLASS);
+		final InterfaceKey key = new InterfaceKey(classLoader, bundleContext, null, objectClassValues);
+		Class[] interfaces = interfaceCache.get(key);
+		if (interfaces == null) {
+			interfaces = getInterfaces(serviceReference, objectClassValues, bundleContext, classLoader);
+			interfaceCache.put(key, interfaces);
+		}
+		
+		return interfaces;
+	}
+	
+	
 	private static boolean isAssignable(ServiceReference serviceReference, BundleContext bundleContext, Class clazz) {
 		return serviceReference.isAssignableTo(bundleContext.getBundle(), clazz.getName());
 	}
@@ -179,8 +277,7 @@ class ReflectionUtils {
 
 
 
-	private static Class[] getInterfaces(ServiceReference serviceReference, BundleContext bundleContext, ClassLoader classLoader) {
-		String[] objectClassValues = (String [])serviceReference.getProperty(Constants.OBJECTCLASS);
+	private static Class[] getInterfaces(ServiceReference serviceReference, String[] objectClassValues, BundleContext bundleContext, ClassLoader classLoader) {
 		List listOfClasses = new LinkedList();
 		for(int i = 0; i < objectClassValues.length; i++) {
 			try {
@@ -215,13 +312,60 @@ class ReflectionUtils {
 		}
 	}
 	
+	/**
+	 * Key for the interface cache.  The ClassLoader and BundleContext are 
+	 * compared by identity.  A key either identifies a single interface name, 
+	 * or the objectClass entries of a service as seen by a client bundle.  
+	 */
+	private static class InterfaceKey {
+		private final ClassLoader m_classLoader;
+		private final BundleContext m_clientBundleContext;
+		private final String m_serviceInterface;
+		private final String[] m_objectClassValues;
+		private final int m_hashCode;
+		
+		InterfaceKey(ClassLoader classLoader, BundleContext clientBundleContext, String serviceInterface, String[] objectClassValues) {
+			m_classLoader = classLoader;
+			m_clientBundleContext = clientBundleContext;
+			m_serviceInterface = serviceInterface;
+			m_objectClassValues = objectClassValues;
+			m_hashCode = (31 * System.identityHashCode(classLoader) + System.identityHashCode(clientBundleContext)) * 31 
+			             + ((serviceInterface != null) ? serviceInterface.hashCode() : Arrays.hashCode(objectClassValues));
+		}
+		
+		@Override
+		public int hashCode() {
+			return m_hashCode;
+		}
+		
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof InterfaceKey)) {
+				return false;
+			}
+			
+			InterfaceKey key = (InterfaceKey)object;
+			return (m_classLoader == key.m_classLoader) 
+			        && (m_clientBundleContext == key.m_clientBundleContext)
+			        && ((m_serviceInterface == null) ? (key.m_serviceInterface == null) : m_serviceInterface.equals(key.m_serviceInterface))
+			        && Arrays.equals(m_objectClassValues, key.m_objectClassValues);
+		}
+	}
+	
 	private static class RetryInvocationHandlerFactory implements InvocationHandlerFactory {
+		private final Executor m_rebindExecutor;
+		
+		RetryInvocationHandlerFactory(Executor rebindExecutor) {
+			m_rebindExecutor = rebindExecutor;
+		}
+		
 		@Override
 		public InvocationHandler create(BundleContext bundleContext, ServiceReference serviceReference, OSGiURLParser urlParser, Object osgiService) {
 			return new ServiceInvocationHandler(bundleContext, 
 					                            serviceReference, 
 					                            urlParser, 
-					                            osgiService);
+					                            osgiService,
+					                            m_rebindExecutor);
 		}
 		
 	}
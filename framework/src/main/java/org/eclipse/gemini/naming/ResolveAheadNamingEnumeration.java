@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import javax.naming.Binding;
+import javax.naming.CompositeName;
+import javax.naming.Context;
+import javax.naming.InterruptedNamingException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+
+/**
+ * NamingEnumeration that resolves the object of each Binding of another 
+ * enumeration through the AsyncProviderAdmin service.  
+ * 
+ * The source enumeration is read on the calling thread, since a 
+ * NamingEnumeration is not thread-safe, but the objects of up to 
+ * "read ahead" bindings are resolved in parallel on the Gemini Naming 
+ * thread pool.  The bindings are returned in the order of the source 
+ * enumeration.  
+ * 
+ * @version $Revision$
+ */
+class ResolveAheadNamingEnumeration implements NamingEnumeration<Binding> {
+
+	private final NamingEnumeration<Binding> m_bindings;
+	
+	private final AsyncProviderAdmin m_providerAdmin;
+	
+	private final Context m_context;
+	
+	private final Map m_environment;
+	
+	private final int m_readAhead;
+	
+	/* bindings read from the source enumeration, in order, with their pending objects */
+	private final LinkedList<PendingBinding> m_pendingBindings = 
+		new LinkedList<PendingBinding>();
+	
+	private boolean m_isOpen = true;
+	
+	ResolveAheadNamingEnumeration(NamingEnumeration<Binding> bindings, AsyncProviderAdmin providerAdmin, Context context, Map environment, int readAhead) {
+		if(readAhead < 1) {
+			throw new IllegalArgumentException("The number of bindings to read ahead must be at least 1");
+		}
+		
+		m_bindings = bindings;
+		m_providerAdmin = providerAdmin;
+		m_context = context;
+		m_environment = environment;
+		m_readAhead = readAhead;
+	}
+	
+	
+	@Override
+	public boolean hasMore() throws NamingException {
+		checkIsOpen();
+		readAhead();
+		return !m_pendingBindings.isEmpty();
+	}
+
+	
+	@Override
+	public Binding next() throws NamingException {
+		checkIsOpen();
+		readAhead();
+		if(m_pendingBindings.isEmpty()) {
+			throw new NoSuchElementException("No additional elements exist in this NamingEnumeration");
+		}
+		
+		PendingBinding pendingBinding = m_pendingBindings.removeFirst();
+		// keep the read ahead window full while the caller handles this binding
+		readAhead();
+		return pendingBinding.getBinding();
+	}
+
+	
+	@Override
+	public boolean hasMoreElements() {
+		try {
+			return m_isOpen && hasMore();
+		} catch (NamingException namingException) {
+			return false;
+		}
+	}
+
+	
+	@Override
+	public Binding nextElement() {
+		try {
+			return next();
+		} catch (NamingException namingException) {
+			NoSuchElementException noSuchElementException = 
+				new NoSuchElementException("Error occurred while reading the next Binding");
+			noSuchElementException.initCause(namingException);
+			throw noSuchElementException;
+		}
+	}
+
+	
+	@Override
+	public void close() throws NamingException {
+		if(!m_isOpen) {
+			return;
+		}
+		
+		m_isOpen = false;
+		while(!m_pendingBindings.isEmpty()) {
+			m_pendingBindings.removeFirst().m_object.cancel(false);
+		}
+		m_bindings.close();
+	}
+	
+	
+	private void readAhead() throws NamingException {
+		while((m_pendingBindings.size() < m_readAhead) && m_bindings.hasMore()) {
+			Binding binding = m_bindings.next();
+			Future<Object> object = 
+				m_providerAdmin.getObjectInstance(binding.getObject(), 
+						                          new CompositeName(binding.getName()), 
+						                          m_context, 
+						                          m_environment, 
+						                          (NamingCallback<Object>)null);
+			m_pendingBindings.addLast(new PendingBinding(binding, object));
+		}
+	}
+	
+	
+	private void checkIsOpen() throws NamingException {
+		if (!m_isOpen) {
+			throw new NamingException("Operation cannot complete, since this NamingEnumeration has been closed");
+		}
+	}
+	
+	
+	/**
+	 * A Binding whose object is being resolved.  
+	 */
+	private static class PendingBinding {
+		private final Binding m_binding;
+		private final Future<Object> m_object;
+		
+		PendingBinding(Binding binding, Future<Object> object) {
+			m_binding = binding;
+			m_object = object;
+		}
+		
+		Binding getBinding() throws NamingException {
+			try {
+				return new Binding(m_binding.getName(), 
+						           m_object.get(), 
+						           m_binding.isRelative());
+			}
+			catch (InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+				InterruptedNamingException namingException = 
+					new InterruptedNamingException("Interrupted while waiting for the object of a Binding to be resolved");
+				namingException.setRootCause(interruptedException);
+				throw namingException;
+			}
+			catch (ExecutionException executionException) {
+				if(executionException.getCause() instanceof NamingException) {
+					throw (NamingException)executionException.getCause();
+				}
+				
+				NamingException namingException = 
+					new NamingException("Error occurred while resolving the object of the Binding named " + m_binding.getName());
+				namingException.setRootCause(executionException.getCause());
+				throw namingException;
+			}
+		}
+	}
+}
@@ -57,6 +57,21 @@ class SecurityAwareProviderAdminImpl implements CloseableProviderAdmin {
 		return invokePrivilegedAction(action);
 	}
 	
+	@Override
+	public Object[] getObjectInstances(Object[] refInfos, Name[] names, Context context, Map environment) throws Exception {
+		// the whole batch is resolved in a single doPrivileged() block
+		PrivilegedExceptionAction action = 
+			new GetObjectInstancesAction(refInfos, names, context, environment);
+		return (Object[])invokePrivilegedAction(action);
+	}
+
+	@Override
+	public Object[] getObjectInstances(Object[] refInfos, Name[] names, Context context, Map environment, Attributes[] attributes) throws Exception {
+		PrivilegedExceptionAction action = 
+			new GetObjectInstancesActionWithAttributes(refInfos, names, context, environment, attributes);
+		return (Object[])invokePrivilegedAction(action);
+	}
+	
 	@Override
 	public void close() {
 		try {
@@ -118,6 +133,50 @@ class SecurityAwareProviderAdminImpl implements CloseableProviderAdmin {
 	}
 	
 	
+	private class GetObjectInstancesAction implements PrivilegedExceptionAction {
+		protected final Object[] m_refInfos;
+		protected final Name[] m_names;
+		protected final Context m_context;
+		protected final Map m_environment;
+		
+		GetObjectInstancesAction(Object[] refInfos, Name[] names, Context context, Map environment) {
+			m_refInfos = refInfos;
+			m_names = names;
+			m_context = context;
+			m_environment = environment;
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			return m_closeableProviderAdmin.getObjectInstances(m_refInfos, 
+					                                      m_names, 
+					                                      m_context, 
+					                                      m_environment);
+		}
+		
+	}
+	
+	private class GetObjectInstancesActionWithAttributes extends GetObjectInstancesAction {
+		private final Attributes[] m_attributes;
+		
+		GetObjectInstancesActionWithAttributes(Object[] refInfos, Name[] names, Context context, Map environment, Attributes[] attributes) {
+			super(refInfos, names, context, environment);
+			m_attributes = attributes;
+		}
+		
+		
+		@Override
+		public Object run() throws Exception {
+			return m_closeableProviderAdmin.getObjectInstances(m_refInfos, 
+					                                      m_names, 
+					                                      m_context, 
+					                                      m_environment, 
+					                                      m_attributes);
+		}
+		
+	}
+	
+	
 	private class CloseAction implements PrivilegedExceptionAction {
 		@Override
 		public Object run() throws Exception {
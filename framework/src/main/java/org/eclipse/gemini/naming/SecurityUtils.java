@@ -15,6 +15,7 @@
 
 package org.eclipse.gemini.naming;
 
+import java.security.AccessControlContext;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
@@ -27,11 +28,38 @@ import java.security.PrivilegedExceptionAction;
  */
 class SecurityUtils {
 
+	/* false if no SecurityManager was installed when Gemini Naming was activated */
+	private static volatile boolean securityEnabled = true;
+	
 	private SecurityUtils() {
 		// construction of this object is not allowed
 	}
 	
 	
+	/**
+	 * Records whether a SecurityManager is installed.  This method is called 
+	 * once, when Gemini Naming is activated.  If no SecurityManager is 
+	 * installed, privileged actions are run directly, since no permission 
+	 * checks can take place.  
+	 */
+	static void detectSecurityManager() {
+		securityEnabled = (System.getSecurityManager() != null);
+	}
+	
+	
+	/**
+	 * Returns true if privileged actions must run in a doPrivileged() block.  
+	 * Callers on hot paths use this method to avoid allocating a 
+	 * PrivilegedExceptionAction when no SecurityManager is installed.  
+	 * 
+	 * @return true if a SecurityManager was installed when Gemini Naming 
+	 *         was activated
+	 */
+	static boolean isSecurityEnabled() {
+		return securityEnabled;
+	}
+	
+	
 	/**
 	 * Invokes the specified action in a doPrivileged() block, and 
 	 * returns the result.  
@@ -41,6 +69,10 @@ class SecurityUtils {
 	 * @throws Exception the exception thrown (if any) by the action itself
 	 */
 	static Object invokePrivilegedAction(final PrivilegedExceptionAction action) throws Exception {
+		if (!securityEnabled) {
+			return action.run();
+		}
+		
 		try {
 			return AccessController.doPrivileged(action);
 		}
@@ -50,12 +82,40 @@ class SecurityUtils {
 	}
 	
 	
+	/**
+	 * Invokes the specified action in a doPrivileged() block that is 
+	 * restricted to the given AccessControlContext, and returns the result.  
+	 * 
+	 * @param action the PrivilegedExceptionAction to execute
+	 * @param context the AccessControlContext to run the action with
+	 * @return the resulting Object of the operation
+	 * @throws Exception the exception thrown (if any) by the action itself
+	 */
+	static Object invokePrivilegedAction(final PrivilegedExceptionAction action, final AccessControlContext context) throws Exception {
+		if (!securityEnabled) {
+			return action.run();
+		}
+		
+		try {
+			return AccessController.doPrivileged(action, context);
+		}
+		catch (PrivilegedActionException e) {
+			throw e.getException();
+		}
+	}
+	
+	
 	/**
 	 * Invokes the specified action, which does not require a return
 	 * @param action the PrivilegedExceptionAction to execute
 	 * @throws Exception the exception thrown (if any) by the action itself
 	 */
 	static void invokePrivilegedActionNoReturn(final PrivilegedExceptionAction action) throws Exception {
+		if (!securityEnabled) {
+			action.run();
+			return;
+		}
+		
 		try {
 			AccessController.doPrivileged(action);
 		}
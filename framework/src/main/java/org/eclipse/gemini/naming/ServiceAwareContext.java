@@ -0,0 +1,446 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.security.PrivilegedExceptionAction;
+import java.util.Hashtable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NameClassPair;
+import javax.naming.NameParser;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.NoInitialContextException;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * A Context that is backed by a JNDI provider service, and that rebinds to 
+ * another provider service once the service that created it goes away.  
+ * 
+ * Each method checks that the provider service is still active, and then 
+ * calls the provider context directly.  The rebind normally happens in the 
+ * background, see {@link ServiceAwareContextFactory#rebindInBackground(Context, Executor)}.  
+ * A caller only rebinds this Context itself if it arrives before the 
+ * background rebind has completed.  
+ * 
+ * @version $Revision$
+ */
+class ServiceAwareContext implements Context {
+	
+	private static final Logger logger = Logger.getLogger(ServiceAwareContext.class.getName());
+
+	/* the factory and context that currently back this Context, replaced as a whole */
+	private final AtomicReference<ContextBinding> m_binding = 
+		new AtomicReference<ContextBinding>();
+	/* the binding this Context was created with */
+	private final ContextBinding m_originalBinding;
+	private final FactoryManager m_manager;
+	private final Object lock = new Object();
+	private volatile boolean m_isOpen;
+	
+	ServiceAwareContext(InitialContextFactory factory, Context context, FactoryManager manager) {
+		m_originalBinding = new ContextBinding(factory, context);
+		m_binding.set(m_originalBinding);
+		m_manager = manager;
+		m_isOpen = true;
+	}
+	
+
+	@Override
+	public Object lookup(Name name) throws NamingException {
+		return getContext().lookup(name);
+	}
+
+	@Override
+	public Object lookup(String name) throws NamingException {
+		return getContext().lookup(name);
+	}
+
+	@Override
+	public void bind(Name name, Object obj) throws NamingException {
+		getContext().bind(name, obj);
+	}
+
+	@Override
+	public void bind(String name, Object obj) throws NamingException {
+		getContext().bind(name, obj);
+	}
+
+	@Override
+	public void rebind(Name name, Object obj) throws NamingException {
+		getContext().rebind(name, obj);
+	}
+
+	@Override
+	public void rebind(String name, Object obj) throws NamingException {
+		getContext().rebind(name, obj);
+	}
+
+	@Override
+	public void unbind(Name name) throws NamingException {
+		getContext().unbind(name);
+	}
+
+	@Override
+	public void unbind(String name) throws NamingException {
+		getContext().unbind(name);
+	}
+
+	@Override
+	public void rename(Name oldName, Name newName) throws NamingException {
+		getContext().rename(oldName, newName);
+	}
+
+	@Override
+	public void rename(String oldName, String newName) throws NamingException {
+		getContext().rename(oldName, newName);
+	}
+
+	@Override
+	public NamingEnumeration<NameClassPair> list(Name name) throws NamingException {
+		return getContext().list(name);
+	}
+
+	@Override
+	public NamingEnumeration<NameClassPair> list(String name) throws NamingException {
+		return getContext().list(name);
+	}
+
+	@Override
+	public NamingEnumeration<Binding> listBindings(Name name) throws NamingException {
+		return getContext().listBindings(name);
+	}
+
+	@Override
+	public NamingEnumeration<Binding> listBindings(String name) throws NamingException {
+		return getContext().listBindings(name);
+	}
+
+	@Override
+	public void destroySubcontext(Name name) throws NamingException {
+		getContext().destroySubcontext(name);
+	}
+
+	@Override
+	public void destroySubcontext(String name) throws NamingException {
+		getContext().destroySubcontext(name);
+	}
+
+	@Override
+	public Context createSubcontext(Name name) throws NamingException {
+		return getContext().createSubcontext(name);
+	}
+
+	@Override
+	public Context createSubcontext(String name) throws NamingException {
+		return getContext().createSubcontext(name);
+	}
+
+	@Override
+	public Object lookupLink(Name name) throws NamingException {
+		return getContext().lookupLink(name);
+	}
+
+	@Override
+	public Object lookupLink(String name) throws NamingException {
+		return getContext().lookupLink(name);
+	}
+
+	@Override
+	public NameParser getNameParser(Name name) throws NamingException {
+		return getContext().getNameParser(name);
+	}
+
+	@Override
+	public NameParser getNameParser(String name) throws NamingException {
+		return getContext().getNameParser(name);
+	}
+
+	@Override
+	public Name composeName(Name name, Name prefix) throws NamingException {
+		return getContext().composeName(name, prefix);
+	}
+
+	@Override
+	public String composeName(String name, String prefix) throws NamingException {
+		return getContext().composeName(name, prefix);
+	}
+
+	@Override
+	public Object addToEnvironment(String propName, Object propVal) throws NamingException {
+		return getContext().addToEnvironment(propName, propVal);
+	}
+
+	@Override
+	public Object removeFromEnvironment(String propName) throws NamingException {
+		return getContext().removeFromEnvironment(propName);
+	}
+
+	@Override
+	public Hashtable<?, ?> getEnvironment() throws NamingException {
+		return getContext().getEnvironment();
+	}
+
+	@Override
+	public void close() throws NamingException {
+		// if context is already closed, do not try to
+		// rebind the backing service
+		// simply forward the call to the underlying context implementation
+		synchronized (lock) {
+			m_isOpen = false;
+		}
+		m_binding.get().m_context.close();
+	}
+
+	@Override
+	public String getNameInNamespace() throws NamingException {
+		return getContext().getNameInNamespace();
+	}
+	
+	
+	/**
+	 * @return true if this Context is open, has not been rebound, and the 
+	 *         provider service that created it is still active
+	 */
+	boolean isOriginalFactoryServiceActive() {
+		final ContextBinding binding = m_binding.get();
+		return m_isOpen && (binding == m_originalBinding) && isFactoryServiceActive(binding.m_factory);
+	}
+	
+	
+	/**
+	 * Returns the provider context that backs this Context, rebinding to 
+	 * another provider service if the current one has gone away.  
+	 * 
+	 * @return the current provider context
+	 * @throws NamingException if no provider service can create a new context
+	 */
+	protected Context getContext() throws NamingException {
+		ContextBinding binding = m_binding.get();
+		if (m_isOpen && !isFactoryServiceActive(binding.m_factory)) {
+			// the provider went away before a background rebind completed
+			try {
+				binding = obtainBinding();
+			}
+			catch (NamingException namingException) {
+				throw namingException;
+			}
+			catch (Exception exception) {
+				if (logger.isLoggable(Level.FINE)) {
+					logger.log(Level.FINE,
+						"Exception occurred during a doPrivileged call",
+						exception);
+				}
+				// if the cause was not a NamingException, wrap the
+				// cause in NamingException and throw back to caller
+				NamingException namingException = new NamingException("Exception occured during a Context method invocation");
+				namingException.setRootCause(exception);
+				throw namingException;
+			}
+		}
+		
+		return binding.m_context;
+	}
+	
+	
+	private ContextBinding obtainBinding() throws Exception {
+		synchronized (lock) {
+			synchronized (m_manager) {
+				final ContextBinding binding = m_binding.get();
+				if (!m_isOpen || isFactoryServiceActive(binding.m_factory)) {
+					return binding;
+				}
+				
+				ContextBinding newBinding = 
+					(ContextBinding)SecurityUtils.invokePrivilegedAction(new ObtainFactory(binding));
+				return publishBinding(binding, newBinding);
+			}
+		}
+	}
+	
+	
+	/**
+	 * Schedules the creation of a new provider context on the given 
+	 * Executor.  The new context is swapped in atomically, unless a caller 
+	 * has already rebound this Context in the meantime.  
+	 * 
+	 * @param executor the Executor used to create the new provider context
+	 */
+	void scheduleRebind(Executor executor) {
+		final ContextBinding binding = m_binding.get();
+		if (!m_isOpen) {
+			return;
+		}
+		
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (!m_isOpen || (m_binding.get() != binding)) {
+						return;
+					}
+					
+					try {
+						ContextBinding newBinding = 
+							(ContextBinding)SecurityUtils.invokePrivilegedAction(new ObtainFactory(binding));
+						publishBinding(binding, newBinding);
+					}
+					catch (Exception exception) {
+						// the next method invocation retries the rebind
+						logger.log(Level.FINE, 
+								   "An exception occurred while rebinding a Context in the background",
+								   exception);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException rejectedExecutionException) {
+			// Gemini Naming is shutting down, the next invocation rebinds the Context
+			logger.log(Level.FINE, 
+					   "Background rebind of a Context was rejected", 
+					   rejectedExecutionException);
+		}
+	}
+	
+	
+	/**
+	 * Publishes a new binding if the given binding is still current.  
+	 * 
+	 * @return the binding that is current once this method returns
+	 */
+	private ContextBinding publishBinding(ContextBinding binding, ContextBinding newBinding) {
+		if (m_binding.compareAndSet(binding, newBinding)) {
+			synchronized (lock) {
+				if (m_isOpen) {
+					return newBinding;
+				}
+			}
+			// this Context was closed while the new context was created
+		}
+		
+		closeQuietly(newBinding.m_context);
+		return m_binding.get();
+	}
+	
+	
+	private static void closeQuietly(Context context) {
+		try {
+			context.close();
+		}
+		catch (NamingException namingException) {
+			logger.log(Level.FINE, 
+					   "An exception occurred while closing a Context that was not used", 
+					   namingException);
+		}
+	}
+	
+
+	private ContextBinding createBinding(ContextBinding binding) throws NamingException, Throwable, NoInitialContextException {
+		// make copy of existing context's environment
+		Hashtable newContextEnvironment = new Hashtable();
+		if (binding.m_context.getEnvironment() != null) {
+			newContextEnvironment.putAll(binding.m_context
+					.getEnvironment());
+		}
+		// attempt to recreate the required factory and context
+		try {
+			InitialContextFactory newFactory = m_manager
+					.createInitialContextFactory(newContextEnvironment);
+			if (newFactory != null) {
+				Context newInternalContext = newFactory
+						.getInitialContext(newContextEnvironment);
+				if (newInternalContext != null) {
+					return new ContextBinding(newFactory, newInternalContext);
+				}
+			}
+		}
+		catch (NoInitialContextException noContextException) {
+			logger.log(Level.SEVERE,
+					   "An exception occurred while attempting to rebind the JNDI Provider service for this Context",
+					   noContextException);
+		}
+
+		// if no InitialContextFactory service can handle this request, throw exception
+		throw new NoInitialContextException(
+				"The service that created this JNDI Context is not available");
+	}
+	
+
+	/**
+	 * Query to see if the IntialContextFactory used
+	 * to create this context is still active
+	 * 
+	 * @return true if factory service is still active
+	 *         false if factory service is no longer active
+	 */
+	private boolean isFactoryServiceActive(InitialContextFactory factory) {
+		if(factory instanceof InitialContextFactoryWrapper) {
+			// a rebound context is service-aware itself, and rebinds on its own
+			return true;
+		} else if(factory instanceof BuilderSupportedInitialContextFactory) {
+			return m_manager.isFactoryServiceActive(((BuilderSupportedInitialContextFactory)factory).getBuilder());
+		} else {
+			return m_manager.isFactoryServiceActive(factory);
+		}
+	}
+
+	private class ObtainFactory implements PrivilegedExceptionAction {
+		
+		private final ContextBinding m_currentBinding;
+		
+		ObtainFactory(ContextBinding currentBinding) {
+			m_currentBinding = currentBinding;
+		}
+		
+		@Override
+		public Object run() throws Exception {
+			try {
+				return createBinding(m_currentBinding);
+			} catch (Throwable e) {
+				if(e instanceof NamingException) {
+					throw (NamingException)e;
+				}
+				
+				NamingException namingException = new NamingException("Error while attempting to obtain factory service on behalf of Context");
+				namingException.setRootCause(e);
+				throw namingException;
+			}
+		}
+		
+	}
+	
+	
+	/**
+	 * The factory and provider context that back a service-aware Context.  
+	 * Instances are never modified, so that they can be swapped atomically.  
+	 */
+	private static class ContextBinding {
+		private final InitialContextFactory m_factory;
+		private final Context m_context;
+		
+		ContextBinding(InitialContextFactory factory, Context context) {
+			m_factory = factory;
+			m_context = context;
+		}
+	}
+}
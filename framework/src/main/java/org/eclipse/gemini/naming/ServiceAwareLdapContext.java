@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import javax.naming.NamingException;
+import javax.naming.NotContextException;
+import javax.naming.directory.DirContext;
+import javax.naming.ldap.Control;
+import javax.naming.ldap.ExtendedRequest;
+import javax.naming.ldap.ExtendedResponse;
+import javax.naming.ldap.LdapContext;
+import javax.naming.spi.InitialContextFactory;
+
+/**
+ * A service-aware LdapContext, see {@link ServiceAwareContext}.  
+ * 
+ * @version $Revision$
+ */
+class ServiceAwareLdapContext extends ServiceAwareDirContext implements LdapContext {
+
+	ServiceAwareLdapContext(InitialContextFactory factory, LdapContext context, FactoryManager manager) {
+		super(factory, context, manager);
+	}
+	
+	
+	/**
+	 * @return the current provider context, which must be an LdapContext
+	 * @throws NamingException if the provider context could not be obtained, 
+	 *         or if the provider context obtained by a rebind is not an LdapContext
+	 */
+	protected LdapContext getLdapContext() throws NamingException {
+		final DirContext context = getDirContext();
+		if (context instanceof LdapContext) {
+			return (LdapContext)context;
+		}
+		
+		throw new NotContextException("The JNDI Provider service for this Context no longer supports LdapContext");
+	}
+	
+	@Override
+	public ExtendedResponse extendedOperation(ExtendedRequest request)
+			throws NamingException {
+		return getLdapContext().extendedOperation(request);
+	}
+
+	@Override
+	public LdapContext newInstance(Control[] requestControls)
+			throws NamingException {
+		return getLdapContext().newInstance(requestControls);
+	}
+
+	@Override
+	public void reconnect(Control[] connCtls) throws NamingException {
+		getLdapContext().reconnect(connCtls);
+	}
+
+	@Override
+	public Control[] getConnectControls() throws NamingException {
+		return getLdapContext().getConnectControls();
+	}
+
+	@Override
+	public void setRequestControls(Control[] requestControls)
+			throws NamingException {
+		getLdapContext().setRequestControls(requestControls);
+	}
+
+	@Override
+	public Control[] getRequestControls() throws NamingException {
+		return getLdapContext().getRequestControls();
+	}
+
+	@Override
+	public Control[] getResponseControls() throws NamingException {
+		return getLdapContext().getResponseControls();
+	}
+
+}
@@ -96,7 +96,7 @@ abstract class ServiceBasedNamingEnumeration implements NamingEnumeration {
 	}
 
 	private boolean isIndexValid() {
-		return m_index < m_nameClassPairs.length;
+		return m_index < m_serviceReferences.length;
 	}
 
 	private Object internalNextElement() {
@@ -108,7 +108,19 @@ abstract class ServiceBasedNamingEnumeration implements NamingEnumeration {
 	}
 
 	private NameClassPair internalNextClassPair() {
-		return m_nameClassPairs[m_index++];
+		return getNameClassPair(m_index++);
+	}
+	
+	/**
+	 * Returns the NameClassPair for the service at the given index.  
+	 * Subclasses may override this method to create the NameClassPair on 
+	 * first access.  
+	 * 
+	 * @param index the index of the service in this enumeration
+	 * @return the NameClassPair for the service
+	 */
+	protected NameClassPair getNameClassPair(int index) {
+		return m_nameClassPairs[index];
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+import org.osgi.util.tracker.ServiceTrackerCustomizer;
+
+/**
+ * The OSGi service bound to an "osgi:service" proxy or to a ServiceHandle.  
+ * 
+ * The backing service is published as a single immutable BackingService, so 
+ * concurrent callers always see a consistent service and tracker.  If the 
+ * backing service goes away, the binding rebinds to the best matching 
+ * service on the next call.  If a rebind Executor is supplied, the binding 
+ * also rebinds eagerly on that Executor as soon as the backing service 
+ * unregisters, so that the next call does not pay for the registry query.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+class ServiceBinding {
+	
+	private static final Logger logger = Logger.getLogger(ServiceBinding.class.getName());
+	
+	/* backing service of a binding that is not bound to any service */
+	private static final BackingService NO_SERVICE = new BackingService(null, null, null);
+	
+	private final BundleContext m_callerBundleContext;
+	
+	/* the interface and filter used to rebind the backing service */
+	private final String m_serviceInterface;
+	private final String m_filter;
+	
+	/* true if a service registered with the interface as its JNDI service name also matches */
+	private final boolean m_isServiceNameMatched;
+	
+	/* runs eager rebinds, null if the binding only rebinds on the next call */
+	private final Executor m_rebindExecutor;
+	
+	/* backing OSGi service, replaced as a whole when the binding rebinds */
+	private final AtomicReference<BackingService> m_backingService = 
+		new AtomicReference<BackingService>(NO_SERVICE);
+	
+	private volatile boolean m_isClosed = false;
+	
+	
+	/**
+	 * @param callerBundleContext the BundleContext used to obtain the services
+	 * @param serviceInterface the interface of the services to bind to
+	 * @param filter the filter the services must match, or null
+	 * @param isServiceNameMatched true if a service registered with the 
+	 *                             interface as its JNDI service name matches 
+	 *                             when no service has the interface
+	 * @param rebindExecutor the Executor used to rebind as soon as the backing 
+	 *                       service goes away, or null to rebind on the next call
+	 */
+	ServiceBinding(BundleContext callerBundleContext, String serviceInterface, String filter, boolean isServiceNameMatched, Executor rebindExecutor) {
+		m_callerBundleContext = callerBundleContext;
+		m_serviceInterface = serviceInterface;
+		m_filter = filter;
+		m_isServiceNameMatched = isServiceNameMatched;
+		m_rebindExecutor = rebindExecutor;
+	}
+	
+	
+	/**
+	 * Binds a service that has already been obtained by the caller.  
+	 * 
+	 * @param serviceReference the ServiceReference of the service
+	 * @param service the service object
+	 */
+	void bind(ServiceReference serviceReference, Object service) {
+		// open a tracker for just this service
+		ServiceTracker serviceTracker = createServiceTracker(serviceReference);
+		serviceTracker.open();
+		m_backingService.set(new BackingService(serviceReference, serviceTracker, service));
+	}
+	
+	
+	/**
+	 * Returns the backing service, rebinding to the best matching service 
+	 * if the backing service has gone away.  
+	 * 
+	 * @return the backing service, or null if no matching service is available
+	 */
+	Object getService() {
+		BackingService backingService = m_backingService.get();
+		if (backingService.isAvailable()) {
+			return backingService.m_service;
+		}
+		
+		if (rebind()) {
+			return m_backingService.get().m_service;
+		}
+		
+		return null;
+	}
+	
+	
+	/**
+	 * @return the backing service, or null if it has gone away; no rebind is 
+	 *         attempted
+	 */
+	Object getBoundService() {
+		BackingService backingService = m_backingService.get();
+		return backingService.isAvailable() ? backingService.m_service : null;
+	}
+	
+	
+	/**
+	 * Rebinds to the best service that matches the interface and filter.  
+	 * 
+	 * @return true if a backing service is available once this method returns
+	 */
+	boolean rebind() {
+		final BackingService backingService = m_backingService.get();
+		if (backingService.isAvailable()) {
+			// another caller (or an eager rebind) has already rebound
+			return true;
+		}
+		
+		backingService.close();
+		return rebind(backingService, null);
+	}
+	
+	
+	/**
+	 * Closes the tracker for the current backing service.  
+	 */
+	void closeServiceTracker() {
+		m_backingService.get().close();
+	}
+	
+	
+	/**
+	 * Releases the backing service.  A closed binding does not rebind.  
+	 */
+	void close() {
+		m_isClosed = true;
+		closeServiceTracker();
+	}
+	
+	
+	/**
+	 * Replaces the given backing service with the best service that currently 
+	 * matches.  The replacement is only published if the backing service has 
+	 * not been replaced concurrently; otherwise the concurrent replacement is 
+	 * kept.  
+	 * 
+	 * @param backingService the backing service to replace
+	 * @param departedReference a ServiceReference that must not be bound, 
+	 *                          or null
+	 * @return true if a backing service is available once this method returns
+	 */
+	private boolean rebind(BackingService backingService, ServiceReference departedReference) {
+		if (m_isClosed) {
+			return false;
+		}
+		
+		final BackingService replacement = findBackingService(departedReference);
+		if (replacement == null) {
+			return false;
+		}
+		
+		if (m_backingService.compareAndSet(backingService, replacement)) {
+			backingService.close();
+			if (m_isClosed) {
+				// the binding was closed while the replacement was created
+				replacement.close();
+			}
+			return true;
+		}
+		
+		replacement.close();
+		return m_backingService.get().isAvailable();
+	}
+	
+	
+	private BackingService findBackingService(ServiceReference departedReference) {
+		try {
+			ServiceReference[] serviceReferences = 
+				m_callerBundleContext.getServiceReferences(m_serviceInterface, m_filter);
+			if ((serviceReferences == null) && m_isServiceNameMatched) {
+				// attempt to locate service using service name property
+				serviceReferences = 
+					ServiceUtils.getServiceReferencesByServiceName(m_callerBundleContext, m_serviceInterface);
+			}
+			
+			if (serviceReferences != null) {
+				final ServiceReference[] sortedServiceReferences = 
+					ServiceUtils.sortServiceReferences(serviceReferences);
+				for(int i = 0; i < sortedServiceReferences.length; i++) {
+					if (sortedServiceReferences[i] != departedReference) {
+						// reset the tracker
+						return createBackingService(sortedServiceReferences[i]);
+					}
+				}
+			}
+		}
+		catch (InvalidSyntaxException invalidSyntaxException) {
+			logger.log(Level.SEVERE, 
+					   "An error in the filter syntax for this OSGi lookup has occurred.",
+					   invalidSyntaxException);
+		}
+		
+		return null;
+	}
+
+
+	private BackingService createBackingService(ServiceReference serviceReference) {
+		ServiceTracker serviceTracker = createServiceTracker(serviceReference);
+		serviceTracker.open();
+		
+		Object osgiService = serviceTracker.getService();
+		if (osgiService != null) {
+			return new BackingService(serviceReference, serviceTracker, osgiService);
+		}
+		
+		serviceTracker.close();
+		return null;
+	}
+	
+	
+	private ServiceTracker createServiceTracker(ServiceReference serviceReference) {
+		if (m_rebindExecutor == null) {
+			return new ServiceTracker(m_callerBundleContext, serviceReference, null);
+		}
+		
+		return new ServiceTracker(m_callerBundleContext, serviceReference, new RebindingCustomizer());
+	}
+	
+	
+	/**
+	 * Schedules an eager rebind after the given backing service has 
+	 * been unregistered.  
+	 * 
+	 * @param departedReference the ServiceReference of the unregistered service
+	 */
+	private void scheduleRebind(final ServiceReference departedReference) {
+		final BackingService backingService = m_backingService.get();
+		if (m_isClosed || (backingService.m_serviceReference != departedReference)) {
+			// the tracker of a replaced backing service is being closed
+			return;
+		}
+		
+		try {
+			m_rebindExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (!m_isClosed && (m_backingService.get() == backingService)) {
+						rebind(backingService, departedReference);
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException rejectedExecutionException) {
+			// Gemini Naming is shutting down, the next call rebinds
+			logger.log(Level.FINE, 
+					   "Eager rebind of an OSGi service binding was rejected", 
+					   rejectedExecutionException);
+		}
+	}
+	
+
+	/**
+	 * A backing service, along with the tracker that reports its availability.  
+	 * Instances are never modified, so that they can be published atomically.  
+	 */
+	private static class BackingService {
+		private final ServiceReference m_serviceReference;
+		private final ServiceTracker m_serviceTracker;
+		private final Object m_service;
+		
+		BackingService(ServiceReference serviceReference, ServiceTracker serviceTracker, Object service) {
+			m_serviceReference = serviceReference;
+			m_serviceTracker = serviceTracker;
+			m_service = service;
+		}
+		
+		boolean isAvailable() {
+			return (m_serviceTracker != null) && (m_serviceTracker.size() == 1);
+		}
+		
+		void close() {
+			if (m_serviceTracker != null) {
+				m_serviceTracker.close();
+			}
+		}
+	}
+	
+	
+	/**
+	 * Tracks a backing service in the same way as the default ServiceTracker, 
+	 * and schedules an eager rebind once the service is removed.  
+	 */
+	private class RebindingCustomizer implements ServiceTrackerCustomizer {
+		@Override
+		public Object addingService(ServiceReference serviceReference) {
+			return m_callerBundleContext.getService(serviceReference);
+		}
+
+		@Override
+		public void modifiedService(ServiceReference serviceReference, Object service) {
+			// no action required
+		}
+
+		@Override
+		public void removedService(ServiceReference serviceReference, Object service) {
+			m_callerBundleContext.ungetService(serviceReference);
+			scheduleRebind(serviceReference);
+		}
+	}
+}
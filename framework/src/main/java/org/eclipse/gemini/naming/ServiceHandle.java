@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+/**
+ * Typed handle to an OSGi service, obtained from the ServiceLocator service.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+public interface ServiceHandle<T> {
+
+	/**
+	 * Returns the service that backs this handle.  If the service used 
+	 * previously has been unregistered, the handle rebinds to the best 
+	 * matching service.  
+	 * 
+	 * Callers should not hold on to the returned object, but should call 
+	 * this method each time the service is used.  
+	 * 
+	 * @return the backing service
+	 * @throws org.osgi.framework.ServiceException if no matching service 
+	 *         is registered
+	 */
+	public T getService();
+	
+	/**
+	 * @return true if a matching service is currently registered
+	 */
+	public boolean isAvailable();
+}
@@ -17,61 +17,75 @@ package org.eclipse.gemini.naming;
 
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceException;
 import org.osgi.framework.ServiceReference;
-import org.osgi.util.tracker.ServiceTracker;
 
+/**
+ * InvocationHandler for "osgi:service" proxies.  
+ * 
+ * Each call is made on the service of a {@link ServiceBinding}, which 
+ * rebinds the proxy to the best matching service once the backing service 
+ * goes away.  If a rebind Executor is supplied, the proxy also rebinds 
+ * eagerly on that Executor as soon as the backing service unregisters, so 
+ * that the next call does not pay for the registry query.  
+ * 
+ * @version $Revision$
+ */
 class ServiceInvocationHandler implements InvocationHandler {
 	
 	private static final Logger logger = Logger.getLogger(ServiceInvocationHandler.class.getName());
 	
 	private final BundleContext m_callerBundleContext;
 	
-	/* backing OSGi service */
-	private Object m_osgiService;
+	/* ServiceReference for the service obtained when the proxy was created */
+	private final ServiceReference m_serviceReference;
 
-	/* service tracker for the backing service */
-	protected ServiceTracker m_serviceTracker;
-	
-	/* ServiceReference for the backing service */
-	private ServiceReference m_serviceReference;
-
-	/* the URL information used to rebind the backing service if necessary */
-	private final OSGiURLParser m_urlParser;
+	/* the backing OSGi service, rebound if necessary */
+	private final ServiceBinding m_serviceBinding;
 	
 	
 	ServiceInvocationHandler(BundleContext callerBundleContext, ServiceReference serviceReference, OSGiURLParser urlParser, Object osgiService) {
+		this(callerBundleContext, serviceReference, urlParser, osgiService, null);
+	}
+	
+	
+	ServiceInvocationHandler(BundleContext callerBundleContext, ServiceReference serviceReference, OSGiURLParser urlParser, Object osgiService, Executor rebindExecutor) {
 		m_callerBundleContext = callerBundleContext;
-		// initialize backing service 
-		m_osgiService = osgiService;
 		m_serviceReference = serviceReference;
-		m_urlParser = urlParser;
-		
-		// open a tracker for just this service
-		m_serviceTracker = 
-			new ServiceTracker(m_callerBundleContext, m_serviceReference, null);
-		m_serviceTracker.open();
+		m_serviceBinding = 
+			new ServiceBinding(callerBundleContext, urlParser.getServiceInterface(), urlParser.getFilter(), 
+					           true, rebindExecutor);
+		// initialize backing service 
+		m_serviceBinding.bind(serviceReference, osgiService);
 	}
 	
 	
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		if (!SecurityUtils.isSecurityEnabled()) {
+			return handleMethodInvocation(method, args);
+		}
+		
 		return SecurityUtils.invokePrivilegedAction(new ServiceInvokeAction(method, args));
 	}
 
 
 	private Object handleMethodInvocation(Method method, Object[] args) throws Throwable {
-		if (isServiceAvailable()) {
-			return invokeMethodOnService(method, args);
+		Object osgiService = m_serviceBinding.getBoundService();
+		if (osgiService != null) {
+			return invokeMethodOnService(osgiService, method, args);
 		} else {
 			// attempt to obtain another service reference to match this interface
 			if(obtainService()) {
-				return invokeMethodOnService(method, args);
+				osgiService = m_serviceBinding.getBoundService();
+				if (osgiService != null) {
+					return invokeMethodOnService(osgiService, method, args);
+				}
 			}
 		}
 		
@@ -80,9 +94,9 @@ class ServiceInvocationHandler implements InvocationHandler {
 	}
 
 
-	private Object invokeMethodOnService(Method method, Object[] args) throws Throwable {
+	private Object invokeMethodOnService(Object osgiService, Method method, Object[] args) throws Throwable {
 		try {
-			return ReflectionUtils.invokeMethodOnObject(method, m_osgiService, args);
+			return ReflectionUtils.invokeMethodOnObject(method, osgiService, args);
 		}
 		catch (IllegalAccessException illegalAccessException) {
 			throw new ServiceException("An error occurred while trying to invoke on this service, please verify that this service's interface is public", illegalAccessException);
@@ -99,7 +113,7 @@ class ServiceInvocationHandler implements InvocationHandler {
 					   throwable);
 		}
 		
-		m_serviceTracker.close();
+		m_serviceBinding.close();
 	}
 	
 	
@@ -108,59 +122,23 @@ class ServiceInvocationHandler implements InvocationHandler {
 	protected void finalize() throws Throwable {
 		close();
 	}
-
-
-	private boolean isServiceAvailable() {
-		return m_serviceTracker.size() == 1;
+	
+	
+	/**
+	 * Closes the tracker for the current backing service.  
+	 */
+	protected void closeServiceTracker() {
+		m_serviceBinding.closeServiceTracker();
 	}
 	
+	
+	/**
+	 * Rebinds this proxy to the best service that matches the URL.  
+	 * 
+	 * @return true if a backing service is available once this method returns
+	 */
 	protected boolean obtainService() {
-		m_serviceTracker.close();
-		try {
-			ServiceReference[] serviceReferences = 
-				m_callerBundleContext.getServiceReferences(m_urlParser.getServiceInterface(),
-							                               m_urlParser.getFilter());
-			if (serviceReferences != null) {
-				final ServiceReference[] sortedServiceReferences = 
-					ServiceUtils.sortServiceReferences(serviceReferences);
-				
-				// reset the tracker
-				return resetBackingService(sortedServiceReferences[0]);
-			 } else {
-				 // attempt to locate service using service name property
-				 ServiceReference[] serviceReferencesByName = 
-					ServiceUtils.getServiceReferencesByServiceName(m_callerBundleContext, m_urlParser);
-				if (serviceReferencesByName != null) {
-					ServiceReference[] sortedServiceReferences = 
-						ServiceUtils.sortServiceReferences(serviceReferencesByName);
-					// reset the tracker
-					return resetBackingService(sortedServiceReferences[0]);
-				}
-				
-			 }
-		}
-		catch (InvalidSyntaxException invalidSyntaxException) {
-			logger.log(Level.SEVERE, 
-					   "An error in the filter syntax for this OSGi lookup has occurred.",
-					   invalidSyntaxException);
-		}
-		
-		return false;
-   }
-
-
-	private boolean resetBackingService(ServiceReference serviceReference) {
-		m_serviceTracker = 
-			new ServiceTracker(m_callerBundleContext, serviceReference, null);
-		m_serviceTracker.open();
-		
-		// reset the service
-		m_osgiService = m_serviceTracker.getService();
-		if(m_osgiService!= null) {
-			return true;
-		}
-		
-		return false;
+		return m_serviceBinding.rebind();
 	}
 	
 
@@ -176,4 +154,4 @@ class ServiceInvocationHandler implements InvocationHandler {
 		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import javax.naming.NamingException;
+
+/**
+ * Gemini Naming service that provides typed access to OSGi services.  
+ * 
+ * A lookup with this service is the typed equivalent of a JNDI lookup of 
+ * an "osgi:service/&lt;interface&gt;/&lt;filter&gt;" URL.  Instead of a dynamic 
+ * proxy, the lookup returns a ServiceHandle.  The handle follows the same 
+ * rules as the proxy:  it keeps using the same service for as long as that 
+ * service is registered, and then rebinds to the best matching service.  
+ * 
+ * Handles are cached by the service for each client bundle, so repeated 
+ * lookups of the same type and filter return the same handle.  The handles 
+ * are released when the client bundle releases this service.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+public interface ServiceLocator {
+
+	/**
+	 * Returns a handle to the services registered under the given type 
+	 * that match the given filter.  
+	 * 
+	 * @param type the interface the services are registered under
+	 * @param filter an OSGi filter string that the services must match, or
+	 *        null to match all the services of the given type
+	 * @return a ServiceHandle for the matching services
+	 * @throws NamingException if the filter is invalid, or if no 
+	 *         matching service is currently registered.  In the latter case, 
+	 *         the exception is a NameNotFoundException.  
+	 */
+	public <T> ServiceHandle<T> lookup(Class<T> type, String filter) throws NamingException;
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingException;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.ServiceException;
+
+/**
+ * ServiceLocator implementation for a single client bundle.  
+ * 
+ * Each handle is backed by a {@link ServiceBinding} that uses the client's 
+ * BundleContext, so handles rebind in the same way as "osgi:service" 
+ * proxies.  A handle keeps its service for as long as the handle is 
+ * referenced, and releases it once the handle is finalized or this 
+ * locator is closed.  At most {@link #MAX_CACHED_HANDLES} handles are 
+ * cached, since the filters come from the client; once the cache is full, 
+ * lookups of new keys return handles that are not cached.  
+ * 
+ * @version $Revision$
+ */
+class ServiceLocatorImpl implements ServiceLocator {
+	
+	/* upper bound on the number of handles cached for this client */
+	static final int MAX_CACHED_HANDLES = 256;
+
+	private final BundleContext m_bundleContext;
+	
+	/* map of type and filter keys to the cached handles of this client */
+	private final ConcurrentMap<HandleKey, ServiceHandleImpl<?>> m_handles = 
+		new ConcurrentHashMap<HandleKey, ServiceHandleImpl<?>>();
+	
+	/* bindings of the handles still referenced, cached or not */
+	private final Set<ServiceBinding> m_bindings = 
+		Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<ServiceBinding, Boolean>()));
+	
+	private volatile boolean m_isClosed = false;
+	
+	ServiceLocatorImpl(BundleContext bundleContext) {
+		m_bundleContext = bundleContext;
+	}
+	
+	
+	@Override
+	public <T> ServiceHandle<T> lookup(Class<T> type, String filter) throws NamingException {
+		checkOpen();
+		final HandleKey key = new HandleKey(type, filter);
+		ServiceHandleImpl<?> handle = m_handles.get(key);
+		if(handle == null) {
+			ServiceHandleImpl<T> newHandle = createHandle(type, filter);
+			if(m_handles.size() >= MAX_CACHED_HANDLES) {
+				// the handle still works, it is simply not returned to later lookups
+				handle = newHandle;
+			} else {
+				handle = m_handles.putIfAbsent(key, newHandle);
+				if(handle == null) {
+					handle = newHandle;
+				}
+			}
+		}
+		
+		if(!handle.isAvailable()) {
+			throw new NameNotFoundException("No service of type " + type.getName()
+					+ ((filter == null) ? "" : " matching " + filter)
+					+ " could be located in the OSGi Service Registry");
+		}
+		
+		// the key compares the Class object itself, so a cached handle 
+		// for this key was created by this method for the type T
+		@SuppressWarnings("unchecked")
+		ServiceHandle<T> typedHandle = (ServiceHandle<T>)handle;
+		return typedHandle;
+	}
+	
+	
+	/**
+	 * Releases the services of all the handles given out by this locator.  
+	 */
+	void close() {
+		m_isClosed = true;
+		m_handles.clear();
+		
+		List<ServiceBinding> bindings;
+		synchronized (m_bindings) {
+			bindings = new ArrayList<ServiceBinding>(m_bindings);
+			m_bindings.clear();
+		}
+		for(ServiceBinding binding : bindings) {
+			binding.close();
+		}
+	}
+	
+	
+	private void checkOpen() throws NamingException {
+		if(m_isClosed) {
+			throw new NamingException("ServiceLocator has been released, cannot look up services");
+		}
+	}
+	
+	
+	private <T> ServiceHandleImpl<T> createHandle(Class<T> type, String filter) throws NamingException {
+		if(filter != null) {
+			try {
+				m_bundleContext.createFilter(filter);
+			} catch (InvalidSyntaxException invalidSyntaxException) {
+				NamingException namingException = 
+					new NamingException("Error occurred while parsing the filter " + filter);
+				namingException.initCause(invalidSyntaxException);
+				throw namingException;
+			}
+		}
+		
+		ServiceBinding binding = 
+			new ServiceBinding(m_bundleContext, type.getName(), filter, false, null);
+		m_bindings.add(binding);
+		if(m_isClosed) {
+			// this locator was closed while the handle was created
+			m_bindings.remove(binding);
+			checkOpen();
+		}
+		
+		return new ServiceHandleImpl<T>(type, binding);
+	}
+	
+	
+	/**
+	 * Handle that keeps using the same service while it is registered, and 
+	 * then rebinds to the best matching service.  
+	 */
+	private static class ServiceHandleImpl<T> implements ServiceHandle<T> {
+		private final Class<T> m_type;
+		private final ServiceBinding m_serviceBinding;
+		
+		ServiceHandleImpl(Class<T> type, ServiceBinding serviceBinding) {
+			m_type = type;
+			m_serviceBinding = serviceBinding;
+		}
+
+		@Override
+		public T getService() {
+			Object service = m_serviceBinding.getService();
+			if(service == null) {
+				throw new ServiceException("Backing service is not available", 
+						                   ServiceException.UNREGISTERED);
+			}
+			
+			return m_type.cast(service);
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return m_serviceBinding.getService() != null;
+		}
+		
+		@Override
+		protected void finalize() throws Throwable {
+			m_serviceBinding.close();
+		}
+	}
+	
+	
+	/**
+	 * Key of a handle, which compares the type by identity, since types 
+	 * of the same name may be loaded by different class loaders.  
+	 */
+	private static class HandleKey {
+		private final Class<?> m_type;
+		private final String m_filter;
+		
+		HandleKey(Class<?> type, String filter) {
+			m_type = type;
+			m_filter = filter;
+		}
+		
+		@Override
+		public boolean equals(Object object) {
+			if(!(object instanceof HandleKey)) {
+				return false;
+			}
+			
+			HandleKey key = (HandleKey)object;
+			return (m_type == key.m_type) && 
+				   ((m_filter == null) ? (key.m_filter == null) : m_filter.equals(key.m_filter));
+		}
+		
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(m_type) * 31 + 
+				   ((m_filter == null) ? 0 : m_filter.hashCode());
+		}
+	}
+}
@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import org.osgi.framework.Bundle;
+import org.osgi.framework.ServiceFactory;
+import org.osgi.framework.ServiceRegistration;
+
+/**
+ * ServiceFactory that creates a ServiceLocator for each client bundle, so that 
+ * services are obtained with the client's BundleContext.  
+ * 
+ * @version $Revision$
+ */
+class ServiceLocatorServiceFactory implements ServiceFactory {
+
+	@Override
+	public Object getService(Bundle bundle, ServiceRegistration registration) {
+		return new ServiceLocatorImpl(bundle.getBundleContext());
+	}
+
+	@Override
+	public void ungetService(Bundle bundle, ServiceRegistration registration, Object service) {
+		((ServiceLocatorImpl)service).close();
+	}
+}
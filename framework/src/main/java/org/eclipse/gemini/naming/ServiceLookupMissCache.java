@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.jndi.JNDIConstants;
+
+/**
+ * Per-bundle cache of "osgi" URLs that did not resolve to a service.  
+ * 
+ * A cached miss is dropped as soon as a service is registered (or modified) 
+ * under the interface or JNDI service name requested by the URL, so a 
+ * lookup never misses a service that is available.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+class ServiceLookupMissCache implements ServiceListener {
+
+	private static final Logger logger = 
+		Logger.getLogger(ServiceLookupMissCache.class.getName());
+	
+	/* upper bound on the number of misses cached for a single bundle */
+	private static final int MAXIMUM_SIZE = 512;
+	
+	private final BundleContext m_bundleContext;
+	
+	private final ConcurrentMap<String, Miss> m_misses = 
+		new ConcurrentHashMap<String, Miss>();
+	
+	/* incremented on every service event that may invalidate a miss */
+	private final AtomicLong m_generation = new AtomicLong();
+	
+	private boolean m_isListening = false;
+	
+	private boolean m_isClosed = false;
+	
+	
+	ServiceLookupMissCache(BundleContext bundleContext) {
+		m_bundleContext = bundleContext;
+	}
+	
+	
+	/**
+	 * Returns the cached miss for the given URL.  
+	 * 
+	 * @param osgiURL the "osgi" URL
+	 * @return the cached Miss, or null if this URL is not known to miss
+	 */
+	Miss getMiss(String osgiURL) {
+		return m_misses.get(osgiURL);
+	}
+	
+	
+	/**
+	 * Must be called before the service registry is searched for the 
+	 * given URL.  The returned generation is passed to 
+	 * {@link #recordMiss(String, long)}, so that a 
+	 * miss is not cached if a matching service was registered while the 
+	 * registry was being searched.  
+	 * 
+	 * @return the current generation of this cache
+	 */
+	long beginLookup() {
+		startListening();
+		return m_generation.get();
+	}
+	
+	
+	/**
+	 * Records that the given URL did not resolve to a service.  
+	 * 
+	 * @param osgiURL the "osgi" URL
+	 * @param generation the generation returned by {@link #beginLookup()}
+	 */
+	void recordMiss(String osgiURL, long generation) {
+		if (m_misses.size() >= MAXIMUM_SIZE) {
+			return;
+		}
+		
+		m_misses.put(osgiURL, new Miss(getServiceName(osgiURL)));
+		if (m_generation.get() != generation) {
+			// a service event occurred during the lookup, the miss may be stale
+			m_misses.remove(osgiURL);
+		}
+	}
+	
+	
+	/**
+	 * Stops listening for service events, and drops all cached misses.  
+	 */
+	void close() {
+		synchronized (this) {
+			m_isClosed = true;
+			if (m_isListening) {
+				m_isListening = false;
+				try {
+					m_bundleContext.removeServiceListener(this);
+				} catch (IllegalStateException illegalStateException) {
+					// the bundle has already stopped, its listeners are removed
+					logger.log(Level.FINEST, 
+							   "BundleContext no longer valid while removing the miss cache listener", 
+							   illegalStateException);
+				}
+			}
+		}
+		
+		m_misses.clear();
+	}
+	
+	
+	@Override
+	public void serviceChanged(ServiceEvent event) {
+		if ((event.getType() != ServiceEvent.REGISTERED) 
+				&& (event.getType() != ServiceEvent.MODIFIED)) {
+			return;
+		}
+		
+		m_generation.incrementAndGet();
+		if (m_misses.isEmpty()) {
+			return;
+		}
+		
+		final ServiceReference serviceReference = event.getServiceReference();
+		final String[] objectClasses = 
+			(String[])serviceReference.getProperty(Constants.OBJECTCLASS);
+		final Object serviceName = 
+			serviceReference.getProperty(JNDIConstants.JNDI_SERVICENAME);
+		Iterator<Map.Entry<String, Miss>> iterator = m_misses.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, Miss> entry = iterator.next();
+			if (entry.getValue().matches(objectClasses, serviceName)) {
+				iterator.remove();
+			}
+		}
+	}
+	
+	
+	private synchronized void startListening() {
+		if (!m_isListening && !m_isClosed) {
+			m_bundleContext.addServiceListener(this);
+			m_isListening = true;
+		}
+	}
+	
+	
+	private static String getServiceName(String osgiURL) {
+		OSGiURLParser urlParser = new OSGiURLParser(osgiURL);
+		try {
+			urlParser.parse();
+		}
+		catch (IllegalStateException stateException) {
+			// an invalid URL will never resolve to a service
+			return null;
+		}
+		
+		return urlParser.getServiceInterface();
+	}
+	
+	
+	/**
+	 * A cached lookup miss.  
+	 */
+	static class Miss {
+		private final String m_serviceName;
+		
+		Miss(String serviceName) {
+			m_serviceName = serviceName;
+		}
+		
+		private boolean matches(String[] objectClasses, Object serviceName) {
+			if (m_serviceName == null) {
+				return false;
+			}
+			
+			if (m_serviceName.equals(serviceName)) {
+				return true;
+			}
+			
+			if (objectClasses != null) {
+				for (int i = 0; i < objectClasses.length; i++) {
+					if (m_serviceName.equals(objectClasses[i])) {
+						return true;
+					}
+				}
+			}
+			
+			return false;
+		}
+	}
+}
@@ -95,9 +95,24 @@ class ServiceUtils {
 	 */
 	static ServiceReference[] getServiceReferencesByServiceName(BundleContext bundleContext, OSGiURLParser urlParser)
 			throws InvalidSyntaxException {
+		return getServiceReferencesByServiceName(bundleContext, urlParser.getServiceInterface());
+	}
+	
+	
+	/**
+	 * Utility method to obtain the list of ServiceReferences registered 
+	 * with the given JNDI "service name" service property.  
+	 * 
+	 * @param bundleContext the BundleContext to use to obtain services
+	 * @param serviceName the JNDI service name
+	 * @return an array of ServiceReferences that match the given name
+	 * @throws InvalidSyntaxException on filter parsing error
+	 */
+	static ServiceReference[] getServiceReferencesByServiceName(BundleContext bundleContext, String serviceName)
+			throws InvalidSyntaxException {
 		final String serviceNameFilter = "("
 				+ JNDIConstants.JNDI_SERVICENAME + "="
-				+ urlParser.getServiceInterface() + ")";
+				+ serviceName + ")";
 		ServiceReference[] serviceReferencesByName = 
 			bundleContext.getServiceReferences(null, serviceNameFilter);
 		return serviceReferencesByName;
@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import javax.naming.InterruptedNamingException;
+
+/**
+ * Utility class that coalesces identical concurrent requests.  
+ * 
+ * The first thread to request a given key runs the computation.  Any 
+ * thread that requests the same key while that computation is in flight 
+ * waits for it, and receives the same result (or the same exception).  
+ * Once the computation completes the key is released, so results are 
+ * never cached beyond the lifetime of a single computation.  
+ * 
+ * @version $Revision$
+ * @ThreadSafe
+ */
+class SingleFlight<K, V> {
+
+	/* map of keys to the computations currently in flight */
+	private final ConcurrentMap<K, Call<V>> m_inFlightCalls = 
+		new ConcurrentHashMap<K, Call<V>>();
+	
+	
+	/**
+	 * Runs the given computation, or joins an identical computation that 
+	 * is already in flight.  
+	 * 
+	 * @param key the key that identifies identical computations
+	 * @param callable the computation to run if no identical computation 
+	 *        is in flight
+	 * @return the result of the computation
+	 * @throws Exception the exception thrown by the computation, or an 
+	 *         InterruptedNamingException if the thread was interrupted while
+	 *         waiting for another thread's computation
+	 */
+	V execute(K key, Callable<V> callable) throws Exception {
+		final Call<V> call = new Call<V>(callable);
+		final Call<V> inFlightCall = m_inFlightCalls.putIfAbsent(key, call);
+		if (inFlightCall == null) {
+			try {
+				call.run();
+			}
+			finally {
+				m_inFlightCalls.remove(key, call);
+			}
+			return getResult(call);
+		}
+		
+		if (inFlightCall.m_owner == Thread.currentThread()) {
+			// a computation that re-enters with its own key cannot wait on 
+			// itself, so the nested request is computed separately
+			return callable.call();
+		}
+		
+		return getResult(inFlightCall);
+	}
+	
+	
+	private static <V> V getResult(Call<V> call) throws Exception {
+		try {
+			return call.get();
+		}
+		catch (ExecutionException executionException) {
+			Throwable cause = executionException.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception)cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw executionException;
+		}
+		catch (InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			InterruptedNamingException namingException = 
+				new InterruptedNamingException("Interrupted while waiting for a concurrent naming operation");
+			namingException.setRootCause(interruptedException);
+			throw namingException;
+		}
+	}
+	
+	
+	private static class Call<V> extends FutureTask<V> {
+		/* the thread that runs this computation */
+		private final Thread m_owner = Thread.currentThread();
+		
+		Call(Callable<V> callable) {
+			super(callable);
+		}
+	}
+}
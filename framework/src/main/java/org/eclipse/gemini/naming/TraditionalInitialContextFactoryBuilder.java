@@ -15,23 +15,18 @@
 
 package org.eclipse.gemini.naming;
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
 import java.util.Hashtable;
 
 import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.naming.NoInitialContextException;
-import javax.naming.directory.DirContext;
 import javax.naming.directory.InitialDirContext;
-import javax.naming.ldap.LdapContext;
 import javax.naming.spi.InitialContextFactory;
 import javax.naming.spi.InitialContextFactoryBuilder;
 
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.ServiceReference;
 import org.osgi.service.jndi.JNDIContextManager;
 
 class TraditionalInitialContextFactoryBuilder implements InitialContextFactoryBuilder {
@@ -45,12 +40,37 @@ class TraditionalInitialContextFactoryBuilder implements InitialContextFactoryBu
 	private static final String INITIAL_DIR_CONTEXT_CLASSNAME = 
 		InitialDirContext.class.getName();
 	
+	/* JNDIContextManager service held by each client bundle */
+	private final ClientServiceCache m_contextManagers = 
+		new ClientServiceCache(JNDI_CONTEXT_MANAGER_CLASS);
+	
+	private final InitialContextFactory m_initialContextFactory = 
+		new TraditionalInitialContextFactory(m_contextManagers);
+	
 	public TraditionalInitialContextFactoryBuilder() {
 	}
 	
 	@Override
 	public InitialContextFactory createInitialContextFactory(Hashtable environment) throws NamingException {
-		return new TraditionalInitialContextFactory();
+		return m_initialContextFactory;
+	}
+	
+	
+	/**
+	 * Drops the JNDIContextManager service held for a bundle that is stopping.  
+	 * 
+	 * @param bundle the Bundle that is stopping
+	 */
+	void clearCachedServices(Bundle bundle) {
+		m_contextManagers.clear(bundle);
+	}
+	
+	
+	/**
+	 * Releases all the JNDIContextManager services held for client bundles.  
+	 */
+	void releaseCachedServices() {
+		m_contextManagers.releaseAll();
 	}
 	
 	
@@ -61,12 +81,21 @@ class TraditionalInitialContextFactoryBuilder implements InitialContextFactoryBu
 	 * 
 	 * This factory first attempts to obtain the client's BundleContext.  If this BundleContext
 	 * cannot be located, a NoInitialContextException is thrown.  
+	 * 
+	 * The JNDIContextManager service is obtained once per client bundle, and is
+	 * released when the client bundle stops.  
 	 *
 	 * 
 	 * @version $Revision$
 	 */
 	private static class TraditionalInitialContextFactory implements InitialContextFactory {
 
+		private final ClientServiceCache m_contextManagers;
+		
+		TraditionalInitialContextFactory(ClientServiceCache contextManagers) {
+			m_contextManagers = contextManagers;
+		}
+		
 		@Override
 		public Context getInitialContext(Hashtable environment) throws NamingException {
 			// try to find BundleContext, assuming a call to the InitialContext constructor
@@ -83,67 +112,16 @@ class TraditionalInitialContextFactoryBuilder implements InitialContextFactoryBu
 			if(clientBundleContext == null) {
 				throw new NoInitialContextException("Client's BundleContext could not be located");
 			} else {
-				ServiceReference serviceRef = 
-					clientBundleContext.getServiceReference(JNDI_CONTEXT_MANAGER_CLASS);
-				
+				JNDIContextManager contextManager = 
+					(JNDIContextManager)m_contextManagers.getService(clientBundleContext);
 				// if service not available, throw exception back to caller
-				if(serviceRef == null) {
+				if(contextManager == null) {
 					throw new NamingException("JNDIContextManager service not available yet, cannot create a new context");
 				} else {
-					JNDIContextManager contextManager = 
-						(JNDIContextManager)clientBundleContext.getService(serviceRef);
-					if(contextManager == null) {
-						throw new NamingException("JNDIContextManager service not available yet, cannot create a new context");
-					} else {
-						// install a dynamic proxy to trap calls to Context.close()
-						try {
-							final Context newInitialContext = contextManager.newInitialContext(environment);
-							final TraditionalContextInvocationHandler handler = 
-								new TraditionalContextInvocationHandler(serviceRef, newInitialContext, clientBundleContext);
-							// create the correct proxy
-							if (newInitialContext instanceof LdapContext) {
-								return (LdapContext)Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[] {LdapContext.class}, handler);
-							} else if(newInitialContext instanceof DirContext) {
-								return (DirContext)Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[] {DirContext.class}, handler);
-							} else {
-								return (Context)Proxy.newProxyInstance(this.getClass().getClassLoader(), new Class[] {Context.class}, handler);
-							}
-							
-						}
-						catch (NamingException namingException) {
-							// clean up reference to JNDIContextManager service
-							clientBundleContext.ungetService(serviceRef);
-							// re-throw exception
-							throw namingException;
-						}
-					}
+					return contextManager.newInitialContext(environment);
 				}
 			}
 		}
 	}
-	
-	private static class TraditionalContextInvocationHandler implements InvocationHandler {
-
-		private final ServiceReference m_referenceToContextManager;
-		private final Context m_context;
-		private final BundleContext m_bundleContext;
-		
-		TraditionalContextInvocationHandler(ServiceReference refToContextManager, Context context, BundleContext bundleContext) {
-			m_referenceToContextManager = refToContextManager;
-			m_context = context;
-			m_bundleContext = bundleContext;
-			
-		}
-		
-		@Override
-		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-			if(method.getName().equals("close")) {
-				// clean up reference to JNDIContextManager
-				m_bundleContext.ungetService(m_referenceToContextManager);
-			}
-			
-			return ReflectionUtils.invokeMethodOnContext(method, m_context, args);
-		}
-	}
 
 }
@@ -27,8 +27,8 @@ import javax.naming.spi.NamingManager;
 import javax.naming.spi.ObjectFactory;
 import javax.naming.spi.ObjectFactoryBuilder;
 
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
-import org.osgi.framework.ServiceReference;
 import org.osgi.service.jndi.JNDIProviderAdmin;
 
 class TraditionalObjectFactoryBuilder implements ObjectFactoryBuilder {
@@ -43,6 +43,10 @@ class TraditionalObjectFactoryBuilder implements ObjectFactoryBuilder {
 		DirectoryManager.class.getName();
 	
 
+	/* JNDIProviderAdmin service held by each client bundle */
+	private final ClientServiceCache m_providerAdmins = 
+		new ClientServiceCache(JNDI_PROVIDER_ADMIN_INTERFACE);
+
 	public TraditionalObjectFactoryBuilder() {
 	}
 	
@@ -58,15 +62,35 @@ class TraditionalObjectFactoryBuilder implements ObjectFactoryBuilder {
 				BuilderUtils.getBundleContext(environment, DIRECTORY_MANAGER_CLASSNAME);
 		}
 		
-		return new TraditionalObjectFactory(clientBundleContext);
+		return new TraditionalObjectFactory(clientBundleContext, m_providerAdmins);
+	}
+	
+	
+	/**
+	 * Drops the JNDIProviderAdmin service held for a bundle that is stopping.  
+	 * 
+	 * @param bundle the Bundle that is stopping
+	 */
+	void clearCachedServices(Bundle bundle) {
+		m_providerAdmins.clear(bundle);
+	}
+	
+	
+	/**
+	 * Releases all the JNDIProviderAdmin services held for client bundles.  
+	 */
+	void releaseCachedServices() {
+		m_providerAdmins.releaseAll();
 	}
 	
 	private static class TraditionalObjectFactory implements DirObjectFactory {
 
 		private final BundleContext m_clientBundleContext;
+		private final ClientServiceCache m_providerAdmins;
 		
-		TraditionalObjectFactory(BundleContext clientBundleContext) {
+		TraditionalObjectFactory(BundleContext clientBundleContext, ClientServiceCache providerAdmins) {
 			m_clientBundleContext = clientBundleContext;
+			m_providerAdmins = providerAdmins;
 		}
 		
 		@Override
@@ -86,8 +110,8 @@ class TraditionalObjectFactoryBuilder implements ObjectFactoryBuilder {
 		
 		
 		/**
-		 * Utility method used to keep the code for obtaining the JNDIProviderAdmin service in a common place.  This allows
-		 * for simpler managing of service references.  
+		 * Utility method used to keep the code for obtaining the JNDIProviderAdmin service in a common place.  The
+		 * service is obtained once per client bundle, and is released when the client bundle stops.  
 		 * @param providerAdminAction the action to perform on the JNDIProviderAdmin service
 		 * @return the result Object of the call to the JNDIProviderAdmin service
 		 * @throws Exception 
@@ -96,22 +120,12 @@ class TraditionalObjectFactoryBuilder implements ObjectFactoryBuilder {
 			if(m_clientBundleContext == null) {
 				throw new NamingException("Error in obtaining client's BundleContext");
 			} else {
-				ServiceReference serviceReference = 
-					m_clientBundleContext.getServiceReference(JNDI_PROVIDER_ADMIN_INTERFACE);
-				if(serviceReference == null) {
+				JNDIProviderAdmin providerAdmin = 
+					(JNDIProviderAdmin)m_providerAdmins.getService(m_clientBundleContext);
+				if(providerAdmin == null) {
 					throw new NamingException("JNDIProviderAdmin service not available, cannot resolve object at this time");
 				} else {
-					JNDIProviderAdmin providerAdmin = 
-						(JNDIProviderAdmin)m_clientBundleContext.getService(serviceReference);
-					if(providerAdmin == null) {
-						throw new NamingException("JNDIProviderAdmin service not available, cannot resolve object at this time");
-					} else {
-						final Object resolvedObject = providerAdminAction.runProviderAdminAction(providerAdmin);
-						// clean up reference to the provider admin service
-						m_clientBundleContext.ungetService(serviceReference);
-						// return result
-						return resolvedObject;
-					}
+					return providerAdminAction.runProviderAdminAction(providerAdmin);
 				}
 			}
 		}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2010, 2015 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation
+ ******************************************************************************/ 
+
+package org.eclipse.gemini.naming;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+import org.osgi.service.jndi.JNDIContextManager;
+
+/**
+ * Primes the JNDI paths that a client bundle lists in its 
+ * {@link GeminiNamingConstants#WARM_UP_HEADER} manifest header.  
+ * 
+ * An entry that contains a colon is a URL, which is looked up once.  Any 
+ * other entry is the class name of an InitialContextFactory, which is 
+ * used once to create a Context.  Each resulting Context is closed, any 
+ * DirectService or servicelist Context obtained by a lookup is released, 
+ * and failures are logged without stopping the remaining entries.  
+ * 
+ * @version $Revision$
+ */
+class WarmUpTask implements Runnable {
+	
+	private static final Logger logger = Logger.getLogger(WarmUpTask.class.getName());
+	
+	private final JNDIContextManager m_contextManager;
+	private final List<String> m_entries;
+	
+	/**
+	 * @param contextManager the context manager of the client bundle
+	 * @param entries the URLs and factory names to prime
+	 */
+	WarmUpTask(JNDIContextManager contextManager, List<String> entries) {
+		m_contextManager = contextManager;
+		m_entries = entries;
+	}
+	
+	
+	/**
+	 * Parses the value of the warm-up header.  
+	 * 
+	 * @param headerValue a comma-separated list of URLs and factory names
+	 * @return the entries of the header, which may be empty
+	 */
+	static List<String> parseHeader(String headerValue) {
+		List<String> entries = new ArrayList<String>();
+		for (String entry : headerValue.split(",")) {
+			final String trimmedEntry = entry.trim();
+			if (trimmedEntry.length() > 0) {
+				entries.add(trimmedEntry);
+			}
+		}
+		
+		return entries;
+	}
+	
+	
+	@Override
+	public void run() {
+		for (String entry : m_entries) {
+			try {
+				if (entry.indexOf(':') != -1) {
+					warmUpURL(entry);
+				} else {
+					warmUpFactory(entry);
+				}
+			} catch (Exception exception) {
+				logger.log(Level.FINE, 
+						   "Exception occurred while warming up the JNDI entry " + entry, 
+						   exception);
+			}
+		}
+	}
+	
+	
+	private void warmUpURL(String url) throws NamingException {
+		final Context context = m_contextManager.newInitialContext();
+		try {
+			// resolves the URL Context Factory, the service and its proxy class
+			release(context.lookup(url));
+		} finally {
+			context.close();
+		}
+	}
+	
+	
+	/**
+	 * Releases the result of a lookup the way a client would.  
+	 * 
+	 * An "osgi:service" proxy is dropped without being closed, since an 
+	 * identical lookup made by the client bundle at the same time may have 
+	 * been handed the same proxy.  Its service is released once the proxy 
+	 * is finalized.  A proxy is checked first, since the proxied service 
+	 * may itself be a Context.  
+	 */
+	private static void release(Object result) throws NamingException {
+		if ((result == null) || ReflectionUtils.isServiceProxy(result)) {
+			return;
+		}
+		
+		if (result instanceof DirectService) {
+			((DirectService)result).release();
+		} else if (result instanceof Context) {
+			// for example the Context returned by an "osgi:servicelist" lookup
+			((Context)result).close();
+		}
+	}
+	
+	
+	private void warmUpFactory(String factoryName) throws NamingException {
+		Hashtable<String, Object> environment = new Hashtable<String, Object>();
+		environment.put(Context.INITIAL_CONTEXT_FACTORY, factoryName);
+		m_contextManager.newInitialContext(environment).close();
+	}
+}
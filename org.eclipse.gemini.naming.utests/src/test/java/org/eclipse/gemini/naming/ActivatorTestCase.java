@@ -28,7 +28,9 @@ import javax.naming.spi.ObjectFactory;
 import javax.naming.spi.ObjectFactoryBuilder;
 
 import org.easymock.EasyMockSupport;
+import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleListener;
 import org.osgi.framework.Filter;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceListener;
@@ -84,14 +86,17 @@ public class ActivatorTestCase extends TestCase {
 		
 		// expect the JNDIContextManager service registration
 		setServiceRegistrationExpectation(mockSupport, bundleContextMock, 
-				                          JNDIContextManager.class.getName(),
-				                          ContextManagerServiceFactoryImpl.class, 
-                						  null);
+				                          new String[] {JNDIContextManager.class.getName(), AsyncContextManager.class.getName()},
+				                          ContextManagerServiceFactoryImpl.class);
 		// expect the JNDIProviderAdmin service registration
 		setServiceRegistrationExpectation(mockSupport, bundleContextMock, 
-                						  JNDIProviderAdmin.class.getName(),
-                						  SecurityAwareProviderAdminImpl.class, 
-                						  null);
+                						  new String[] {JNDIProviderAdmin.class.getName(), BatchProviderAdmin.class.getName(), AsyncProviderAdmin.class.getName()},
+                						  ProviderAdminServiceFactory.class);
+		// expect the ServiceLocator service registration
+		setServiceRegistrationExpectation(mockSupport, bundleContextMock, 
+				                          ServiceLocator.class.getName(), 
+				                          ServiceLocatorServiceFactory.class, 
+				                          null);
 		// expect the rmiURLContextFactory service registration
 		Hashtable<String, Object> props = new Hashtable<String, Object>();
         props.put(JNDIConstants.JNDI_URLSCHEME, "rmi");
@@ -193,8 +198,21 @@ public class ActivatorTestCase extends TestCase {
 		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
 		expectLastCall().anyTimes();
 		
+		// expect the listener for the caller BundleContext cache, and 
+		// the listener that tracks the client bundles of the JNDIContextManager service
+		bundleContextMock.addBundleListener(isA(BundleListener.class));
+		expectLastCall().times(2);
+		bundleContextMock.removeBundleListener(isA(BundleListener.class));
+		expectLastCall().times(2);
+		
+		// no client bundles are active, so none are warmed up
+		expect(bundleContextMock.getBundles()).andReturn(new Bundle[0]);
+		
 		expect(bundleContextMock.getServiceReferences(isA(String.class), isA(String.class))).andReturn(new ServiceReference[0]).anyTimes();
 		expect(bundleContextMock.getServiceReferences(isA(String.class), (String)isNull())).andReturn(new ServiceReference[0]).anyTimes();
+		
+		// framework properties are not set in this test
+		expect(bundleContextMock.getProperty(isA(String.class))).andReturn(null).anyTimes();
 	}
 
 	private static <T> void setServiceRegistrationExpectation(EasyMockSupport mockSupport, BundleContext bundleContextMock, String serviceName, Class<T> serviceType, Dictionary<String, Object> serviceProperties) {
@@ -212,6 +230,15 @@ public class ActivatorTestCase extends TestCase {
 		
 	}
 	
+	private static <T> void setServiceRegistrationExpectation(EasyMockSupport mockSupport, BundleContext bundleContextMock, String[] serviceNames, Class<T> serviceType) {
+		ServiceRegistration serviceRegistrationMock = 
+			mockSupport.createMock(ServiceRegistration.class);
+		// required for stop() method
+		serviceRegistrationMock.unregister();
+		expect(bundleContextMock.registerService(aryEq(serviceNames),
+                isA(serviceType), (Dictionary)isNull())).andReturn(serviceRegistrationMock);
+	}
+	
 	/**
 	 * This method should be used only for unit testing the Gemini Naming Activator.  
 	 * 
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import javax.naming.Binding;
+import javax.naming.Context;
+import javax.naming.Name;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.Reference;
+
+import org.easymock.EasyMockSupport;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class AsyncProviderAdminImplTestCase extends TestCase {
+
+	/**
+	 * Verifies that an asynchronous resolution reports its result 
+	 * through both the Future and the NamingCallback.  
+	 */
+	public void testGetObjectInstance() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		CloseableProviderAdmin providerAdminMock = 
+			mockSupport.createMock(CloseableProviderAdmin.class);
+		Reference reference = new Reference("com.oracle.TestType");
+		Object expectedResult = new Object();
+		expect(providerAdminMock.getObjectInstance(same(reference), (Name)isNull(), (Context)isNull(), isA(Hashtable.class))).andReturn(expectedResult);
+		mockSupport.replayAll();
+		
+		AsyncProviderAdminImpl providerAdmin = 
+			new AsyncProviderAdminImpl(providerAdminMock, new CallerThreadExecutor());
+		TestNamingCallback callback = new TestNamingCallback();
+		Future<Object> future = 
+			providerAdmin.getObjectInstance(reference, null, null, new Hashtable(), callback);
+		
+		assertTrue("Asynchronous operation did not complete", future.isDone());
+		assertSame("Incorrect result returned by the Future", 
+				   expectedResult, future.get());
+		assertSame("Incorrect result passed to the NamingCallback", 
+				   expectedResult, callback.m_result);
+		assertNull("NamingCallback should not have been notified of a failure", 
+				   callback.m_cause);
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that an exception thrown during an asynchronous 
+	 * resolution is reported through both the Future and the NamingCallback.  
+	 */
+	public void testGetObjectInstanceWithException() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		CloseableProviderAdmin providerAdminMock = 
+			mockSupport.createMock(CloseableProviderAdmin.class);
+		Reference reference = new Reference("com.oracle.TestType");
+		NamingException expectedException = new NamingException("test exception");
+		expect(providerAdminMock.getObjectInstance(same(reference), (Name)isNull(), (Context)isNull(), isA(Hashtable.class))).andThrow(expectedException);
+		mockSupport.replayAll();
+		
+		AsyncProviderAdminImpl providerAdmin = 
+			new AsyncProviderAdminImpl(providerAdminMock, new CallerThreadExecutor());
+		TestNamingCallback callback = new TestNamingCallback();
+		Future<Object> future = 
+			providerAdmin.getObjectInstance(reference, null, null, new Hashtable(), callback);
+		
+		try {
+			future.get();
+			fail("ExecutionException should have been thrown");
+		} catch (ExecutionException executionException) {
+			assertSame("Incorrect cause reported by the Future", 
+					   expectedException, executionException.getCause());
+		}
+		
+		assertSame("Incorrect cause passed to the NamingCallback", 
+				   expectedException, callback.m_cause);
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that the objects of the bindings are resolved ahead of the 
+	 * caller on the resolve-ahead executor, within the read ahead limit, 
+	 * and returned in order.  
+	 */
+	public void testResolveBindings() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		CloseableProviderAdmin providerAdminMock = 
+			mockSupport.createMock(CloseableProviderAdmin.class);
+		for(int i = 1; i <= 3; i++) {
+			expect(providerAdminMock.getObjectInstance(eq("object-" + i), isA(Name.class), (Context)isNull(), (Map)isNull())).andReturn("resolved-" + i);
+		}
+		mockSupport.replayAll();
+		
+		DeferredExecutor asyncExecutor = new DeferredExecutor();
+		DeferredExecutor executor = new DeferredExecutor();
+		AsyncProviderAdminImpl providerAdmin = 
+			new AsyncProviderAdminImpl(providerAdminMock, asyncExecutor, executor);
+		TestBindingEnumeration source = 
+			new TestBindingEnumeration(new Binding("one", "object-1"), new Binding("two", "object-2"), new Binding("three", "object-3"));
+		NamingEnumeration<Binding> bindings = 
+			providerAdmin.resolveBindings(source, null, null, 2);
+		
+		assertTrue("Enumeration should contain bindings", bindings.hasMore());
+		assertEquals("Incorrect number of bindings read ahead", 
+				     2, executor.m_tasks.size());
+		
+		executor.runPendingTasks();
+		Binding binding = bindings.next();
+		assertEquals("Incorrect binding order", "one", binding.getName());
+		assertEquals("Binding object was not resolved", "resolved-1", binding.getObject());
+		// the third binding is read once the first is returned
+		assertEquals("Read ahead window was not refilled", 
+				     1, executor.m_tasks.size());
+		
+		executor.runPendingTasks();
+		assertEquals("Incorrect binding order", "resolved-2", bindings.next().getObject());
+		assertEquals("Incorrect binding order", "resolved-3", bindings.next().getObject());
+		assertFalse("Enumeration should not contain any more bindings", bindings.hasMore());
+		
+		bindings.close();
+		assertTrue("Source enumeration was not closed", source.m_isClosed);
+		assertTrue("Bindings should not be resolved on the asynchronous executor", 
+				   asyncExecutor.m_tasks.isEmpty());
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/* test utility classes */
+	
+	private static class DeferredExecutor implements Executor {
+		private final List<Runnable> m_tasks = new LinkedList<Runnable>();
+		
+		public void execute(Runnable runnable) {
+			m_tasks.add(runnable);
+		}
+		
+		void runPendingTasks() {
+			while(!m_tasks.isEmpty()) {
+				m_tasks.remove(0).run();
+			}
+		}
+	}
+	
+	private static class TestBindingEnumeration implements NamingEnumeration<Binding> {
+		private final Iterator<Binding> m_iterator;
+		private boolean m_isClosed = false;
+		
+		TestBindingEnumeration(Binding... bindings) {
+			m_iterator = Arrays.asList(bindings).iterator();
+		}
+		
+		public boolean hasMore() {
+			return m_iterator.hasNext();
+		}
+
+		public Binding next() {
+			return m_iterator.next();
+		}
+
+		public boolean hasMoreElements() {
+			return hasMore();
+		}
+
+		public Binding nextElement() {
+			return next();
+		}
+
+		public void close() {
+			m_isClosed = true;
+		}
+	}
+	
+	private static class CallerThreadExecutor implements Executor {
+		public void execute(Runnable runnable) {
+			runnable.run();
+		}
+	}
+	
+	private static class TestNamingCallback implements NamingCallback<Object> {
+		private Object m_result;
+		private Throwable m_cause;
+		
+		public void completed(Object result) {
+			m_result = result;
+		}
+
+		public void failed(Throwable cause) {
+			m_cause = cause;
+		}
+	}
+}
@@ -146,6 +146,48 @@ public class BuilderUtilsTestCase extends TestCase {
 			}
 		}
 	}
+	
+	/**
+	 * Verifies that the BundleContext obtained from a client ClassLoader is 
+	 * cached, and that the cached entry is removed once the bundle stops.  
+	 */
+	public void testGetBundleContextFromContextClassLoaderIsCached() throws Exception {
+		ClassLoader oldContextClassLoader = 
+			Thread.currentThread().getContextClassLoader();
+		try {
+			// mock setup
+			EasyMockSupport mockSupport = new EasyMockSupport();
+			Bundle bundleMock = 
+				mockSupport.createMock(Bundle.class);
+			BundleContext bundleContextFromClassLoaderMock = 
+				mockSupport.createMock(BundleContext.class);
+			// once for the first lookup, once after the cache is cleared
+			expect(bundleMock.getBundleContext()).andReturn(bundleContextFromClassLoaderMock).times(2);
+			
+			mockSupport.replayAll();
+			
+			// set Thread Context ClassLoader to use stub TestClassLoader
+			Thread.currentThread().setContextClassLoader(new TestClassLoader(bundleMock));
+			
+			assertSame("BuilderUtils did not return the expected BundleContext instance",
+					   bundleContextFromClassLoaderMock, BuilderUtils.getBundleContext(null, NamingManager.class.getName()));
+			// second lookup should be served from the cache
+			assertSame("BuilderUtils did not return the expected BundleContext instance",
+					   bundleContextFromClassLoaderMock, BuilderUtils.getBundleContext(null, NamingManager.class.getName()));
+			
+			// simulate the bundle stopping 
+			BuilderUtils.clearCachedBundleContexts(bundleMock);
+			assertSame("BuilderUtils did not return the expected BundleContext instance",
+					   bundleContextFromClassLoaderMock, BuilderUtils.getBundleContext(null, NamingManager.class.getName()));
+			
+			mockSupport.verifyAll();
+		} finally {
+			if(oldContextClassLoader != null) {
+				// reset original Context ClassLoader
+				Thread.currentThread().setContextClassLoader(oldContextClassLoader);
+			}
+		}
+	}
 		
 	private static class TestClassLoader extends ClassLoader implements BundleReference {
 		private final Bundle m_bundle;
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import org.easymock.EasyMockSupport;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.jndi.JNDIProviderAdmin;
+
+import static org.easymock.EasyMock.*;
+
+import junit.framework.TestCase;
+
+public class ClientServiceCacheTestCase extends TestCase {
+
+	/**
+	 * Verifies that a client bundle obtains the service only once.  
+	 */
+	public void testServiceIsObtainedOnce() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = mockSupport.createMock(BundleContext.class);
+		ServiceReference serviceReferenceMock = mockSupport.createMock(ServiceReference.class);
+		Object service = new Object();
+		
+		expect(bundleContextMock.getBundle()).andReturn(bundleMock).anyTimes();
+		expect(serviceReferenceMock.getBundle()).andReturn(bundleMock).anyTimes();
+		expect(bundleContextMock.getServiceReference(JNDIProviderAdmin.class.getName())).andReturn(serviceReferenceMock);
+		expect(bundleContextMock.getService(serviceReferenceMock)).andReturn(service);
+		// released once the cache is shut down
+		expect(bundleContextMock.ungetService(serviceReferenceMock)).andReturn(true);
+		mockSupport.replayAll();
+		
+		ClientServiceCache cache = new ClientServiceCache(JNDIProviderAdmin.class.getName());
+		assertSame("Cache did not return the expected service", 
+				   service, cache.getService(bundleContextMock));
+		assertSame("Cache did not return the expected service", 
+				   service, cache.getService(bundleContextMock));
+		cache.releaseAll();
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that the service is obtained again once the cached 
+	 * service has been unregistered.  
+	 */
+	public void testUnregisteredServiceIsReplaced() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = mockSupport.createMock(BundleContext.class);
+		ServiceReference oldServiceReferenceMock = mockSupport.createMock(ServiceReference.class);
+		ServiceReference newServiceReferenceMock = mockSupport.createMock(ServiceReference.class);
+		Object oldService = new Object();
+		Object newService = new Object();
+		
+		expect(bundleContextMock.getBundle()).andReturn(bundleMock).anyTimes();
+		expect(bundleContextMock.getServiceReference(JNDIProviderAdmin.class.getName())).andReturn(oldServiceReferenceMock);
+		expect(bundleContextMock.getService(oldServiceReferenceMock)).andReturn(oldService);
+		// simulate the unregistration of the service 
+		expect(oldServiceReferenceMock.getBundle()).andReturn(null).anyTimes();
+		expect(bundleContextMock.ungetService(oldServiceReferenceMock)).andReturn(false);
+		expect(bundleContextMock.getServiceReference(JNDIProviderAdmin.class.getName())).andReturn(newServiceReferenceMock);
+		expect(bundleContextMock.getService(newServiceReferenceMock)).andReturn(newService);
+		mockSupport.replayAll();
+		
+		ClientServiceCache cache = new ClientServiceCache(JNDIProviderAdmin.class.getName());
+		assertSame("Cache did not return the expected service", 
+				   oldService, cache.getService(bundleContextMock));
+		assertSame("Cache did not replace the unregistered service", 
+				   newService, cache.getService(bundleContextMock));
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that the handle of a stopped bundle is dropped without 
+	 * releasing the service, since the framework releases it.  
+	 */
+	public void testClearForStoppedBundle() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = mockSupport.createMock(BundleContext.class);
+		ServiceReference serviceReferenceMock = mockSupport.createMock(ServiceReference.class);
+		Object service = new Object();
+		
+		expect(bundleContextMock.getBundle()).andReturn(bundleMock).anyTimes();
+		expect(bundleContextMock.getServiceReference(JNDIProviderAdmin.class.getName())).andReturn(serviceReferenceMock).times(2);
+		expect(bundleContextMock.getService(serviceReferenceMock)).andReturn(service).times(2);
+		mockSupport.replayAll();
+		
+		ClientServiceCache cache = new ClientServiceCache(JNDIProviderAdmin.class.getName());
+		cache.getService(bundleContextMock);
+		cache.clear(bundleMock);
+		assertSame("Cache did not return the expected service", 
+				   service, cache.getService(bundleContextMock));
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that null is returned when the service is not available.  
+	 */
+	public void testServiceNotAvailable() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = mockSupport.createMock(BundleContext.class);
+		
+		expect(bundleContextMock.getBundle()).andReturn(bundleMock).anyTimes();
+		expect(bundleContextMock.getServiceReference(JNDIProviderAdmin.class.getName())).andReturn(null);
+		mockSupport.replayAll();
+		
+		ClientServiceCache cache = new ClientServiceCache(JNDIProviderAdmin.class.getName());
+		assertNull("Cache should not return a service that is not available", 
+				   cache.getService(bundleContextMock));
+		
+		mockSupport.verifyAll();
+	}
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.Hashtable;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import javax.naming.spi.InitialContextFactory;
+
+import org.easymock.EasyMockSupport;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class ContextManagerImplTestCase extends TestCase {
+	
+	/* the context manager used by TestInitialContextFactory */
+	private static ContextManagerImpl s_contextManager;
+	
+	
+	/**
+	 * Verifies that a traditional client can create an InitialDirContext 
+	 * while Contexts are pooled, since DirContexts are not pooled.  
+	 */
+	public void testInitialDirContextWithPooling() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		BundleContext bundleContextMock = 
+			mockSupport.createNiceMock(BundleContext.class);
+		Bundle bundleMock = 
+			mockSupport.createNiceMock(Bundle.class);
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createNiceMock(ServiceReference.class);
+		InitialContextFactory factoryMock = 
+			mockSupport.createNiceMock(InitialContextFactory.class);
+		DirContext dirContextMock = 
+			mockSupport.createNiceMock(DirContext.class);
+		Attributes attributes = new BasicAttributes();
+		
+		expect(bundleMock.getBundleContext()).andReturn(bundleContextMock).anyTimes();
+		expect(bundleContextMock.getServiceReferences(InitialContextFactory.class.getName(), null))
+			.andReturn(new ServiceReference[] { serviceReferenceMock }).anyTimes();
+		expect(bundleContextMock.getService(serviceReferenceMock)).andReturn(factoryMock).anyTimes();
+		expect(factoryMock.getInitialContext(isA(Hashtable.class))).andReturn(dirContextMock).anyTimes();
+		expect(dirContextMock.getAttributes("cn=test", (String[]) null)).andReturn(attributes);
+		mockSupport.replayAll();
+		
+		// begin test
+		s_contextManager = 
+			new ContextManagerImpl(bundleMock, bundleContextMock, ProviderGuard.createDisabledGuard(), 
+					               null, 0, new ContextPool(1, 60000));
+		try {
+			Hashtable<String, Object> environment = new Hashtable<String, Object>();
+			environment.put(Context.INITIAL_CONTEXT_FACTORY, TestInitialContextFactory.class.getName());
+			DirContext dirContext = new InitialDirContext(environment);
+			assertSame("DirContext method was not delegated", 
+					   attributes, dirContext.getAttributes("cn=test"));
+			dirContext.close();
+		} finally {
+			s_contextManager.close();
+			s_contextManager = null;
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Creates the Context from the context manager, as the 
+	 * InitialContextFactory used for traditional clients does.  
+	 */
+	public static class TestInitialContextFactory implements InitialContextFactory {
+		@Override
+		public Context getInitialContext(Hashtable<?, ?> environment) throws NamingException {
+			Hashtable<Object, Object> clientEnvironment = new Hashtable<Object, Object>(environment);
+			clientEnvironment.remove(Context.INITIAL_CONTEXT_FACTORY);
+			return s_contextManager.newInitialContext(clientEnvironment);
+		}
+	}
+}
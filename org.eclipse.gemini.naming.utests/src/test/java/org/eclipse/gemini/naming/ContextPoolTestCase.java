@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+import javax.naming.spi.InitialContextFactory;
+
+import org.easymock.EasyMockSupport;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class ContextPoolTestCase extends TestCase {
+
+	/**
+	 * Verifies that closing a PooledContext returns its Context to the pool, 
+	 * and that the Context is reused for an equal environment only.  
+	 */
+	public void testReuse() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		FactoryManager factoryManagerMock = 
+			mockSupport.createMock(FactoryManager.class);
+		InitialContextFactory factoryMock = 
+			mockSupport.createMock(InitialContextFactory.class);
+		Context contextMock = 
+			mockSupport.createMock(Context.class);
+		expect(factoryManagerMock.isFactoryServiceActive(factoryMock)).andReturn(true).anyTimes();
+		expect(contextMock.lookup("test")).andReturn("test value");
+		mockSupport.replayAll();
+		
+		// begin test
+		Context context = 
+			ServiceAwareContextFactory.createServiceAwareContextWrapper(factoryMock, contextMock, factoryManagerMock);
+		ContextPool pool = new ContextPool(1, 60000);
+		Hashtable<String, Object> environment = new Hashtable<String, Object>();
+		environment.put("test.property", "test.value");
+		
+		Context pooledContext = new PooledContext(pool, environment, context);
+		assertEquals("Method was not delegated", "test value", pooledContext.lookup("test"));
+		pooledContext.close();
+		
+		List<Context> contextsToClose = new ArrayList<Context>();
+		assertNull("Context should not be reused for another environment", 
+				   pool.acquire(new Hashtable<String, Object>(), contextsToClose));
+		assertSame("Context was not reused", 
+				   context, pool.acquire(new Hashtable<String, Object>(environment), contextsToClose));
+		assertTrue("No Context should have been dropped", contextsToClose.isEmpty());
+		
+		try {
+			pooledContext.lookup("test");
+			fail("NamingException should have been thrown");
+		} catch (NamingException namingException) {
+			// expected exception
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that an idle Context is dropped once the factory service 
+	 * that created it goes away, and that a Context whose environment was 
+	 * changed is closed rather than pooled.  
+	 */
+	public void testInvalidation() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		FactoryManager factoryManagerMock = 
+			mockSupport.createMock(FactoryManager.class);
+		InitialContextFactory factoryMock = 
+			mockSupport.createMock(InitialContextFactory.class);
+		Context contextOneMock = 
+			mockSupport.createMock(Context.class);
+		Context contextTwoMock = 
+			mockSupport.createMock(Context.class);
+		// the factory goes away while the first Context is idle, and is 
+		// replaced by the time the second Context is used
+		expect(factoryManagerMock.isFactoryServiceActive(factoryMock)).andReturn(true);
+		expect(factoryManagerMock.isFactoryServiceActive(factoryMock)).andReturn(false);
+		expect(factoryManagerMock.isFactoryServiceActive(factoryMock)).andReturn(true);
+		expect(contextTwoMock.addToEnvironment("test.property", "new value")).andReturn(null);
+		contextTwoMock.close();
+		mockSupport.replayAll();
+		
+		// begin test
+		Context contextOne = 
+			ServiceAwareContextFactory.createServiceAwareContextWrapper(factoryMock, contextOneMock, factoryManagerMock);
+		Context contextTwo = 
+			ServiceAwareContextFactory.createServiceAwareContextWrapper(factoryMock, contextTwoMock, factoryManagerMock);
+		ContextPool pool = new ContextPool(2, 60000);
+		Hashtable<String, Object> environment = new Hashtable<String, Object>();
+		
+		new PooledContext(pool, environment, contextOne).close();
+		List<Context> contextsToClose = new ArrayList<Context>();
+		assertNull("Context of a departed factory service should not be reused", 
+				   pool.acquire(environment, contextsToClose));
+		assertEquals("Context of a departed factory service was not dropped", 
+				     1, contextsToClose.size());
+		assertSame("Incorrect Context dropped", contextOne, contextsToClose.get(0));
+		
+		Context pooledContext = new PooledContext(pool, environment, contextTwo);
+		pooledContext.addToEnvironment("test.property", "new value");
+		pooledContext.close();
+		assertTrue("Pool should not contain any Contexts", pool.close().isEmpty());
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that the periodic eviction drops the Contexts that timed out, 
+	 * and reports a closed pool.  
+	 */
+	public void testEvictIdleContexts() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		FactoryManager factoryManagerMock = 
+			mockSupport.createMock(FactoryManager.class);
+		InitialContextFactory factoryMock = 
+			mockSupport.createMock(InitialContextFactory.class);
+		Context contextMock = 
+			mockSupport.createMock(Context.class);
+		expect(factoryManagerMock.isFactoryServiceActive(factoryMock)).andReturn(true).anyTimes();
+		mockSupport.replayAll();
+		
+		// begin test
+		Context context = 
+			ServiceAwareContextFactory.createServiceAwareContextWrapper(factoryMock, contextMock, factoryManagerMock);
+		// every idle Context has timed out
+		ContextPool pool = new ContextPool(1, 0);
+		List<Context> contextsToClose = new ArrayList<Context>();
+		pool.release(new Hashtable<String, Object>(), context, contextsToClose);
+		assertTrue("No Context should have been dropped on release", contextsToClose.isEmpty());
+		
+		List<Context> evictedContexts = pool.evictIdleContexts();
+		assertEquals("Idle Context was not evicted", 1, evictedContexts.size());
+		assertSame("Incorrect Context evicted", context, evictedContexts.get(0));
+		assertTrue("Pool should not contain any Contexts", pool.evictIdleContexts().isEmpty());
+		
+		pool.close();
+		assertNull("A closed pool should not be evicted", pool.evictIdleContexts());
+		
+		mockSupport.verifyAll();
+	}
+}
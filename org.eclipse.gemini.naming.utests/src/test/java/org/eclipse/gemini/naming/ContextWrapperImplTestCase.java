@@ -187,6 +187,44 @@ public class ContextWrapperImplTestCase extends TestCase {
 		mockSupport.verifyAll();
 	}
 	
+	/** 
+	 * Verify that the URL scheme of a Name is taken from its first component, 
+	 * and that a Name with a colon in a later component is not treated as a URL.  
+	 */
+	public void testURLLookupWithName() throws Exception {
+		final String expectedURL = "testURL";
+		final Name urlName = new CompositeName(expectedURL + ":basicLookupName/child");
+		final Name nonURLName = new CompositeName("parent/child:name");
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		ObjectFactory objectFactoryMock = 
+			mockSupport.createMock(ObjectFactory.class);
+		Context contextMock = 
+			mockSupport.createMock(Context.class);
+		Context urlContextMock = 
+			mockSupport.createMock(Context.class);
+		FactoryManager factoryManagerMock = 
+			mockSupport.createMock(FactoryManager.class);
+		expect(contextMock.getEnvironment()).andReturn(new Hashtable());
+		expect(factoryManagerMock.getURLContextFactory(expectedURL)).andReturn(objectFactoryMock);
+		expect(objectFactoryMock.getObjectInstance(null, null, null, new Hashtable())).andReturn(urlContextMock);
+		expect(urlContextMock.lookup(urlName)).andReturn("url value");
+		expect(contextMock.lookup(nonURLName)).andReturn("default value");
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		Context testContext = 
+			new ContextWrapperImpl(contextMock, factoryManagerMock);
+		
+		assertEquals("URL Name was not passed to the URL Context", 
+				     "url value", testContext.lookup(urlName));
+		assertEquals("Non-URL Name was not passed to the default Context", 
+			     	 "default value", testContext.lookup(nonURLName));
+		
+		mockSupport.verifyAll();
+	}
+	
 	public void testNonURLLookup() throws Exception {
 		final String expectedNonURLName = "lookupOne";
 		final String expectedValue = "lookup result";
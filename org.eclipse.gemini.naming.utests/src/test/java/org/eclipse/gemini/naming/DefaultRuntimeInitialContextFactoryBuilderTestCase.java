@@ -52,6 +52,32 @@ public class DefaultRuntimeInitialContextFactoryBuilderTestCase extends TestCase
 				    factoryResult instanceof TestInitialContextFactory);
 	}
 	
+	/**
+	 * Verifies that a factory that is not provided by the JRE is created 
+	 * for each request, and that a JRE factory instance is shared.  
+	 */
+	public void testFactoryCaching() throws Exception {
+		DefaultRuntimeInitialContextFactoryBuilder builder = 
+			new DefaultRuntimeInitialContextFactoryBuilder();
+		Hashtable<String, Object> environment = new Hashtable<String, Object>();
+		environment.put(Context.INITIAL_CONTEXT_FACTORY, TestInitialContextFactory.class.getName());
+		
+		InitialContextFactory firstFactory = builder.createInitialContextFactory(environment);
+		InitialContextFactory secondFactory = builder.createInitialContextFactory(environment);
+		assertTrue("DefaultRuntime builder did not return a factory of the expected type",
+			       secondFactory instanceof TestInitialContextFactory);
+		assertNotSame("Factories not provided by the JRE should not be shared", 
+				      firstFactory, secondFactory);
+		
+		environment.put(Context.INITIAL_CONTEXT_FACTORY, "com.sun.jndi.dns.DnsContextFactory");
+		InitialContextFactory runtimeFactory = builder.createInitialContextFactory(environment);
+		if (runtimeFactory != null) {
+			// the DNS provider is not present in every JRE
+			assertSame("Factories provided by the JRE should be shared", 
+					   runtimeFactory, builder.createInitialContextFactory(environment));
+		}
+	}
+	
 	public void testEnvironmentWithFactoryThatDoesNotExist() throws Exception {
 		Hashtable<String, Object> environment = new Hashtable<String, Object>();
 		environment.put(Context.INITIAL_CONTEXT_FACTORY, "this.factory.does.not.exist");
@@ -63,6 +89,19 @@ public class DefaultRuntimeInitialContextFactoryBuilderTestCase extends TestCase
 				   factoryResult);
 	}
 	
+	public void testEnvironmentWithFactoryThatIsNotAFactory() throws Exception {
+		Hashtable<String, Object> environment = new Hashtable<String, Object>();
+		environment.put(Context.INITIAL_CONTEXT_FACTORY, String.class.getName());
+		DefaultRuntimeInitialContextFactoryBuilder builder = 
+			new DefaultRuntimeInitialContextFactoryBuilder();
+		
+		assertNull("DefaultRuntime builder should not have returned a factory",
+				   builder.createInitialContextFactory(environment));
+		// the second request is answered by the cache of names that do not load
+		assertNull("DefaultRuntime builder should not have returned a factory",
+				   builder.createInitialContextFactory(environment));
+	}
+	
 	public void testFactoryThrowsException() throws Exception {
 		Hashtable<String, Object> environment = new Hashtable<String, Object>();
 		environment.put(Context.INITIAL_CONTEXT_FACTORY, TestInitialContextFactoryThrowsException.class.getName());
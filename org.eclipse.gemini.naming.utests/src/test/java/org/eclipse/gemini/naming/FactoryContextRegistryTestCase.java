@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.List;
+
+import javax.naming.Context;
+
+import org.easymock.EasyMockSupport;
+
+import junit.framework.TestCase;
+
+public class FactoryContextRegistryTestCase extends TestCase {
+
+	/**
+	 * Verifies that a factory is active once it has created a Context, 
+	 * and that removing the factory returns the Contexts it created.  
+	 */
+	public void testAssociateAndRemoveFactory() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Context contextOne = 
+			mockSupport.createMock(Context.class);
+		Context contextTwo = 
+			mockSupport.createMock(Context.class);
+		Object factory = new Object();
+		Object otherFactory = new Object();
+		mockSupport.replayAll();
+		
+		// begin test
+		FactoryContextRegistry registry = new FactoryContextRegistry();
+		assertFalse("Factory should not be active before it creates a Context", 
+				    registry.isActive(factory));
+		
+		registry.associate(factory, contextOne);
+		registry.associate(factory, contextTwo);
+		registry.associate(otherFactory, contextOne);
+		assertTrue("Factory should be active", registry.isActive(factory));
+		
+		List<Context> contexts = registry.removeFactory(factory);
+		assertEquals("Incorrect number of Contexts returned", 2, contexts.size());
+		assertTrue("Context was not returned", contexts.contains(contextOne));
+		assertTrue("Context was not returned", contexts.contains(contextTwo));
+		assertFalse("Removed factory should not be active", registry.isActive(factory));
+		assertTrue("Other factory should still be active", registry.isActive(otherFactory));
+		assertTrue("Removing a factory twice should not return any Contexts", 
+				   registry.removeFactory(factory).isEmpty());
+		
+		mockSupport.verifyAll();
+	}
+}
@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.PartialResultException;
+
+import org.easymock.EasyMockSupport;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class NamingEnumerationsTestCase extends TestCase {
+
+	/**
+	 * Verifies that an Iterable over a NamingEnumeration returns all the 
+	 * elements, closes the enumeration at the end, and can only be iterated once.  
+	 */
+	public void testAsIterable() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		NamingEnumeration<String> enumerationMock = 
+			mockSupport.createMock(NamingEnumeration.class);
+		expect(enumerationMock.hasMore()).andReturn(true);
+		expect(enumerationMock.next()).andReturn("one");
+		expect(enumerationMock.hasMore()).andReturn(true);
+		expect(enumerationMock.next()).andReturn("two");
+		expect(enumerationMock.hasMore()).andReturn(false);
+		enumerationMock.close();
+		mockSupport.replayAll();
+		
+		Iterable<String> iterable = NamingEnumerations.asIterable(enumerationMock);
+		List<String> elements = new ArrayList<String>();
+		for(String element : iterable) {
+			elements.add(element);
+		}
+		
+		assertEquals("Iterable did not return the expected number of elements", 
+				     2, elements.size());
+		assertEquals("Incorrect element order", "one", elements.get(0));
+		assertEquals("Incorrect element order", "two", elements.get(1));
+		
+		try {
+			iterable.iterator();
+			fail("IllegalStateException should have been thrown");
+		} catch (IllegalStateException illegalStateException) {
+			// expected exception
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a NamingException reported by the enumeration is 
+	 * rethrown with its cause, and that the enumeration is closed.  
+	 */
+	public void testAsIterableWithNamingException() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		NamingEnumeration<String> enumerationMock = 
+			mockSupport.createMock(NamingEnumeration.class);
+		NamingException expectedException = new PartialResultException("test");
+		expect(enumerationMock.hasMore()).andReturn(true);
+		expect(enumerationMock.next()).andReturn("one");
+		expect(enumerationMock.hasMore()).andThrow(expectedException);
+		enumerationMock.close();
+		mockSupport.replayAll();
+		
+		Iterator<String> iterator = 
+			NamingEnumerations.asIterable(enumerationMock).iterator();
+		assertEquals("Incorrect element returned", "one", iterator.next());
+		try {
+			iterator.hasNext();
+			fail("IllegalStateException should have been thrown");
+		} catch (IllegalStateException illegalStateException) {
+			assertSame("Exception did not include the NamingException as its cause", 
+					   expectedException, illegalStateException.getCause());
+		}
+		assertFalse("Iterator should be exhausted once the enumeration failed", 
+				    iterator.hasNext());
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that closing the Iterable before the end of the iteration 
+	 * closes the enumeration once.  
+	 */
+	public void testCloseAsIterable() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		NamingEnumeration<String> enumerationMock = 
+			mockSupport.createMock(NamingEnumeration.class);
+		expect(enumerationMock.hasMore()).andReturn(true);
+		expect(enumerationMock.next()).andReturn("one");
+		enumerationMock.close();
+		mockSupport.replayAll();
+		
+		NamingEnumerations.CloseableIterable<String> iterable = 
+			NamingEnumerations.asIterable(enumerationMock);
+		Iterator<String> iterator = iterable.iterator();
+		assertEquals("Incorrect element returned", "one", iterator.next());
+		iterable.close();
+		iterable.close();
+		assertFalse("Iterator should be exhausted once the Iterable is closed", 
+				    iterator.hasNext());
+		
+		mockSupport.verifyAll();
+	}
+}
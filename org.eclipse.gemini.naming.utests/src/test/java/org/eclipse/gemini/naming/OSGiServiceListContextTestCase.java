@@ -16,6 +16,8 @@
 package org.eclipse.gemini.naming;
 
 import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import javax.naming.Binding;
@@ -24,12 +26,18 @@ import javax.naming.NameClassPair;
 import javax.naming.NameNotFoundException;
 import javax.naming.NamingEnumeration;
 import javax.naming.OperationNotSupportedException;
+import javax.naming.event.EventContext;
+import javax.naming.event.NamespaceChangeListener;
+import javax.naming.event.NamingEvent;
+import javax.naming.event.NamingExceptionEvent;
 
+import org.easymock.Capture;
 import org.easymock.EasyMockSupport;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
 
@@ -390,7 +398,191 @@ public class OSGiServiceListContextTestCase extends TestCase {
 	}
 	
 	
+	/**
+	 * Verifies that listBindings() only obtains the services that the 
+	 * caller reads, and that close() only releases those services.  
+	 */
+	public void testListBindingsIsLazy() throws Exception {
+		// setup mocks and test fixtures
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		ServiceReference serviceRefMockOne = 
+			createServiceReferenceMock(mockSupport, bundleMock, 1);
+		ServiceReference serviceRefMockTwo = 
+			createServiceReferenceMock(mockSupport, bundleMock, 2);
+		Filter filterMock = 
+			mockSupport.createMock(Filter.class);
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		Closeable closeable1 = mockSupport.createMock(Closeable.class);
+		// only the first service is read, the second service must never be obtained
+		expect(bundleContextMock.getService(serviceRefMockOne)).andReturn(closeable1).anyTimes();
+		expect(bundleContextMock.createFilter("(service.id=1)")).andReturn(filterMock).anyTimes();
+		bundleContextMock.addServiceListener(isA(ServiceListener.class), isA(String.class));
+		expect(bundleContextMock.getBundle()).andReturn(bundleMock).anyTimes();
+		// released by the enumeration, the proxy's handler and its tracker
+		expect(bundleContextMock.ungetService(serviceRefMockOne)).andReturn(true).atLeastOnce();
+		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		OSGiURLParser urlParser = new OSGiURLParser("osgi:servicelist/java.io.Closeable");
+		urlParser.parse();
+		Context context = 
+			new OSGiServiceListContext(bundleContextMock, 
+					                   new ServiceReference[]{serviceRefMockOne, serviceRefMockTwo}, 
+					                   urlParser);
+
+		NamingEnumeration<Binding> namingEnumeration = 
+			context.listBindings("");
+		Binding bindingOne = namingEnumeration.next();
+		assertEquals("Binding's service ID was not expected",
+				      "1", bindingOne.getName());
+		assertTrue("NamingEnumeration should contain one more element", 
+			       namingEnumeration.hasMore());
+		namingEnumeration.close();
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a lookup of a name that is not a service id 
+	 * results in a NameNotFoundException.  
+	 */
+	public void testLookupWithInvalidServiceId() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		ServiceReference serviceRefMockOne = 
+			createServiceReferenceMock(mockSupport, bundleMock, 1);
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		
+		mockSupport.replayAll();
+		
+		OSGiURLParser urlParser = new OSGiURLParser("osgi:servicelist/java.io.Closeable");
+		urlParser.parse();
+		Context context = 
+			new OSGiServiceListContext(bundleContextMock, 
+					                   new ServiceReference[]{serviceRefMockOne}, 
+					                   urlParser);
+		try {
+			context.lookup("not-a-service-id");
+			fail("NameNotFoundException should have been thrown");
+		} catch (NameNotFoundException namingException) {
+			// expected exception
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a servicelist context with a registered NamingListener 
+	 * follows service registrations, and notifies the listener.  
+	 */
+	public void testNamingListenerIsNotifiedOfMembershipChanges() throws Exception {
+		// setup mocks and test fixtures
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		ServiceReference serviceRefMockOne = 
+			createServiceReferenceMock(mockSupport, bundleMock, 1);
+		ServiceReference serviceRefMockTwo = 
+			createServiceReferenceMock(mockSupport, bundleMock, 2);
+		expect(serviceRefMockOne.compareTo(anyObject())).andReturn(1).anyTimes();
+		expect(serviceRefMockTwo.compareTo(anyObject())).andReturn(-1).anyTimes();
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		Capture<ServiceListener> listenerCapture = new Capture<ServiceListener>();
+		bundleContextMock.addServiceListener(capture(listenerCapture), eq("(objectClass=java.io.Closeable)"));
+		expect(bundleContextMock.getServiceReferences("java.io.Closeable", null)).andReturn(new ServiceReference[] {serviceRefMockOne});
+		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		OSGiURLParser urlParser = new OSGiURLParser("osgi:servicelist/java.io.Closeable");
+		urlParser.parse();
+		EventContext context = 
+			new OSGiServiceListContext(bundleContextMock, 
+					                   new ServiceReference[]{serviceRefMockOne}, 
+					                   urlParser);
+		TestNamespaceChangeListener namingListener = new TestNamespaceChangeListener();
+		context.addNamingListener("", EventContext.ONELEVEL_SCOPE, namingListener);
+		assertTrue("No events should be sent for services that did not change", 
+				   namingListener.m_events.isEmpty());
+		
+		// register a second service
+		listenerCapture.getValue().serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, serviceRefMockTwo));
+		assertEquals("Listener was not notified of the new service", 
+				     1, namingListener.m_events.size());
+		NamingEvent addedEvent = namingListener.m_events.get(0);
+		assertEquals("Incorrect event type", NamingEvent.OBJECT_ADDED, addedEvent.getType());
+		assertEquals("Incorrect service name", "2", addedEvent.getNewBinding().getName());
+		assertSame("Incorrect event source", context, addedEvent.getEventContext());
+		assertEquals("Context did not include the new service", 
+				     2, countElements(context.list("")));
+		
+		// unregister the first service
+		listenerCapture.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, serviceRefMockOne));
+		assertEquals("Listener was not notified of the removed service", 
+				     2, namingListener.m_events.size());
+		NamingEvent removedEvent = namingListener.m_events.get(1);
+		assertEquals("Incorrect event type", NamingEvent.OBJECT_REMOVED, removedEvent.getType());
+		assertEquals("Incorrect service name", "1", removedEvent.getOldBinding().getName());
+		try {
+			context.lookup("1");
+			fail("NameNotFoundException should have been thrown");
+		} catch (NameNotFoundException namingException) {
+			// expected exception
+		}
+		
+		assertFalse("Listener should not be notified while the context is locked", 
+				    namingListener.m_isNotifiedWithLock);
+		
+		context.removeNamingListener(namingListener);
+		
+		mockSupport.verifyAll();
+	}
+	
+	
 	/* private test utility methods */
+	private static int countElements(NamingEnumeration namingEnumeration) throws Exception {
+		int count = 0;
+		while(namingEnumeration.hasMore()) {
+			namingEnumeration.next();
+			count++;
+		}
+		return count;
+	}
+	
+	private static class TestNamespaceChangeListener implements NamespaceChangeListener {
+		private final List<NamingEvent> m_events = new ArrayList<NamingEvent>();
+		private boolean m_isNotifiedWithLock = false;
+		
+		public void objectAdded(NamingEvent event) {
+			addEvent(event);
+		}
+
+		public void objectRemoved(NamingEvent event) {
+			addEvent(event);
+		}
+
+		public void objectRenamed(NamingEvent event) {
+			addEvent(event);
+		}
+		
+		private void addEvent(NamingEvent event) {
+			m_isNotifiedWithLock |= Thread.holdsLock(event.getEventContext());
+			m_events.add(event);
+		}
+
+		public void namingExceptionThrown(NamingExceptionEvent event) {
+			fail("Unexpected NamingException: " + event.getException());
+		}
+	}
+	
 	private static ServiceReference createServiceReferenceMock(EasyMockSupport mockSupport, Bundle bundleMock, int serviceId) {
 		ServiceReference serviceRefMockOne = 
 			mockSupport.createMock(ServiceReference.class);
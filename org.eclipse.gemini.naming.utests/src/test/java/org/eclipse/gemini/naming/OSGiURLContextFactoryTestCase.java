@@ -26,18 +26,22 @@ import java.util.Enumeration;
 import java.util.Hashtable;
 
 import javax.naming.Context;
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingException;
 import javax.naming.OperationNotSupportedException;
 import javax.naming.spi.ObjectFactory;
 
+import org.easymock.Capture;
 import org.easymock.EasyMockSupport;
 import org.osgi.framework.AdminPermission;
 import org.osgi.framework.Bundle;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.Constants;
 import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceEvent;
 import org.osgi.framework.ServiceListener;
 import org.osgi.framework.ServiceReference;
+import org.osgi.service.jndi.JNDIConstants;
 
 import junit.framework.TestCase;
 
@@ -163,6 +167,129 @@ public class OSGiURLContextFactoryTestCase extends TestCase {
 		mockSupport.verifyAll();
 	}
 	
+	/**
+	 * Verifies that a lookup of a missing service is cached, that each 
+	 * miss is reported with a new stackless exception, and that the miss 
+	 * is dropped once a matching service is registered.  
+	 */
+	public void testLookupMissIsCached() throws Exception {
+		final String expectedServiceInterface = TestService.class.getName();
+		final String serviceNameFilter = 
+			"(" + JNDIConstants.JNDI_SERVICENAME + "=" + expectedServiceInterface + ")";
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		Capture<ServiceListener> listenerCapture = new Capture<ServiceListener>();
+		bundleContextMock.addServiceListener(capture(listenerCapture));
+		// the registry is only searched before the miss is cached, and after it is dropped
+		expect(bundleContextMock.getServiceReferences(expectedServiceInterface, null)).andReturn(null).times(2);
+		expect(bundleContextMock.getServiceReferences(null, serviceNameFilter)).andReturn(null).times(2);
+		expect(serviceReferenceMock.getProperty(Constants.OBJECTCLASS)).andReturn(new String[] {expectedServiceInterface});
+		expect(serviceReferenceMock.getProperty(JNDIConstants.JNDI_SERVICENAME)).andReturn(null);
+		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
+		
+		mockSupport.replayAll();
+		
+		OSGiURLContextFactory testFactory = 
+			new OSGiURLContextFactory(bundleContextMock, true, true, null);
+		Context context = (Context)testFactory.getObjectInstance(null, null, null, null);
+		
+		NameNotFoundException firstException = 
+			lookupMissingService(context, "osgi:service/" + expectedServiceInterface);
+		assertEquals("Stackless exception should not include a stack trace", 
+				     0, firstException.getStackTrace().length);
+		NameNotFoundException cachedMissException = 
+			lookupMissingService(context, "osgi:service/" + expectedServiceInterface);
+		assertNotSame("Each miss should be reported with a new exception", 
+				      firstException, cachedMissException);
+		assertEquals("Stackless exception should not include a stack trace", 
+			     	 0, cachedMissException.getStackTrace().length);
+		
+		// a matching registration drops the cached miss
+		listenerCapture.getValue().serviceChanged(new ServiceEvent(ServiceEvent.REGISTERED, serviceReferenceMock));
+		lookupMissingService(context, "osgi:service/" + expectedServiceInterface);
+		
+		testFactory.close();
+		
+		mockSupport.verifyAll();
+	}
+	
+	/**
+	 * Verifies that a lookup in direct mode returns a DirectService handle 
+	 * for the service object itself, that the listener of the handle is 
+	 * notified when the service unregisters, and that the handle is released
+	 * when the factory is closed.  
+	 */
+	public void testLookupDirectService() throws Exception {
+		final String expectedServiceInterface = TestService.class.getName();
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = 
+			mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		Filter filterMock = 
+			mockSupport.createMock(Filter.class);
+		TestService serviceMock = 
+			mockSupport.createMock(TestService.class);
+		DirectServiceListener listenerMock = 
+			mockSupport.createMock(DirectServiceListener.class);
+		expect(serviceReferenceMock.getProperty(Constants.SERVICE_ID)).andReturn("10");
+		expect(serviceReferenceMock.getBundle()).andReturn(bundleMock);
+		expect(bundleContextMock.getServiceReferences(expectedServiceInterface, null)).andReturn(new ServiceReference[] {serviceReferenceMock});
+		expect(bundleContextMock.getService(serviceReferenceMock)).andReturn(serviceMock);
+		expect(bundleContextMock.ungetService(serviceReferenceMock)).andReturn(true);
+		expect(bundleContextMock.createFilter("(service.id=10)")).andReturn(filterMock);
+		Capture<ServiceListener> listenerCapture = new Capture<ServiceListener>();
+		bundleContextMock.addServiceListener(capture(listenerCapture), eq("(service.id=10)"));
+		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
+		listenerMock.serviceUnregistering(isA(DirectService.class));
+		
+		mockSupport.replayAll();
+		
+		OSGiURLContextFactory testFactory = 
+			new OSGiURLContextFactory(bundleContextMock);
+		Hashtable<String, Object> environment = new Hashtable<String, Object>();
+		environment.put(GeminiNamingConstants.OSGI_URL_DIRECT_SERVICES, "true");
+		Context context = (Context)testFactory.getObjectInstance(null, null, null, environment);
+		
+		Object result = context.lookup("osgi:service/" + expectedServiceInterface);
+		assertTrue("OSGiURLContextFactory did not return a DirectService handle",
+				   result instanceof DirectService);
+		DirectService directService = (DirectService)result;
+		assertSame("DirectService did not return the service object itself", 
+				   serviceMock, directService.getService());
+		directService.setListener(listenerMock);
+		
+		listenerCapture.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, serviceReferenceMock));
+		assertFalse("DirectService should not be available once the service unregisters", 
+				    directService.isAvailable());
+		assertNull("DirectService should not return an unregistered service", 
+				   directService.getService());
+		
+		// closing the factory releases the handle held by the bundle
+		testFactory.close();
+		
+		mockSupport.verifyAll();
+	}
+	
+	private static NameNotFoundException lookupMissingService(Context context, String osgiURL) throws NamingException {
+		try {
+			context.lookup(osgiURL);
+			fail("NameNotFoundException should have been thrown");
+		} catch (NameNotFoundException nameNotFoundException) {
+			// expected exception
+			return nameNotFoundException;
+		}
+		
+		return null;
+	}
+	
 	interface TestService {
 		public String getData();
 	}
@@ -145,6 +145,12 @@ public class OSGiURLParserTestCase extends TestCase {
 		} catch (IllegalStateException exception) {
 			// expected Exception
 		}
+		
+		// the scheme check does not require parsing
+		assertTrue("URL should have been detected as a servicelist URL", 
+				   OSGiURLParser.isServiceListURL("osgi:servicelist/com.oracle.TestService"));
+		assertFalse("URL should not have been detected as a servicelist URL", 
+				    OSGiURLParser.isServiceListURL("osgi:service/com.oracle.TestService"));
 	}
 	
 }
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.naming.Context;
+import javax.naming.NamingException;
+
+import org.easymock.EasyMockSupport;
+import org.easymock.IAnswer;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class ParallelCloserTestCase extends TestCase {
+
+	/**
+	 * Verifies that the calling thread closes the Contexts itself when the 
+	 * Executor has not run the helper tasks, and that the helper tasks are 
+	 * bounded.  
+	 */
+	public void testCloseContextsWithBusyExecutor() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		List<Context> contexts = new LinkedList<Context>();
+		for (int i = 0; i < ParallelCloser.MAX_HELPER_TASKS + 5; i++) {
+			Context contextMock = 
+				mockSupport.createMock(Context.class);
+			contextMock.close();
+			contexts.add(contextMock);
+		}
+		// a failure to close one Context must not stop the others
+		expectLastCall().andThrow(new NamingException("test exception"));
+		mockSupport.replayAll();
+		
+		// begin test
+		DeferredExecutor executor = new DeferredExecutor();
+		assertTrue("Contexts should have been closed before the deadline", 
+				   ParallelCloser.closeContexts(contexts, executor, 10000));
+		assertEquals("Incorrect number of helper tasks submitted", 
+				     ParallelCloser.MAX_HELPER_TASKS, executor.m_tasks.size());
+		
+		// helper tasks that run late have nothing left to close
+		executor.runPendingTasks();
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that the context managers are closed by the calling thread 
+	 * when the Executor has been shut down.  
+	 */
+	public void testCloseContextManagersWithRejectingExecutor() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		CloseableContextManager contextManagerOne = 
+			mockSupport.createMock(CloseableContextManager.class);
+		CloseableContextManager contextManagerTwo = 
+			mockSupport.createMock(CloseableContextManager.class);
+		contextManagerOne.close();
+		contextManagerTwo.close();
+		mockSupport.replayAll();
+		
+		// begin test
+		Executor rejectingExecutor = new Executor() {
+			public void execute(Runnable runnable) {
+				throw new RejectedExecutionException("test exception");
+			}
+		};
+		assertTrue("Context managers should have been closed", 
+				   ParallelCloser.closeContextManagers(Arrays.asList(contextManagerOne, contextManagerTwo), rejectingExecutor, 0));
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that the calling thread closes the Contexts still pending at 
+	 * the deadline when there is no Executor to close them in the background.  
+	 */
+	public void testCloseContextsAfterDeadlineWithoutExecutor() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Context slowContextMock = 
+			mockSupport.createMock(Context.class);
+		slowContextMock.close();
+		expectLastCall().andAnswer(new SlowClose());
+		Context contextMock = 
+			mockSupport.createMock(Context.class);
+		contextMock.close();
+		mockSupport.replayAll();
+		
+		// begin test
+		assertFalse("Contexts should not have been closed before the deadline", 
+				    ParallelCloser.closeContexts(Arrays.asList(slowContextMock, contextMock), null, 1));
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a final task is submitted to close the Contexts still 
+	 * pending at the deadline when the Executor rejected the helper tasks.  
+	 */
+	public void testCloseContextsAfterDeadlineWithRejectedHelpers() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Context slowContextMock = 
+			mockSupport.createMock(Context.class);
+		slowContextMock.close();
+		expectLastCall().andAnswer(new SlowClose());
+		Context contextMock = 
+			mockSupport.createMock(Context.class);
+		contextMock.close();
+		mockSupport.replayAll();
+		
+		// begin test
+		final DeferredExecutor deferredExecutor = new DeferredExecutor();
+		Executor executor = new Executor() {
+			private boolean m_isRejecting = true;
+			
+			public void execute(Runnable runnable) {
+				if (m_isRejecting) {
+					m_isRejecting = false;
+					throw new RejectedExecutionException("test exception");
+				}
+				deferredExecutor.execute(runnable);
+			}
+		};
+		assertFalse("Contexts should not have been closed before the deadline", 
+				    ParallelCloser.closeContexts(Arrays.asList(slowContextMock, contextMock), executor, 1));
+		assertEquals("A final task should have been submitted", 
+				     1, deferredExecutor.m_tasks.size());
+		
+		// the final task closes the remaining Context
+		deferredExecutor.runPendingTasks();
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/* test utility classes */
+	
+	private static class SlowClose implements IAnswer<Object> {
+		public Object answer() throws Throwable {
+			Thread.sleep(50);
+			return null;
+		}
+	}
+	
+	private static class DeferredExecutor implements Executor {
+		private final List<Runnable> m_tasks = new LinkedList<Runnable>();
+		
+		public void execute(Runnable runnable) {
+			m_tasks.add(runnable);
+		}
+		
+		void runPendingTasks() {
+			while(!m_tasks.isEmpty()) {
+				m_tasks.remove(0).run();
+			}
+		}
+	}
+}
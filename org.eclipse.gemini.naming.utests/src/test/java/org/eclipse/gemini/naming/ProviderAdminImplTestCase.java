@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import javax.naming.CompositeName;
+import javax.naming.Name;
+import javax.naming.Reference;
+import javax.naming.spi.DirObjectFactory;
+import javax.naming.spi.InitialContextFactory;
+import javax.naming.spi.InitialContextFactoryBuilder;
+import javax.naming.spi.ObjectFactory;
+import javax.naming.spi.ObjectFactoryBuilder;
+
+import org.easymock.EasyMockSupport;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class ProviderAdminImplTestCase extends TestCase {
+
+	/**
+	 * Verifies that a batch of references is resolved in input order.  
+	 * 
+	 * No factory services are available in this test, so each 
+	 * element should hold the original reference.  
+	 */
+	public void testGetObjectInstances() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		setupBundleContextMock(mockSupport, bundleContextMock);
+		mockSupport.replayAll();
+		
+		ProviderAdminImpl providerAdmin = new ProviderAdminImpl(bundleContextMock, ProviderGuard.createDisabledGuard());
+		Reference referenceOne = new Reference("com.oracle.TestTypeOne");
+		Reference referenceTwo = new Reference("com.oracle.TestTypeTwo");
+		Object[] results = 
+			providerAdmin.getObjectInstances(new Object[] {referenceOne, referenceTwo}, 
+					                         new Name[] {new CompositeName("one"), null}, 
+					                         null, null);
+		assertEquals("Incorrect number of results returned", 
+				     2, results.length);
+		assertSame("Batch result was not returned in input order", 
+				   referenceOne, results[0]);
+		assertSame("Batch result was not returned in input order", 
+				   referenceTwo, results[1]);
+		
+		Object[] dirResults = 
+			providerAdmin.getObjectInstances(new Object[] {referenceTwo, referenceOne}, 
+					                         null, null, null, null);
+		assertSame("Batch result was not returned in input order", 
+				   referenceTwo, dirResults[0]);
+		assertSame("Batch result was not returned in input order", 
+				   referenceOne, dirResults[1]);
+		
+		providerAdmin.close();
+		mockSupport.verifyAll();
+	}
+	
+	/**
+	 * Verifies that each shape of object is returned unchanged when no 
+	 * factory services are available to resolve it.  
+	 */
+	public void testGetObjectInstanceForEachShape() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		setupBundleContextMock(mockSupport, bundleContextMock);
+		mockSupport.replayAll();
+		
+		ProviderAdminImpl providerAdmin = new ProviderAdminImpl(bundleContextMock, ProviderGuard.createDisabledGuard());
+		Reference referenceWithFactory = 
+			new Reference("com.oracle.TestType", "com.oracle.TestFactory", null);
+		Reference referenceWithoutFactory = new Reference("com.oracle.TestType");
+		Object objectToResolve = "not a reference";
+		
+		assertSame("Reference with a factory name should have been returned unchanged", 
+				   referenceWithFactory, 
+				   providerAdmin.getObjectInstance(referenceWithFactory, null, null, null));
+		assertSame("Reference without a factory name should have been returned unchanged", 
+				   referenceWithoutFactory, 
+				   providerAdmin.getObjectInstance(referenceWithoutFactory, null, null, null, null));
+		assertSame("Object should have been returned unchanged", 
+				   objectToResolve, 
+				   providerAdmin.getObjectInstance(objectToResolve, null, null, null));
+		
+		providerAdmin.close();
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a batch with mismatched arrays is rejected.  
+	 */
+	public void testGetObjectInstancesWithInvalidArguments() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		setupBundleContextMock(mockSupport, bundleContextMock);
+		mockSupport.replayAll();
+		
+		ProviderAdminImpl providerAdmin = new ProviderAdminImpl(bundleContextMock, ProviderGuard.createDisabledGuard());
+		try {
+			providerAdmin.getObjectInstances(new Object[] {new Reference("com.oracle.TestType")}, 
+					                         new Name[0], null, null);
+			fail("IllegalArgumentException should have been thrown");
+		} catch (IllegalArgumentException illegalArgumentException) {
+			// expected exception
+		}
+		
+		try {
+			providerAdmin.getObjectInstances(null, null, null, null);
+			fail("IllegalArgumentException should have been thrown");
+		} catch (IllegalArgumentException illegalArgumentException) {
+			// expected exception
+		}
+		
+		providerAdmin.close();
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that each client bundle gets its own JNDIProviderAdmin, and 
+	 * that releasing one client does not close the shared builder.  
+	 */
+	public void testServiceFactoryCreatesAdminPerClient() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		setupBundleContextMock(mockSupport, bundleContextMock);
+		mockSupport.replayAll();
+		
+		ProviderAdminServiceFactory serviceFactory = 
+			new ProviderAdminServiceFactory(bundleContextMock, ProviderGuard.createDisabledGuard(), null, null);
+		AsyncProviderAdminImpl providerAdminOne = 
+			(AsyncProviderAdminImpl)serviceFactory.getService(null, null);
+		AsyncProviderAdminImpl providerAdminTwo = 
+			(AsyncProviderAdminImpl)serviceFactory.getService(null, null);
+		assertNotSame("Each client should have its own JNDIProviderAdmin", 
+				      providerAdminOne, providerAdminTwo);
+		
+		serviceFactory.ungetService(null, null, providerAdminOne);
+		Reference reference = new Reference("com.oracle.TestType");
+		assertSame("Reference should have been returned unchanged", 
+				   reference, providerAdminTwo.getObjectInstance(reference, null, null, null));
+		
+		serviceFactory.close();
+		mockSupport.verifyAll();
+	}
+	
+	
+	private static void setupBundleContextMock(EasyMockSupport mockSupport, BundleContext bundleContextMock) throws Exception {
+		Filter filterMock = 
+			mockSupport.createMock(Filter.class);
+		expect(bundleContextMock.createFilter("(objectClass=" + InitialContextFactory.class.getName() + ")")).andReturn(filterMock);
+		expect(bundleContextMock.createFilter("(objectClass=" + InitialContextFactoryBuilder.class.getName() + ")")).andReturn(filterMock);
+		expect(bundleContextMock.createFilter("(objectClass=" + ObjectFactory.class.getName() + ")")).andReturn(filterMock).anyTimes();
+		expect(bundleContextMock.createFilter("(objectClass=" + DirObjectFactory.class.getName() + ")")).andReturn(filterMock);
+		expect(bundleContextMock.createFilter("(objectClass=" + ObjectFactoryBuilder.class.getName() + ")")).andReturn(filterMock);
+		
+		bundleContextMock.addServiceListener(isA(ServiceListener.class), isA(String.class));
+		expectLastCall().anyTimes();
+		
+		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
+		expectLastCall().anyTimes();
+		
+		expect(bundleContextMock.getServiceReferences(isA(String.class), (String)isNull())).andReturn(new ServiceReference[0]).anyTimes();
+	}
+}
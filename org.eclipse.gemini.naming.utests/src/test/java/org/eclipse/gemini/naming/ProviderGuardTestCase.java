@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingException;
+import javax.naming.TimeLimitExceededException;
+
+import org.easymock.EasyMockSupport;
+import org.osgi.framework.ServiceReference;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class ProviderGuardTestCase extends TestCase {
+	
+	private static final long OPEN_DURATION = 60000;
+
+	/**
+	 * Verifies that the circuit breaker opens once the failure rate is 
+	 * reached, and closes again after a successful trial call.  
+	 */
+	public void testCircuitBreaker() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		expect(serviceReferenceMock.getProperty(isA(String.class))).andReturn(null).anyTimes();
+		mockSupport.replayAll();
+		
+		TestClock clock = new TestClock();
+		ProviderGuard providerGuard = new ProviderGuard(0, 50, 4, OPEN_DURATION, null, clock);
+		
+		invokeAndIgnoreFailure(providerGuard, serviceReferenceMock, new SuccessfulCall());
+		invokeAndIgnoreFailure(providerGuard, serviceReferenceMock, new FailingCall());
+		invokeAndIgnoreFailure(providerGuard, serviceReferenceMock, new SuccessfulCall());
+		assertTrue("Circuit breaker should not open before the window is complete", 
+				   isCallPermitted(providerGuard, serviceReferenceMock));
+		invokeAndIgnoreFailure(providerGuard, serviceReferenceMock, new FailingCall());
+		
+		assertFalse("Circuit breaker should be open once the failure rate is reached", 
+				    isCallPermitted(providerGuard, serviceReferenceMock));
+		clock.m_currentTime += OPEN_DURATION - 1;
+		assertFalse("Circuit breaker should stay open for the open duration", 
+				    isCallPermitted(providerGuard, serviceReferenceMock));
+		
+		clock.m_currentTime += 1;
+		ProviderGuard.CallPermit trialPermit = providerGuard.acquireCall(serviceReferenceMock);
+		assertNotNull("Circuit breaker should allow a trial call once the open duration has passed", 
+				      trialPermit);
+		assertNull("Circuit breaker should only allow a single trial call", 
+				   providerGuard.acquireCall(serviceReferenceMock));
+		try {
+			providerGuard.invoke(trialPermit, new SuccessfulCall());
+		} finally {
+			trialPermit.release();
+		}
+		assertTrue("Circuit breaker should close after a successful trial call", 
+				   isCallPermitted(providerGuard, serviceReferenceMock));
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a trial permit released without a call frees the 
+	 * trial slot, and that a failed trial call re-opens the breaker.  
+	 */
+	public void testTrialReleasedWithoutCall() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		expect(serviceReferenceMock.getProperty(isA(String.class))).andReturn(null).anyTimes();
+		mockSupport.replayAll();
+		
+		TestClock clock = new TestClock();
+		ProviderGuard providerGuard = new ProviderGuard(0, 50, 1, OPEN_DURATION, null, clock);
+		invokeAndIgnoreFailure(providerGuard, serviceReferenceMock, new FailingCall());
+		clock.m_currentTime += OPEN_DURATION;
+		
+		// the provider is skipped, for example because its service is gone
+		ProviderGuard.CallPermit trialPermit = providerGuard.acquireCall(serviceReferenceMock);
+		assertNotNull("Circuit breaker should allow a trial call", trialPermit);
+		trialPermit.release();
+		
+		trialPermit = providerGuard.acquireCall(serviceReferenceMock);
+		assertNotNull("Unused trial permit should have freed the trial slot", trialPermit);
+		try {
+			providerGuard.invoke(trialPermit, new FailingCall());
+			fail("NamingException should have been thrown");
+		} catch (NamingException namingException) {
+			// expected exception
+		} finally {
+			trialPermit.release();
+		}
+		assertFalse("Circuit breaker should re-open after a failed trial call", 
+				    isCallPermitted(providerGuard, serviceReferenceMock));
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a provider call that does not complete within the 
+	 * configured timeout fails with a TimeLimitExceededException.  
+	 */
+	public void testCallTimeout() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		expect(serviceReferenceMock.getProperty(isA(String.class))).andReturn(null).anyTimes();
+		mockSupport.replayAll();
+		
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			ProviderGuard providerGuard = new ProviderGuard(100, 0, 1, 0, executor);
+			assertEquals("Incorrect result returned by the provider call", 
+					     "result", providerGuard.invoke(providerGuard.acquireCall(serviceReferenceMock), new SuccessfulCall()));
+			try {
+				providerGuard.invoke(providerGuard.acquireCall(serviceReferenceMock), new Callable<Object>() {
+					public Object call() throws Exception {
+						Thread.sleep(10000);
+						return null;
+					}
+				});
+				fail("TimeLimitExceededException should have been thrown");
+			} catch (TimeLimitExceededException timeLimitExceededException) {
+				// expected exception
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a provider call fails at once, without calling the 
+	 * provider, once all the threads are held by calls that timed out.  
+	 */
+	public void testCallRejectedWhenThreadsExhausted() throws Exception {
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		expect(serviceReferenceMock.getProperty(isA(String.class))).andReturn(null).anyTimes();
+		mockSupport.replayAll();
+		
+		final CountDownLatch releaseProvider = new CountDownLatch(1);
+		ThreadPoolExecutor executor = 
+			new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+		try {
+			ProviderGuard providerGuard = new ProviderGuard(100, 0, 1, 0, executor);
+			try {
+				providerGuard.invoke(providerGuard.acquireCall(serviceReferenceMock), new Callable<Object>() {
+					public Object call() throws Exception {
+						// a hung provider does not respond to the interrupt of the timed out call
+						while (releaseProvider.getCount() > 0) {
+							try {
+								releaseProvider.await();
+							} catch (InterruptedException interruptedException) {
+								// keep holding the thread
+							}
+						}
+						return null;
+					}
+				});
+				fail("TimeLimitExceededException should have been thrown");
+			} catch (TimeLimitExceededException timeLimitExceededException) {
+				// expected exception, the hung call keeps its thread
+			}
+			
+			final AtomicInteger numberOfCalls = new AtomicInteger();
+			try {
+				providerGuard.invoke(providerGuard.acquireCall(serviceReferenceMock), new Callable<Object>() {
+					public Object call() throws Exception {
+						numberOfCalls.incrementAndGet();
+						return null;
+					}
+				});
+				fail("TimeLimitExceededException should have been thrown");
+			} catch (TimeLimitExceededException timeLimitExceededException) {
+				// expected exception
+			}
+			assertEquals("Provider should not be called without a thread", 
+					     0, numberOfCalls.get());
+		} finally {
+			releaseProvider.countDown();
+			executor.shutdownNow();
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/* test utility methods/classes */
+	
+	private static void invokeAndIgnoreFailure(ProviderGuard providerGuard, ServiceReference serviceReference, Callable<Object> providerCall) {
+		ProviderGuard.CallPermit callPermit = providerGuard.acquireCall(serviceReference);
+		try {
+			providerGuard.invoke(callPermit, providerCall);
+		} catch (Exception exception) {
+			// expected for failing calls
+		} finally {
+			callPermit.release();
+		}
+	}
+	
+	private static boolean isCallPermitted(ProviderGuard providerGuard, ServiceReference serviceReference) {
+		ProviderGuard.CallPermit callPermit = providerGuard.acquireCall(serviceReference);
+		if (callPermit == null) {
+			return false;
+		}
+		
+		callPermit.release();
+		return true;
+	}
+	
+	private static class TestClock implements ProviderGuard.Clock {
+		private long m_currentTime = 1000;
+		
+		public long currentTimeMillis() {
+			return m_currentTime;
+		}
+	}
+	
+	private static class SuccessfulCall implements Callable<Object> {
+		public Object call() throws Exception {
+			return "result";
+		}
+	}
+	
+	private static class FailingCall implements Callable<Object> {
+		public Object call() throws Exception {
+			throw new NamingException("test exception");
+		}
+	}
+}
@@ -177,6 +177,57 @@ public class ReflectionUtilsTestCase extends TestCase {
 	}
 	
 	
+	/**
+	 * Verifies that the interfaces resolved for a JNDI service name are 
+	 * cached, so that a repeated lookup does not resolve them again.  
+	 */
+	public void testGetProxyForSingleServiceCachesInterfaces() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		TestService serviceMock = 
+			mockSupport.createMock(TestService.class);
+		Filter filterMock = 
+			mockSupport.createMock(Filter.class);
+		Bundle bundleMock = 
+			mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		OSGiURLParser urlParser = new OSGiURLParser("osgi:service/" + "cachedName");
+		urlParser.parse();
+		
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		expect(serviceReferenceMock.getProperty(Constants.SERVICE_ID)).andReturn(new Long(1)).times(2);
+		expect(serviceReferenceMock.getProperty(Constants.OBJECTCLASS)).andReturn(new String[] {TestService.class.getName()}).times(2);
+		expect(serviceReferenceMock.getBundle()).andReturn(bundleMock).anyTimes();
+		// the interface should only be checked on the first lookup
+		expect(serviceReferenceMock.isAssignableTo(bundleMock, TestService.class.getName())).andReturn(true);
+		
+		expect(bundleContextMock.getService(serviceReferenceMock)).andReturn(serviceMock).times(2, 4);
+		expect(bundleContextMock.createFilter("(service.id=1)")).andReturn(filterMock).times(2);
+		expect(bundleContextMock.getBundle()).andReturn(bundleMock).anyTimes();
+		bundleContextMock.addServiceListener(isA(ServiceListener.class), isA(String.class));
+		expectLastCall().anyTimes();
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		ServiceProxyInfo firstResult = 
+			ReflectionUtils.getProxyForSingleService(bundleContextMock, urlParser, serviceReferenceMock);
+		ServiceProxyInfo secondResult = 
+			ReflectionUtils.getProxyForSingleService(bundleContextMock, urlParser, serviceReferenceMock);
+		assertTrue("ReflectionUtils did not proxy the object as expected",
+				   firstResult.isProxied());
+		assertTrue("ReflectionUtils did not proxy the cached object as expected",
+				   secondResult.isProxied());
+		assertTrue("ReflectionUtils did not proxy the expected interface",
+				   secondResult.getService() instanceof TestService);
+		
+		mockSupport.verifyAll();
+		ReflectionUtils.clearCachedInterfaces();
+	}
+	
+	
 	public void testGetProxyForSingleServiceUsingJNDIServiceNameNoInterface() throws Exception {
 		final OSGiURLParser urlParser = new OSGiURLParser("osgi:service/" + "anotherName");
 		urlParser.parse();
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.security.PrivilegedExceptionAction;
+
+import javax.naming.NamingException;
+
+import junit.framework.TestCase;
+
+public class SecurityUtilsTestCase extends TestCase {
+
+	/**
+	 * Verifies that privileged actions are run directly when no 
+	 * SecurityManager is installed, and that the action's exception
+	 * reaches the caller unwrapped.  
+	 */
+	public void testActionWithoutSecurityManager() throws Exception {
+		assertNull("This test requires that no SecurityManager is installed", 
+				   System.getSecurityManager());
+		SecurityUtils.detectSecurityManager();
+		assertFalse("SecurityUtils should not require doPrivileged() blocks", 
+				    SecurityUtils.isSecurityEnabled());
+		
+		final Object expectedResult = new Object();
+		assertSame("Action did not return the expected result", 
+				   expectedResult, 
+				   SecurityUtils.invokePrivilegedAction(new PrivilegedExceptionAction() {
+					   public Object run() throws Exception {
+						   return expectedResult;
+					   }
+				   }));
+		
+		final NamingException expectedException = new NamingException("test exception");
+		try {
+			SecurityUtils.invokePrivilegedActionNoReturn(new PrivilegedExceptionAction() {
+				public Object run() throws Exception {
+					throw expectedException;
+				}
+			});
+			fail("NamingException should have been thrown");
+		} catch (NamingException namingException) {
+			assertSame("Action's exception was not thrown to the caller", 
+					   expectedException, namingException);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.Hashtable;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.naming.Context;
+import javax.naming.NotContextException;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.BasicAttributes;
+import javax.naming.directory.DirContext;
+import javax.naming.spi.InitialContextFactory;
+
+import org.easymock.EasyMockSupport;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class ServiceAwareContextFactoryTestCase extends TestCase {
+
+	/**
+	 * Verifies that a Context is rebound in the background once its factory
+	 * service goes away, and that callers use the new provider context
+	 * without creating it themselves.  
+	 */
+	public void testRebindInBackground() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		FactoryManager factoryManagerMock = 
+			mockSupport.createMock(FactoryManager.class);
+		InitialContextFactory factoryMock = 
+			mockSupport.createMock(InitialContextFactory.class);
+		InitialContextFactory newFactoryMock = 
+			mockSupport.createMock(InitialContextFactory.class);
+		Context contextMock = 
+			mockSupport.createMock(Context.class);
+		Context newContextMock = 
+			mockSupport.createMock(Context.class);
+		
+		Hashtable<String, Object> environment = new Hashtable<String, Object>();
+		environment.put("test.property", "test.value");
+		expect(contextMock.getEnvironment()).andReturn((Hashtable)environment).anyTimes();
+		expect(factoryManagerMock.createInitialContextFactory(eq(environment))).andReturn(newFactoryMock);
+		expect(newFactoryMock.getInitialContext(eq(environment))).andReturn(newContextMock);
+		// the new factory is checked when the Context is invoked
+		expect(factoryManagerMock.isFactoryServiceActive(newFactoryMock)).andReturn(true);
+		expect(newContextMock.lookup("test")).andReturn("new value");
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		Context context = 
+			ServiceAwareContextFactory.createServiceAwareContextWrapper(factoryMock, contextMock, factoryManagerMock);
+		DeferredExecutor executor = new DeferredExecutor();
+		ServiceAwareContextFactory.rebindInBackground(context, executor);
+		assertEquals("Rebind was not scheduled", 1, executor.m_tasks.size());
+		
+		executor.runPendingTasks();
+		assertEquals("Context was not rebound to the new provider context", 
+				     "new value", context.lookup("test"));
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a closed Context is not rebound in the background.  
+	 */
+	public void testRebindInBackgroundAfterClose() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		FactoryManager factoryManagerMock = 
+			mockSupport.createMock(FactoryManager.class);
+		InitialContextFactory factoryMock = 
+			mockSupport.createMock(InitialContextFactory.class);
+		Context contextMock = 
+			mockSupport.createMock(Context.class);
+		contextMock.close();
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		Context context = 
+			ServiceAwareContextFactory.createServiceAwareContextWrapper(factoryMock, contextMock, factoryManagerMock);
+		context.close();
+		
+		DeferredExecutor executor = new DeferredExecutor();
+		ServiceAwareContextFactory.rebindInBackground(context, executor);
+		assertTrue("Rebind should not be scheduled for a closed Context", 
+				   executor.m_tasks.isEmpty());
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a service-aware DirContext calls the provider DirContext 
+	 * directly, and reports a rebound provider context that does not 
+	 * support DirContext.  
+	 */
+	public void testDirContextDelegation() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		FactoryManager factoryManagerMock = 
+			mockSupport.createMock(FactoryManager.class);
+		InitialContextFactory factoryMock = 
+			mockSupport.createMock(InitialContextFactory.class);
+		InitialContextFactory newFactoryMock = 
+			mockSupport.createMock(InitialContextFactory.class);
+		DirContext dirContextMock = 
+			mockSupport.createMock(DirContext.class);
+		Context newContextMock = 
+			mockSupport.createMock(Context.class);
+		
+		Attributes attributes = new BasicAttributes();
+		expect(factoryManagerMock.isFactoryServiceActive(factoryMock)).andReturn(true);
+		expect(dirContextMock.getAttributes("test")).andReturn(attributes);
+		Hashtable<String, Object> environment = new Hashtable<String, Object>();
+		expect(dirContextMock.getEnvironment()).andReturn((Hashtable)environment).anyTimes();
+		expect(factoryManagerMock.createInitialContextFactory(eq(environment))).andReturn(newFactoryMock);
+		expect(newFactoryMock.getInitialContext(eq(environment))).andReturn(newContextMock);
+		expect(factoryManagerMock.isFactoryServiceActive(newFactoryMock)).andReturn(true);
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		DirContext context = 
+			ServiceAwareContextFactory.createServiceAwareDirContextWrapper(factoryMock, dirContextMock, factoryManagerMock);
+		assertSame("DirContext method was not delegated", 
+				   attributes, context.getAttributes("test"));
+		
+		DeferredExecutor executor = new DeferredExecutor();
+		ServiceAwareContextFactory.rebindInBackground(context, executor);
+		executor.runPendingTasks();
+		try {
+			context.getAttributes("test");
+			fail("NotContextException should have been thrown");
+		} catch (NotContextException notContextException) {
+			// expected exception
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/* test utility classes */
+	
+	private static class DeferredExecutor implements Executor {
+		private final List<Runnable> m_tasks = new LinkedList<Runnable>();
+		
+		public void execute(Runnable runnable) {
+			m_tasks.add(runnable);
+		}
+		
+		void runPendingTasks() {
+			while(!m_tasks.isEmpty()) {
+				m_tasks.remove(0).run();
+			}
+		}
+	}
+}
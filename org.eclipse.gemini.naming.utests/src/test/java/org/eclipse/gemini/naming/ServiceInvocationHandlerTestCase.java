@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.lang.reflect.Proxy;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.easymock.Capture;
+import org.easymock.EasyMockSupport;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class ServiceInvocationHandlerTestCase extends TestCase {
+
+	/**
+	 * Verifies that a proxy created with a rebind Executor rebinds to another 
+	 * matching service as soon as its backing service unregisters.  
+	 */
+	public void testEagerRebindOnUnregistering() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		Filter filterMock = mockSupport.createMock(Filter.class);
+		ServiceReference serviceReferenceOne = 
+			createServiceReferenceMock(mockSupport, bundleMock, 1);
+		ServiceReference serviceReferenceTwo = 
+			createServiceReferenceMock(mockSupport, bundleMock, 2);
+		TestService serviceOne = mockSupport.createMock(TestService.class);
+		TestService serviceTwo = mockSupport.createMock(TestService.class);
+		expect(serviceTwo.getValue()).andReturn("service two");
+		
+		expect(bundleContextMock.createFilter("(service.id=1)")).andReturn(filterMock);
+		expect(bundleContextMock.createFilter("(service.id=2)")).andReturn(filterMock);
+		Capture<ServiceListener> listenerCapture = new Capture<ServiceListener>();
+		bundleContextMock.addServiceListener(capture(listenerCapture), isA(String.class));
+		expectLastCall().times(2);
+		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
+		expectLastCall().anyTimes();
+		expect(bundleContextMock.getService(serviceReferenceOne)).andReturn(serviceOne);
+		expect(bundleContextMock.ungetService(serviceReferenceOne)).andReturn(true).anyTimes();
+		expect(bundleContextMock.getService(serviceReferenceTwo)).andReturn(serviceTwo);
+		expect(bundleContextMock.ungetService(serviceReferenceTwo)).andReturn(true).anyTimes();
+		// the departing service may still be visible in the registry
+		expect(bundleContextMock.getServiceReferences(eq(TestService.class.getName()), (String)isNull())).andReturn(new ServiceReference[] {serviceReferenceOne, serviceReferenceTwo});
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		OSGiURLParser urlParser = new OSGiURLParser("osgi:service/" + TestService.class.getName());
+		urlParser.parse();
+		DeferredExecutor executor = new DeferredExecutor();
+		ServiceInvocationHandler handler = 
+			new ServiceInvocationHandler(bundleContextMock, serviceReferenceOne, urlParser, serviceOne, executor);
+		TestService proxy = 
+			(TestService)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {TestService.class}, handler);
+		
+		listenerCapture.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, serviceReferenceOne));
+		assertEquals("Rebind was not scheduled when the backing service unregistered", 
+				     1, executor.m_tasks.size());
+		
+		executor.runPendingTasks();
+		assertEquals("Proxy did not rebind to the remaining service", 
+				     "service two", proxy.getValue());
+		
+		handler.close();
+		assertTrue("Closing the replaced tracker should not schedule another rebind", 
+				   executor.m_tasks.isEmpty());
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a proxy created without a rebind Executor rebinds 
+	 * on the first call made after its backing service has gone away.  
+	 */
+	public void testRebindOnNextCall() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		Filter filterMock = mockSupport.createMock(Filter.class);
+		ServiceReference serviceReferenceOne = 
+			createServiceReferenceMock(mockSupport, bundleMock, 1);
+		ServiceReference serviceReferenceTwo = 
+			createServiceReferenceMock(mockSupport, bundleMock, 2);
+		TestService serviceOne = mockSupport.createMock(TestService.class);
+		TestService serviceTwo = mockSupport.createMock(TestService.class);
+		expect(serviceTwo.getValue()).andReturn("service two");
+		
+		expect(bundleContextMock.createFilter("(service.id=1)")).andReturn(filterMock);
+		expect(bundleContextMock.createFilter("(service.id=2)")).andReturn(filterMock);
+		Capture<ServiceListener> listenerCapture = new Capture<ServiceListener>();
+		bundleContextMock.addServiceListener(capture(listenerCapture), isA(String.class));
+		expectLastCall().times(2);
+		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
+		expectLastCall().anyTimes();
+		expect(bundleContextMock.getService(serviceReferenceOne)).andReturn(serviceOne);
+		expect(bundleContextMock.ungetService(serviceReferenceOne)).andReturn(true).anyTimes();
+		expect(bundleContextMock.getService(serviceReferenceTwo)).andReturn(serviceTwo);
+		expect(bundleContextMock.ungetService(serviceReferenceTwo)).andReturn(true).anyTimes();
+		expect(bundleContextMock.getServiceReferences(eq(TestService.class.getName()), (String)isNull())).andReturn(new ServiceReference[] {serviceReferenceTwo});
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		OSGiURLParser urlParser = new OSGiURLParser("osgi:service/" + TestService.class.getName());
+		urlParser.parse();
+		ServiceInvocationHandler handler = 
+			new ServiceInvocationHandler(bundleContextMock, serviceReferenceOne, urlParser, serviceOne);
+		TestService proxy = 
+			(TestService)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {TestService.class}, handler);
+		
+		listenerCapture.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, serviceReferenceOne));
+		assertEquals("Proxy did not rebind to the remaining service", 
+				     "service two", proxy.getValue());
+		
+		handler.close();
+		mockSupport.verifyAll();
+	}
+	
+	
+	/* test utility methods/classes */
+	
+	private static ServiceReference createServiceReferenceMock(EasyMockSupport mockSupport, Bundle bundleMock, int serviceId) {
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		expect(serviceReferenceMock.getProperty(Constants.SERVICE_ID)).andReturn(new Long(serviceId)).anyTimes();
+		expect(serviceReferenceMock.getBundle()).andReturn(bundleMock).anyTimes();
+		expect(serviceReferenceMock.compareTo(anyObject())).andReturn(0).anyTimes();
+		return serviceReferenceMock;
+	}
+	
+	private static class DeferredExecutor implements Executor {
+		private final List<Runnable> m_tasks = new LinkedList<Runnable>();
+		
+		public void execute(Runnable runnable) {
+			m_tasks.add(runnable);
+		}
+		
+		void runPendingTasks() {
+			while(!m_tasks.isEmpty()) {
+				m_tasks.remove(0).run();
+			}
+		}
+	}
+	
+	public interface TestService {
+		public String getValue();
+	}
+}
@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.io.Closeable;
+
+import javax.naming.NameNotFoundException;
+
+import org.easymock.Capture;
+import org.easymock.EasyMockSupport;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
+import org.osgi.framework.Filter;
+import org.osgi.framework.ServiceEvent;
+import org.osgi.framework.ServiceException;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class ServiceLocatorImplTestCase extends TestCase {
+
+	private static final String FILTER = "(name=test)";
+	
+	/**
+	 * Verifies that a lookup returns a typed handle, that the handle is 
+	 * cached, and that the handle rebinds once its service is unregistered.  
+	 */
+	public void testLookupAndRebind() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		Bundle bundleMock = mockSupport.createMock(Bundle.class);
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		Filter filterMock = mockSupport.createMock(Filter.class);
+		ServiceReference serviceReferenceOne = 
+			createServiceReferenceMock(mockSupport, bundleMock, 1);
+		ServiceReference serviceReferenceTwo = 
+			createServiceReferenceMock(mockSupport, bundleMock, 2);
+		Closeable serviceOne = mockSupport.createMock(Closeable.class);
+		Closeable serviceTwo = mockSupport.createMock(Closeable.class);
+		
+		expect(bundleContextMock.createFilter(isA(String.class))).andReturn(filterMock).anyTimes();
+		// each backing service is followed by a tracker for that service only
+		Capture<ServiceListener> listenerCapture = new Capture<ServiceListener>();
+		bundleContextMock.addServiceListener(capture(listenerCapture), eq("(service.id=1)"));
+		bundleContextMock.addServiceListener(isA(ServiceListener.class), eq("(service.id=2)"));
+		expect(bundleContextMock.getServiceReferences("java.io.Closeable", FILTER)).andReturn(new ServiceReference[] {serviceReferenceOne});
+		expect(bundleContextMock.getServiceReferences("java.io.Closeable", FILTER)).andReturn(new ServiceReference[] {serviceReferenceTwo});
+		expect(bundleContextMock.getService(serviceReferenceOne)).andReturn(serviceOne);
+		expect(bundleContextMock.ungetService(serviceReferenceOne)).andReturn(true);
+		expect(bundleContextMock.getService(serviceReferenceTwo)).andReturn(serviceTwo);
+		expect(bundleContextMock.ungetService(serviceReferenceTwo)).andReturn(true);
+		bundleContextMock.removeServiceListener(isA(ServiceListener.class));
+		expectLastCall().times(2);
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		ServiceLocatorImpl serviceLocator = new ServiceLocatorImpl(bundleContextMock);
+		ServiceHandle<Closeable> handle = 
+			serviceLocator.lookup(Closeable.class, FILTER);
+		assertSame("Handle did not return the expected service", 
+				   serviceOne, handle.getService());
+		assertSame("ServiceLocator did not cache the handle", 
+				   handle, serviceLocator.lookup(Closeable.class, FILTER));
+		
+		// replace the backing service
+		assertSame("Handle should keep using the same service while it is registered", 
+				   serviceOne, handle.getService());
+		listenerCapture.getValue().serviceChanged(new ServiceEvent(ServiceEvent.UNREGISTERING, serviceReferenceOne));
+		assertSame("Handle did not rebind to the remaining service", 
+				   serviceTwo, handle.getService());
+		
+		serviceLocator.close();
+		try {
+			handle.getService();
+			fail("ServiceException should have been thrown");
+		} catch (ServiceException serviceException) {
+			// expected exception
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a lookup fails if no matching service is registered.  
+	 */
+	public void testLookupWithNoService() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		BundleContext bundleContextMock = 
+			mockSupport.createMock(BundleContext.class);
+		Filter filterMock = mockSupport.createMock(Filter.class);
+		expect(bundleContextMock.createFilter(FILTER)).andReturn(filterMock);
+		expect(bundleContextMock.getServiceReferences("java.io.Closeable", FILTER)).andReturn(null);
+		
+		mockSupport.replayAll();
+		
+		// begin test
+		ServiceLocatorImpl serviceLocator = new ServiceLocatorImpl(bundleContextMock);
+		try {
+			serviceLocator.lookup(Closeable.class, FILTER);
+			fail("NameNotFoundException should have been thrown");
+		} catch (NameNotFoundException namingException) {
+			// expected exception
+		}
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/* private test utility methods */
+	private static ServiceReference createServiceReferenceMock(EasyMockSupport mockSupport, Bundle bundleMock, int serviceId) {
+		ServiceReference serviceReferenceMock = 
+			mockSupport.createMock(ServiceReference.class);
+		expect(serviceReferenceMock.getProperty(Constants.SERVICE_ID)).andReturn(new Long(serviceId)).anyTimes();
+		expect(serviceReferenceMock.getBundle()).andReturn(bundleMock).anyTimes();
+		return serviceReferenceMock;
+	}
+}
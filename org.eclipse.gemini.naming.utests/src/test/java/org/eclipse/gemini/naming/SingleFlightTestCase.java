@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.naming.NamingException;
+
+import junit.framework.TestCase;
+
+public class SingleFlightTestCase extends TestCase {
+
+	/**
+	 * Verifies that a request for a key that is already in flight 
+	 * waits for, and shares the result of, the first computation.  
+	 */
+	public void testConcurrentRequestsShareComputation() throws Exception {
+		final SingleFlight<String, Object> singleFlight = 
+			new SingleFlight<String, Object>();
+		final CountDownLatch computationStarted = new CountDownLatch(1);
+		final CountDownLatch releaseComputation = new CountDownLatch(1);
+		final AtomicInteger numberOfComputations = new AtomicInteger();
+		final Object expectedResult = new Object();
+		final Object[] leaderResult = new Object[1];
+		
+		Thread leaderThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					leaderResult[0] = singleFlight.execute("osgi:service/test", new Callable<Object>() {
+						public Object call() throws Exception {
+							numberOfComputations.incrementAndGet();
+							computationStarted.countDown();
+							releaseComputation.await();
+							return expectedResult;
+						}
+					});
+				} catch (Exception exception) {
+					leaderResult[0] = exception;
+				}
+			}
+		});
+		leaderThread.start();
+		assertTrue("First computation did not start", 
+				   computationStarted.await(10, TimeUnit.SECONDS));
+		
+		final Object[] followerResult = new Object[1];
+		Thread followerThread = new Thread(new Runnable() {
+			public void run() {
+				try {
+					followerResult[0] = singleFlight.execute("osgi:service/test", new Callable<Object>() {
+						public Object call() throws Exception {
+							numberOfComputations.incrementAndGet();
+							return new Object();
+						}
+					});
+				} catch (Exception exception) {
+					followerResult[0] = exception;
+				}
+			}
+		});
+		followerThread.start();
+		// the second request waits once it has joined the computation in flight
+		assertTrue("Concurrent request did not wait for the computation in flight", 
+				   awaitWaiting(followerThread, 10000));
+		releaseComputation.countDown();
+		
+		leaderThread.join(10000);
+		followerThread.join(10000);
+		
+		assertSame("Incorrect result returned to the first request", 
+				   expectedResult, leaderResult[0]);
+		assertSame("Concurrent request did not share the result in flight", 
+				   expectedResult, followerResult[0]);
+		assertEquals("Identical concurrent requests should only compute once", 
+				     1, numberOfComputations.get());
+	}
+	
+	
+	/**
+	 * Polls the state of a thread until it waits, or until the timeout expires.  
+	 */
+	private static boolean awaitWaiting(Thread thread, long timeout) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeout;
+		while (System.currentTimeMillis() < deadline) {
+			final Thread.State state = thread.getState();
+			if ((state == Thread.State.WAITING) || (state == Thread.State.TIMED_WAITING)) {
+				return true;
+			}
+			if (state == Thread.State.TERMINATED) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		
+		return false;
+	}
+	
+	
+	/**
+	 * Verifies that results are not kept once a computation completes, 
+	 * and that exceptions are passed back to the caller unchanged.  
+	 */
+	public void testSequentialRequestsAreNotCached() throws Exception {
+		SingleFlight<String, Object> singleFlight = 
+			new SingleFlight<String, Object>();
+		final AtomicInteger numberOfComputations = new AtomicInteger();
+		Callable<Object> callable = new Callable<Object>() {
+			public Object call() throws Exception {
+				return new Integer(numberOfComputations.incrementAndGet());
+			}
+		};
+		
+		assertEquals(new Integer(1), singleFlight.execute("key", callable));
+		assertEquals(new Integer(2), singleFlight.execute("key", callable));
+		
+		final NamingException expectedException = new NamingException("test exception");
+		try {
+			singleFlight.execute("key", new Callable<Object>() {
+				public Object call() throws Exception {
+					throw expectedException;
+				}
+			});
+			fail("NamingException should have been thrown");
+		} catch (NamingException namingException) {
+			assertSame("Incorrect exception thrown", 
+					   expectedException, namingException);
+		}
+	}
+}
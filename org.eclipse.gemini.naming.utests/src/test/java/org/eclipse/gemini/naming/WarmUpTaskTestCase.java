@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (c) 2010 Oracle.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Apache License v2.0 which accompanies this distribution. 
+ * The Eclipse Public License is available at
+ *     http://www.eclipse.org/legal/epl-v10.html
+ * and the Apache License v2.0 is available at 
+ *     http://www.opensource.org/licenses/apache2.0.php.
+ * You may elect to redistribute this code under either of these licenses.
+ *
+ * Contributors:
+ *     Bob Nettleton (Oracle) - Initial Reference Implementation Unit Tests
+ ******************************************************************************/
+
+package org.eclipse.gemini.naming;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+
+import javax.naming.Context;
+import javax.naming.NameNotFoundException;
+
+import org.easymock.EasyMockSupport;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceListener;
+import org.osgi.framework.ServiceReference;
+import org.osgi.service.jndi.JNDIContextManager;
+
+import junit.framework.TestCase;
+
+import static org.easymock.EasyMock.*;
+
+public class WarmUpTaskTestCase extends TestCase {
+
+	public void testParseHeader() throws Exception {
+		List<String> entries = 
+			WarmUpTask.parseHeader(" osgi:service/com.oracle.TestService ,, com.oracle.TestFactory ");
+		assertEquals("Incorrect entries parsed from the header", 
+				     Arrays.asList("osgi:service/com.oracle.TestService", "com.oracle.TestFactory"), entries);
+	}
+	
+	
+	/**
+	 * Verifies that each URL is looked up and each factory is used once, 
+	 * that the Contexts are closed, and that a failing entry does not 
+	 * stop the remaining entries.  
+	 */
+	public void testRun() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		JNDIContextManager contextManagerMock = 
+			mockSupport.createMock(JNDIContextManager.class);
+		Context urlContextMock = 
+			mockSupport.createMock(Context.class);
+		Context factoryContextMock = 
+			mockSupport.createMock(Context.class);
+		
+		expect(contextManagerMock.newInitialContext()).andReturn(urlContextMock);
+		expect(urlContextMock.lookup("osgi:service/com.oracle.TestService")).andThrow(new NameNotFoundException("test exception"));
+		urlContextMock.close();
+		Hashtable<String, Object> expectedEnvironment = new Hashtable<String, Object>();
+		expectedEnvironment.put(Context.INITIAL_CONTEXT_FACTORY, "com.oracle.TestFactory");
+		expect(contextManagerMock.newInitialContext(eq(expectedEnvironment))).andReturn(factoryContextMock);
+		factoryContextMock.close();
+		mockSupport.replayAll();
+		
+		// begin test
+		new WarmUpTask(contextManagerMock, 
+				       Arrays.asList("osgi:service/com.oracle.TestService", "com.oracle.TestFactory")).run();
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that a Context returned by a lookup is closed, and that a 
+	 * DirectService returned by a lookup is released.  
+	 */
+	public void testRunReleasesLookupResults() throws Exception {
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		JNDIContextManager contextManagerMock = 
+			mockSupport.createMock(JNDIContextManager.class);
+		Context initialContextMock = 
+			mockSupport.createMock(Context.class);
+		Context serviceListContextMock = 
+			mockSupport.createMock(Context.class);
+		DirectService directServiceMock = 
+			mockSupport.createMock(DirectService.class);
+		
+		expect(contextManagerMock.newInitialContext()).andReturn(initialContextMock).times(2);
+		expect(initialContextMock.lookup("osgi:servicelist/com.oracle.TestService")).andReturn(serviceListContextMock);
+		serviceListContextMock.close();
+		expect(initialContextMock.lookup("osgi:service/com.oracle.TestService")).andReturn(directServiceMock);
+		directServiceMock.release();
+		initialContextMock.close();
+		expectLastCall().times(2);
+		mockSupport.replayAll();
+		
+		// begin test
+		new WarmUpTask(contextManagerMock, 
+				       Arrays.asList("osgi:servicelist/com.oracle.TestService", "osgi:service/com.oracle.TestService")).run();
+		
+		mockSupport.verifyAll();
+	}
+	
+	
+	/**
+	 * Verifies that an "osgi:service" proxy returned by a lookup is not 
+	 * closed, since the client bundle may share the same proxy.  
+	 */
+	public void testRunDoesNotCloseServiceProxy() throws Exception {
+		// proxy setup, the proxy's tracker is opened on the client's BundleContext
+		EasyMockSupport proxyMockSupport = new EasyMockSupport();
+		BundleContext bundleContextMock = 
+			proxyMockSupport.createMock(BundleContext.class);
+		ServiceReference serviceReferenceMock = 
+			proxyMockSupport.createNiceMock(ServiceReference.class);
+		Context serviceMock = 
+			proxyMockSupport.createMock(Context.class);
+		expect(bundleContextMock.createFilter(isA(String.class))).andReturn(null).anyTimes();
+		bundleContextMock.addServiceListener(isA(ServiceListener.class), isA(String.class));
+		expectLastCall().anyTimes();
+		proxyMockSupport.replayAll();
+		
+		OSGiURLParser urlParser = new OSGiURLParser("osgi:service/javax.naming.Context");
+		urlParser.parse();
+		Object serviceProxy = 
+			Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {Context.class}, 
+					               new ServiceInvocationHandler(bundleContextMock, serviceReferenceMock, urlParser, serviceMock));
+		
+		// mock setup
+		EasyMockSupport mockSupport = new EasyMockSupport();
+		JNDIContextManager contextManagerMock = 
+			mockSupport.createMock(JNDIContextManager.class);
+		Context initialContextMock = 
+			mockSupport.createMock(Context.class);
+		expect(contextManagerMock.newInitialContext()).andReturn(initialContextMock);
+		expect(initialContextMock.lookup("osgi:service/javax.naming.Context")).andReturn(serviceProxy);
+		initialContextMock.close();
+		mockSupport.replayAll();
+		
+		// begin test
+		new WarmUpTask(contextManagerMock, Arrays.asList("osgi:service/javax.naming.Context")).run();
+		
+		mockSupport.verifyAll();
+		// neither the proxied Context nor the service is released
+		proxyMockSupport.verifyAll();
+	}
+}